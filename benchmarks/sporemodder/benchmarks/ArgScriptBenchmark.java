@@ -0,0 +1,137 @@
+/****************************************************************************
+* Copyright (C) 2019 Eric Mor
+*
+* This file is part of SporeModder FX.
+*
+* SporeModder FX is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+****************************************************************************/
+package sporemodder.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sporemodder.file.argscript.ArgScriptStream;
+import sporemodder.file.effects.EffectDirectory;
+import sporemodder.file.effects.EffectUnit;
+import sporemodder.file.filestructures.MemoryStream;
+import sporemodder.file.prop.PropertyList;
+
+/**
+ * Measures parsing prop and effect files with {@link ArgScriptStream#process(String)}, using the streams of the current thread
+ * like the converters do, or creating a new stream for every file. It uses fast parsing, as when packing a project.
+ * <p>
+ * The setup fails if a pooled stream gives different prop files or errors than a new one, or if it keeps the variables
+ * of the previous file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ArgScriptBenchmark {
+
+	@Param({"200"})
+	public int fileCount;
+
+	@Param({"prop", "effect"})
+	public String format;
+
+	@Param({"true", "false"})
+	public boolean pooled;
+
+	private final List<String> texts = new ArrayList<String>();
+	private EffectDirectory effectDirectory;
+
+	@Setup
+	public void setup() throws IOException {
+		BenchmarkCorpus.initialize();
+		BenchmarkCorpus corpus = new BenchmarkCorpus(BenchmarkCorpus.DEFAULT_SEED);
+		for (int i = 0; i < fileCount; ++i) {
+			texts.add(format.equals("prop") ? corpus.getPropText(i) : corpus.getEffectText(i));
+		}
+		effectDirectory = new EffectDirectory();
+
+		if (format.equals("prop")) {
+			checkPooledStreams();
+		}
+	}
+
+	private static byte[] processProp(String text, boolean pooled, List<Integer> errorCounts) throws IOException {
+		PropertyList list = new PropertyList();
+		ArgScriptStream<PropertyList> stream = pooled ? list.getPooledStream() : list.generateStream();
+		stream.setFastParsing(true);
+		stream.process(text);
+		errorCounts.add(stream.getErrors().size());
+
+		try (MemoryStream output = new MemoryStream()) {
+			list.write(output);
+			return output.toByteArray();
+		}
+	}
+
+	private void checkPooledStreams() throws IOException {
+		List<Integer> errorCounts = new ArrayList<Integer>();
+		List<Integer> expectedErrorCounts = new ArrayList<Integer>();
+		for (int i = 0; i < texts.size(); ++i) {
+			byte[] data = processProp(texts.get(i), true, errorCounts);
+			byte[] expected = processProp(texts.get(i), false, expectedErrorCounts);
+			if (!Arrays.equals(expected, data) || !errorCounts.equals(expectedErrorCounts)) {
+				throw new IllegalStateException("Prop file " + i + " is different when parsed with a pooled stream");
+			}
+		}
+
+		// The previous file set this variable, but it must not be defined in this one
+		processProp("set scale 2\n", true, errorCounts);
+		errorCounts.clear();
+		processProp("int32 scaled $scale\n", true, errorCounts);
+		if (errorCounts.get(0) == 0) {
+			throw new IllegalStateException("The pooled stream keeps the variables of the previous file");
+		}
+	}
+
+	@Benchmark
+	public int process() {
+		int errorCount = 0;
+		for (String text : texts) {
+			ArgScriptStream<?> stream;
+			if (format.equals("prop")) {
+				PropertyList list = new PropertyList();
+				stream = pooled ? list.getPooledStream() : list.generateStream();
+			} else {
+				EffectUnit unit = new EffectUnit(effectDirectory);
+				stream = pooled ? unit.getPooledStream() : unit.generateStream();
+			}
+			stream.setFastParsing(true);
+			stream.process(text);
+			errorCount += stream.getErrors().size();
+		}
+		return errorCount;
+	}
+}
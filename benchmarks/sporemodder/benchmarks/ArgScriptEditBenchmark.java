@@ -0,0 +1,253 @@
+/****************************************************************************
+* Copyright (C) 2019 Eric Mor
+*
+* This file is part of SporeModder FX.
+*
+* SporeModder FX is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+****************************************************************************/
+package sporemodder.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.fxmisc.richtext.model.StyleSpan;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sporemodder.file.DocumentError;
+import sporemodder.file.DocumentFragment;
+import sporemodder.file.argscript.ArgScriptArguments;
+import sporemodder.file.argscript.ArgScriptBlock;
+import sporemodder.file.argscript.ArgScriptLine;
+import sporemodder.file.argscript.ArgScriptParser;
+import sporemodder.file.argscript.ArgScriptStream;
+import sporemodder.file.argscript.ArgScriptStream.HyperlinkData;
+import sporemodder.file.argscript.ArgScriptStream.OnReparseAction;
+
+/**
+ * Measures parsing a big ArgScript document with {@link ArgScriptStream#process(String)}, and editing it with
+ * {@link ArgScriptStream#processEdit(int, int, String)}, which only parses again the edited blocks.
+ * <p>
+ * The setup applies random edits to a smaller document, and fails if the errors, hyperlinks, structure, data or syntax
+ * highlighting after any edit are different than the ones of processing the whole text.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ArgScriptEditBenchmark {
+
+	private static final String HEADER = "set base 5\n";
+	private static final String[] SNIPPETS = {
+			"element e%d\n\tvalue %d\n\tvalue $base\n\tlink e0\nend\n",
+			"value %d # comment %d\n",
+			"#< block\n comment %d %d #>\n",
+			"element e%d\n\tvalue x%d\n\n\tlink e1 # it's later\nend\n",
+			"\r\nvalue %d\r\nvalue %d\n",
+	};
+	private static final String[] INSERTIONS = {"1", "x", " ", "\n", "value 7\n", "# c", "\tvalue 2\n", "end\n", "element e1\n", "#<", "#>", "$base", "\r\n"};
+
+	@Param({"5000"})
+	public int elementCount;
+
+	private String text;
+	private int editOffset;
+	private ArgScriptStream<TreeMap<Integer, String>> stream;
+
+	@Setup
+	public void setup() {
+		BenchmarkCorpus.initialize();
+		checkEdits(2000);
+
+		StringBuilder sb = new StringBuilder(HEADER);
+		for (int i = 0; i < elementCount; ++i) {
+			sb.append(String.format(SNIPPETS[0], i, i));
+		}
+		text = sb.toString();
+		String value = "value " + (elementCount / 2);
+		editOffset = text.indexOf(value) + value.length();
+
+		stream = createStream();
+		stream.process(text);
+	}
+
+	/**
+	 * A stream that keeps the names of the elements by the position of their line, updating them when the document is edited.
+	 */
+	private static ArgScriptStream<TreeMap<Integer, String>> createStream() {
+		ArgScriptStream<TreeMap<Integer, String>> stream = new ArgScriptStream<TreeMap<Integer, String>>();
+		stream.setData(new TreeMap<Integer, String>());
+		stream.addDefaultParsers();
+		stream.setIncrementalParsing(true);
+
+		stream.setOnStartAction((asStream, data) -> data.clear());
+		stream.setOnReparseAction(new OnReparseAction<TreeMap<Integer, String>>() {
+			// The elements after the parsed lines must not be used, they are not defined yet
+			final TreeMap<Integer, String> laterElements = new TreeMap<Integer, String>();
+			final List<String> removedNames = new ArrayList<String>();
+			int start;
+
+			@Override public boolean onReparse(ArgScriptStream<TreeMap<Integer, String>> stream, TreeMap<Integer, String> data, int start, int end, int offset) {
+				this.start = start;
+				removedNames.addAll(data.subMap(start, true, end, true).values());
+				data.tailMap(end, false).forEach((position, name) -> laterElements.put(position + offset, name));
+				data.tailMap(start, true).clear();
+				return true;
+			}
+
+			@Override public boolean afterReparse(ArgScriptStream<TreeMap<Integer, String>> stream, TreeMap<Integer, String> data) {
+				boolean isSame = removedNames.equals(new ArrayList<String>(data.tailMap(start, true).values()));
+				data.putAll(laterElements);
+				laterElements.clear();
+				removedNames.clear();
+				return isSame;
+			}
+		});
+
+		ArgScriptParser<TreeMap<Integer, String>> valueParser = ArgScriptParser.create((parser, line) -> {
+			ArgScriptArguments args = new ArgScriptArguments();
+			if (line.getArguments(args, 1) && stream.parseInt(args, 0) != null) {
+				stream.addHyperlink("value", args.get(0), args.getRealPosition(args.getPosition(0)), args.getRealPosition(args.getEndPosition(0)));
+			}
+		});
+		stream.addParser("value", valueParser);
+
+		ArgScriptBlock<TreeMap<Integer, String>> elementBlock = new ArgScriptBlock<TreeMap<Integer, String>>() {
+			@Override public void parse(ArgScriptLine line) {
+				ArgScriptArguments args = new ArgScriptArguments();
+				if (line.getArguments(args, 1)) {
+					if (data.containsValue(args.get(0))) {
+						stream.addError(line.createErrorForArgument("An element with this name already exists.", 0));
+					}
+					data.put(stream.getLinePositions().get(stream.getCurrentLine()), args.get(0));
+				}
+				stream.startBlock(this);
+			}
+		};
+		stream.addParser("element", elementBlock);
+		elementBlock.addParser("value", valueParser);
+		elementBlock.addParser("link", ArgScriptParser.create((parser, line) -> {
+			ArgScriptArguments args = new ArgScriptArguments();
+			if (line.getArguments(args, 1) && !stream.getData().containsValue(args.get(0))) {
+				stream.addError(line.createErrorForArgument("Unknown element.", 0));
+			}
+		}));
+
+		return stream;
+	}
+
+	private static void describeFragments(List<DocumentFragment> fragments, StringBuilder sb) {
+		for (DocumentFragment fragment : fragments) {
+			sb.append("F " + fragment.getStart() + " " + fragment.getEnd() + " " + fragment.getEditPosition() + " " + fragment.getDescription() + "\n");
+			sb.append("{\n");
+			describeFragments(fragment.getChildren(), sb);
+			sb.append("}\n");
+		}
+	}
+
+	private static String describeParse(ArgScriptStream<TreeMap<Integer, String>> stream) {
+		StringBuilder sb = new StringBuilder();
+		for (DocumentError error : stream.getErrors()) {
+			sb.append("E " + error.getLine() + " " + error.getStartPosition() + " " + error.getEndPosition() + " " + error.getMessage() + "\n");
+		}
+		for (DocumentError error : stream.getWarnings()) {
+			sb.append("W " + error.getLine() + " " + error.getStartPosition() + " " + error.getEndPosition() + " " + error.getMessage() + "\n");
+		}
+		for (HyperlinkData hyperlink : stream.getHyperlinkData()) {
+			sb.append("H " + hyperlink.line + " " + hyperlink.start + " " + hyperlink.end + " " + hyperlink.object + "\n");
+		}
+		sb.append("L " + stream.getLinePositions() + "\n");
+		sb.append("D " + stream.getData() + "\n");
+		describeFragments(stream.getDocumentStructure().getFragments(), sb);
+		for (StyleSpan<Collection<String>> span : stream.getSyntaxHighlighter().generateStyleSpans()) {
+			sb.append("S " + span.getLength() + " " + span.getStyle() + "\n");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Applies random edits to a document, checking that the result of every edit is the same as processing the whole text.
+	 */
+	private static void checkEdits(int editCount) {
+		Random random = new Random(BenchmarkCorpus.DEFAULT_SEED);
+		StringBuilder sb = new StringBuilder(HEADER);
+		for (int i = 0; i < 40; ++i) {
+			sb.append(String.format(SNIPPETS[random.nextInt(SNIPPETS.length)], i, i));
+		}
+		String originalText = sb.toString();
+		String text = originalText;
+
+		ArgScriptStream<TreeMap<Integer, String>> stream = createStream();
+		stream.process(text);
+		stream.addErrorsSyntax();
+
+		for (int i = 0; i < editCount; ++i) {
+			// Don't edit the variable, variables of a previous process are kept by the stream
+			int offset = HEADER.length() + random.nextInt(text.length() - HEADER.length() + 1);
+			int removedLength = random.nextInt(3) == 0 ? Math.min(random.nextInt(12), text.length() - offset) : 0;
+			String insertedText = removedLength != 0 && random.nextBoolean() ? "" : INSERTIONS[random.nextInt(INSERTIONS.length)];
+
+			text = text.substring(0, offset) + insertedText + text.substring(offset + removedLength);
+			stream.processEdit(offset, removedLength, insertedText);
+			stream.addErrorsSyntax();
+
+			ArgScriptStream<TreeMap<Integer, String>> expectedStream = createStream();
+			expectedStream.process(text);
+			expectedStream.addErrorsSyntax();
+
+			String expected = describeParse(expectedStream);
+			String result = describeParse(stream);
+			if (!expected.equals(result)) {
+				throw new IllegalStateException(String.format("Edit %d (%d, %d, '%s') has a different result:%n%s%n---%n%s",
+						i, offset, removedLength, insertedText, expected, result));
+			}
+
+			// Go back to the original text from time to time, so it doesn't become too broken
+			if (random.nextInt(50) == 0) {
+				stream.processEdit(0, text.length(), originalText);
+				stream.addErrorsSyntax();
+				text = originalText;
+			}
+		}
+	}
+
+	@Benchmark
+	public int process() {
+		stream.process(text);
+		return stream.getErrors().size();
+	}
+
+	/** Inserts a digit in a value and removes it again, so the document is the same after every call. */
+	@Benchmark
+	public boolean processEdit() {
+		boolean isIncremental = stream.processEdit(editOffset, 0, "1");
+		isIncremental &= stream.processEdit(editOffset, 1, "");
+		return isIncremental;
+	}
+}
@@ -0,0 +1,348 @@
+/****************************************************************************
+* Copyright (C) 2019 Eric Mor
+*
+* This file is part of SporeModder FX.
+*
+* SporeModder FX is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+****************************************************************************/
+package sporemodder.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import sporemodder.HashManager;
+import sporemodder.MainApp;
+import sporemodder.file.ResourceKey;
+import sporemodder.file.argscript.ArgScriptStream;
+import sporemodder.file.dbpf.DBPFPacker;
+import sporemodder.file.dds.DDSEncoder;
+import sporemodder.file.filestructures.MemoryStream;
+import sporemodder.file.prop.PropertyList;
+import sporemodder.file.rw4.Direct3DEnums.D3DDECLTYPE;
+import sporemodder.file.rw4.Direct3DEnums.D3DDECLUSAGE;
+import sporemodder.file.rw4.Direct3DEnums.RWDECLUSAGE;
+import sporemodder.file.rw4.RWBaseResource;
+import sporemodder.file.rw4.RWHeader.RenderWareType;
+import sporemodder.file.rw4.RWIndexBuffer;
+import sporemodder.file.rw4.RWMesh;
+import sporemodder.file.rw4.RWVertexBuffer;
+import sporemodder.file.rw4.RWVertexDescription;
+import sporemodder.file.rw4.RWVertexElement;
+import sporemodder.file.rw4.RenderWare;
+import sporemodder.file.rw4.RenderWareConverter;
+
+/**
+ * Generates the files used by the benchmarks: prop files (as text and binary), RenderWare models and textures, effect files
+ * and packages that contain them. Every file is generated from the seed and its index, so the same corpus is used on every
+ * run and machine, and the results can be compared between versions without needing the game files.
+ */
+public class BenchmarkCorpus {
+
+	public static final long DEFAULT_SEED = 0x5B0E;
+
+	public static final int PROP_TYPE_ID = 0x00B1B104;
+	public static final int RW4_TYPE_ID = RenderWareConverter.TYPE_ID;
+	public static final int RASTER_TYPE_ID = 0x2F4E681C;
+
+	private static boolean isInitialized;
+
+	/**
+	 * Initializes the managers needed to parse and write the files (like {@link HashManager}). It only does it once per JVM,
+	 * so benchmarks can call it in their setup.
+	 */
+	public static synchronized void initialize() {
+		if (!isInitialized) {
+			MainApp.testInit();
+			isInitialized = true;
+		}
+	}
+
+	/** A file of the corpus, with the name it has in the generated packages. */
+	public static class Item {
+		public final ResourceKey key;
+		public final byte[] data;
+
+		public Item(ResourceKey key, byte[] data) {
+			this.key = key;
+			this.data = data;
+		}
+	}
+
+	private final long seed;
+
+	public BenchmarkCorpus(long seed) {
+		this.seed = seed;
+	}
+
+	private Random getRandom(int index) {
+		return new Random(seed * 1000003 + index);
+	}
+
+	/**
+	 * Returns the names used for the files of the corpus, which can be used to fill name registries.
+	 */
+	public List<String> getNames(int count) {
+		Random random = getRandom(-1);
+		String[] words = {"creature", "building", "vehicle", "part", "mouth", "eye", "limb", "spine", "cell", "planet", "tribe", "space"};
+		List<String> names = new ArrayList<String>();
+		for (int i = 0; i < count; ++i) {
+			names.add(words[random.nextInt(words.length)] + "_" + words[random.nextInt(words.length)] + "_" + i);
+		}
+		return names;
+	}
+
+	/**
+	 * Generates the ArgScript text of a prop file, using most of the property types and some variables.
+	 */
+	public String getPropText(int index) {
+		Random random = getRandom(index);
+		StringBuilder sb = new StringBuilder();
+		sb.append("# Benchmark prop file " + index + "\n");
+		sb.append("set scale " + random.nextInt(100) + "\n");
+		sb.append("set folder benchmark_" + (index % 10) + "\n\n");
+
+		int propertyCount = 20 + random.nextInt(40);
+		for (int i = 0; i < propertyCount; ++i) {
+			String name = "property" + i;
+			switch (i % 10) {
+			case 0: sb.append("int32 " + name + " " + random.nextInt() + "\n"); break;
+			case 1: sb.append("uint32 " + name + " 0x" + Integer.toHexString(random.nextInt()) + "\n"); break;
+			case 2: sb.append("float " + name + " " + random.nextFloat() * 100 + "\n"); break;
+			case 3: sb.append("bool " + name + " " + random.nextBoolean() + "\n"); break;
+			case 4: sb.append("string8 " + name + " \"text " + random.nextInt(1000) + "\"  # a comment\n"); break;
+			case 5: sb.append("string16 " + name + " \"unicode text " + random.nextInt(1000) + "\"\n"); break;
+			case 6: sb.append("vector3 " + name + " (" + random.nextFloat() + ", " + random.nextFloat() + ", $scale)\n"); break;
+			case 7: sb.append("colorRGB " + name + " (" + random.nextFloat() + ", " + random.nextFloat() + ", " + random.nextFloat() + ")\n"); break;
+			case 8: sb.append("key " + name + " $folder!model" + random.nextInt(500) + ".rw4\n"); break;
+			default:
+				sb.append("uint32s " + name + "\n");
+				int count = 1 + random.nextInt(8);
+				for (int j = 0; j < count; ++j) {
+					sb.append("\t" + random.nextInt(10000) + "\n");
+				}
+				sb.append("end\n");
+				break;
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Generates the binary prop file of {@link #getPropText(int)}.
+	 */
+	public byte[] getPropFile(int index) throws IOException {
+		PropertyList list = new PropertyList();
+		ArgScriptStream<PropertyList> stream = list.generateStream();
+		stream.setFastParsing(true);
+		stream.process(getPropText(index));
+
+		if (!stream.getErrors().isEmpty()) {
+			throw new IOException("Generated prop file " + index + " has errors: " + stream.getErrors().get(0).getMessage());
+		}
+
+		try (MemoryStream output = new MemoryStream()) {
+			list.write(output);
+			return output.toByteArray();
+		}
+	}
+
+	/**
+	 * Generates the ArgScript text of an effect file, with effects that use the particles and effects defined before them.
+	 */
+	public String getEffectText(int index) {
+		Random random = getRandom(index);
+		StringBuilder sb = new StringBuilder();
+		int effectCount = 20 + random.nextInt(20);
+		for (int e = 0; e < effectCount; ++e) {
+			String name = "benchmark" + index + "_" + e;
+			sb.append("particles " + name + "_a\n\tlife " + (1 + random.nextInt(5)) + "\n\tcolor (" + random.nextFloat() + ", 0, 0)\nend\n");
+			sb.append("particles " + name + "_b\n\tlife 2\nend\n");
+			sb.append("effect " + name + "\n\tparticles " + name + "_a\n\tparticles " + name + "_b\n");
+			if (e != 0) sb.append("\teffect benchmark" + index + "_" + (e - 1) + "\n");
+			sb.append("end\nexport " + name + "\n");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Generates an image as ARGB pixels stored by rows: smooth gradients with a bit of noise and some hard edges, like the images
+	 * used for textures. If it has no alpha, all the pixels are opaque.
+	 */
+	public int[] getImage(int index, int width, int height, boolean hasAlpha) {
+		Random random = getRandom(index);
+		int[] pixels = new int[width * height];
+		for (int y = 0; y < height; ++y) {
+			for (int x = 0; x < width; ++x) {
+				int r = Math.min(255, x * 255 / Math.max(1, width - 1) + random.nextInt(9));
+				int g = Math.min(255, y * 255 / Math.max(1, height - 1) + random.nextInt(9));
+				int b = ((x / 16 + y / 16) % 2 == 0) ? 200 : 40;
+				int a = hasAlpha ? (int) (127.5 + 127.5 * Math.sin(x * 0.05) * Math.cos(y * 0.07)) : 255;
+				pixels[y * width + x] = a << 24 | r << 16 | g << 8 | b;
+			}
+		}
+		return pixels;
+	}
+
+	/**
+	 * Generates a RenderWare texture with a DXT compressed image of the given size, with mipmaps.
+	 */
+	public RenderWare getTexture(int index, int size) {
+		Random random = getRandom(index);
+		int[] pixels = new int[size * size];
+		int color = random.nextInt();
+		// Gradients with some noise, so the compressor does real work
+		for (int y = 0; y < size; ++y) {
+			for (int x = 0; x < size; ++x) {
+				int noise = random.nextInt(16);
+				int r = ((color >> 16) + x + noise) & 0xFF;
+				int g = ((color >> 8) + y + noise) & 0xFF;
+				int b = (color + x + y) & 0xFF;
+				int a = index % 2 == 0 ? 0xFF : (x * 255 / size);
+				pixels[y * size + x] = a << 24 | r << 16 | g << 8 | b;
+			}
+		}
+		return RenderWare.fromTexture(new DDSEncoder().encode(pixels, size, size));
+	}
+
+	/**
+	 * Generates a RenderWare model with a grid mesh that has the given number of vertices per side.
+	 * Every vertex has a position and texture coordinates.
+	 */
+	public RenderWare getModel(int index, int gridSize) throws IOException {
+		Random random = getRandom(index);
+		RenderWare renderWare = new RenderWare();
+		renderWare.setType(RenderWareType.MODEL);
+
+		RWVertexDescription description = new RWVertexDescription(renderWare);
+		RWVertexElement position = new RWVertexElement();
+		position.offset = 0;
+		position.type = D3DDECLTYPE.D3DDECLTYPE_FLOAT3;
+		position.usage = D3DDECLUSAGE.D3DDECLUSAGE_POSITION;
+		position.typeCode = RWDECLUSAGE.POSITION.getId();
+		RWVertexElement texcoord = new RWVertexElement();
+		texcoord.offset = 12;
+		texcoord.type = D3DDECLTYPE.D3DDECLTYPE_FLOAT2;
+		texcoord.usage = D3DDECLUSAGE.D3DDECLUSAGE_TEXCOORD;
+		texcoord.typeCode = RWDECLUSAGE.TEXCOORD0.getId();
+		description.elements.add(position);
+		description.elements.add(texcoord);
+		description.vertexSize = 20;
+		description.elementFlags = RWVertexElement.VERTEX2_POSITION | RWVertexElement.VERTEX2_TEXCOORD0;
+
+		int vertexCount = gridSize * gridSize;
+		int triangleCount = 0;
+		try (MemoryStream vertices = new MemoryStream(vertexCount * description.vertexSize);
+				MemoryStream indices = new MemoryStream()) {
+			for (int y = 0; y < gridSize; ++y) {
+				for (int x = 0; x < gridSize; ++x) {
+					vertices.writeLEFloat(x);
+					vertices.writeLEFloat(y);
+					vertices.writeLEFloat(random.nextFloat());
+					vertices.writeLEFloat((float) x / gridSize);
+					vertices.writeLEFloat((float) y / gridSize);
+
+					if (x != gridSize - 1 && y != gridSize - 1) {
+						int i = y * gridSize + x;
+						indices.writeLEShort(i);
+						indices.writeLEShort(i + 1);
+						indices.writeLEShort(i + gridSize);
+						indices.writeLEShort(i + 1);
+						indices.writeLEShort(i + gridSize + 1);
+						indices.writeLEShort(i + gridSize);
+						triangleCount += 2;
+					}
+				}
+			}
+
+			RWBaseResource vertexData = new RWBaseResource(renderWare);
+			vertexData.data = vertices.toByteArray();
+			RWBaseResource indexData = new RWBaseResource(renderWare);
+			indexData.data = indices.toByteArray();
+
+			RWVertexBuffer vertexBuffer = new RWVertexBuffer(renderWare);
+			vertexBuffer.vertexDescription = description;
+			vertexBuffer.vertexCount = vertexCount;
+			vertexBuffer.vertexSize = description.vertexSize;
+			vertexBuffer.vertexData = vertexData;
+
+			RWIndexBuffer indexBuffer = new RWIndexBuffer(renderWare);
+			indexBuffer.primitiveCount = triangleCount * 3;
+			indexBuffer.indexData = indexData;
+
+			RWMesh mesh = new RWMesh(renderWare);
+			mesh.indexBuffer = indexBuffer;
+			mesh.triangleCount = triangleCount;
+			mesh.primitiveCount = triangleCount * 3;
+			mesh.vertexCount = vertexCount;
+			mesh.vertexBuffers.add(vertexBuffer);
+
+			renderWare.add(description);
+			renderWare.add(vertexBuffer);
+			renderWare.add(indexBuffer);
+			renderWare.add(mesh);
+			renderWare.add(vertexData);
+			renderWare.add(indexData);
+		}
+		return renderWare;
+	}
+
+	private static byte[] toByteArray(RenderWare renderWare) throws IOException {
+		try (MemoryStream output = new MemoryStream()) {
+			renderWare.write(output);
+			return output.toByteArray();
+		}
+	}
+
+	/**
+	 * Returns the name of a file in the generated packages: one of every three is a prop file, a RenderWare model and a RenderWare texture.
+	 */
+	public ResourceKey getPackageKey(int index) {
+		HashManager hasher = HashManager.get();
+		int[] typeIDs = {PROP_TYPE_ID, RW4_TYPE_ID, RASTER_TYPE_ID};
+		return new ResourceKey(hasher.fnvHash("benchmark"), hasher.fnvHash("file" + index), typeIDs[index % 3]);
+	}
+
+	/**
+	 * Generates the files of a package, with the names returned by {@link #getPackageKey(int)}.
+	 */
+	public List<Item> getPackageItems(int fileCount) throws IOException {
+		List<Item> items = new ArrayList<Item>();
+		for (int i = 0; i < fileCount; ++i) {
+			ResourceKey key = getPackageKey(i);
+			switch (i % 3) {
+			case 0: items.add(new Item(key, getPropFile(i))); break;
+			case 1: items.add(new Item(key, toByteArray(getModel(i, 16 + i % 32)))); break;
+			default: items.add(new Item(key, toByteArray(getTexture(i, 64 << (i / 3 % 3))))); break;
+			}
+		}
+		return items;
+	}
+
+	/**
+	 * Writes the given files in a package, compressing all of them if specified.
+	 */
+	public static byte[] writePackage(List<Item> items, boolean compress) throws Exception {
+		try (MemoryStream output = new MemoryStream()) {
+			try (DBPFPacker packer = new DBPFPacker(output, false)) {
+				if (compress) packer.setCompressThreshold(0);
+				for (Item item : items) {
+					packer.writeFile(item.key, item.data, item.data.length);
+				}
+			}
+			return output.toByteArray();
+		}
+	}
+}
@@ -0,0 +1,84 @@
+/****************************************************************************
+* Copyright (C) 2019 Eric Mor
+*
+* This file is part of SporeModder FX.
+*
+* SporeModder FX is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+****************************************************************************/
+package sporemodder.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sporemodder.file.dbpf.DBPFIndex;
+import sporemodder.file.dbpf.DBPFItem;
+import sporemodder.file.dbpf.DatabasePackedFile;
+import sporemodder.file.filestructures.MemoryStream;
+
+/**
+ * Measures reading the index of a package with {@link DBPFIndex#readItems(sporemodder.file.filestructures.StreamReader, int, boolean)}.
+ * The package only contains the index, as the data of the files is not read.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DBPFIndexBenchmark {
+
+	@Param({"1000", "20000"})
+	public int fileCount;
+
+	private MemoryStream stream;
+	private DatabasePackedFile header;
+
+	@Setup
+	public void setup() throws Exception {
+		BenchmarkCorpus.initialize();
+
+		// Only the names matter, so the files are empty
+		BenchmarkCorpus corpus = new BenchmarkCorpus(BenchmarkCorpus.DEFAULT_SEED);
+		List<BenchmarkCorpus.Item> items = new ArrayList<BenchmarkCorpus.Item>();
+		for (int i = 0; i < fileCount; ++i) {
+			items.add(new BenchmarkCorpus.Item(corpus.getPackageKey(i), new byte[0]));
+		}
+
+		stream = new MemoryStream(BenchmarkCorpus.writePackage(items, false));
+		header = new DatabasePackedFile();
+		header.readHeader(stream);
+		header.readIndex(stream);
+	}
+
+	@Benchmark
+	public List<DBPFItem> readItems() throws IOException {
+		header.index.items.clear();
+		header.index.readItems(stream, header.indexCount, header.isDBBF);
+		return header.index.items;
+	}
+}
@@ -0,0 +1,83 @@
+/****************************************************************************
+* Copyright (C) 2019 Eric Mor
+*
+* This file is part of SporeModder FX.
+*
+* SporeModder FX is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+****************************************************************************/
+package sporemodder.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sporemodder.file.dbpf.DBPFPacker;
+import sporemodder.file.dbpf.RefPackCompressor;
+import sporemodder.file.filestructures.MemoryStream;
+
+/**
+ * Measures writing a whole package with {@link DBPFPacker#writeFile(sporemodder.file.ResourceKey, byte[], int)},
+ * with and without compressing the files.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DBPFPackerBenchmark {
+
+	@Param({"300"})
+	public int fileCount;
+
+	/** The compression level used, or NONE to store the files uncompressed. */
+	@Param({"NONE", "FAST", "DEFAULT"})
+	public String compression;
+
+	private List<BenchmarkCorpus.Item> items;
+	private final MemoryStream output = new MemoryStream();
+
+	@Setup
+	public void setup() throws Exception {
+		BenchmarkCorpus.initialize();
+		items = new BenchmarkCorpus(BenchmarkCorpus.DEFAULT_SEED).getPackageItems(fileCount);
+	}
+
+	@Benchmark
+	public long writeFile() throws Exception {
+		// Reuse the buffer, so only the packer is measured
+		output.reset();
+		try (DBPFPacker packer = new DBPFPacker(output, false)) {
+			if (!compression.equals("NONE")) {
+				packer.setCompressThreshold(0);
+				packer.setCompressionLevel(RefPackCompressor.Level.valueOf(compression));
+			}
+			for (BenchmarkCorpus.Item item : items) {
+				packer.writeFile(item.key, item.data, item.data.length);
+			}
+		}
+		return output.length();
+	}
+}
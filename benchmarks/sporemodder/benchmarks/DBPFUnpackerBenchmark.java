@@ -0,0 +1,152 @@
+/****************************************************************************
+* Copyright (C) 2019 Eric Mor
+*
+* This file is part of SporeModder FX.
+*
+* SporeModder FX is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+****************************************************************************/
+package sporemodder.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sporemodder.FileManager;
+import sporemodder.FormatManager;
+import sporemodder.file.Converter;
+import sporemodder.file.dbpf.DBPFUnpackingTask;
+
+/**
+ * Measures unpacking two packages into the same folder with {@link DBPFUnpackingTask}, converting the files with the
+ * converters that are enabled by default. Half of the files of the second package are also in the first one, so
+ * the duplicate detection is used.
+ * <p>
+ * The setup fails if unpacking fails, or if the parallel unpacker does not write the same files as the sequential one.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DBPFUnpackerBenchmark {
+
+	@Param({"300"})
+	public int fileCount;
+
+	@Param({"true", "false"})
+	public boolean parallel;
+
+	private final List<File> packageFiles = new ArrayList<File>();
+	private final List<Converter> converters = new ArrayList<Converter>();
+	private File outputFolder;
+
+	@Setup
+	public void setup() throws Exception {
+		BenchmarkCorpus.initialize();
+		for (Converter converter : FormatManager.get().getConverters()) {
+			if (converter.isEnabledByDefault()) converters.add(converter);
+		}
+
+		List<BenchmarkCorpus.Item> items = new BenchmarkCorpus(BenchmarkCorpus.DEFAULT_SEED).getPackageItems(fileCount * 3 / 2);
+		List<List<BenchmarkCorpus.Item>> packages = Arrays.asList(items.subList(0, fileCount), items.subList(fileCount / 2, items.size()));
+		for (List<BenchmarkCorpus.Item> packageItems : packages) {
+			File file = File.createTempFile("benchmark", ".package");
+			Files.write(file.toPath(), BenchmarkCorpus.writePackage(packageItems, true));
+			packageFiles.add(file);
+		}
+
+		outputFolder = Files.createTempDirectory("unpack").toFile();
+		unpack(true);
+		Map<String, byte[]> expected = readFiles();
+		cleanOutput();
+		unpack(false);
+		Map<String, byte[]> files = readFiles();
+		if (!expected.keySet().equals(files.keySet())) {
+			throw new IllegalStateException("The parallel unpacker wrote " + expected.size() + " files, but the sequential one wrote " + files.size());
+		}
+		for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+			if (!Arrays.equals(entry.getValue(), files.get(entry.getKey()))) {
+				throw new IllegalStateException("File " + entry.getKey() + " is different when unpacked in parallel");
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		FileManager.get().deleteDirectory(outputFolder);
+		for (File file : packageFiles) {
+			file.delete();
+		}
+	}
+
+	private Map<String, byte[]> readFiles() throws IOException {
+		Map<String, byte[]> files = new TreeMap<String, byte[]>();
+		try (Stream<Path> paths = Files.walk(outputFolder.toPath())) {
+			for (Path path : (Iterable<Path>) paths.filter(Files::isRegularFile)::iterator) {
+				files.put(outputFolder.toPath().relativize(path).toString(), Files.readAllBytes(path));
+			}
+		}
+		return files;
+	}
+
+	/** The files must be written every time, so the output of the previous invocation is removed. */
+	@Setup(Level.Invocation)
+	public void cleanOutput() throws IOException {
+		FileManager.get().deleteDirectory(outputFolder);
+		outputFolder.mkdir();
+	}
+
+	private void unpack(boolean isParallel) throws Exception {
+		DBPFUnpackingTask task = new DBPFUnpackingTask(packageFiles, outputFolder, null, converters);
+		task.setParallel(isParallel);
+		task.setNoJavaFX();
+		task.setNoJavaFXProgressListener(progress -> {});
+
+		Exception exception = task.call();
+		if (exception != null) {
+			throw exception;
+		}
+		if (!task.getFailedDBPFs().isEmpty() || !task.getExceptions().isEmpty()) {
+			throw new IllegalStateException("Could not unpack " + task.getExceptions().size() + " files");
+		}
+	}
+
+	@Benchmark
+	public void unpack() throws Exception {
+		unpack(parallel);
+	}
+}
@@ -0,0 +1,160 @@
+/****************************************************************************
+* Copyright (C) 2019 Eric Mor
+*
+* This file is part of SporeModder FX.
+*
+* SporeModder FX is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+****************************************************************************/
+package sporemodder.benchmarks;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sporemodder.file.dds.DDSDecoder;
+import sporemodder.file.dds.DDSEncoder;
+import sporemodder.file.dds.DDSPixelFormat;
+import sporemodder.file.dds.DDSTexture;
+
+/**
+ * Measures encoding images into DXT1/DXT5 textures with {@link DDSEncoder}, and decoding them with {@link DDSDecoder}
+ * and with the image reader used by {@link DDSTexture#toBufferedImage()}.
+ * <p>
+ * The setup fails if the texture does not have the expected format and mipmaps, if the decoder and the image reader give
+ * different pixels, or if the quality of the big mipmap levels (measured as their PSNR) is below a minimum. Small levels
+ * are not checked, as their blocks cover gradients in two directions that DXT cannot represent.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DDSBenchmark {
+
+	@Param({"512"})
+	public int size;
+
+	@Param({"false", "true"})
+	public boolean hasAlpha;
+
+	@Param({"FAST", "NORMAL", "HIGH"})
+	public DDSEncoder.Quality quality;
+
+	private int[] pixels;
+	private DDSEncoder encoder;
+	private DDSTexture texture;
+
+	@Setup
+	public void setup() throws IOException {
+		BenchmarkCorpus.initialize();
+		BenchmarkCorpus corpus = new BenchmarkCorpus(BenchmarkCorpus.DEFAULT_SEED);
+		pixels = corpus.getImage(0, size, size, hasAlpha);
+
+		encoder = new DDSEncoder();
+		encoder.setQuality(quality);
+		texture = encoder.encode(pixels, size, size);
+
+		double psnr = checkTexture(encoder, pixels, size, size, texture);
+		if (quality == DDSEncoder.Quality.HIGH) {
+			DDSEncoder normalEncoder = new DDSEncoder();
+			normalEncoder.setQuality(DDSEncoder.Quality.NORMAL);
+			double normalPsnr = checkTexture(normalEncoder, pixels, size, size, normalEncoder.encode(pixels, size, size));
+			if (psnr < normalPsnr - 0.01) {
+				throw new IllegalStateException(String.format("HIGH quality is worse than NORMAL quality: %.2f dB, %.2f dB", psnr, normalPsnr));
+			}
+		}
+
+		// Sizes that are not a multiple of the block size
+		int[][] sizes = {{37, 21}, {1, 1}};
+		for (int[] imageSize : sizes) {
+			int[] imagePixels = corpus.getImage(1, imageSize[0], imageSize[1], hasAlpha);
+			checkTexture(encoder, imagePixels, imageSize[0], imageSize[1], encoder.encode(imagePixels, imageSize[0], imageSize[1]));
+		}
+
+		int[] expected = decodeImageReader();
+		if (!Arrays.equals(expected, decode())) {
+			throw new IllegalStateException("DDSDecoder and the image reader decode different pixels");
+		}
+	}
+
+	/**
+	 * Checks the format and mipmaps of the encoded texture, and the PSNR of its levels. Returns the PSNR of the first level.
+	 */
+	private double checkTexture(DDSEncoder encoder, int[] pixels, int width, int height, DDSTexture texture) throws IOException {
+		DDSPixelFormat.Format expectedFormat = hasAlpha ? DDSPixelFormat.Format.DXT5 : DDSPixelFormat.Format.DXT1;
+		if (texture.getFormat() != expectedFormat) {
+			throw new IllegalStateException("Wrong format " + texture.getFormat() + " for " + width + "x" + height);
+		}
+
+		int[][] levels = encoder.generateMipmaps(pixels, width, height);
+		if (texture.getMipmapCount() != levels.length || levels.length != DDSEncoder.mipmapCount(width, height)) {
+			throw new IllegalStateException("Wrong mipmap count " + texture.getMipmapCount() + " for " + width + "x" + height);
+		}
+
+		double minPsnr = encoder.getQuality() == DDSEncoder.Quality.FAST ? 30 : 34;
+		double levelZeroPsnr = 0;
+		for (int level = 0; level < levels.length; ++level) {
+			int levelWidth = Math.max(1, width >> level);
+			int levelHeight = Math.max(1, height >> level);
+			DDSTexture levelTexture = new DDSTexture(levelWidth, levelHeight, 1, expectedFormat.getFourCC(), texture.getMipmapData(level));
+			double value = psnr(levels[level], DDSDecoder.decode(levelTexture));
+			if (value < minPsnr && Math.min(levelWidth, levelHeight) >= 128) {
+				throw new IllegalStateException(String.format("PSNR of %dx%d level %d with %s quality is %.2f dB",
+						width, height, level, encoder.getQuality(), value));
+			}
+			if (level == 0) levelZeroPsnr = value;
+		}
+		return levelZeroPsnr;
+	}
+
+	private double psnr(int[] expected, int[] actual) {
+		double error = 0;
+		for (int i = 0; i < expected.length; ++i) {
+			for (int shift = hasAlpha ? 24 : 16; shift >= 0; shift -= 8) {
+				int difference = ((expected[i] >>> shift) & 0xFF) - ((actual[i] >>> shift) & 0xFF);
+				error += difference * difference;
+			}
+		}
+		double mse = error / (expected.length * (hasAlpha ? 4 : 3));
+		return mse == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255.0 * 255.0 / mse);
+	}
+
+	@Benchmark
+	public DDSTexture encode() {
+		return encoder.encode(pixels, size, size);
+	}
+
+	@Benchmark
+	public int[] decode() throws IOException {
+		return DDSDecoder.decode(texture);
+	}
+
+	@Benchmark
+	public int[] decodeImageReader() throws IOException {
+		return texture.toBufferedImage().getRGB(0, 0, size, size, null, 0, size);
+	}
+}
@@ -0,0 +1,132 @@
+/****************************************************************************
+* Copyright (C) 2019 Eric Mor
+*
+* This file is part of SporeModder FX.
+*
+* SporeModder FX is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+****************************************************************************/
+package sporemodder.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.net.httpserver.HttpServer;
+
+import sporemodder.DocumentationManager;
+import sporemodder.FileManager;
+
+/**
+ * Measures loading the documentation links from a fresh cache with {@link DocumentationManager#loadDocLinks(String, File)},
+ * which is done every time the program starts.
+ * <p>
+ * The setup serves the links from a local HTTP server, and fails if the first load does not download them, if a fresh
+ * cache connects to the server, if a stale cache is downloaded again instead of being validated, or if the cache is not
+ * used when the server is not available.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DocumentationCacheBenchmark {
+
+	private static final String LINKS = "{\"entries\": {\"main\": [{\"name\": \"Test\", \"items\": [{\"title\": \"Link\", \"url\": \"\"}]}]}, \"redirections\": {}}";
+
+	private File folder;
+	private File cacheFile;
+	private String url;
+
+	@Setup
+	public void setup() throws IOException {
+		BenchmarkCorpus.initialize();
+		folder = Files.createTempDirectory("docs").toFile();
+		cacheFile = new File(folder, "smfx_docs.json");
+
+		byte[] contents = LINKS.getBytes(StandardCharsets.UTF_8);
+		AtomicInteger downloads = new AtomicInteger();
+		AtomicInteger requests = new AtomicInteger();
+
+		HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/smfx_docs.json", exchange -> {
+			requests.incrementAndGet();
+			exchange.getResponseHeaders().add("ETag", "\"docs\"");
+			if ("\"docs\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				exchange.sendResponseHeaders(304, -1);
+			} else {
+				downloads.incrementAndGet();
+				exchange.sendResponseHeaders(200, contents.length);
+				exchange.getResponseBody().write(contents);
+			}
+			exchange.close();
+		});
+		server.start();
+		url = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/smfx_docs.json";
+
+		try {
+			if (loadFromCache() == null || !cacheFile.isFile()) {
+				throw new IllegalStateException("The links were not downloaded");
+			}
+			if (loadFromCache() == null || requests.get() != 1) {
+				throw new IllegalStateException("The fresh cache was not used");
+			}
+
+			cacheFile.setLastModified(System.currentTimeMillis() - 2 * DocumentationManager.MAX_CACHE_AGE);
+			if (loadFromCache() == null || requests.get() != 2 || downloads.get() != 1) {
+				throw new IllegalStateException("The stale cache was downloaded again");
+			}
+		}
+		finally {
+			server.stop(0);
+		}
+
+		// The server is gone, but the cached links must still load
+		cacheFile.setLastModified(System.currentTimeMillis() - 2 * DocumentationManager.MAX_CACHE_AGE);
+		if (loadFromCache() == null) {
+			throw new IllegalStateException("The cache was not used offline");
+		}
+		cacheFile.setLastModified(System.currentTimeMillis());
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		FileManager.get().deleteDirectory(folder);
+	}
+
+	@Benchmark
+	public List<DocumentationManager.DocumentationLinkCategory> loadFromCache() {
+		DocumentationManager docs = new DocumentationManager();
+		docs.loadDocLinks(url, cacheFile).join();
+		return docs.getDocumentationLinks("main");
+	}
+}
@@ -0,0 +1,102 @@
+/****************************************************************************
+* Copyright (C) 2019 Eric Mor
+*
+* This file is part of SporeModder FX.
+*
+* SporeModder FX is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+****************************************************************************/
+package sporemodder.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sporemodder.FileManager;
+import sporemodder.file.effects.EffectDirectory;
+import sporemodder.file.filestructures.MemoryStream;
+
+/**
+ * Measures compiling a folder of effect files with {@link EffectDirectory#process(File, sporemodder.file.dbpf.DBPFPacker)}
+ * and writing the result, parsing the files sequentially and in parallel. The setup fails if the parallel process
+ * does not write the same effect directory as the sequential one.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class EffectDirectoryBenchmark {
+
+	@Param({"100"})
+	public int fileCount;
+
+	@Param({"1", "4"})
+	public int threadCount;
+
+	private File folder;
+	private final MemoryStream output = new MemoryStream();
+
+	@Setup
+	public void setup() throws IOException {
+		BenchmarkCorpus.initialize();
+		BenchmarkCorpus corpus = new BenchmarkCorpus(BenchmarkCorpus.DEFAULT_SEED);
+
+		folder = Files.createTempDirectory("effects").toFile();
+		for (int i = 0; i < fileCount; ++i) {
+			Files.write(new File(folder, "benchmark" + i + ".pfx").toPath(), corpus.getEffectText(i).getBytes(StandardCharsets.UTF_8));
+		}
+
+		byte[] data = process();
+		int threads = threadCount;
+		threadCount = 1;
+		byte[] expected = process();
+		threadCount = threads;
+		if (!Arrays.equals(expected, data)) {
+			throw new IllegalStateException("The effect directory compiled with " + threadCount + " threads is different");
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		FileManager.get().deleteDirectory(folder);
+	}
+
+	@Benchmark
+	public byte[] process() throws IOException {
+		EffectDirectory effectDirectory = new EffectDirectory();
+		effectDirectory.setThreadCount(threadCount);
+		effectDirectory.process(folder, null);
+
+		output.reset();
+		effectDirectory.write(output);
+		return output.toByteArray();
+	}
+}
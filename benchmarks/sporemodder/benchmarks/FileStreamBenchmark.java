@@ -0,0 +1,148 @@
+/****************************************************************************
+* Copyright (C) 2019 Eric Mor
+*
+* This file is part of SporeModder FX.
+*
+* SporeModder FX is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+****************************************************************************/
+package sporemodder.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sporemodder.file.dbpf.DBPFItem;
+import sporemodder.file.dbpf.DatabasePackedFile;
+import sporemodder.file.filestructures.BufferedFileStream;
+import sporemodder.file.filestructures.FileStream;
+import sporemodder.file.filestructures.MemoryStream;
+import sporemodder.file.filestructures.StreamReader;
+import sporemodder.file.rw4.RenderWare;
+
+/**
+ * Measures reading files value by value from the disk with {@link FileStream} and {@link BufferedFileStream}: the index
+ * of a package, and a RenderWare model. The setup fails if both streams don't read the same index and model.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FileStreamBenchmark {
+
+	@Param({"5000"})
+	public int fileCount;
+
+	@Param({"FileStream", "BufferedFileStream"})
+	public String streamType;
+
+	private File packageFile;
+	private File renderWareFile;
+
+	@Setup
+	public void setup() throws Exception {
+		BenchmarkCorpus.initialize();
+		BenchmarkCorpus corpus = new BenchmarkCorpus(BenchmarkCorpus.DEFAULT_SEED);
+
+		// Only the index is read, so the files are empty
+		List<BenchmarkCorpus.Item> items = new ArrayList<BenchmarkCorpus.Item>();
+		for (int i = 0; i < fileCount; ++i) {
+			items.add(new BenchmarkCorpus.Item(corpus.getPackageKey(i), new byte[0]));
+		}
+		packageFile = File.createTempFile("benchmark", ".package");
+		Files.write(packageFile.toPath(), BenchmarkCorpus.writePackage(items, false));
+
+		renderWareFile = File.createTempFile("benchmark", ".rw4");
+		try (MemoryStream stream = new MemoryStream()) {
+			corpus.getModel(0, 128).write(stream);
+			Files.write(renderWareFile.toPath(), stream.toByteArray());
+		}
+
+		String type = streamType;
+		streamType = "FileStream";
+		List<DBPFItem> expectedItems = readIndex();
+		byte[] expectedModel = write(readRenderWare());
+		streamType = type;
+
+		List<DBPFItem> readItems = readIndex();
+		if (readItems.size() != expectedItems.size()) {
+			throw new IllegalStateException(streamType + " read " + readItems.size() + " items instead of " + expectedItems.size());
+		}
+		for (int i = 0; i < readItems.size(); ++i) {
+			DBPFItem item = readItems.get(i);
+			DBPFItem expected = expectedItems.get(i);
+			if (!item.name.isEquivalent(expected.name) || item.chunkOffset != expected.chunkOffset || item.memSize != expected.memSize) {
+				throw new IllegalStateException(streamType + " read a different item " + i);
+			}
+		}
+		if (!Arrays.equals(expectedModel, write(readRenderWare()))) {
+			throw new IllegalStateException(streamType + " read a different RenderWare model");
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		packageFile.delete();
+		renderWareFile.delete();
+	}
+
+	private StreamReader open(File file) throws IOException {
+		return streamType.equals("FileStream") ? new FileStream(file, "r") : new BufferedFileStream(file, "r");
+	}
+
+	private static byte[] write(RenderWare renderWare) throws IOException {
+		try (MemoryStream stream = new MemoryStream()) {
+			renderWare.write(stream);
+			return stream.toByteArray();
+		}
+	}
+
+	@Benchmark
+	public List<DBPFItem> readIndex() throws IOException {
+		try (StreamReader stream = open(packageFile)) {
+			DatabasePackedFile header = new DatabasePackedFile();
+			header.readHeader(stream);
+			header.readIndex(stream);
+			header.index.readItems(stream, header.indexCount, header.isDBBF);
+			return header.index.items;
+		}
+	}
+
+	@Benchmark
+	public RenderWare readRenderWare() throws IOException {
+		try (StreamReader stream = open(renderWareFile)) {
+			RenderWare renderWare = new RenderWare();
+			renderWare.read(stream);
+			return renderWare;
+		}
+	}
+}
@@ -0,0 +1,152 @@
+/****************************************************************************
+* Copyright (C) 2019 Eric Mor
+*
+* This file is part of SporeModder FX.
+*
+* SporeModder FX is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+****************************************************************************/
+package sporemodder.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sporemodder.HashManager;
+import sporemodder.util.NameRegistry;
+
+/**
+ * Measures looking up names and hashes in the registries of {@link HashManager}. The registries are replaced by ones
+ * filled with the names of the corpus, so the results don't depend on the registry files of the program.
+ * One of every four names is an alias (ending with <code>~</code>), which must be looked up in the registry.
+ * <p>
+ * The registries are shared by all the threads, so they are also measured when used from several threads at the same time,
+ * like when packing in parallel. The setup fails if any name or hash is not found.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HashManagerBenchmark {
+
+	@Param({"50000"})
+	public int nameCount;
+
+	private HashManager hasher;
+	private String[] names;
+	private int[] hashes;
+
+	@Setup
+	public void setup() {
+		BenchmarkCorpus.initialize();
+		hasher = HashManager.get();
+
+		List<String> corpusNames = new BenchmarkCorpus(BenchmarkCorpus.DEFAULT_SEED).getNames(nameCount);
+		NameRegistry fileRegistry = new NameRegistry(hasher, "File Names", "reg_file.txt");
+		NameRegistry propRegistry = new NameRegistry(hasher, "Properties", "reg_property.txt");
+		NameRegistry typeRegistry = new NameRegistry(hasher, "Types", "reg_type.txt");
+
+		names = new String[corpusNames.size()];
+		hashes = new int[corpusNames.size()];
+		for (int i = 0; i < names.length; ++i) {
+			String name = corpusNames.get(i);
+			if (i % 4 == 0) {
+				names[i] = name + "~";
+				hashes[i] = 0x80000000 | i;
+			} else {
+				names[i] = name;
+				hashes[i] = hasher.fnvHash(name);
+			}
+			fileRegistry.add(names[i], hashes[i]);
+			propRegistry.add(names[i], hashes[i]);
+		}
+		hasher.replaceRegistries(fileRegistry, propRegistry, typeRegistry);
+
+		for (int i = 0; i < names.length; ++i) {
+			if (hasher.getFileHash(names[i]) != hashes[i] || !names[i].equals(hasher.getFileName(hashes[i]))) {
+				throw new IllegalStateException("Wrong file hash or name for " + names[i]);
+			}
+			if (hasher.getPropHash(names[i]) != hashes[i] || !names[i].equals(hasher.getPropName(hashes[i]))) {
+				throw new IllegalStateException("Wrong property hash or name for " + names[i]);
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		hasher.replaceRegistries(null, null, null);
+	}
+
+	@Benchmark
+	public int getFileHash() {
+		int result = 0;
+		for (String name : names) {
+			result ^= hasher.getFileHash(name);
+		}
+		return result;
+	}
+
+	@Benchmark
+	public int getFileName() {
+		int result = 0;
+		for (int hash : hashes) {
+			result += hasher.getFileName(hash).length();
+		}
+		return result;
+	}
+
+	@Benchmark
+	public int getPropHash() {
+		int result = 0;
+		for (String name : names) {
+			result ^= hasher.getPropHash(name);
+		}
+		return result;
+	}
+
+	@Benchmark
+	public int getPropName() {
+		int result = 0;
+		for (int hash : hashes) {
+			result += hasher.getPropName(hash).length();
+		}
+		return result;
+	}
+
+	@Benchmark
+	@Threads(4)
+	public int getFileHashConcurrent() {
+		return getFileHash();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public int getFileNameConcurrent() {
+		return getFileName();
+	}
+}
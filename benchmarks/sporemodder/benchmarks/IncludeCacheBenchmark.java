@@ -0,0 +1,146 @@
+/****************************************************************************
+* Copyright (C) 2019 Eric Mor
+*
+* This file is part of SporeModder FX.
+*
+* SporeModder FX is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+****************************************************************************/
+package sporemodder.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sporemodder.FileManager;
+import sporemodder.file.argscript.ArgScriptIncludeCache;
+import sporemodder.file.argscript.ArgScriptStream;
+import sporemodder.file.filestructures.MemoryStream;
+import sporemodder.file.prop.PropertyList;
+
+/**
+ * Measures parsing prop files that include a shared header, with and without {@link ArgScriptIncludeCache}. The header
+ * includes another file and uses a variable set by the files that include it.
+ * <p>
+ * The setup fails if the cache gives different prop files than parsing the header every time, or if the cached header is
+ * used after modifying the file it includes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class IncludeCacheBenchmark {
+
+	@Param({"1000"})
+	public int fileCount;
+
+	@Param({"true", "false"})
+	public boolean cached;
+
+	private File folder;
+	private File valuesFile;
+	private final List<String> texts = new ArrayList<String>();
+	private final MemoryStream output = new MemoryStream();
+
+	@Setup
+	public void setup() throws IOException {
+		BenchmarkCorpus.initialize();
+
+		folder = Files.createTempDirectory("includes").toFile();
+		valuesFile = new File(folder, "values.txt");
+		StringBuilder sb = new StringBuilder();
+		sb.append("include values.txt\n");
+		sb.append("set scaled $base\n");
+		for (int i = 0; i < 300; ++i) {
+			sb.append("seti constant" + i + " (" + i + " * 4)\n");
+		}
+		Files.write(new File(folder, "header.txt").toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+		Files.write(valuesFile.toPath(), "setf factor 0.5\n".getBytes(StandardCharsets.UTF_8));
+
+		for (int i = 0; i < fileCount; ++i) {
+			texts.add("set base " + (i * 3 / fileCount) + "\ninclude header.txt\nint32 scaled $scaled\nint32 constant $constant" + (i % 300) + "\nfloat factor $factor\n");
+		}
+
+		checkCache();
+		Files.write(valuesFile.toPath(), "setf factor 2.0\n".getBytes(StandardCharsets.UTF_8));
+		// Some file systems only store the modification time in seconds
+		valuesFile.setLastModified(valuesFile.lastModified() + 2000);
+		checkCache();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		ArgScriptIncludeCache.clear();
+		FileManager.get().deleteDirectory(folder);
+	}
+
+	private byte[] process(String text) throws IOException {
+		PropertyList list = new PropertyList();
+		ArgScriptStream<PropertyList> stream = list.getPooledStream();
+		stream.setFastParsing(true);
+		stream.setFolder(folder);
+		stream.process(text);
+
+		if (!stream.getErrors().isEmpty()) {
+			throw new IllegalStateException("Error in generated file: " + stream.getErrors().get(0).getMessage());
+		}
+
+		output.reset();
+		list.write(output);
+		return output.toByteArray();
+	}
+
+	/** Checks that the files are the same with the current cache (kept from the previous check) and without it. */
+	private void checkCache() throws IOException {
+		List<byte[]> cachedData = new ArrayList<byte[]>();
+		for (String text : texts) {
+			cachedData.add(process(text));
+		}
+		for (int i = 0; i < texts.size(); ++i) {
+			ArgScriptIncludeCache.clear();
+			if (!Arrays.equals(process(texts.get(i)), cachedData.get(i))) {
+				throw new IllegalStateException("Generated file " + i + " is different when the include cache is used");
+			}
+		}
+	}
+
+	@Benchmark
+	public long process() throws IOException {
+		long size = 0;
+		for (String text : texts) {
+			if (!cached) ArgScriptIncludeCache.clear();
+			size += process(text).length;
+		}
+		return size;
+	}
+}
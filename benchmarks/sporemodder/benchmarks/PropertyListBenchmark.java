@@ -0,0 +1,96 @@
+/****************************************************************************
+* Copyright (C) 2019 Eric Mor
+*
+* This file is part of SporeModder FX.
+*
+* SporeModder FX is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+****************************************************************************/
+package sporemodder.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sporemodder.file.filestructures.MemoryStream;
+import sporemodder.file.prop.PropertyList;
+
+/**
+ * Measures reading and writing binary prop files with {@link PropertyList#read(sporemodder.file.filestructures.StreamReader)}
+ * and {@link PropertyList#write(sporemodder.file.filestructures.StreamWriter)}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PropertyListBenchmark {
+
+	@Param({"200"})
+	public int fileCount;
+
+	private byte[][] files;
+	private PropertyList[] lists;
+	private final MemoryStream output = new MemoryStream();
+
+	@Setup
+	public void setup() throws IOException {
+		BenchmarkCorpus.initialize();
+		BenchmarkCorpus corpus = new BenchmarkCorpus(BenchmarkCorpus.DEFAULT_SEED);
+
+		files = new byte[fileCount][];
+		lists = new PropertyList[fileCount];
+		for (int i = 0; i < fileCount; ++i) {
+			files[i] = corpus.getPropFile(i);
+			lists[i] = new PropertyList();
+			try (MemoryStream stream = new MemoryStream(files[i])) {
+				lists[i].read(stream);
+			}
+		}
+	}
+
+	@Benchmark
+	public PropertyList[] read() throws IOException {
+		PropertyList[] result = new PropertyList[files.length];
+		for (int i = 0; i < files.length; ++i) {
+			result[i] = new PropertyList();
+			try (MemoryStream stream = new MemoryStream(files[i])) {
+				result[i].read(stream);
+			}
+		}
+		return result;
+	}
+
+	@Benchmark
+	public long write() throws IOException {
+		long size = 0;
+		for (PropertyList list : lists) {
+			output.reset();
+			list.write(output);
+			size += output.length();
+		}
+		return size;
+	}
+}
@@ -0,0 +1,120 @@
+/****************************************************************************
+* Copyright (C) 2019 Eric Mor
+*
+* This file is part of SporeModder FX.
+*
+* SporeModder FX is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+****************************************************************************/
+package sporemodder.benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sporemodder.file.dbpf.RefPackCompression;
+import sporemodder.file.dbpf.RefPackCompression.CompressorOutput;
+import sporemodder.file.dbpf.RefPackCompressor;
+
+/**
+ * Measures compressing and decompressing the files of a package with {@link RefPackCompression}, with every compression level.
+ * The data is also decompressed from direct buffers, like the items of a mapped package. The setup fails if any file
+ * does not decompress back to the original data.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RefPackBenchmark {
+
+	@Param({"90"})
+	public int fileCount;
+
+	@Param({"FAST", "DEFAULT", "MAX"})
+	public RefPackCompressor.Level level;
+
+	private List<BenchmarkCorpus.Item> items;
+	private byte[][] compressedData;
+	private byte[][] decompressedData;
+	private ByteBuffer[] bufferData;
+	private final CompressorOutput output = new CompressorOutput();
+
+	@Setup
+	public void setup() throws IOException {
+		BenchmarkCorpus.initialize();
+		items = new BenchmarkCorpus(BenchmarkCorpus.DEFAULT_SEED).getPackageItems(fileCount);
+
+		compressedData = new byte[items.size()][];
+		decompressedData = new byte[items.size()][];
+		bufferData = new ByteBuffer[items.size()];
+		for (int i = 0; i < items.size(); ++i) {
+			byte[] data = items.get(i).data;
+			RefPackCompression.compress(data, data.length, output, level);
+			compressedData[i] = Arrays.copyOf(output.getData(), output.getLength());
+			decompressedData[i] = new byte[data.length];
+			bufferData[i] = ByteBuffer.allocateDirect(compressedData[i].length);
+			bufferData[i].put(compressedData[i]).flip();
+
+			RefPackCompression.decompressFast(compressedData[i], decompressedData[i]);
+			if (!Arrays.equals(data, decompressedData[i])) {
+				throw new IllegalStateException("File " + i + " is different after compressing it with level " + level);
+			}
+			Arrays.fill(decompressedData[i], (byte) 0);
+			if (RefPackCompression.decompress(bufferData[i].duplicate(), decompressedData[i]) != data.length || !Arrays.equals(data, decompressedData[i])) {
+				throw new IllegalStateException("File " + i + " is different when decompressed from a buffer with level " + level);
+			}
+		}
+	}
+
+	@Benchmark
+	public int compress() throws IOException {
+		int size = 0;
+		for (BenchmarkCorpus.Item item : items) {
+			RefPackCompression.compress(item.data, item.data.length, output, level);
+			size += output.getLength();
+		}
+		return size;
+	}
+
+	@Benchmark
+	public byte[][] decompressFast() throws IOException {
+		for (int i = 0; i < compressedData.length; ++i) {
+			RefPackCompression.decompressFast(compressedData[i], decompressedData[i]);
+		}
+		return decompressedData;
+	}
+
+	@Benchmark
+	public byte[][] decompressBuffer() throws IOException {
+		for (int i = 0; i < bufferData.length; ++i) {
+			RefPackCompression.decompress(bufferData[i].duplicate(), decompressedData[i]);
+		}
+		return decompressedData;
+	}
+}
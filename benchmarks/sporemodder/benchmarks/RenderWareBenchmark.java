@@ -0,0 +1,104 @@
+/****************************************************************************
+* Copyright (C) 2019 Eric Mor
+*
+* This file is part of SporeModder FX.
+*
+* SporeModder FX is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+****************************************************************************/
+package sporemodder.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sporemodder.file.filestructures.MemoryStream;
+import sporemodder.file.rw4.RenderWare;
+
+/**
+ * Measures reading and writing RenderWare models and textures with {@link RenderWare#read(sporemodder.file.filestructures.StreamReader)}
+ * and {@link RenderWare#write(sporemodder.file.filestructures.StreamWriter)}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RenderWareBenchmark {
+
+	@Param({"50"})
+	public int fileCount;
+
+	@Param({"model", "texture"})
+	public String type;
+
+	private byte[][] files;
+	private RenderWare[] renderWares;
+	private final MemoryStream output = new MemoryStream();
+
+	@Setup
+	public void setup() throws IOException {
+		BenchmarkCorpus.initialize();
+		BenchmarkCorpus corpus = new BenchmarkCorpus(BenchmarkCorpus.DEFAULT_SEED);
+
+		files = new byte[fileCount][];
+		renderWares = new RenderWare[fileCount];
+		for (int i = 0; i < fileCount; ++i) {
+			RenderWare renderWare = type.equals("model") ? corpus.getModel(i, 16 + i % 32) : corpus.getTexture(i, 64 << (i % 3));
+			try (MemoryStream stream = new MemoryStream()) {
+				renderWare.write(stream);
+				files[i] = stream.toByteArray();
+			}
+			// Use the one read from the file, like when converting files
+			renderWares[i] = new RenderWare();
+			try (MemoryStream stream = new MemoryStream(files[i])) {
+				renderWares[i].read(stream);
+			}
+		}
+	}
+
+	@Benchmark
+	public RenderWare[] read() throws IOException {
+		RenderWare[] result = new RenderWare[files.length];
+		for (int i = 0; i < files.length; ++i) {
+			result[i] = new RenderWare();
+			try (MemoryStream stream = new MemoryStream(files[i])) {
+				result[i].read(stream);
+			}
+		}
+		return result;
+	}
+
+	@Benchmark
+	public long write() throws IOException {
+		long size = 0;
+		for (RenderWare renderWare : renderWares) {
+			output.reset();
+			renderWare.write(output);
+			size += output.length();
+		}
+		return size;
+	}
+}
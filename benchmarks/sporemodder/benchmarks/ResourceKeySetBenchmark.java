@@ -0,0 +1,97 @@
+/****************************************************************************
+* Copyright (C) 2019 Eric Mor
+*
+* This file is part of SporeModder FX.
+*
+* SporeModder FX is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+****************************************************************************/
+package sporemodder.benchmarks;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sporemodder.file.ResourceKey;
+import sporemodder.file.ResourceKeySet;
+
+/**
+ * Measures detecting the files that have already been written when unpacking several packages with {@link ResourceKeySet}.
+ * All the files are in the same group, like in the <code>animations~</code> folder, and one of every four is a duplicate.
+ * The setup fails if the set does not find the same duplicates as a <code>HashSet</code>.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResourceKeySetBenchmark {
+
+	@Param({"50000"})
+	public int keyCount;
+
+	private ResourceKey[] keys;
+
+	@Setup
+	public void setup() {
+		BenchmarkCorpus.initialize();
+		BenchmarkCorpus corpus = new BenchmarkCorpus(BenchmarkCorpus.DEFAULT_SEED);
+		List<String> names = corpus.getNames(keyCount);
+
+		Random random = new Random(BenchmarkCorpus.DEFAULT_SEED);
+		int groupID = corpus.getPackageKey(0).getGroupID();
+		keys = new ResourceKey[keyCount];
+		for (int i = 0; i < keyCount; ++i) {
+			keys[i] = i % 4 == 3 ? keys[random.nextInt(i)] : new ResourceKey(groupID, names.get(i).hashCode(), BenchmarkCorpus.PROP_TYPE_ID);
+		}
+		// The key with all IDs to 0 is stored separately
+		keys[0] = new ResourceKey(0, 0, 0);
+
+		Set<String> expectedSet = new HashSet<String>();
+		ResourceKeySet set = new ResourceKeySet();
+		for (int i = 0; i < keyCount; ++i) {
+			String name = keys[i].getGroupID() + "!" + keys[i].getInstanceID() + "." + keys[i].getTypeID();
+			if (expectedSet.add(name) != set.add(keys[i])) {
+				throw new IllegalStateException("The set does not detect whether key " + i + " is a duplicate");
+			}
+		}
+		if (set.size() != expectedSet.size()) {
+			throw new IllegalStateException("The set has " + set.size() + " keys, but it should have " + expectedSet.size());
+		}
+	}
+
+	@Benchmark
+	public int add() {
+		ResourceKeySet set = new ResourceKeySet();
+		int duplicates = 0;
+		for (ResourceKey key : keys) {
+			if (!set.add(key)) ++duplicates;
+		}
+		return duplicates;
+	}
+}
@@ -0,0 +1,164 @@
+/****************************************************************************
+* Copyright (C) 2019 Eric Mor
+*
+* This file is part of SporeModder FX.
+*
+* SporeModder FX is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+****************************************************************************/
+package sporemodder.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sporemodder.FileManager;
+import sporemodder.util.SearchIndex;
+
+/**
+ * Measures searching a word (ignoring case) in a folder of prop files, reading every file and querying a {@link SearchIndex} first
+ * like the project searcher does, which only reads the files that might contain the word. The setup fails if both searches
+ * don't find the same files.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SearchIndexBenchmark {
+
+	@Param({"1000"})
+	public int fileCount;
+
+	@Param({"Benchmark_3", "unicode text 42"})
+	public String word;
+
+	private File folder;
+	private File indexFile;
+	private SearchIndex index;
+	private byte[] wordBytes;
+	private byte[] wordBytesUppercase;
+	private int[] trigrams;
+
+	@Setup
+	public void setup() throws IOException {
+		BenchmarkCorpus.initialize();
+		BenchmarkCorpus corpus = new BenchmarkCorpus(BenchmarkCorpus.DEFAULT_SEED);
+
+		folder = Files.createTempDirectory("search").toFile();
+		for (int i = 0; i < fileCount; ++i) {
+			File subfolder = new File(folder, "folder" + (i / 100));
+			subfolder.mkdir();
+			Files.write(new File(subfolder, "file" + i + ".prop.prop_t").toPath(), corpus.getPropText(i).getBytes(StandardCharsets.UTF_8));
+		}
+
+		wordBytes = word.toLowerCase().getBytes(StandardCharsets.UTF_8);
+		wordBytesUppercase = word.toUpperCase().getBytes(StandardCharsets.UTF_8);
+		trigrams = SearchIndex.getTrigrams(wordBytes);
+
+		indexFile = File.createTempFile("index", ".bin");
+		indexFile.delete();
+		index = new SearchIndex(folder, indexFile);
+
+		// The first search indexes all the files
+		int expected = searchWithoutIndex();
+		int[] matches = {searchWithIndex(), searchWithIndex()};
+		if (matches[0] != expected || matches[1] != expected) {
+			throw new IllegalStateException(String.format("Found %d files without the index, but %d and %d with it", expected, matches[0], matches[1]));
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		FileManager.get().deleteDirectory(folder);
+		indexFile.delete();
+	}
+
+	private boolean contains(byte[] data) {
+		for (int i = 0; i + wordBytes.length <= data.length; i++) {
+			int j = 0;
+			while (j < wordBytes.length && (data[i+j] == wordBytes[j] || data[i+j] == wordBytesUppercase[j])) {
+				++j;
+			}
+			if (j == wordBytes.length) return true;
+		}
+		return false;
+	}
+
+	private int searchFolder(File dir) throws IOException {
+		int matches = 0;
+		for (File file : dir.listFiles()) {
+			if (file.isDirectory()) {
+				matches += searchFolder(file);
+			}
+			else if (contains(Files.readAllBytes(file.toPath()))) {
+				++matches;
+			}
+		}
+		return matches;
+	}
+
+	private int searchFolder(String relativePath, BitSet candidates) throws IOException {
+		SearchIndex.FolderListing listing = index.list(relativePath);
+		int matches = 0;
+		for (String name : listing.files) {
+			String path = relativePath.isEmpty() ? name : relativePath + File.separatorChar + name;
+			File file = new File(folder, path);
+			int id = index.getFileId(path);
+			if (id != -1 && candidates != null && !candidates.get(id)) {
+				continue;
+			}
+			// Files are checked before reading them, as overwriting them does not change the folder
+			if (id == -1 || !index.isUpToDate(id, file.lastModified(), file.length())) {
+				byte[] data = Files.readAllBytes(file.toPath());
+				index.putFile(path, file.lastModified(), data.length, data);
+				if (contains(data)) ++matches;
+			}
+			else if (contains(Files.readAllBytes(file.toPath()))) {
+				++matches;
+			}
+		}
+		for (String name : listing.folders) {
+			matches += searchFolder(relativePath.isEmpty() ? name : relativePath + File.separatorChar + name, candidates);
+		}
+		return matches;
+	}
+
+	@Benchmark
+	public int searchWithoutIndex() throws IOException {
+		return searchFolder(folder);
+	}
+
+	@Benchmark
+	public int searchWithIndex() throws IOException {
+		index.beginSearch();
+		return searchFolder("", index.getCandidates(trigrams));
+	}
+}
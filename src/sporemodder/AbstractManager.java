@@ -19,6 +19,8 @@
 
 package sporemodder;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
 
 /**
@@ -35,6 +37,16 @@ public abstract class AbstractManager {
 		
 	}
 
+	/**
+	 * Returns the managers that must be initialized before this one. Managers that don't depend on each other are
+	 * initialized at the same time on startup, so this must include every manager used by {@link #initialize(Properties)}.
+	 * The {@link PathManager} is always initialized first, so it does not need to be included.
+	 * @return
+	 */
+	public List<Class<? extends AbstractManager>> getDependencies() {
+		return Collections.emptyList();
+	}
+	
 	/**
 	 * Called when the program is closed.
 	 * This is called automatically by the main program, developers should never call this.
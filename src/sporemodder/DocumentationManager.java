@@ -21,12 +21,21 @@ package sporemodder;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -55,8 +64,21 @@ public class DocumentationManager extends AbstractManager {
 //		public final List<DocumentationLinkCategory> categories = new ArrayList<>();
 //	}
 	
+	/** The URL from which the documentation links are downloaded. */
+	public static final String DOCS_URL = "https://raw.githubusercontent.com/emd4600/SporeModder-FX/master/smfx_docs.json";
+	/** If the cached documentation links are newer than this, in milliseconds, they are not downloaded again. */
+	public static final long MAX_CACHE_AGE = 24 * 60 * 60 * 1000L;
+	/** How long to wait, in milliseconds, when connecting to the server or reading from it. */
+	private static final int TIMEOUT = 10000;
+	
+	private static final String PROPERTY_docsUrl = "documentationUrl";
+	
 	private final Map<String, Properties> loadedFiles = new HashMap<>();
-	private final Map<String, List<DocumentationLinkCategory>> docLinks = new HashMap<>();
+	/** Replaced as a whole every time the links are loaded, so it can be read from any thread while they are refreshed. */
+	private volatile Map<String, List<DocumentationLinkCategory>> docLinks = Collections.emptyMap();
+	/** Completed when the documentation links are available for the first time, either from the cache or downloaded. */
+	private final CompletableFuture<Void> linksLoaded = new CompletableFuture<>();
+	private CompletableFuture<Void> loadingTask = CompletableFuture.completedFuture(null);
 
 	/**
 	 * Returns the class that controls the documentation of the program.
@@ -67,14 +89,112 @@ public class DocumentationManager extends AbstractManager {
 	}
 	
 	@Override public void initialize(Properties settings) {
+		loadDocLinks(settings.getProperty(PROPERTY_docsUrl, DOCS_URL), getCacheFile());
+	}
+	
+	/** Returns the file where the last downloaded documentation links are kept, so they are available when starting offline. */
+	public File getCacheFile() {
+		return new File(PathManager.get().getProgramFile("Documentation"), "smfx_docs.json");
+	}
+	
+	/**
+	 * Loads the documentation links in a background thread. First the cached copy is loaded, if it exists; then, if the
+	 * cache is older than {@link #MAX_CACHE_AGE}, the links are downloaded from the given URL and saved into the cache.
+	 * Only if the server says the links have changed since the cache was written are they downloaded and loaded again.
+	 * <p>
+	 * Until this finishes, {@link #getDocumentationLinks(String)} returns whatever was loaded before, so the user interface
+	 * never waits for the network. Use {@link #getLinksLoadedFuture()} to know when the links are available.
+	 * @param url The URL of the documentation links JSON file.
+	 * @param cacheFile The file where the links are cached.
+	 * @return A future that completes when both the cache has been loaded and the links have been refreshed.
+	 */
+	public synchronized CompletableFuture<Void> loadDocLinks(String url, File cacheFile) {
+		loadingTask = loadingTask.thenRunAsync(() -> {
+			boolean hasCache = false;
+			if (cacheFile.isFile()) {
+				try {
+					loadDocLinks(NetworkUtils.getJSON(Files.readString(cacheFile.toPath())));
+					hasCache = true;
+				}
+				catch (Exception e) {
+					// A corrupt cache is downloaded again
+					e.printStackTrace();
+				}
+			}
+			
+			if (!hasCache || System.currentTimeMillis() - cacheFile.lastModified() > MAX_CACHE_AGE) {
+				try {
+					refreshCache(url, cacheFile, hasCache);
+				}
+				catch (Exception e) {
+					// Probably offline, we will try again the next time
+					e.printStackTrace();
+				}
+			}
+		}, runnable -> {
+			Thread thread = new Thread(runnable, "Documentation loader");
+			thread.setDaemon(true);
+			thread.start();
+		});
+		return loadingTask;
+	}
+	
+	private void refreshCache(String url, File cacheFile, boolean hasCache) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
 		try {
-			loadDocLinks(NetworkUtils.getJSON(NetworkUtils.getUrl("https://raw.githubusercontent.com/emd4600/SporeModder-FX/master/smfx_docs.json")));
-		} 
-		catch (Exception e) {
-			e.printStackTrace();
+			connection.setConnectTimeout(TIMEOUT);
+			connection.setReadTimeout(TIMEOUT);
+			File etagFile = new File(cacheFile.getParentFile(), cacheFile.getName() + ".etag");
+			if (hasCache) {
+				connection.setIfModifiedSince(cacheFile.lastModified());
+				if (etagFile.isFile()) {
+					connection.setRequestProperty("If-None-Match", Files.readString(etagFile.toPath()).trim());
+				}
+			}
+			
+			int responseCode = connection.getResponseCode();
+			if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+				// The cache is still valid, don't check again until it gets old
+				Files.setLastModifiedTime(cacheFile.toPath(), FileTime.fromMillis(System.currentTimeMillis()));
+				return;
+			}
+			if (responseCode / 100 != 2) {
+				throw new IOException("Could not download documentation links: HTTP " + responseCode);
+			}
+			
+			String contents;
+			try (InputStream stream = connection.getInputStream()) {
+				contents = new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+			}
+			// Parse it before saving it, so that an invalid response does not replace a valid cache
+			loadDocLinks(NetworkUtils.getJSON(contents));
+			
+			cacheFile.getParentFile().mkdirs();
+			File tempFile = new File(cacheFile.getParentFile(), cacheFile.getName() + ".tmp");
+			Files.writeString(tempFile.toPath(), contents);
+			Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			
+			String etag = connection.getHeaderField("ETag");
+			if (etag != null) {
+				Files.writeString(etagFile.toPath(), etag);
+			} else {
+				etagFile.delete();
+			}
+		}
+		finally {
+			connection.disconnect();
 		}
 	}
 	
+	/**
+	 * Returns a future that is completed the first time documentation links are loaded. It can be used by user interface
+	 * elements created before the links are available to add them later; the future is completed in the loader thread.
+	 * @return
+	 */
+	public CompletableFuture<Void> getLinksLoadedFuture() {
+		return linksLoaded;
+	}
+	
 	/**
 	 * Returns the documentation string associated with the given code. If the code is, for example, "particles.alpha.vary", that same code will be searched
 	 * in the "particles" file. 
@@ -122,6 +242,11 @@ public class DocumentationManager extends AbstractManager {
 		}
 	}
 	
+	/**
+	 * Returns the documentation links for the given entry, or null if there are none or the links have not been loaded yet.
+	 * @param docsEntry
+	 * @return
+	 */
 	public List<DocumentationLinkCategory> getDocumentationLinks(String docsEntry) {
 		return docLinks.get(docsEntry);
 	}
@@ -182,6 +307,7 @@ public class DocumentationManager extends AbstractManager {
 	}
 	
 	private void loadDocLinks(JSONObject json) {
+		Map<String, List<DocumentationLinkCategory>> docLinks = new HashMap<>();
 		JSONObject obj = json.getJSONObject("entries");
 		Set<String> keys = obj.keySet();
 		
@@ -214,5 +340,8 @@ public class DocumentationManager extends AbstractManager {
 		for (String key : keys) {
 			docLinks.put(key, docLinks.get(obj.getString(key)));
 		}
+		
+		this.docLinks = docLinks;
+		linksLoaded.complete(null);
 	}
 }
@@ -122,6 +122,11 @@ public class EditorManager extends AbstractManager implements UIUpdateListener {
 	private SearchableEditor searchableEditor;
 	private EditHistoryEditor editHistoryEditor;
 	
+	@Override
+	public List<Class<? extends AbstractManager>> getDependencies() {
+		return Collections.singletonList(UIManager.class);
+	}
+	
 	/**
 	 * Loads all the supported editors and syntax highlighting formats (both the default ones and the plugin ones).
 	 * The plugin ones are loaded first and therefore have priority over the default ones; this means that plugins can override
@@ -242,6 +247,9 @@ public class EditorManager extends AbstractManager implements UIUpdateListener {
 		
 		previousMainEditorTab = mainEditorTab;
 		
+		// Files read from packages are decoded the first time they are needed
+		item.decodeFile();
+		
 		String relativePath = item.getRelativePath();
 		
 		EditorTab tab = paneUI.getTab(relativePath);
@@ -522,8 +530,9 @@ public class EditorManager extends AbstractManager implements UIUpdateListener {
 		for (String path : tabPaths) {
 			ProjectItem item = ProjectManager.get().getItem(path);
 			if (item != null) {
-				EditorTab tab = new EditorTab(item.createEditor(), item, path);
 				try {
+					item.decodeFile();
+					EditorTab tab = new EditorTab(item.createEditor(), item, path);
 					loadFile(tab, item);
 					paneUI.getTabPane().getTabs().add(tab);
 				} 
@@ -580,6 +589,11 @@ public class EditorManager extends AbstractManager implements UIUpdateListener {
 					if (tab == mainEditorTab) {
 						mainEditorTab = null;
 					}
+					
+					setFilePinned((EditorTab) tab, false);
+				}
+				for (Tab tab : l.getAddedSubList()) {
+					setFilePinned((EditorTab) tab, true);
 				}
 			}
 
@@ -598,6 +612,19 @@ public class EditorManager extends AbstractManager implements UIUpdateListener {
 	}
 
 	
+	/**
+	 * Files read from packages are pinned while they are open in a tab, so they are not deleted from the cache of decoded files.
+	 */
+	private static void setFilePinned(EditorTab tab, boolean pinned) {
+		if (tab.item != null && tab.item.getPackageSource() != null) {
+			if (pinned) {
+				tab.item.getPackageSource().pin(tab.relativePath);
+			} else {
+				tab.item.getPackageSource().unpin(tab.relativePath);
+			}
+		}
+	}
+	
 	/**
 	 * Returns the first syntax highlighter that supports the given file. Plugin highlighters are given more priority than default ones.
 	 * If no syntax highlighter is found, it returns null.
@@ -20,6 +20,7 @@ package sporemodder;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Properties;
@@ -43,6 +44,7 @@ import sporemodder.file.cell.CellStructureConverter;
 import sporemodder.file.cell.CellWorldConverter;
 import sporemodder.file.cnv.CnvConverter;
 import sporemodder.file.dbpf.DBPFConverter;
+import sporemodder.file.dds.DDSEncoder;
 import sporemodder.file.effects.EffectsConverter;
 import sporemodder.file.gait.GaitConverter;
 import sporemodder.file.lvl.LvlConverter;
@@ -67,10 +69,34 @@ import sporemodder.file.tlsa.TLSAConverter;
  */
 public class FormatManager extends AbstractManager {
 	
+	private static final String PROPERTY_textureQuality = "textureEncoderQuality";
+	private static final String PROPERTY_textureMipmapFilter = "textureMipmapFilter";
+	
 	private final List<Converter> converters = new ArrayList<Converter>();
 	
+	/** How much time is spent compressing the PNG and TGA images that are packed as textures. */
+	private DDSEncoder.Quality textureQuality = DDSEncoder.Quality.NORMAL;
+	/** The filter used to generate the mipmaps of the PNG and TGA images that are packed as textures. */
+	private DDSEncoder.MipmapFilter textureMipmapFilter = DDSEncoder.MipmapFilter.BOX;
+	
+	@Override
+	public List<Class<? extends AbstractManager>> getDependencies() {
+		return Collections.singletonList(HashManager.class);
+	}
+	
 	@Override
 	public void initialize(Properties properties) {
+		try {
+			textureQuality = DDSEncoder.Quality.valueOf(properties.getProperty(PROPERTY_textureQuality, textureQuality.name()));
+		} catch (IllegalArgumentException e) {
+			// Keep the default
+		}
+		try {
+			textureMipmapFilter = DDSEncoder.MipmapFilter.valueOf(properties.getProperty(PROPERTY_textureMipmapFilter, textureMipmapFilter.name()));
+		} catch (IllegalArgumentException e) {
+			// Keep the default
+		}
+		
 		converters.add(new PollenMetadataConverter());
 		converters.add(new SummaryConverter());
 		converters.add(new ArithmeticaConverter());
@@ -102,6 +128,56 @@ public class FormatManager extends AbstractManager {
 		converters.add(new PropConverter());
 	}
 	
+	@Override
+	public void saveSettings(Properties properties) {
+		properties.put(PROPERTY_textureQuality, textureQuality.name());
+		properties.put(PROPERTY_textureMipmapFilter, textureMipmapFilter.name());
+	}
+	
+	public DDSEncoder.Quality getTextureQuality() {
+		return textureQuality;
+	}
+	
+	public void setTextureQuality(DDSEncoder.Quality textureQuality) {
+		this.textureQuality = textureQuality;
+	}
+	
+	public DDSEncoder.MipmapFilter getTextureMipmapFilter() {
+		return textureMipmapFilter;
+	}
+	
+	public void setTextureMipmapFilter(DDSEncoder.MipmapFilter textureMipmapFilter) {
+		this.textureMipmapFilter = textureMipmapFilter;
+	}
+	
+	/**
+	 * Returns a new encoder that compresses PNG and TGA images into textures, using the quality and mipmap filter of the settings.
+	 * The format is chosen for every image, depending on whether it uses the alpha channel.
+	 * @return
+	 */
+	public DDSEncoder createTextureEncoder() {
+		DDSEncoder encoder = new DDSEncoder();
+		encoder.setQuality(textureQuality);
+		encoder.setMipmapFilter(textureMipmapFilter);
+		return encoder;
+	}
+	
+	/**
+	 * Returns a string that describes the converters and all the settings that change how files are encoded. If it changes,
+	 * files encoded with the previous settings must be encoded again; it is used by incremental packing.
+	 * @return
+	 */
+	public String getEncoderSettings() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("textureQuality=").append(textureQuality.name());
+		sb.append(";textureMipmapFilter=").append(textureMipmapFilter.name());
+		sb.append(";converters=");
+		for (Converter converter : converters) {
+			sb.append(converter.getClass().getName()).append(',');
+		}
+		return sb.toString();
+	}
+	
 	/**
 	 * Adds the given Converter into the list of supported converters.
 	 * @param converter
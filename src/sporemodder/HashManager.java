@@ -23,6 +23,7 @@ import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
 
 import javafx.scene.control.Alert;
@@ -69,6 +70,8 @@ public class HashManager extends AbstractManager {
 	/** A temporary registry that keeps names used by a certain Project. This is only updated when doing certain actions, like packing the mod. */
 	private final NameRegistry projectRegistry = new NameRegistry(this, "Names used by the project", "names.txt");
 	private boolean updateProjectRegistry;
+	/** If set, the names added to the project registry by the current thread are also added there; used by incremental packing. */
+	private final ThreadLocal<Map<String, Integer>> projectNamesRecorder = new ThreadLocal<Map<String, Integer>>();
 	
 	/** A temporary registry that keeps track of all types/properties names used; can be used to import old projects without losing information. */
 	private NameRegistry extraRegistry;
@@ -84,22 +87,22 @@ public class HashManager extends AbstractManager {
 		defaultDecimalFormat.setNegativePrefix("-");
 
 		try {
-			fileRegistry.read(PathManager.get().getProgramFile(fileRegistry.getFileName()));
+			fileRegistry.readWithSnapshot(PathManager.get().getProgramFile(fileRegistry.getFileName()));
 		} catch (Exception e) {
 			UIManager.get().setInitializationError("The file name registry (reg_file.txt) is corrupt or missing.");
 		}
 		try {
-			typeRegistry.read(PathManager.get().getProgramFile(typeRegistry.getFileName()));
+			typeRegistry.readWithSnapshot(PathManager.get().getProgramFile(typeRegistry.getFileName()));
 		} catch (Exception e) {
 			UIManager.get().setInitializationError("The types registry (reg_type.txt) is corrupt or missing.");
 		}
 		try {
-			propRegistry.read(PathManager.get().getProgramFile(propRegistry.getFileName()));
+			propRegistry.readWithSnapshot(PathManager.get().getProgramFile(propRegistry.getFileName()));
 		} catch (Exception e) {
 			UIManager.get().setInitializationError("The property registry (reg_property.txt) is corrupt or missing.");
 		}
 		try {
-			simulatorRegistry.read(PathManager.get().getProgramFile(simulatorRegistry.getFileName()));
+			simulatorRegistry.readWithSnapshot(PathManager.get().getProgramFile(simulatorRegistry.getFileName()));
 			simulatorRegistry.read(PathManager.get().getProgramFile("reg_simulator_stub.txt"));
 		} catch (Exception e) {
 			UIManager.get().setInitializationError("The simulator attributes registry (reg_simulator.txt or reg_simulator_stub.txt) is corrupt or missing.");
@@ -160,6 +163,27 @@ public class HashManager extends AbstractManager {
 	public void setUpdateProjectRegistry(boolean value) {
 		this.updateProjectRegistry = value;
 	}
+	
+	/**
+	 * Sets a map where the names added to the project registry by the current thread are also added, so it is known which names
+	 * were used by a certain file. Only names used while {@link #mustUpdateProjectRegistry()} is true are recorded.
+	 * @param names The map where names are recorded, or null to stop recording them.
+	 */
+	public void setProjectNamesRecorder(Map<String, Integer> names) {
+		if (names == null) projectNamesRecorder.remove();
+		else projectNamesRecorder.set(names);
+	}
+	
+	private void addProjectName(String name, int hash) {
+		// Most names are already in the registry, so avoid the lock of adding them
+		if (!projectRegistry.contains(name, hash)) {
+			projectRegistry.add(name, hash);
+		}
+		Map<String, Integer> names = projectNamesRecorder.get();
+		if (names != null) {
+			names.put(name, hash);
+		}
+	}
 
 	public NameRegistry getExtraRegistry() {
 		return extraRegistry;
@@ -719,21 +743,21 @@ public class HashManager extends AbstractManager {
 			if (!name.endsWith("~")) {
 				int hash = fnvHash(name);
 				if (updateProjectRegistry) {
-					projectRegistry.add(name, hash);
+					addProjectName(name, hash);
 				}
 				return hash;
 			} 
 			else {
-				String lc = name.toLowerCase();
-				Integer i = fileRegistry.getHash(lc);
+				// Aliases ignore case
+				Integer i = fileRegistry.getAliasHash(name);
 				if (i == null) {
-					i = projectRegistry.getHash(lc);
+					i = projectRegistry.getAliasHash(name);
 				}
 				if (i == null) {
 					throw new IllegalArgumentException("Unable to find " + name + " hash.  It does not exist in the reg_file registry.");
 				}
 				if (updateProjectRegistry) {
-					projectRegistry.add(name, i);
+					addProjectName(name, i);
 				}
 				return i;
 			}
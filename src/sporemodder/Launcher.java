@@ -19,6 +19,7 @@ import sporemodder.file.Converter;
 import sporemodder.file.ResourceKey;
 import sporemodder.file.dbpf.DBPFPackingTask;
 import sporemodder.file.dbpf.DBPFUnpackingTask;
+import sporemodder.file.dbpf.RefPackCompressor;
 import sporemodder.file.filestructures.FileStream;
 import sporemodder.file.filestructures.MemoryStream;
 import sporemodder.file.filestructures.StreamReader;
@@ -117,10 +118,10 @@ public class Launcher {
 				if (name.endsWith("~")) {
 					// Special case, only file and project registry available
 					NameRegistry reg = hasher.getFileRegistry();
-					Integer value = hasher.getFileRegistry().getHash(name);
+					Integer value = reg.getAliasHash(name);
 					if (value == null) {
 						reg = hasher.getProjectRegistry();
-						value = reg.getHash(name);
+						value = reg.getAliasHash(name);
 					}
 					if (value == null) {
 						System.err.println("Alias (using ~) not found in file registry");
@@ -376,6 +377,15 @@ public class Launcher {
 		@Option(names = {"--compress"}, description = "[Experimental] Compress files bigger than N bytes")
 		private int compressThreshold = -1;
 		
+		@Option(names = {"--compression-level"}, description = "How hard the compressor looks for matches: FAST, DEFAULT or MAX. Higher levels are slower but generate smaller packages.")
+		private RefPackCompressor.Level compressionLevel = RefPackCompressor.Level.DEFAULT;
+		
+		@Option(names = {"--threads"}, description = "Number of threads used to encode and compress files. Default is 1, which packs sequentially.")
+		private int threadCount = 1;
+		
+		@Option(names = {"--incremental"}, description = "Only encode files that changed since the last pack, copying the rest from the previous package. A manifest file is saved next to the package.")
+		private boolean incremental = false;
+		
 		@Override
 		public Integer call() throws Exception {
 			input = input.getAbsoluteFile();
@@ -396,6 +406,9 @@ public class Launcher {
 			startTime = System.currentTimeMillis();
 			final DBPFPackingTask task = new DBPFPackingTask(project, output);
 			task.setCompressThreshold(compressThreshold);
+			task.setCompressionLevel(compressionLevel);
+			task.setThreadCount(threadCount);
+			task.setIncremental(incremental);
 			task.setNoJavaFX();
 			task.setNoJavaFXProgressListener(PROGRESS_BAR_LISTENER);
 			
@@ -25,6 +25,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Collections;
 import java.util.Properties;
 
 import javafx.application.Application;
@@ -191,22 +192,24 @@ public class MainApp extends Application {
 
 		pathManager.loadSettings(settings);
 		
-		// The path managers might be used in other manager initialization methods,
-		// so we ensure we initialize them first.
-		messageManager.initialize(settings);
-		gameManager.initialize(settings);
-		fileManager.initialize(settings);
+		// The rest of managers are initialized in parallel, each one after the managers it depends on
+		StartupScheduler scheduler = new StartupScheduler(Runtime.getRuntime().availableProcessors());
+		scheduler.addManager(messageManager, settings);
+		scheduler.addManager(gameManager, settings);
+		scheduler.addManager(fileManager, settings);
 		
-		if (!testInit) uiManager.initialize(settings);
-		if (!testInit) editorManager.initialize(settings);
-		hashManager.initialize(settings);
-		projectManager.initialize(settings);
-		if (!testInit) documentationManager.initialize(settings);
-		formatManager.initialize(settings);
-		fxCompiler.initialize(settings);
-		gitHubManager.initialize(settings);
+		if (!testInit) scheduler.addManager(uiManager, settings);
+		if (!testInit) scheduler.addManager(editorManager, settings);
+		scheduler.addManager(hashManager, settings);
+		scheduler.addManager(projectManager, settings);
+		if (!testInit) scheduler.addManager(documentationManager, settings);
+		scheduler.addManager(formatManager, settings);
+		scheduler.addManager(fxCompiler, settings);
+		scheduler.addManager(gitHubManager, settings);
 
-		ShaderData.initialize();
+		scheduler.addTask("ShaderData", ShaderData::initialize, Collections.singletonList(HashManager.class));
+		
+		scheduler.run();
 		
 		messageManager.postMessage(MessageType.OnSettingsLoad, settings);
 	}
@@ -25,6 +25,9 @@ import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import javax.xml.parsers.ParserConfigurationException;
@@ -35,6 +38,7 @@ import org.xml.sax.SAXException;
 import sporemodder.file.filestructures.FileStream;
 import sporemodder.file.filestructures.MemoryStream;
 import sporemodder.file.filestructures.StreamWriter;
+import javafx.application.Platform;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.ReadOnlyBooleanProperty;
 import javafx.beans.property.ReadOnlyBooleanWrapper;
@@ -61,6 +65,7 @@ import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import sporemodder.file.Converter;
 import sporemodder.file.ResourceKey;
+import sporemodder.file.argscript.ArgScriptIncludeCache;
 import sporemodder.file.dbpf.DBPFUnpackingTask;
 import sporemodder.file.prop.PropertyList;
 import sporemodder.file.prop.XmlPropParser;
@@ -136,6 +141,22 @@ public class ProjectManager extends AbstractManager {
 	
 	private ContextMenu contextMenu;
 	
+	/** Caches the file names of the project folders shown in the tree, and notifies when they change. */
+	private final FolderListingCache folderCache = new FolderListingCache();
+	/** The relative paths of the folders that were expanded inside a collapsed folder, so they are expanded again when it is reloaded. */
+	private final Set<String> collapsedExpandedPaths = new HashSet<>();
+	/** The thread where tree folders are loaded, so that listing big folders does not block the UI. */
+	private final ExecutorService folderLoader = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "Project tree loader");
+		thread.setDaemon(true);
+		return thread;
+	});
+	
+	@Override
+	public List<Class<? extends AbstractManager>> getDependencies() {
+		return Collections.singletonList(MessageManager.class);
+	}
+	
 	@Override
 	public void initialize(Properties properties) {
 		
@@ -150,6 +171,8 @@ public class ProjectManager extends AbstractManager {
 		
 		specialItems.add(new EffectEditorItem());
 		specialItems.add(new AnimEditorItem());
+		
+		folderCache.addListener((folder, name, isCreated) -> Platform.runLater(() -> onFolderChanged(folder, name, isCreated)));
 
 		// First load mod bundles, as it is necessary to exclude those when loading projects
 		modBundles.loadList();
@@ -222,6 +245,14 @@ public class ProjectManager extends AbstractManager {
 				}
 			}
 		});
+		
+		// Presets read directly from the packages must include the same files as if they were unpacked
+		for (ProjectPreset preset : presets) {
+			Project project = getProject(preset.getName());
+			if (project != null && project.getPackageSource() != null) {
+				project.getPackageSource().setItemFilter(preset.getItemFilter());
+			}
+		}
 	}
 	
 	@Override
@@ -230,6 +261,12 @@ public class ProjectManager extends AbstractManager {
 		if (activeProject != null) {
 			activeProject.saveSettings();
 		}
+		folderLoader.shutdownNow();
+		try {
+			folderCache.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 	}
 	
 	@Override public void saveSettings(Properties properties) {
@@ -511,6 +548,8 @@ public class ProjectManager extends AbstractManager {
 						
 						// 2 possibilities: either the file is mod and already exists in the mod project, or we have to copy it over 
 						if (item.isMod()) {
+							// The folder cannot be renamed while it is watched
+							folderCache.invalidate(item.getFile());
 							item.getFile().renameTo(file);
 							
 							// In source folders we must ensure that the original keeps its children,
@@ -858,6 +897,8 @@ public class ProjectManager extends AbstractManager {
 		activeProject = project;
 		
 		projectSearcher.setProject(activeProject);
+		// Included files of the previous project are not needed anymore
+		ArgScriptIncludeCache.clear();
 		
 		// Update time and save it
 		activeProject.updateLastTimeUsed();
@@ -941,7 +982,12 @@ public class ProjectManager extends AbstractManager {
 		ProjectTreeUI projectTree = UIManager.get().getUserInterface().getProjectTree();
 		TreeView<ProjectItem> treeView = projectTree.getTreeView();
 		
+		// Stop watching the folders of the previous project
+		folderCache.clear();
+		collapsedExpandedPaths.clear();
+		
 		rootItem = new ProjectTreeItem(ProjectItem.createRoot(activeProject, activeProject.getName()));
+		rootItem.addEventHandler(TreeItem.<ProjectItem>branchCollapsedEvent(), event -> onFolderCollapsed((ProjectTreeItem) event.getTreeItem()));
 		rootItem.setPredicate((parent, value) -> {
 			if (isShowModdedOnly() && !value.isMod()) {
 				return false;
@@ -972,6 +1018,72 @@ public class ProjectManager extends AbstractManager {
 	}
 	
 	public void loadItemFolder(Project project, Collection<Project> sources, ProjectTreeItem parentItem) {
+		setLoadedChildren(parentItem, listItemFolder(project, sources, parentItem));
+	}
+	
+	/**
+	 * Loads the children of the given item in a background thread, so that listing big folders does not block the UI.
+	 * When the items are created, they are added to the tree in the JavaFX thread; if the children are loaded again before
+	 * that (for example, with {@link #loadItemFolder(ProjectTreeItem)}), the result of the background load is discarded.
+	 * @param parentItem
+	 */
+	public void loadItemFolderInBackground(ProjectTreeItem parentItem) {
+		Project project = parentItem.getValue().getProject();
+		List<Project> sources = new ArrayList<>(project.getReferences());
+		int loadCount = parentItem.getLoadCount();
+		
+		folderLoader.execute(() -> {
+			Collection<ProjectTreeItem> children;
+			Exception exception = null;
+			try {
+				children = listItemFolder(project, sources, parentItem);
+			}
+			catch (Exception e) {
+				exception = e;
+				children = Collections.emptyList();
+			}
+			final Collection<ProjectTreeItem> loadedChildren = children;
+			final Exception loadException = exception;
+			
+			Platform.runLater(() -> {
+				if (parentItem.getLoadCount() == loadCount && parentItem.getValue().getProject() == project) {
+					setLoadedChildren(parentItem, loadedChildren);
+					if (loadException != null) {
+						// Try again the next time it is expanded
+						parentItem.requestReload();
+						UIManager.get().showErrorDialog(loadException, "Cannot load the folder " + parentItem.getValue().getRelativePath() + ".", true);
+					}
+				}
+			});
+		});
+	}
+	
+	private void setLoadedChildren(ProjectTreeItem parentItem, Collection<ProjectTreeItem> children) {
+		parentItem.setLoadedChildren(children);
+		
+		if (!collapsedExpandedPaths.isEmpty()) {
+			for (ProjectTreeItem child : children) {
+				if (collapsedExpandedPaths.remove(child.getValue().getRelativePath())) {
+					child.setExpanded(true);
+				}
+			}
+		}
+		
+		// Change the item of certian editors if it was loaded now
+		UIManager.get().tryAction(() -> EditorManager.get().reloadEditors(), "Cannot reload the editors of the loaded files.");
+		
+		if (!searchedWords.isEmpty()) {
+			// Search the new nodes
+			projectSearcher.startSearch(parentItem);
+		}
+	}
+	
+	/**
+	 * Creates the items of the files inside the folder of the given item, in all the sources and the project itself.
+	 * This does not modify the tree, so it can be called from any thread.
+	 * @return The children items, in the order they must be shown.
+	 */
+	private Collection<ProjectTreeItem> listItemFolder(Project project, Collection<Project> sources, ProjectTreeItem parentItem) {
 					
 		/** The nodes that have already been loaded in this level. */
 		Map<String, ProjectTreeItem> loadedItems = createChildrenMap(null);
@@ -985,69 +1097,223 @@ public class ProjectManager extends AbstractManager {
 		{
 			Project source = iterable.previous();
 			File folder = new File(source.getFolder(), relativePath);
+			PackageProjectSource packageSource = source.getPackageSource();
 			
-			if (folder.exists()) {
-				String[] fileNames = folder.list();
-				if (fileNames != null) {
-					for (String fileName : fileNames) {
-						File file = new File(folder, fileName);
-						
-						ProjectItem item = createItem(file, project, parentItem);
-						if (item == null) continue;
-						
-						// We don't add the item to the tree yet; we will wait until all are loaded so we can order them
-						ProjectTreeItem treeItem = new ProjectTreeItem(item);
-						item.setIsSource(true);
-						item.setTreeItem(treeItem);
-						
-						// We use the real file name here because when loading the mod ones we still don't know the name
-						loadedItems.put(relativePath + File.separatorChar + fileName, treeItem);
-					}
+			String[] fileNames = null;
+			if (packageSource != null) {
+				// The files are listed from the package indices, they are not decoded until they are used
+				try {
+					fileNames = packageSource.list(relativePath);
+				} catch (IOException e) {
+					e.printStackTrace();
 				}
 			}
-		}
-		
-		File folder = new File(project.getFolder(), relativePath);
-		if (folder.exists()) {
-			String[] fileNames = folder.list();
+			else {
+				fileNames = folderCache.list(folder);
+			}
+			
 			if (fileNames != null) {
 				for (String fileName : fileNames) {
-					ProjectTreeItem treeItem = loadedItems.get(relativePath + File.separatorChar + fileName);
 					File file = new File(folder, fileName);
 					
-					if (treeItem == null) {
-						
-						ProjectItem item = createItem(file, project, parentItem);
-						if (item == null) continue;
-						
-						// We don't add the item to the tree yet; we will wait until all are loaded so we can order them
-						treeItem = new ProjectTreeItem(item);
-						item.setTreeItem(treeItem);
-						
-						// We use the real file name here because when loading the mod ones we still don't know the name
-						loadedItems.put(relativePath + File.separatorChar + fileName, treeItem);
-					}
+					ProjectItem item = createItem(file, project, parentItem);
+					if (item == null) continue;
+					
+					// We don't add the item to the tree yet; we will wait until all are loaded so we can order them
+					ProjectTreeItem treeItem = new ProjectTreeItem(item);
+					item.setIsSource(true);
+					item.setPackageSource(packageSource);
+					item.setTreeItem(treeItem);
+					
+					// We use the real file name here because when loading the mod ones we still don't know the name
+					loadedItems.put(relativePath + File.separatorChar + fileName, treeItem);
+				}
+			}
+		}
+		
+		File folder = new File(project.getFolder(), relativePath);
+		String[] fileNames = folderCache.list(folder);
+		if (fileNames != null) {
+			for (String fileName : fileNames) {
+				ProjectTreeItem treeItem = loadedItems.get(relativePath + File.separatorChar + fileName);
+				File file = new File(folder, fileName);
+				
+				if (treeItem == null) {
+					
+					ProjectItem item = createItem(file, project, parentItem);
+					if (item == null) continue;
+					
+					// We don't add the item to the tree yet; we will wait until all are loaded so we can order them
+					treeItem = new ProjectTreeItem(item);
+					item.setTreeItem(treeItem);
 					
-					treeItem.getValue().setFile(file);
-					treeItem.getValue().setIsMod(true);
+					// We use the real file name here because when loading the mod ones we still don't know the name
+					loadedItems.put(relativePath + File.separatorChar + fileName, treeItem);
 				}
+				
+				treeItem.getValue().setFile(file);
+				treeItem.getValue().setIsMod(true);
 			}
 		}
 		
-		parentItem.setLoadedChildren(loadedItems.values());
+		return loadedItems.values();
+	}
+	
+	/**
+	 * Returns the tree item in the given path if it and all its parents are loaded, null otherwise.
+	 */
+	private ProjectTreeItem findLoadedTreeItem(String relativePath) {
+		ProjectTreeItem item = rootItem;
+		if (relativePath.isEmpty()) return item;
+		
+		for (String name : relativePath.split(Pattern.quote(File.separator))) {
+			if (!item.isLoaded() || item.isLoading()) return null;
+			ProjectTreeItem child = null;
+			for (ProjectTreeItem treeItem : item.getInternalChildren()) {
+				File file = getItemFile(treeItem);
+				if (file != null && file.getName().equalsIgnoreCase(name)) {
+					child = treeItem;
+					break;
+				}
+			}
+			if (child == null) return null;
+			item = child;
+		}
+		return item;
+	}
+	
+	/**
+	 * Stops watching the folders of a collapsed tree item, as they are not visible anymore. The item is loaded again the next time
+	 * it is expanded; the folders that were expanded inside it are remembered, so they are expanded again.
+	 * @param treeItem
+	 */
+	private void onFolderCollapsed(ProjectTreeItem treeItem) {
+		if (!treeItem.isLoaded() || treeItem.isLoading()) return;
 		
-		// Change the item of certian editors if it was loaded now
-		try {
-			EditorManager.get().reloadEditors();
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+		addExpandedPaths(treeItem);
+		
+		ProjectItem item = treeItem.getValue();
+		String relativePath = item.getRelativePath();
+		folderCache.invalidate(new File(item.getProject().getFolder(), relativePath));
+		for (Project source : item.getProject().getReferences()) {
+			if (source.getPackageSource() == null) {
+				folderCache.invalidate(new File(source.getFolder(), relativePath));
+			}
+		}
+		
+		treeItem.requestReload();
+	}
+	
+	private void addExpandedPaths(ProjectTreeItem treeItem) {
+		for (ProjectTreeItem child : treeItem.getInternalChildren()) {
+			if (child.isExpanded() && child.isLoaded() && child.getValue() != null) {
+				collapsedExpandedPaths.add(child.getValue().getRelativePath());
+				addExpandedPaths(child);
+			}
+		}
+	}
+	
+	private static File getItemFile(ProjectTreeItem treeItem) {
+		ProjectItem item = treeItem.getValue();
+		return item == null ? null : item.getFile();
+	}
+	
+	/**
+	 * Updates the project tree when a file is created or deleted in a folder of the active project or its sources.
+	 * Only the affected item is added or removed; folders that are not loaded in the tree are ignored.
+	 * @param folder The folder that changed.
+	 * @param name The name of the file, or null if the folder must be loaded again.
+	 * @param isCreated Whether the file was created or deleted.
+	 */
+	private void onFolderChanged(File folder, String name, boolean isCreated) {
+		if (activeProject == null || rootItem == null) return;
+		
+		// Find the project that contains the folder
+		Project project = null;
+		if (folder.toPath().startsWith(activeProject.getFolder().toPath())) {
+			project = activeProject;
+		} else {
+			for (Project source : activeProject.getReferences()) {
+				if (source.getPackageSource() == null && folder.toPath().startsWith(source.getFolder().toPath())) {
+					project = source;
+					break;
+				}
+			}
+		}
+		if (project == null) return;
+		
+		String relativePath = project.getFolder().toPath().relativize(folder.toPath()).toString();
+		ProjectTreeItem parentItem = findLoadedTreeItem(relativePath);
+		if (parentItem == null || !parentItem.isLoaded() || parentItem.isLoading()) return;
+		
+		if (name == null) {
+			parentItem.requestReload();
+			parentItem.getChildren();
+			return;
+		}
+		
+		boolean isMod = project == activeProject;
+		String path = relativePath.isEmpty() ? name : relativePath + File.separatorChar + name;
+		ProjectTreeItem treeItem = null;
+		for (ProjectTreeItem child : parentItem.getInternalChildren()) {
+			File file = getItemFile(child);
+			if (file != null && file.getName().equalsIgnoreCase(name)) {
+				treeItem = child;
+				break;
+			}
+		}
+		
+		if (isCreated) {
+			File file = new File(folder, name);
+			if (treeItem == null) {
+				ProjectItem item = createItem(file, activeProject, parentItem);
+				if (item == null) return;
+				treeItem = new ProjectTreeItem(item);
+				item.setTreeItem(treeItem);
+				item.setIsMod(isMod);
+				item.setIsSource(!isMod);
+				
+				// Insert it sorted by name; children without a file are skipped
+				List<ProjectTreeItem> children = parentItem.getInternalChildren();
+				int index = 0;
+				while (index < children.size()) {
+					File childFile = getItemFile(children.get(index));
+					if (childFile != null && childFile.getName().compareToIgnoreCase(name) >= 0) break;
+					++index;
+				}
+				children.add(index, treeItem);
+			}
+			else if (isMod && !treeItem.getValue().isMod()) {
+				treeItem.getValue().setFile(file);
+				treeItem.getValue().setIsMod(true);
+			}
+			else {
+				// Nothing changed, probably the program created the file and already updated the tree
+				return;
+			}
+		}
+		else {
+			if (treeItem == null || (isMod && !treeItem.getValue().isMod())) return;
+			
+			if (isMod ? !treeItem.getValue().isSource() : (!treeItem.getValue().isMod() && !hasSource(path))) {
+				parentItem.getInternalChildren().remove(treeItem);
+			}
+			else if (!isMod) {
+				// Another source or the mod still has the file, so there's nothing to remove
+				return;
+			}
+			else {
+				// The mod file was deleted, but the file still exists in the sources: load it again to use the source file
+				parentItem.requestReload();
+				parentItem.getChildren();
+				return;
+			}
 		}
 		
 		if (!searchedWords.isEmpty()) {
-			// Search the new nodes
 			projectSearcher.startSearch(parentItem);
 		}
+		getTreeView().refresh();
 	}
 	
 	private Map<String, ProjectTreeItem> createChildrenMap(ProjectTreeItem parent) {
@@ -1153,6 +1419,8 @@ public class ProjectManager extends AbstractManager {
 	 * @param project
 	 */
 	public void deleteProject(Project project) throws IOException {
+		// The folder cannot be deleted while it is watched
+		folderCache.invalidate(project.getFolder());
 		FileManager.get().deleteDirectory(project.getFolder());
 		
 		projects.remove(project);
@@ -1249,7 +1517,8 @@ public class ProjectManager extends AbstractManager {
 		String name = indexOf == -1 ? relativePath : relativePath.substring(0, indexOf);
 		ProjectTreeItem result = null;
 
-		if (!node.isLoaded()) {
+		// Items being loaded in the background don't have children yet
+		if (!node.isLoaded() || node.isLoading()) {
 			if (forceLoad) {
 				loadItemFolder(node);
 				for (ProjectTreeItem child : node.getInternalChildren()) {
@@ -1352,11 +1621,40 @@ public class ProjectManager extends AbstractManager {
 	public boolean hasSource(String relativePath) {
 		// This method is faster than getting the item and then checking
 		for (Project source : activeProject.getReferences()) {
-			if (new File(source.getFolder(), relativePath).exists()) return true;
+			if (existsInSource(source, relativePath)) return true;
 		}
 		return false;
 	}
 	
+	/** Returns whether the relative path exists in the source project; files read from packages are not decoded. */
+	private static boolean existsInSource(Project source, String relativePath) {
+		PackageProjectSource packageSource = source.getPackageSource();
+		if (packageSource != null) {
+			try {
+				return packageSource.exists(relativePath);
+			} catch (IOException e) {
+				e.printStackTrace();
+				return false;
+			}
+		}
+		return new File(source.getFolder(), relativePath).exists();
+	}
+	
+	/** Returns the file in the relative path of the source project, or null if it does not exist; files read from packages are decoded. */
+	private static File getFileInSource(Project source, String relativePath) {
+		PackageProjectSource packageSource = source.getPackageSource();
+		if (packageSource != null) {
+			try {
+				return packageSource.getFile(relativePath);
+			} catch (IOException e) {
+				e.printStackTrace();
+				return null;
+			}
+		}
+		File file = new File(source.getFolder(), relativePath);
+		return file.exists() ? file : null;
+	}
+	
 	public File getModFile(ProjectItem item) {
 		return item.isMod() ? item.getFile() : null;
 	}
@@ -1374,8 +1672,8 @@ public class ProjectManager extends AbstractManager {
  	
  	public File getSourceFile(String relativePath) {
  		for (Project source : activeProject.getReferences()) {
- 			File file = new File(source.getFolder(), relativePath);
- 			if (file.exists()) return file;
+ 			File file = getFileInSource(source, relativePath);
+ 			if (file != null) return file;
  		}
  		return null;
 	}
@@ -1383,7 +1681,7 @@ public class ProjectManager extends AbstractManager {
  	public Project getProjectByFile(String relativePath) {
  		if (getModFile(relativePath) != null) return activeProject;
  		for (Project source : activeProject.getReferences()) {
- 			if (new File(source.getFolder(), relativePath).exists()) return source;
+ 			if (existsInSource(source, relativePath)) return source;
  		}
  		return null;
 	}
@@ -1399,8 +1697,8 @@ public class ProjectManager extends AbstractManager {
 		if (file.exists()) return file;
 
  		for (Project source : activeProject.getReferences()) {
- 			file = new File(source.getFolder(), relativePath);
- 			if (file.exists()) return file;
+ 			file = getFileInSource(source, relativePath);
+ 			if (file != null) return file;
  		}
  		return null;
 	}
@@ -1411,6 +1709,58 @@ public class ProjectManager extends AbstractManager {
  		return getFile(relativePath);
 	}
 	
+	/**
+	 * Creates the projects of the given presets so that they read the files directly from the game packages, instead of
+	 * unpacking them. The files are converted, using the given converters, when they are used; see {@link PackageProjectSource}.
+	 * @param presets
+	 * @param converters The converters used to decode the files, or null to use the ones enabled by default.
+	 */
+	public void createPackagePresets(List<ProjectPreset> presets, List<Converter> converters) {
+		
+		if (converters == null) {
+			converters = new ArrayList<Converter>();
+			for (Converter c : FormatManager.get().getConverters()) {
+				if (c.isEnabledByDefault()) converters.add(c);
+			}
+		}
+		List<String> converterNames = converters.stream().map(Converter::getName).collect(Collectors.toList());
+		
+		List<String> missingPackages = new ArrayList<String>();
+		
+		for (ProjectPreset preset : presets) {
+			Map<String, File> files = new LinkedHashMap<String, File>();
+			preset.getFiles(files);
+			
+			for (Map.Entry<String, File> entry : files.entrySet()) {
+				if (!entry.getValue().isFile()) missingPackages.add(entry.getKey());
+			}
+			
+			final Project project = getOrCreateProject(preset.getName());
+			project.setReadOnly(true);
+			
+			if (project.getPackageSource() != null) {
+				try {
+					project.getPackageSource().close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+			PackageProjectSource source = new PackageProjectSource(project.getFolder(), new ArrayList<>(files.values()), converterNames);
+			source.setItemFilter(preset.getItemFilter());
+			project.setPackageSource(source);
+			
+			if (!UIManager.get().tryAction(() -> initializeProject(project),
+					"Cannot initialize preset \"" + preset.getName() + "\". Try manually deleting the project folder in SporeModder FX\\Projects\\")) {
+				return;
+			}
+		}
+		
+		if (!missingPackages.isEmpty()) {
+			UIManager.get().showDialog(AlertType.WARNING, "The following packages could not be found, so their files will not be included: " 
+					+ String.join(", ", missingPackages));
+		}
+	}
+	
 	public void unpackPresets(List<ProjectPreset> presets, List<Converter> converters) {
 		
 		if (converters == null) {
@@ -1759,6 +2109,8 @@ public class ProjectManager extends AbstractManager {
 		
 		if (!confirmationDialogForRemoveItem()) return false;
 		
+		// The folder cannot be deleted while it is watched
+		folderCache.invalidate(file);
 		if (file.isFile()) file.delete();
 		else FileManager.get().deleteDirectory(file);
 		
@@ -2063,6 +2415,15 @@ public class ProjectManager extends AbstractManager {
 		return true;
 	}
 	
+	/**
+	 * Must be called when a project file is overwritten, so the search reads it again. Creating, deleting or renaming files
+	 * does not need this, as it changes the modification time of the folder.
+	 * @param file
+	 */
+	public void notifyFileChanged(File file) {
+		projectSearcher.fileChanged(file);
+	}
+	
 	public boolean refreshItem(ProjectItem item) throws IOException {
 		if (!item.canRefreshItem()) return false;
 		
@@ -2089,6 +2450,8 @@ public class ProjectManager extends AbstractManager {
 		}
 		
 		item.setFile(file);
+		// Files might have been overwritten from outside the program
+		notifyFileChanged(file);
 		
 		// Reloading the nodes
 		((ProjectTreeItem) treeItem).requestReload();
@@ -0,0 +1,215 @@
+/****************************************************************************
+* Copyright (C) 2019 Eric Mor
+*
+* This file is part of SporeModder FX.
+*
+* SporeModder FX is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+****************************************************************************/
+package sporemodder;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Initializes the managers of the program when it starts. Every manager declares which managers it needs with
+ * {@link AbstractManager#getDependencies()}, and it is initialized as soon as all of them are; this way, managers that
+ * don't depend on each other are initialized at the same time, in different threads. Dependencies on managers that
+ * have not been added to the scheduler are ignored, as they are expected to be initialized already.
+ * <p>
+ * The time taken by every manager is recorded. If the <code>sporemodder.startupTimes</code> system property is "true",
+ * the times are printed when all managers are initialized, together with the critical path: the chain of dependencies
+ * that determined the total startup time.
+ */
+public class StartupScheduler {
+
+	public static final String PROPERTY_printTimes = "sporemodder.startupTimes";
+
+	private static class Task {
+		final String name;
+		final Runnable action;
+		final List<Class<? extends AbstractManager>> dependencies;
+		CompletableFuture<Void> future;
+		/** In nanoseconds, relative to the start of the scheduler. */
+		volatile long startTime;
+		volatile long endTime;
+		volatile String threadName;
+
+		Task(String name, Runnable action, List<Class<? extends AbstractManager>> dependencies) {
+			this.name = name;
+			this.action = action;
+			this.dependencies = dependencies;
+		}
+	}
+
+	/** Tasks of managers, keyed by manager class, and then the tasks that no one can depend on. */
+	private final Map<Object, Task> tasks = new LinkedHashMap<>();
+	private final int threadCount;
+	private long startTime;
+	private long totalTime;
+
+	/**
+	 * Creates a scheduler that uses, at most, the given number of threads.
+	 * @param threadCount
+	 */
+	public StartupScheduler(int threadCount) {
+		this.threadCount = Math.max(1, threadCount);
+	}
+
+	/**
+	 * Adds a manager to be initialized with the given settings.
+	 * @param manager
+	 * @param settings
+	 */
+	public void addManager(AbstractManager manager, Properties settings) {
+		tasks.put(manager.getClass(), new Task(manager.getClass().getSimpleName(),
+				() -> manager.initialize(settings), manager.getDependencies()));
+	}
+
+	/**
+	 * Adds an initialization task that is not a manager, so no manager can depend on it.
+	 * @param name The name used in the startup times.
+	 * @param action
+	 * @param dependencies The managers that must be initialized before executing the action.
+	 */
+	public void addTask(String name, Runnable action, List<Class<? extends AbstractManager>> dependencies) {
+		tasks.put(new Object(), new Task(name, action, dependencies));
+	}
+
+	private CompletableFuture<Void> schedule(Task task, ExecutorService executor, Set<Task> visiting) {
+		if (task.future != null) {
+			return task.future;
+		}
+		if (!visiting.add(task)) {
+			throw new IllegalStateException("Circular dependency in the initialization of " + task.name);
+		}
+
+		List<CompletableFuture<Void>> dependencyFutures = new ArrayList<>();
+		for (Class<? extends AbstractManager> dependency : task.dependencies) {
+			Task dependencyTask = tasks.get(dependency);
+			if (dependencyTask != null) {
+				dependencyFutures.add(schedule(dependencyTask, executor, visiting));
+			}
+		}
+
+		task.future = CompletableFuture.allOf(dependencyFutures.toArray(new CompletableFuture<?>[0])).thenRunAsync(() -> {
+			task.threadName = Thread.currentThread().getName();
+			task.startTime = System.nanoTime() - startTime;
+			task.action.run();
+			task.endTime = System.nanoTime() - startTime;
+		}, executor);
+
+		visiting.remove(task);
+		return task.future;
+	}
+
+	/**
+	 * Initializes all the managers and waits until they are finished. If any manager throws an exception, the managers that
+	 * depend on it are not initialized and the exception is thrown here.
+	 */
+	public void run() {
+		AtomicInteger threadIndex = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threadCount, Math.max(1, tasks.size())), runnable -> {
+			Thread thread = new Thread(runnable, "Startup-" + threadIndex.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		startTime = System.nanoTime();
+		try {
+			Set<Task> visiting = new HashSet<>();
+			List<CompletableFuture<Void>> futures = new ArrayList<>();
+			for (Task task : tasks.values()) {
+				futures.add(schedule(task, executor, visiting));
+			}
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+		}
+		catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			if (e.getCause() instanceof Error) throw (Error) e.getCause();
+			throw e;
+		}
+		finally {
+			totalTime = System.nanoTime() - startTime;
+			executor.shutdown();
+		}
+
+		if (Boolean.getBoolean(PROPERTY_printTimes)) {
+			printTimes(System.out);
+		}
+	}
+
+	/**
+	 * Returns the time, in milliseconds, that each task took to execute, in the order they were added.
+	 * @return
+	 */
+	public Map<String, Double> getTimes() {
+		Map<String, Double> times = new LinkedHashMap<>();
+		for (Task task : tasks.values()) {
+			times.put(task.name, (task.endTime - task.startTime) / 1000000.0);
+		}
+		return times;
+	}
+
+	/**
+	 * Returns the names of the tasks in the critical path, in execution order: starting from the task that finished last,
+	 * it follows the dependency that finished last until a task without dependencies is found.
+	 * @return
+	 */
+	public List<String> getCriticalPath() {
+		Task task = null;
+		for (Task t : tasks.values()) {
+			if (task == null || t.endTime > task.endTime) task = t;
+		}
+
+		List<String> path = new ArrayList<>();
+		while (task != null) {
+			path.add(task.name);
+			Task next = null;
+			for (Class<? extends AbstractManager> dependency : task.dependencies) {
+				Task dependencyTask = tasks.get(dependency);
+				if (dependencyTask != null && (next == null || dependencyTask.endTime > next.endTime)) {
+					next = dependencyTask;
+				}
+			}
+			task = next;
+		}
+		Collections.reverse(path);
+		return path;
+	}
+
+	/**
+	 * Prints the start and end time of every task, and the critical path.
+	 * @param out
+	 */
+	public void printTimes(PrintStream out) {
+		out.println(String.format("Startup took %.1f ms using %d threads:", totalTime / 1000000.0, threadCount));
+		for (Task task : tasks.values()) {
+			out.println(String.format("  %-24s %8.1f ms  (from %.1f to %.1f ms, %s)", task.name,
+					(task.endTime - task.startTime) / 1000000.0, task.startTime / 1000000.0, task.endTime / 1000000.0, task.threadName));
+		}
+		out.println("  Critical path: " + String.join(" -> ", getCriticalPath()));
+	}
+}
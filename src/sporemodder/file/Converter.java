@@ -98,7 +98,28 @@ public interface Converter {
 
 	public void generateContextMenu(ContextMenu contextMenu, ProjectItem item);
 	
+	/**
+	 * Returns the extension that {@link #decode(StreamReader, File, ResourceKey)} adds to the name of the file it writes for the given
+	 * resource, such as "prop_t"; decoders that write a folder return "unpacked". This is used to know the name of a decoded file
+	 * without decoding it. Returns null if the name cannot be known beforehand, or if the decoder writes more than one file.
+	 * @param key The resource key of the original file.
+	 * @return
+	 */
+	default String getDecodedExtension(ResourceKey key) {
+		return null;
+	}
+	
 	default void reset() {
 		
 	}
+	
+	/**
+	 * Whether the {@link #encode(File, DBPFPacker, int)} method can be used on different files at the same time.
+	 * Converters that keep information between the files they encode must return false, so that parallel
+	 * packing encodes their files one at a time and in order.
+	 * @return
+	 */
+	default boolean isConcurrentEncoder() {
+		return true;
+	}
 }
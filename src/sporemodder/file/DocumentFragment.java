@@ -96,6 +96,22 @@ public class DocumentFragment {
 		this.end = end;
 	}
 
+	/**
+	 * Moves the start, end and edit positions of this fragment and all its children the given number of characters.
+	 * @param offset
+	 */
+	public void move(int offset) {
+		start += offset;
+		end += offset;
+		if (editPosition != -1) {
+			editPosition += offset;
+		}
+		
+		for (DocumentFragment child : children) {
+			child.move(offset);
+		}
+	}
+	
 	/**
 	 * Returns the description, which is the String used to describe this fragment. 
 	 * @return
@@ -0,0 +1,174 @@
+/****************************************************************************
+* Copyright (C) 2019 Eric Mor
+*
+* This file is part of SporeModder FX.
+*
+* SporeModder FX is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+****************************************************************************/
+package sporemodder.file;
+
+import java.util.Arrays;
+
+/**
+ * A set of resource keys, stored as packed group/instance/type IDs in a single <code>int</code> array. Two keys are
+ * considered the same if {@link ResourceKey#isEquivalent(ResourceKey)} returns true. Unlike a <code>HashSet&lt;ResourceKey&gt;</code>,
+ * this does not allocate any object when adding or checking keys, which matters when keeping track of hundreds of thousands of files.
+ * <p>
+ * This class is not thread-safe.
+ */
+public class ResourceKeySet {
+
+	private static final int DEFAULT_CAPACITY = 1024;
+	private static final float LOAD_FACTOR = 0.5f;
+
+	/** Every slot uses 3 consecutive ints: group, instance and type. A slot with all IDs to 0 is empty. */
+	private int[] table;
+	/** The number of slots in the table, always a power of two. */
+	private int capacity;
+	private int size;
+	/** The key with all IDs to 0 cannot be stored in the table, as it is used to mark empty slots. */
+	private boolean containsZero;
+
+	public ResourceKeySet() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a set that can hold the given number of keys without growing.
+	 * @param expectedSize
+	 */
+	public ResourceKeySet(int expectedSize) {
+		capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+		table = new int[capacity * 3];
+	}
+
+	private static int hash(int groupID, int instanceID, int typeID) {
+		int h = instanceID * 0x9E3779B1;
+		h = (h ^ groupID) * 0x85EBCA6B;
+		h = (h ^ typeID) * 0xC2B2AE35;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Returns the slot where the given key is stored, or the empty slot where it would be inserted.
+	 */
+	private int findSlot(int groupID, int instanceID, int typeID) {
+		int mask = capacity - 1;
+		int slot = hash(groupID, instanceID, typeID) & mask;
+		while (true) {
+			int index = slot * 3;
+			int g = table[index];
+			int i = table[index + 1];
+			int t = table[index + 2];
+			if ((g == groupID && i == instanceID && t == typeID) || (g == 0 && i == 0 && t == 0)) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private void grow() {
+		int[] oldTable = table;
+		capacity <<= 1;
+		table = new int[capacity * 3];
+		for (int index = 0; index < oldTable.length; index += 3) {
+			int g = oldTable[index];
+			int i = oldTable[index + 1];
+			int t = oldTable[index + 2];
+			if (g != 0 || i != 0 || t != 0) {
+				int slot = findSlot(g, i, t) * 3;
+				table[slot] = g;
+				table[slot + 1] = i;
+				table[slot + 2] = t;
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the set contains a key with the given IDs.
+	 * @param groupID
+	 * @param instanceID
+	 * @param typeID
+	 * @return
+	 */
+	public boolean contains(int groupID, int instanceID, int typeID) {
+		if (groupID == 0 && instanceID == 0 && typeID == 0) {
+			return containsZero;
+		}
+		int index = findSlot(groupID, instanceID, typeID) * 3;
+		return table[index] == groupID && table[index + 1] == instanceID && table[index + 2] == typeID;
+	}
+
+	/**
+	 * Returns true if the set contains a key equivalent to the given one.
+	 * @param key
+	 * @return
+	 */
+	public boolean contains(ResourceKey key) {
+		return contains(key.getGroupID(), key.getInstanceID(), key.getTypeID());
+	}
+
+	/**
+	 * Adds a key with the given IDs to the set. Returns true if it was added, or false if the set already contained it.
+	 * @param groupID
+	 * @param instanceID
+	 * @param typeID
+	 * @return
+	 */
+	public boolean add(int groupID, int instanceID, int typeID) {
+		if (groupID == 0 && instanceID == 0 && typeID == 0) {
+			if (containsZero) return false;
+			containsZero = true;
+			++size;
+			return true;
+		}
+
+		int index = findSlot(groupID, instanceID, typeID) * 3;
+		if (table[index] == groupID && table[index + 1] == instanceID && table[index + 2] == typeID) {
+			return false;
+		}
+		table[index] = groupID;
+		table[index + 1] = instanceID;
+		table[index + 2] = typeID;
+		++size;
+
+		if (size > capacity * LOAD_FACTOR) {
+			grow();
+		}
+		return true;
+	}
+
+	/**
+	 * Adds the IDs of the given key to the set. Returns true if it was added, or false if the set already contained an equivalent key.
+	 * @param key
+	 * @return
+	 */
+	public boolean add(ResourceKey key) {
+		return add(key.getGroupID(), key.getInstanceID(), key.getTypeID());
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		Arrays.fill(table, 0);
+		size = 0;
+		containsZero = false;
+	}
+}
@@ -21,7 +21,7 @@ package sporemodder.file.anim;
 import java.io.File;
 import java.io.PrintWriter;
 
-import sporemodder.file.filestructures.FileStream;
+import sporemodder.file.filestructures.BufferedFileStream;
 import sporemodder.file.filestructures.StreamReader;
 import sporemodder.file.filestructures.StreamWriter;
 import javafx.scene.control.ContextMenu;
@@ -58,10 +58,15 @@ public class AnimConverter implements Converter {
 		return decode(stream, Converter.getOutputFile(key, outputFolder, "anim_t"));
 	}
 
+	@Override
+	public String getDecodedExtension(ResourceKey key) {
+		return "anim_t";
+	}
+
 	@Override
 	public boolean encode(File input, StreamWriter output) throws Exception {
 		SPAnimation anim = new SPAnimation();
-		ArgScriptStream<SPAnimation> stream = anim.generateStream();
+		ArgScriptStream<SPAnimation> stream = anim.getPooledStream();
 		stream.setFolder(input.getParentFile());
 		stream.setFastParsing(true);
 		stream.process(input);
@@ -72,7 +77,7 @@ public class AnimConverter implements Converter {
 	@Override public boolean encode(File input, DBPFPacker packer, int groupID) throws Exception {
 		if (isEncoder(input)) {
 			SPAnimation anim = new SPAnimation();
-			ArgScriptStream<SPAnimation> stream = anim.generateStream();
+			ArgScriptStream<SPAnimation> stream = anim.getPooledStream();
 			stream.setFolder(input.getParentFile());
 			stream.setFastParsing(true);
 			stream.process(input);
@@ -143,7 +148,7 @@ public class AnimConverter implements Converter {
 					File file = new File(item.getFile().getParentFile(), name);
 					
 					boolean result = UIManager.get().tryAction(() -> {
-						try (FileStream stream = new FileStream(new File(item.getFile().getParentFile(), name), "rw")) {
+						try (BufferedFileStream stream = new BufferedFileStream(new File(item.getFile().getParentFile(), name), "rw")) {
 							encode(item.getFile(), stream);
 							
 							ProjectManager.get().selectItem(ProjectManager.get().getSiblingItem(item, name));
@@ -165,7 +170,7 @@ public class AnimConverter implements Converter {
 					menuItem.setOnAction(event -> {
 						final File outputFile = Converter.getOutputFile(key, item.getFile().getParentFile(), "anim_t");
 						boolean result = UIManager.get().tryAction(() -> {
-							try (FileStream stream = new FileStream(item.getFile(), "r")) {
+							try (BufferedFileStream stream = new BufferedFileStream(item.getFile(), "r")) {
 								decode(stream, outputFile);
 								
 								ProjectManager.get().selectItem(ProjectManager.get().getSiblingItem(item, outputFile.getName()));
@@ -34,6 +34,8 @@ import sporemodder.file.argscript.ArgScriptWriter;
 
 public class SPAnimation {
 
+	private static final ThreadLocal<ArgScriptStream<SPAnimation>> POOLED_STREAM = ThreadLocal.withInitial(() -> new SPAnimation().generateStream());
+
 	private static final int MAGIC = 0x4D494E41;
 	private static final int VERSION = 0x19;
 	private static final int MIN_VERSION = 0x14;
@@ -248,6 +250,18 @@ public class SPAnimation {
 		predicate.flags2 = 0;
 	}
 	
+	/**
+	 * Returns the ArgScript stream used to parse animation files into this object, reusing the one of the current thread so its
+	 * parsers are only created once. The stream is reset every time this method is called, so it must not be kept.
+	 * @return
+	 */
+	public ArgScriptStream<SPAnimation> getPooledStream() {
+		ArgScriptStream<SPAnimation> stream = POOLED_STREAM.get();
+		stream.reset();
+		stream.setData(this);
+		return stream;
+	}
+	
 	public ArgScriptStream<SPAnimation> generateStream() {
 		ArgScriptStream<SPAnimation> stream = new ArgScriptStream<SPAnimation>();
 		stream.setData(this);
@@ -260,7 +274,7 @@ public class SPAnimation {
 			Number value;
 			
 			if (line.getArguments(args, 1) && (value = stream.parseFloat(args, 0)) != null) {
-				length = value.floatValue();
+				stream.getData().length = value.floatValue();
 			}
 		}));
 		
@@ -271,7 +285,7 @@ public class SPAnimation {
 					stream.addError(line.createErrorForOption("branchPredicate", "Must specify an even number of arguments"));
 				}
 				else {
-					predicate.parse(args, stream);
+					stream.getData().predicate.parse(args, stream);
 				}
 			}
 		}));
@@ -76,6 +76,18 @@ public abstract class ArgScriptBlock<T> extends ArgScriptParser<T> {
 		return parsers.getOrDefault(keyword.toLowerCase(), null);
 	}
 	
+	@Override
+	void rebindData(T data) {
+		// Checking it first also avoids looping on blocks that contain themselves
+		if (this.data != data) {
+			super.rebindData(data);
+			
+			for (ArgScriptParser<T> parser : parsers.values()) {
+				parser.rebindData(data);
+			}
+		}
+	}
+	
 	@Override
 	protected boolean isBlock() {
 		return true;
@@ -0,0 +1,180 @@
+/****************************************************************************
+* Copyright (C) 2019 Eric Mor
+*
+* This file is part of SporeModder FX.
+*
+* SporeModder FX is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+****************************************************************************/
+package sporemodder.file.argscript;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the result of parsing the files included with <code>include</code> and <code>sinclude</code>, so that files shared by many
+ * others (like variable headers or effect macros) are only parsed once. Only files that just set variables, add definitions and
+ * include other files like them (without errors) are cached, as that is the only thing they change in the stream.
+ * <p>
+ * An entry is used again only if neither the file nor the files it included have been modified, and the variables and definitions
+ * it read before setting them have the same values; otherwise, the file is parsed again.
+ * <p>
+ * Only the {@link #MAX_ENTRIES} most recently used files are kept, and the cache is cleared when the active project changes.
+ */
+public class ArgScriptIncludeCache {
+
+	/** The maximum number of included files that are kept; the least recently used ones are removed. */
+	public static final int MAX_ENTRIES = 256;
+
+	/** The cached files, in access order so that the first one is the least recently used. All uses must synchronize on it. */
+	private static final LinkedHashMap<String, Entry> ENTRIES = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	/**
+	 * The result of parsing an included file. While it's being parsed, it records what the file does in the stream.
+	 */
+	static class Entry {
+		File file;
+		long lastModified;
+		long length;
+
+		/** Whether the file only did things that can be stored here. */
+		boolean isCacheable = true;
+
+		/** The variables and definitions that were used before the file set them, with the value they had. */
+		final Map<String, String> variableReads = new HashMap<String, String>();
+		final Map<String, ArgScriptDefinition> definitionReads = new HashMap<String, ArgScriptDefinition>();
+
+		/** The variables and definitions set by the file, in order. */
+		final Map<String, String> variables = new LinkedHashMap<String, String>();
+		final Map<String, ArgScriptDefinition> definitions = new LinkedHashMap<String, ArgScriptDefinition>();
+
+		/** The files included by this one (even if they didn't exist), with their modification time. */
+		final Map<File, Long> dependencies = new HashMap<File, Long>();
+
+		void readVariable(String name, String value) {
+			if (!variables.containsKey(name) && !variableReads.containsKey(name)) {
+				variableReads.put(name, value);
+			}
+		}
+
+		void readDefinition(String name, ArgScriptDefinition definition) {
+			if (!definitions.containsKey(name) && !definitionReads.containsKey(name)) {
+				definitionReads.put(name, definition);
+			}
+		}
+
+		void addDependency(File file) {
+			dependencies.put(file, file.lastModified());
+		}
+
+		/**
+		 * Adds what an included file did to the entry of the file that included it.
+		 */
+		void addAll(Entry entry) {
+			isCacheable &= entry.isCacheable;
+
+			for (Map.Entry<String, String> read : entry.variableReads.entrySet()) {
+				readVariable(read.getKey(), read.getValue());
+			}
+			for (Map.Entry<String, ArgScriptDefinition> read : entry.definitionReads.entrySet()) {
+				readDefinition(read.getKey(), read.getValue());
+			}
+
+			variables.putAll(entry.variables);
+			definitions.putAll(entry.definitions);
+
+			addDependency(entry.file);
+			dependencies.putAll(entry.dependencies);
+		}
+
+		/**
+		 * Whether the files have not changed since they were parsed, and the variables and definitions used have the same value in the stream.
+		 */
+		boolean isValid(ArgScriptStream<?> stream) {
+			if (file.lastModified() != lastModified || file.length() != length) {
+				return false;
+			}
+			for (Map.Entry<File, Long> dependency : dependencies.entrySet()) {
+				if (dependency.getKey().lastModified() != dependency.getValue()) {
+					return false;
+				}
+			}
+			for (Map.Entry<String, String> read : variableReads.entrySet()) {
+				String value = stream.getVariable(read.getKey());
+				if (value == null ? read.getValue() != null : !value.equals(read.getValue())) {
+					return false;
+				}
+			}
+			for (Map.Entry<String, ArgScriptDefinition> read : definitionReads.entrySet()) {
+				if (stream.getDefinition(read.getKey()) != read.getValue()) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	private static String getKey(File file, File folder) throws IOException {
+		// Relative includes inside the file depend on the folder of the stream
+		return file.getCanonicalPath() + File.pathSeparator + (folder == null ? "" : folder.getAbsolutePath());
+	}
+
+	/**
+	 * Returns the entry of the given file if it can be used in the current state of the stream, or null otherwise.
+	 */
+	static Entry get(ArgScriptStream<?> stream, File file) throws IOException {
+		String key = getKey(file, stream.getFolder());
+		Entry entry;
+		synchronized (ENTRIES) {
+			entry = ENTRIES.get(key);
+		}
+		return entry != null && entry.isValid(stream) ? entry : null;
+	}
+
+	/**
+	 * Creates the entry that will record the parsing of the given file.
+	 */
+	static Entry create(File file) {
+		Entry entry = new Entry();
+		entry.file = file;
+		// Get them before parsing, so the entry is invalid if the file is modified meanwhile
+		entry.lastModified = file.lastModified();
+		entry.length = file.length();
+		return entry;
+	}
+
+	static void put(ArgScriptStream<?> stream, Entry entry) throws IOException {
+		String key = getKey(entry.file, stream.getFolder());
+		synchronized (ENTRIES) {
+			ENTRIES.put(key, entry);
+		}
+	}
+
+	/**
+	 * Removes all the cached files, so they are parsed again the next time they are included.
+	 */
+	public static void clear() {
+		synchronized (ENTRIES) {
+			ENTRIES.clear();
+		}
+	}
+}
@@ -43,6 +43,14 @@ public abstract class ArgScriptParser<T> {
 		this.stream = stream;
 	}
 	
+	/**
+	 * Changes the object that is being processed, without calling {@link #setData(ArgScriptStream, Object)} again;
+	 * used when the stream is reused to process another object.
+	 */
+	void rebindData(T data) {
+		this.data = data;
+	}
+	
 	/** Returns the object that is currently being processed. */
 	public final T getData() {
 		return data;
@@ -25,8 +25,10 @@ import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -48,6 +50,23 @@ public class ArgScriptStream<T> {
 		public void onStart(ArgScriptStream<T> stream, T data);
 	}
 	
+	public static interface OnReparseAction<T> {
+		/**
+		 * Called before the lines between <code>start</code> and <code>end</code> (positions in the previous text) are parsed again.
+		 * The data must forget everything that was generated by those lines, and move the positions that come after them by <code>offset</code> characters.
+		 * What was generated after the lines should not be visible until {@link #afterReparse(ArgScriptStream, Object)} is called, as it was not in a full parse.
+		 * @return False if the data cannot do it, in which case the whole text will be processed again.
+		 */
+		public boolean onReparse(ArgScriptStream<T> stream, T data, int start, int end, int offset);
+		
+		/**
+		 * Called after the lines have been parsed again. 
+		 * @return False if the lines generated something that affects the rest of the text (for example, an element was renamed), 
+		 * in which case the whole text will be processed again.
+		 */
+		public boolean afterReparse(ArgScriptStream<T> stream, T data);
+	}
+	
 	public static class HyperlinkData {
 		public final int line;
 		public final int start;
@@ -74,6 +93,9 @@ public class ArgScriptStream<T> {
 	
 	private static final Pattern NEWLINE_PATTERN = Pattern.compile("\\R");
 	
+	/** If set, the files included by the streams of the current thread (even if they don't exist) are added there. */
+	private static final ThreadLocal<Set<File>> INCLUDED_FILES_RECORDER = new ThreadLocal<Set<File>>();
+	
 	/** The folder where this stream is being processed. */
 	private File folder;
 	
@@ -82,6 +104,9 @@ public class ArgScriptStream<T> {
 	/** An optional action executed every time a file is processed. */ 
 	private OnStartAction<T> onStartAction;
 	
+	/** An optional action executed when only a part of the text is parsed again, see {@link #processEdit(int, int, String)}. */
+	private OnReparseAction<T> onReparseAction;
+	
 	/** The minimum version the script must have. */
 	private int minVersion;
 	
@@ -167,9 +192,38 @@ public class ArgScriptStream<T> {
 	
 	private boolean isFastParsing;
 	
+	/** Whether edits can be processed by parsing only the first-level commands and blocks they affect. */
+	private boolean isIncrementalParsing;
+	
+	/** The last text that was processed, used to apply edits. */
+	private String processedText;
+	
+	/** The syntax highlighting of the lines before adding comments and variables, kept to process edits. */
+	private final SyntaxHighlighter linesSyntax = new SyntaxHighlighter();
+	
+	/** The last line where variables, definitions or the version were changed, or -1 if they weren't changed. */
+	private int lastStateLine = -1;
+	
 	// Used internally
 	private TextPositionMap commentTracker;
 	
+	// Reused on every line so processing a file does not allocate them again
+	private final TextPositionMap lineCommentTracker = new TextPositionMap();
+	private final TextPositionMap linePositionTracker = new TextPositionMap();
+	private final StringBuilder lineBuilder = new StringBuilder();
+	private char[] lineChars = new char[256];
+	
+	/** The entry of {@link ArgScriptIncludeCache} that records the file that is being included, if any. */
+	private ArgScriptIncludeCache.Entry includeEntry;
+	
+	/** The parsers that can be used in included files that are cached, as they only set variables or definitions. */
+	private final Set<ArgScriptParser<T>> includeCacheableParsers = new HashSet<ArgScriptParser<T>>();
+	
+	/** The variables, definitions and version the stream had before processing the first file, restored by {@link #reset()}. */
+	private HashMap<String, String> initialVariables;
+	private HashMap<String, ArgScriptDefinition> initialDefinitions;
+	private int initialVersion;
+	
 	/** A method used to generate descriptions for structure fragments. By default it shows the full line on 
 	 * first-level commands/blocks and only the keyword on everything else, but the user can override this functionality. */
 	private StructureNameFactory<ArgScriptLine> nameFactory = (fragment, text, line) -> {
@@ -223,6 +277,20 @@ public class ArgScriptStream<T> {
 		this.isFastParsing = isFastParsing;
 	}
 	
+	public boolean isIncrementalParsing() {
+		return isIncrementalParsing;
+	}
+	
+	/**
+	 * Sets whether edits processed with {@link #processEdit(int, int, String)} can parse only the first-level commands and blocks
+	 * affected by the edit. Only enable this if the data generated by one first-level command or block does not depend on the rest,
+	 * or if an {@link OnReparseAction} that adapts the data has been set.
+	 * @param isIncrementalParsing
+	 */
+	public void setIncrementalParsing(boolean isIncrementalParsing) {
+		this.isIncrementalParsing = isIncrementalParsing;
+	}
+	
 	//TODO check if this works: the position of a word changes when we replace variables!
 	
 	
@@ -266,6 +334,11 @@ public class ArgScriptStream<T> {
 		/** Are we inside a line comment? */
 		boolean insideComment = false;
 		
+		// Most lines don't have comments, there is nothing to remove
+		if (!insideBlockComment && line.indexOf('#') == -1) {
+			return line;
+		}
+		
 		StringBuilder sb = new StringBuilder();
 		
 		while ((index = line.indexOf("#", index+1)) != -1) {
@@ -344,10 +417,25 @@ public class ArgScriptStream<T> {
 	
 	public void addDefaultParsers() {
 		DefaultParsers.addDefaultParsers(this);
+		
+		for (String keyword : DefaultParsers.INCLUDE_CACHEABLE_KEYWORDS) {
+			includeCacheableParsers.add(parsers.get(keyword));
+		}
 	}
 	
+	/**
+	 * Sets the object that is being processed. If parsers have already been added, they are updated to use the new object
+	 * (without adding them again), so the same stream can be reused to process several objects.
+	 * @param data
+	 */
 	public void setData(T data) {
-		this.data = data;
+		if (this.data != data) {
+			this.data = data;
+			
+			for (ArgScriptParser<T> parser : parsers.values()) {
+				parser.rebindData(data);
+			}
+		}
 	}
 	
 	public T getData() {
@@ -358,6 +446,10 @@ public class ArgScriptStream<T> {
 		this.onStartAction = onStartAction;
 	}
 	
+	public void setOnReparseAction(OnReparseAction<T> onReparseAction) {
+		this.onReparseAction = onReparseAction;
+	}
+	
 	public SyntaxHighlighter getSyntaxHighlighter() {
 		return syntaxHighlighter;
 	}
@@ -384,11 +476,47 @@ public class ArgScriptStream<T> {
 		specialBlocks.clear();
 		nestedBlocks.clear();
 		
+		lastStateLine = -1;
+		
 		if (onStartAction != null) {
 			onStartAction.onStart(this, data);
 		}
 	}
 	
+	/**
+	 * Restores the stream to the state it had before processing the first file, so it can be reused to process another one
+	 * without generating it again: the variables, definitions and version are restored, and the folder, scopes, errors 
+	 * and processed text are removed. The parsers and the rest of settings are kept.
+	 */
+	public void reset() {
+		if (initialVariables != null) {
+			variables.clear();
+			variables.putAll(initialVariables);
+			definitions.clear();
+			definitions.putAll(initialDefinitions);
+			version = initialVersion;
+		}
+		
+		folder = null;
+		scopes.clear();
+		isIncluding = false;
+		includeEntry = null;
+		processedText = null;
+		documentStructure = null;
+		
+		currentLineNumber = 0;
+		errors.clear();
+		warnings.clear();
+		insideBlockComment = false;
+		linePositions.clear();
+		lineEnds.clear();
+		hyperlinkData.clear();
+		documentBlockFragments.clear();
+		specialBlocks.clear();
+		nestedBlocks.clear();
+		lastStateLine = -1;
+	}
+	
 	public void process(String text) {
 		Matcher matcher = NEWLINE_PATTERN.matcher(text);
 		List<String> lines = new ArrayList<String>();
@@ -409,6 +537,12 @@ public class ArgScriptStream<T> {
 		}
 		
 		if (!isIncluding) {
+			if (initialVariables == null) {
+				initialVariables = new HashMap<String, String>(variables);
+				initialDefinitions = new HashMap<String, ArgScriptDefinition>(definitions);
+				initialVersion = version;
+			}
+			
 			resetStatus();
 			
 			this.linePositions.addAll(linePositions);
@@ -441,7 +575,17 @@ public class ArgScriptStream<T> {
 			this.addError(new DocumentError("Block comment not closed. Close the comment with #>", 0, lines.get(lineNumber).length(), lineNumber));
 		}
 		
+		if (!isIncluding) {
+			processedText = text;
+		}
+		
 		if (hasSyntaxHighlighting()) {
+			if (isIncrementalParsing) {
+				// Keep the styles of the lines, as the ones in the syntax highlighter get mixed with comments and variables
+				linesSyntax.setText(text, linePositions);
+				linesSyntax.addAll(syntaxHighlighter);
+			}
+			
 			// First add variables, then comments
 			syntaxHighlighter.addExtras(variablesSyntax, true);
 			// Add the comments syntax highlighting, removing any previous style if necessary
@@ -449,17 +593,341 @@ public class ArgScriptStream<T> {
 		}
 	}
 	
+	/**
+	 * Returns the last text processed by this stream, or null if no text has been processed yet.
+	 * @return
+	 */
+	public String getProcessedText() {
+		return processedText;
+	}
+	
+	/**
+	 * Processes the text that results of applying an edit to the last processed text: the <code>removedLength</code> characters
+	 * at <code>offset</code> are replaced by <code>insertedText</code>.
+	 * <p>
+	 * If incremental parsing is enabled, only the first-level commands and blocks that contain the edit are parsed again;
+	 * the errors, hyperlinks, syntax highlighting and structure of the rest of the text are kept, and the data can adapt
+	 * using the {@link OnReparseAction}. The whole text is processed again (as in {@link #process(String)}) when incremental parsing is disabled
+	 * or when the result could be different, for example when the edit is inside a block comment or variables and definitions are changed.
+	 * @param offset The position in the last processed text where the edit starts.
+	 * @param removedLength The number of characters removed.
+	 * @param insertedText The text inserted at <code>offset</code>.
+	 * @return True if only a part of the text was parsed again, false if the whole text was processed.
+	 * @throws IllegalStateException If no text has been processed yet.
+	 */
+	public boolean processEdit(int offset, int removedLength, String insertedText) {
+		if (processedText == null) {
+			throw new IllegalStateException("Cannot process an edit before processing a text.");
+		}
+		
+		String text = processedText.substring(0, offset) + insertedText + processedText.substring(offset + removedLength);
+		
+		if (isIncrementalParsing && hasSyntaxHighlighting() && reprocess(text, offset, removedLength, insertedText.length())) {
+			processedText = text;
+			return true;
+		}
+		else {
+			process(text);
+			return false;
+		}
+	}
+	
+	private boolean reprocess(String text, int offset, int removedLength, int insertedLength) {
+		// If the last text did not finish correctly, the edit might affect everything that comes after it
+		if (documentStructure == null || insideBlockComment || !nestedBlocks.isEmpty() || !specialBlocks.isEmpty()) {
+			return false;
+		}
+		
+		if (removedLength == 0 && insertedLength == 0) {
+			// Nothing changed, but the syntax highlighter might have received other styles (such as errors)
+			mergeSyntax(text);
+			return true;
+		}
+		
+		int delta = insertedLength - removedLength;
+		
+		// The region that will be parsed again: the lines of the edit, extended to contain any first-level fragment they touch
+		int start = linePositions.get(getLineAt(offset));
+		int endLine = getLineAt(offset + removedLength);
+		// The edit ends inside a line break, such as between '\r' and '\n'
+		if (lineEnds.get(endLine) < offset + removedLength) ++endLine;
+		int end = lineEnds.get(endLine);
+		
+		List<DocumentFragment> fragments = documentStructure.getFragments();
+		// The fragments between firstFragment (inclusive) and nextFragment (exclusive) are replaced
+		int firstFragment = -1;
+		int nextFragment = fragments.size();
+		for (int i = 0; i < fragments.size(); i++) {
+			DocumentFragment fragment = fragments.get(i);
+			if (fragment.getStart() > end) {
+				nextFragment = i;
+				break;
+			}
+			if (fragment.getEnd() >= start) {
+				if (firstFragment == -1) firstFragment = i;
+				
+				start = Math.min(start, fragment.getStart());
+				end = Math.max(end, fragment.getEnd());
+			}
+		}
+		
+		if (firstFragment == -1) firstFragment = nextFragment;
+		
+		int firstLine = getLineAt(start);
+		int lastLine = getLineAt(end);
+		int newEnd = end + delta;
+		
+		// Variables and definitions affect every line that comes after them
+		if (lastStateLine >= firstLine) {
+			return false;
+		}
+		// A block comment that crosses the boundaries of the region
+		if (commentsSyntax.isInsideEntry(start) || commentsSyntax.isInsideEntry(end)) {
+			return false;
+		}
+		// A '\r\n' that was split by the edit
+		if (newEnd > 0 && newEnd < text.length() && text.charAt(newEnd - 1) == '\r' && text.charAt(newEnd) == '\n') {
+			return false;
+		}
+		
+		if (onReparseAction != null && !onReparseAction.onReparse(this, data, start, end, delta)) {
+			return false;
+		}
+		
+		// Calculate the new lines, moving the ones after the region
+		List<Integer> newPositions = new ArrayList<Integer>(linePositions.subList(0, firstLine));
+		List<Integer> newEnds = new ArrayList<Integer>(lineEnds.subList(0, firstLine));
+		
+		newPositions.add(start);
+		Matcher matcher = NEWLINE_PATTERN.matcher(text).region(start, newEnd);
+		while (matcher.find()) {
+			newEnds.add(matcher.start());
+			newPositions.add(matcher.end());
+		}
+		newEnds.add(newEnd);
+		
+		int newLastLine = newPositions.size() - 1;
+		int lineDelta = newLastLine - lastLine;
+		
+		for (int i = lastLine + 1; i < linePositions.size(); i++) {
+			newPositions.add(linePositions.get(i) + delta);
+			newEnds.add(lineEnds.get(i) + delta);
+		}
+		
+		linePositions.clear();
+		linePositions.addAll(newPositions);
+		lineEnds.clear();
+		lineEnds.addAll(newEnds);
+		
+		// Remove the information of the region and move the rest; the new information will be inserted where the old one was
+		int errorIndex = moveErrors(errors, firstLine, lastLine, lineDelta);
+		int warningIndex = moveErrors(warnings, firstLine, lastLine, lineDelta);
+		int hyperlinkIndex = -1;
+		
+		ListIterator<HyperlinkData> hyperlinks = hyperlinkData.listIterator();
+		while (hyperlinks.hasNext()) {
+			HyperlinkData hyperlink = hyperlinks.next();
+			if (hyperlink.line >= firstLine && hyperlink.line <= lastLine) {
+				hyperlinks.remove();
+			}
+			else if (hyperlink.line > lastLine) {
+				if (hyperlinkIndex == -1) hyperlinkIndex = hyperlinks.previousIndex();
+				if (lineDelta != 0) {
+					hyperlinks.set(new HyperlinkData(hyperlink.type, hyperlink.object, hyperlink.line + lineDelta, hyperlink.start, hyperlink.end));
+				}
+			}
+		}
+		if (hyperlinkIndex == -1) hyperlinkIndex = hyperlinkData.size();
+		
+		linesSyntax.replaceText(text, linePositions, start, end, delta);
+		commentsSyntax.replaceText(text, linePositions, start, end, delta);
+		variablesSyntax.replaceText(text, linePositions, start, end, delta);
+		syntaxHighlighter.setText(text, linePositions);
+		
+		List<String> oldDescriptions = new ArrayList<String>();
+		for (int i = firstFragment; i < nextFragment; i++) {
+			oldDescriptions.add(fragments.get(i).getDescription());
+		}
+		List<DocumentFragment> nextFragments = new ArrayList<DocumentFragment>(fragments.subList(nextFragment, fragments.size()));
+		fragments.subList(firstFragment, fragments.size()).clear();
+		documentStructure.setText(text);
+		documentBlockFragments.clear();
+		
+		// Parse the region again
+		int stateLine = lastStateLine;
+		int errorCount = errors.size();
+		int warningCount = warnings.size();
+		int hyperlinkCount = hyperlinkData.size();
+		
+		for (currentLineNumber = firstLine; currentLineNumber <= newLastLine; currentLineNumber++) {
+			String line = text.substring(linePositions.get(currentLineNumber), lineEnds.get(currentLineNumber));
+			try {
+				processLine(line);
+			} catch (Exception e) {
+				e.printStackTrace();
+				addError(new DocumentError(e.getMessage(), 0, line.length()));
+			}
+		}
+		
+		boolean isDataKept = onReparseAction == null || onReparseAction.afterReparse(this, data);
+		
+		// The new lines must close everything they open, and must not change the first-level commands and blocks
+		// (such as their names) because other parts of the text might use them
+		if (!isDataKept || insideBlockComment || !nestedBlocks.isEmpty() || !specialBlocks.isEmpty() || lastStateLine != stateLine) {
+			return false;
+		}
+		List<String> newDescriptions = new ArrayList<String>();
+		for (int i = firstFragment; i < fragments.size(); i++) {
+			newDescriptions.add(fragments.get(i).getDescription());
+		}
+		if (!oldDescriptions.equals(newDescriptions)) {
+			return false;
+		}
+		
+		for (DocumentFragment fragment : nextFragments) {
+			fragment.move(delta);
+		}
+		fragments.addAll(nextFragments);
+		
+		moveAddedItems(errors, errorCount, errorIndex);
+		moveAddedItems(warnings, warningCount, warningIndex);
+		moveAddedItems(hyperlinkData, hyperlinkCount, hyperlinkIndex);
+		
+		linesSyntax.addAll(syntaxHighlighter);
+		mergeSyntax(text);
+		
+		return true;
+	}
+	
+	/** Generates the syntax highlighting from the styles of the lines, the variables and the comments. */
+	private void mergeSyntax(String text) {
+		syntaxHighlighter.setText(text, linePositions);
+		syntaxHighlighter.addAll(linesSyntax);
+		syntaxHighlighter.addExtras(variablesSyntax, true);
+		syntaxHighlighter.addExtras(commentsSyntax, true);
+	}
+	
+	/** 
+	 * Removes the errors of the lines between firstLine and lastLine (both inclusive), and moves the line of the errors after them.
+	 * Returns the index of the first error after the lines.
+	 */
+	private static int moveErrors(List<DocumentError> list, int firstLine, int lastLine, int lineDelta) {
+		int index = -1;
+		ListIterator<DocumentError> it = list.listIterator();
+		while (it.hasNext()) {
+			DocumentError error = it.next();
+			if (error.getLine() >= firstLine && error.getLine() <= lastLine) {
+				it.remove();
+			}
+			else if (error.getLine() > lastLine) {
+				if (index == -1) index = it.previousIndex();
+				error.setLine(error.getLine() + lineDelta);
+			}
+		}
+		return index == -1 ? list.size() : index;
+	}
+	
+	/** Moves the items added to the end of the list (the ones after oldSize) to the given index. */
+	private static <E> void moveAddedItems(List<E> list, int oldSize, int index) {
+		if (index < oldSize) {
+			List<E> addedItems = new ArrayList<E>(list.subList(oldSize, list.size()));
+			list.subList(oldSize, list.size()).clear();
+			list.addAll(index, addedItems);
+		}
+	}
+	
+	/** Returns the index of the line that contains the given position of the last processed text. */
+	private int getLineAt(int position) {
+		int index = Collections.binarySearch(linePositions, position);
+		return index >= 0 ? index : -index - 2;
+	}
+	
 	// Similar to process, but this restores the line number, errors, etc after it
 	public void includeFile(File file) throws Exception {
+		recordIncludedFile(file);
+		
+		// Inside blocks or comments the file might be parsed differently, so it is not cached
+		boolean useCache = nestedBlocks.isEmpty() && specialBlocks.isEmpty() && !insideBlockComment;
+		
+		if (useCache) {
+			ArgScriptIncludeCache.Entry entry = ArgScriptIncludeCache.get(this, file);
+			if (entry != null) {
+				variables.putAll(entry.variables);
+				definitions.putAll(entry.definitions);
+				if (!entry.variables.isEmpty() || !entry.definitions.isEmpty()) {
+					lastStateLine = currentLineNumber;
+				}
+				
+				if (includeEntry != null) {
+					includeEntry.addAll(entry);
+				}
+				// The files it included are not processed again, but they are used as well
+				for (File dependency : entry.dependencies.keySet()) {
+					recordIncludedFile(dependency);
+				}
+				return;
+			}
+		}
+		
+		// Record what the file does; if it's included by another file, that one needs it too
+		ArgScriptIncludeCache.Entry parentEntry = includeEntry;
+		ArgScriptIncludeCache.Entry entry = useCache || parentEntry != null ? ArgScriptIncludeCache.create(file) : null;
+		includeEntry = entry;
+		
+		List<DocumentError> errors;
+		try {
+			errors = protectedParsing(() -> {
+				process(file);
+			});
+		}
+		finally {
+			includeEntry = parentEntry;
+		}
+		
+		if (entry != null) {
+			// The file must not leave any block or comment open; errors must be reported every time it's included
+			entry.isCacheable &= useCache && errors.isEmpty() && nestedBlocks.isEmpty() && specialBlocks.isEmpty() && !insideBlockComment;
+			
+			if (entry.isCacheable) {
+				ArgScriptIncludeCache.put(this, entry);
+			}
+			if (parentEntry != null) {
+				parentEntry.addAll(entry);
+			}
+		}
 		
-		List<DocumentError> errors = protectedParsing(() -> {
-			process(file);
-		});
 		if (!errors.isEmpty()) {
 			addError(line.createError("Cannot include file: " + errors.get(0).getMessage()));
 		}
 	}
 	
+	/**
+	 * Called when an included file does not exist, so cached files that include it are parsed again if it's created.
+	 */
+	void onMissingInclude(File file) {
+		recordIncludedFile(file);
+		if (includeEntry != null) {
+			includeEntry.addDependency(file);
+		}
+	}
+	
+	/**
+	 * Sets a set where all the files included by the streams of the current thread are added, including the ones that don't exist.
+	 * This is used to know which files were used to generate a file, for example when packing incrementally.
+	 * @param files The set where the files are recorded, or null to stop recording them.
+	 */
+	public static void setIncludedFilesRecorder(Set<File> files) {
+		if (files == null) INCLUDED_FILES_RECORDER.remove();
+		else INCLUDED_FILES_RECORDER.set(files);
+	}
+	
+	private static void recordIncludedFile(File file) {
+		Set<File> files = INCLUDED_FILES_RECORDER.get();
+		if (files != null) {
+			files.add(file);
+		}
+	}
+	
 	@FunctionalInterface
 	public interface ParsingRunnable {
 	    void run() throws Exception;
@@ -501,7 +969,8 @@ public class ArgScriptStream<T> {
 	
 	public boolean processLine(String text) {
 		
-		commentTracker = new TextPositionMap();
+		commentTracker = lineCommentTracker;
+		commentTracker.clear();
 		text = removeComments(text, commentTracker);
 		
 		if (text == null) return false;
@@ -550,14 +1019,27 @@ public class ArgScriptStream<T> {
 			}
 		}
 		
-		TextPositionMap positionTracker = new TextPositionMap();
-		positionTracker.addAll(commentTracker);
-		StringBuilder dst = new StringBuilder();
-		if (!replaceVariables(text.toCharArray(), dst, commentTracker, positionTracker)) {
-			return false;
-		}
+		TextPositionMap positionTracker = commentTracker;
 		
-		text = dst.toString();
+		// Without variables the text doesn't change, so there is no need to copy it
+		if (text.indexOf('$') != -1) {
+			int length = text.length();
+			if (lineChars.length < length) {
+				lineChars = new char[Math.max(length, lineChars.length * 2)];
+			}
+			text.getChars(0, length, lineChars, 0);
+			
+			positionTracker = linePositionTracker;
+			positionTracker.clear();
+			positionTracker.addAll(commentTracker);
+			StringBuilder dst = lineBuilder;
+			dst.setLength(0);
+			if (!replaceVariables(lineChars, length, dst, commentTracker, positionTracker)) {
+				return false;
+			}
+			
+			text = dst.toString();
+		}
 		
 		// Only parse it if there are no errors
 		if (line.fromLine(text, positionTracker)) {
@@ -583,10 +1065,17 @@ public class ArgScriptStream<T> {
 				}
 				
 				if (parser == null) {
+					if (includeEntry != null) {
+						includeEntry.isCacheable = false;
+					}
 					addError(line.createErrorForKeyword(String.format("Unrecognised command '%s'.", keyword)));
 					return false;
 				}
 				
+				if (includeEntry != null && !includeCacheableParsers.contains(parser)) {
+					includeEntry.isCacheable = false;
+				}
+				
 				// We want to do special syntax highlighting on end keywords,
 				// so we will store the number of blocks before and after parsing the line;
 				// if they are different, then it was a block
@@ -712,6 +1201,11 @@ public class ArgScriptStream<T> {
 	 */
 	public void addDefinition(ArgScriptDefinition definition) {
 		definitions.put(definition.getName(), definition);
+		lastStateLine = currentLineNumber;
+		
+		if (includeEntry != null) {
+			includeEntry.definitions.put(definition.getName(), definition);
+		}
 	}
 	
 	/**
@@ -720,6 +1214,10 @@ public class ArgScriptStream<T> {
 	 * @return True if the definition was removed, false if it didn't exist.
 	 */
 	public boolean removeDefinition(String name) {
+		lastStateLine = currentLineNumber;
+		if (includeEntry != null) {
+			includeEntry.isCacheable = false;
+		}
 		return definitions.remove(name) != null;
 	}
 	
@@ -729,7 +1227,11 @@ public class ArgScriptStream<T> {
 	 * @return
 	 */
 	public ArgScriptDefinition getDefinition(String name) {
-		return definitions.getOrDefault(name, null);
+		ArgScriptDefinition definition = definitions.getOrDefault(name, null);
+		if (includeEntry != null) {
+			includeEntry.readDefinition(name, definition);
+		}
+		return definition;
 	}
 	
 	
@@ -885,6 +1387,7 @@ public class ArgScriptStream<T> {
 	 */
 	public void setVersion(int version) {
 		this.version = version;
+		lastStateLine = currentLineNumber;
 	}
 	
 	/* -- ------ -- */
@@ -903,6 +1406,14 @@ public class ArgScriptStream<T> {
 	 * @return The value assigned to the variable, or null if it is not assigned.
 	 */
 	public String getVariable(String name) {
+		String value = findVariable(name);
+		if (includeEntry != null) {
+			includeEntry.readVariable(name, value);
+		}
+		return value;
+	}
+	
+	private String findVariable(String name) {
 		if (name.startsWith(":")) {
 			// It's a global variable
 			return globalVariables.getOrDefault(name.substring(1), null);
@@ -948,6 +1459,11 @@ public class ArgScriptStream<T> {
 		
 		if (this.replaceVariables(value.toCharArray(), sb_value, null, null)) {
 			this.variables.put(name.toString(), value);
+			lastStateLine = currentLineNumber;
+			
+			if (includeEntry != null) {
+				includeEntry.variables.put(name.toString(), value);
+			}
 		}
 	}
 	
@@ -963,6 +1479,11 @@ public class ArgScriptStream<T> {
 		
 		if (this.replaceVariables(value.toCharArray(), sb_value, null, null)) {
 			this.variables.put(name, value);
+			lastStateLine = currentLineNumber;
+			
+			if (includeEntry != null) {
+				includeEntry.variables.put(name, value);
+			}
 		}
 	}
 	
@@ -992,6 +1513,10 @@ public class ArgScriptStream<T> {
 	 * @param scope The string that represents the scope, such as <code>Intel:GraphicCards</code>.
 	 */
 	public void purgeScope(String scope) {
+		lastStateLine = currentLineNumber;
+		if (includeEntry != null) {
+			includeEntry.isCacheable = false;
+		}
 		for (String key : variables.keySet()) {
 			
 			if (key.startsWith(scope)) {
@@ -2018,6 +2543,14 @@ public class ArgScriptStream<T> {
 	 * @return Whether the operation succeeded (true) or there were any errors (false).
 	 */
 	protected boolean replaceVariables(char[] text, StringBuilder dst, TextPositionMap sourceTracker, TextPositionMap dstTracker) {
+		return replaceVariables(text, text.length, dst, sourceTracker, dstTracker);
+	}
+	
+	/**
+	 * Same as {@link #replaceVariables(char[], StringBuilder, TextPositionMap, TextPositionMap)}, but only the first
+	 * <code>length</code> characters of the array are used.
+	 */
+	protected boolean replaceVariables(char[] text, int length, StringBuilder dst, TextPositionMap sourceTracker, TextPositionMap dstTracker) {
 		int startIndex = 0;
 		
 		// Are we inside a brace?
@@ -2026,7 +2559,7 @@ public class ArgScriptStream<T> {
 		boolean trackPosition = sourceTracker != null && dstTracker != null;
 		
 		// Keep reading until we find a $, then read the variable name and replace it with the value
-		for (int i = 0; i < text.length; i++) {
+		for (int i = 0; i < length; i++) {
 			
 			if (text[i] == '$') {
 				
@@ -2044,7 +2577,7 @@ public class ArgScriptStream<T> {
 				i++;
 				
 				// Check to avoid throwing out of bounds exceptions
-				if (i == text.length) {
+				if (i == length) {
 					addError(new DocumentError("Missing variable name after '$'.", i-1, i));
 					return false;
 				}
@@ -2057,7 +2590,7 @@ public class ArgScriptStream<T> {
 				}
 				
 				// Check to avoid throwing out of bounds exceptions
-				if (i == text.length) {
+				if (i == length) {
 					int errorStart = i-2;
 					int errorEnd = i;
 					
@@ -2076,7 +2609,7 @@ public class ArgScriptStream<T> {
 				int varStart = i;
 				
 				// Keep using the same 'i' variable
-				for (; i < text.length; i++) {
+				for (; i < length; i++) {
 					if (Character.isAlphabetic(text[i]) || Character.isDigit(text[i]) || text[i] == '_' || text[i] == ':') {
 						varName.append(text[i]);
 					}
@@ -2103,7 +2636,7 @@ public class ArgScriptStream<T> {
 				
 				if (insideBraces) {
 					// Ensure the brace is closed now
-					if (i == text.length || text[i] != '}') {
+					if (i == length || text[i] != '}') {
 						int errorStart = i-1;
 						int errorEnd = i;
 						
@@ -2122,7 +2655,10 @@ public class ArgScriptStream<T> {
 					insideBraces = false;
 				}
 				
-				variablesSyntax.add(currentLineNumber, syntaxStart, i - syntaxStart, Collections.singleton(SYNTAX_VARIABLE));
+				// Included files don't have syntax highlighting
+				if (hasSyntaxHighlighting()) {
+					variablesSyntax.add(currentLineNumber, syntaxStart, i - syntaxStart, Collections.singleton(SYNTAX_VARIABLE));
+				}
 				
 				// Replace the variable with its value
 				String value = this.getVariable(variableName);
@@ -2152,8 +2688,8 @@ public class ArgScriptStream<T> {
 		}
 		
 		// Write the remaining text
-		if (startIndex < text.length) {
-			dst.append(text, startIndex, text.length - startIndex);
+		if (startIndex < length) {
+			dst.append(text, startIndex, length - startIndex);
 		}
 		
 		return true;
@@ -30,6 +30,11 @@ import sporemodder.file.DocumentException;
 import sporemodder.util.ColorRGBA;
 
 class DefaultParsers {
+	
+	/** The keywords of the parsers that only change variables or definitions, so the files that only use them can be cached when included. */
+	static final String[] INCLUDE_CACHEABLE_KEYWORDS = {"include", "sinclude", "set", "sete", "setb", "seti", "setf", "setc", 
+			"setv2", "setv3", "setv4", "if", "define"};
+	
 	static <T> void addDefaultParsers(ArgScriptStream<T> stream) {
 		
 		stream.addParser("include", ArgScriptParser.create((parser, line) -> {
@@ -55,6 +60,7 @@ class DefaultParsers {
 					}
 				}
 				else {
+					stream.onMissingInclude(file);
 					stream.addError(line.createError("The specified file does not exist."));
 				}
 			}
@@ -84,6 +90,7 @@ class DefaultParsers {
 					}
 				}
 				else {
+					stream.onMissingInclude(file);
 					stream.addWarning(line.createError("The specified file does not exist."));
 				}
 			}
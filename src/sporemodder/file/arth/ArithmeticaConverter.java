@@ -31,7 +31,7 @@ import sporemodder.file.DocumentError;
 import sporemodder.file.DocumentException;
 import sporemodder.file.ResourceKey;
 import sporemodder.file.dbpf.DBPFPacker;
-import sporemodder.file.filestructures.FileStream;
+import sporemodder.file.filestructures.BufferedFileStream;
 import sporemodder.file.filestructures.StreamReader;
 import sporemodder.file.filestructures.StreamWriter;
 import sporemodder.util.ProjectItem;
@@ -57,6 +57,11 @@ public class ArithmeticaConverter implements Converter {
 		return decode(stream, Converter.getOutputFile(key, outputFolder, "arth_t"));
 	}
 
+	@Override
+	public String getDecodedExtension(ResourceKey key) {
+		return "arth_t";
+	}
+
 	@Override
 	public boolean encode(File input, StreamWriter output) throws Exception {
 		ArithmeticaFile arth = new ArithmeticaFile();
@@ -134,7 +139,7 @@ public class ArithmeticaConverter implements Converter {
 					File file = new File(item.getFile().getParentFile(), name);
 					
 					boolean result = UIManager.get().tryAction(() -> {
-						try (FileStream stream = new FileStream(new File(item.getFile().getParentFile(), name), "rw")) {
+						try (BufferedFileStream stream = new BufferedFileStream(new File(item.getFile().getParentFile(), name), "rw")) {
 							encode(item.getFile(), stream);
 							
 							ProjectManager.get().selectItem(ProjectManager.get().getSiblingItem(item, name));
@@ -156,7 +161,7 @@ public class ArithmeticaConverter implements Converter {
 					menuItem.setOnAction(event -> {
 						final File outputFile = Converter.getOutputFile(key, item.getFile().getParentFile(), "arth_t");
 						boolean result = UIManager.get().tryAction(() -> {
-							try (FileStream stream = new FileStream(item.getFile(), "r")) {
+							try (BufferedFileStream stream = new BufferedFileStream(item.getFile(), "r")) {
 								decode(stream, outputFile);
 								
 								ProjectManager.get().selectItem(ProjectManager.get().getSiblingItem(item, outputFile.getName()));
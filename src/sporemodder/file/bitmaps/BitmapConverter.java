@@ -26,7 +26,7 @@ import java.util.List;
 
 import javax.imageio.ImageIO;
 
-import sporemodder.file.filestructures.FileStream;
+import sporemodder.file.filestructures.BufferedFileStream;
 import sporemodder.file.filestructures.StreamReader;
 import sporemodder.file.filestructures.StreamWriter;
 import javafx.embed.swing.SwingFXUtils;
@@ -59,6 +59,11 @@ public class BitmapConverter implements Converter {
 		return decode(stream, Converter.getOutputFile(key, outputFolder, "png"), key.getTypeID());
 	}
 
+	@Override
+	public String getDecodedExtension(ResourceKey key) {
+		return "png";
+	}
+
 	@Override
 	public boolean encode(File input, StreamWriter output) throws Exception {
 		checkExtensions();
@@ -157,7 +162,7 @@ public class BitmapConverter implements Converter {
 					File file = new File(item.getFile().getParentFile(), name);
 					
 					boolean result = UIManager.get().tryAction(() -> {
-						try (FileStream stream = new FileStream(new File(item.getFile().getParentFile(), name), "rw")) {
+						try (BufferedFileStream stream = new BufferedFileStream(new File(item.getFile().getParentFile(), name), "rw")) {
 							encode(item.getFile(), stream);
 							
 							ProjectManager.get().selectItem(ProjectManager.get().getSiblingItem(item, name));
@@ -179,7 +184,7 @@ public class BitmapConverter implements Converter {
 					menuItem.setOnAction(event -> {
 						final File outputFile = Converter.getOutputFile(key, item.getFile().getParentFile(), "png");
 						boolean result = UIManager.get().tryAction(() -> {
-							try (FileStream stream = new FileStream(item.getFile(), "r")) {
+							try (BufferedFileStream stream = new BufferedFileStream(item.getFile(), "r")) {
 								decode(stream, outputFile, HashManager.get().getTypeHash(item.getSpecificExtension()));
 								
 								ProjectManager.get().selectItem(ProjectManager.get().getSiblingItem(item, outputFile.getName()));
@@ -13,7 +13,7 @@ import sporemodder.file.DocumentException;
 import sporemodder.file.ResourceKey;
 import sporemodder.file.argscript.ArgScriptStream;
 import sporemodder.file.dbpf.DBPFPacker;
-import sporemodder.file.filestructures.FileStream;
+import sporemodder.file.filestructures.BufferedFileStream;
 import sporemodder.file.filestructures.StreamReader;
 import sporemodder.file.filestructures.StreamWriter;
 import sporemodder.util.ProjectItem;
@@ -39,6 +39,11 @@ public class CellBackgroundMapConverter implements Converter {
 		return decode(stream, Converter.getOutputFile(key, outputFolder, "backgroundMap_t"));
 	}
 
+	@Override
+	public String getDecodedExtension(ResourceKey key) {
+		return "backgroundMap_t";
+	}
+
 	@Override
 	public boolean encode(File input, StreamWriter output) throws Exception {
 		CellBackgroundMapFile unit = new CellBackgroundMapFile();
@@ -125,7 +130,7 @@ public class CellBackgroundMapConverter implements Converter {
 					File file = new File(item.getFile().getParentFile(), name);
 					
 					boolean result = UIManager.get().tryAction(() -> {
-						try (FileStream stream = new FileStream(new File(item.getFile().getParentFile(), name), "rw")) {
+						try (BufferedFileStream stream = new BufferedFileStream(new File(item.getFile().getParentFile(), name), "rw")) {
 							encode(item.getFile(), stream);
 							
 							ProjectManager.get().selectItem(ProjectManager.get().getSiblingItem(item, name));
@@ -147,7 +152,7 @@ public class CellBackgroundMapConverter implements Converter {
 					menuItem.setOnAction(event -> {
 						final File outputFile = Converter.getOutputFile(key, item.getFile().getParentFile(), "backgroundMap_t");
 						boolean result = UIManager.get().tryAction(() -> {
-							try (FileStream stream = new FileStream(item.getFile(), "r")) {
+							try (BufferedFileStream stream = new BufferedFileStream(item.getFile(), "r")) {
 								decode(stream, outputFile);
 								
 								ProjectManager.get().selectItem(ProjectManager.get().getSiblingItem(item, outputFile.getName()));
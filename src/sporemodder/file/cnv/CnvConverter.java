@@ -21,7 +21,7 @@ package sporemodder.file.cnv;
 import java.io.File;
 import java.io.PrintWriter;
 
-import sporemodder.file.filestructures.FileStream;
+import sporemodder.file.filestructures.BufferedFileStream;
 import sporemodder.file.filestructures.StreamReader;
 import sporemodder.file.filestructures.StreamWriter;
 import javafx.scene.control.ContextMenu;
@@ -57,10 +57,15 @@ public class CnvConverter implements Converter {
 		return decode(stream, Converter.getOutputFile(key, outputFolder, "cnv_t"));
 	}
 
+	@Override
+	public String getDecodedExtension(ResourceKey key) {
+		return "cnv_t";
+	}
+
 	@Override
 	public boolean encode(File input, StreamWriter output) throws Exception {
 		CnvUnit unit = new CnvUnit();
-		ArgScriptStream<CnvUnit> stream = unit.generateStream();
+		ArgScriptStream<CnvUnit> stream = unit.getPooledStream();
 		stream.setFolder(input.getParentFile());
 		stream.setFastParsing(true);
 		stream.process(input);
@@ -72,7 +77,7 @@ public class CnvConverter implements Converter {
 	public boolean encode(File input, DBPFPacker packer, int groupID) throws Exception {
 		if (isEncoder(input)) {
 			CnvUnit unit = new CnvUnit();
-			ArgScriptStream<CnvUnit> stream = unit.generateStream();
+			ArgScriptStream<CnvUnit> stream = unit.getPooledStream();
 			stream.setFolder(input.getParentFile());
 			stream.setFastParsing(true);
 			stream.process(input);
@@ -142,7 +147,7 @@ public class CnvConverter implements Converter {
 					File file = new File(item.getFile().getParentFile(), name);
 					
 					boolean result = UIManager.get().tryAction(() -> {
-						try (FileStream stream = new FileStream(new File(item.getFile().getParentFile(), name), "rw")) {
+						try (BufferedFileStream stream = new BufferedFileStream(new File(item.getFile().getParentFile(), name), "rw")) {
 							encode(item.getFile(), stream);
 							
 							ProjectManager.get().selectItem(ProjectManager.get().getSiblingItem(item, name));
@@ -164,7 +169,7 @@ public class CnvConverter implements Converter {
 					menuItem.setOnAction(event -> {
 						final File outputFile = Converter.getOutputFile(key, item.getFile().getParentFile(), "cnv_t");
 						boolean result = UIManager.get().tryAction(() -> {
-							try (FileStream stream = new FileStream(item.getFile(), "r")) {
+							try (BufferedFileStream stream = new BufferedFileStream(item.getFile(), "r")) {
 								decode(stream, outputFile);
 								
 								ProjectManager.get().selectItem(ProjectManager.get().getSiblingItem(item, outputFile.getName()));
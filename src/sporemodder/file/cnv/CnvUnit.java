@@ -40,6 +40,8 @@ import sporemodder.util.NameRegistry;
 
 public class CnvUnit {
 	
+	private static final ThreadLocal<ArgScriptStream<CnvUnit>> POOLED_STREAM = ThreadLocal.withInitial(() -> new CnvUnit().generateStream());
+	
 	public static NameRegistry FLAGS_REGISTRY;
 	
 	public static void loadNameRegistry() {
@@ -189,6 +191,18 @@ public class CnvUnit {
 		unknowns.clear();
 	}
 	
+	/**
+	 * Returns the ArgScript stream used to parse CNV files into this object, reusing the one of the current thread so its
+	 * parsers are only created once. The stream is reset every time this method is called, so it must not be kept.
+	 * @return
+	 */
+	public ArgScriptStream<CnvUnit> getPooledStream() {
+		ArgScriptStream<CnvUnit> stream = POOLED_STREAM.get();
+		stream.reset();
+		stream.setData(this);
+		return stream;
+	}
+	
 	public ArgScriptStream<CnvUnit> generateStream() {
 		ArgScriptStream<CnvUnit> stream = new ArgScriptStream<CnvUnit>();
 		stream.setData(this);
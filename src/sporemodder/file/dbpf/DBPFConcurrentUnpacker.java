@@ -7,21 +7,22 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ForkJoinPool;
-import java.util.concurrent.ForkJoinTask;
-import java.util.concurrent.RecursiveAction;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.DoubleAdder;
 
-import sporemodder.file.filestructures.FileStream;
+import sporemodder.file.filestructures.BufferedFileStream;
 import sporemodder.file.filestructures.MemoryStream;
 import sporemodder.file.filestructures.StreamReader;
 import sporemodder.HashManager;
 import sporemodder.MessageManager;
 import sporemodder.MessageManager.MessageType;
 import sporemodder.file.Converter;
-import sporemodder.file.ResourceKey;
+import sporemodder.file.ResourceKeySet;
 import sporemodder.file.dbpf.DBPFUnpackingTask.DBPFItemFilter;
 import sporemodder.util.Project;
 import sporemodder.util.Project.PackageSignature;
@@ -31,8 +32,17 @@ public class DBPFConcurrentUnpacker {
 	/** The estimated progress (in [0, 1]) that reading the index takes. */ 
 	private static final double INDEX_PROGRESS = 0.15;
 	
+	/** The maximum amount of item bytes (compressed and decompressed) that can be waiting or being converted at the same time. */
+	private static final int DEFAULT_MAX_BYTES_IN_FLIGHT = (int) Math.min(Runtime.getRuntime().maxMemory() / 4, 512 << 20);
+	
 	// Cannot use getProgress() as it throws thread exception
-	private double progress = 0;
+	private final DoubleAdder progress = new DoubleAdder();
+	
+	/** How many threads are used to decompress and convert the items. */
+	private int threadCount = Runtime.getRuntime().availableProcessors();
+	
+	/** Limits the memory used by items that have been read but not converted yet. */
+	private int maxBytesInFlight = DEFAULT_MAX_BYTES_IN_FLIGHT;
 	
 	/** The list of input DBPF files, in order of priority. */
 	private final List<File> inputFiles = new ArrayList<File>();
@@ -44,7 +54,7 @@ public class DBPFConcurrentUnpacker {
 	private File outputFolder;
 	
 	/** We will keep all files that couldn't be converted here, so that we can keep unpacking the DBPF. */
-	private final HashMap<DBPFItem, Exception> exceptions = new HashMap<DBPFItem, Exception>();
+	private final Map<DBPFItem, Exception> exceptions = new ConcurrentHashMap<DBPFItem, Exception>();
 	
 	/** All the converters used .*/
 	private final List<Converter> converters;
@@ -112,6 +122,31 @@ public class DBPFConcurrentUnpacker {
 		this.itemFilter = itemFilter;
 	}
 	
+	/**
+	 * Sets how many threads are used to decompress and convert the items. The package itself is always read by the calling thread.
+	 * @param threadCount
+	 */
+	public void setThreadCount(int threadCount) {
+		this.threadCount = Math.max(1, threadCount);
+	}
+	
+	public int getThreadCount() {
+		return threadCount;
+	}
+	
+	/**
+	 * Sets the maximum amount of bytes that can be read from the package and not converted yet; when this limit is reached,
+	 * reading stops until the workers finish some items. Both the compressed and decompressed size of an item count.
+	 * @param maxBytesInFlight
+	 */
+	public void setMaxBytesInFlight(int maxBytesInFlight) {
+		this.maxBytesInFlight = Math.max(1, maxBytesInFlight);
+	}
+	
+	public int getMaxBytesInFlight() {
+		return maxBytesInFlight;
+	}
+	
 	private static void findNamesFile(List<DBPFItem> items, StreamReader in) throws IOException {
 		HashManager hasher = HashManager.get();
 		int group = hasher.getFileHash("sporemaster");
@@ -127,23 +162,29 @@ public class DBPFConcurrentUnpacker {
 		}
 	}
 	
-	private class FileConvertAction extends RecursiveAction {
+	/**
+	 * Decompresses and converts a single item. The action only holds the data as it is stored in the package,
+	 * so compressed items don't use their full size until a worker starts with them.
+	 */
+	private class FileConvertAction implements Runnable {
 		final DBPFItem item;
 		final File folder;
-		final MemoryStream dataStream;
+		final byte[] storedData;
 		final double inc;
-		final CountDownLatch latch;
+		final Semaphore bytesInFlight;
+		final int permits;
 		
-		FileConvertAction(DBPFItem item, File folder, MemoryStream dataStream, double inc, CountDownLatch latch) {
+		FileConvertAction(DBPFItem item, File folder, byte[] storedData, double inc, Semaphore bytesInFlight, int permits) {
 			this.item = item;
 			this.folder = folder;
-			this.dataStream = dataStream;
+			this.storedData = storedData;
 			this.inc = inc;
-			this.latch = latch;
+			this.bytesInFlight = bytesInFlight;
+			this.permits = permits;
 		}
 		
-		@Override public void compute() {
-			try {
+		@Override public void run() {
+			try (MemoryStream dataStream = decompress()) {
 				HashManager hasher = HashManager.get();
 				int groupID = item.name.getGroupID();
 				int instanceID = item.name.getInstanceID();
@@ -199,12 +240,31 @@ public class DBPFConcurrentUnpacker {
 				exceptions.put(item, e);
 			}
 			finally {
-				dataStream.close();
 				incProgress(inc);
-				latch.countDown();
+				bytesInFlight.release(permits);
+			}
+		}
+		
+		private MemoryStream decompress() throws IOException {
+			if (item.isCompressed) {
+				byte[] out = new byte[item.memSize];
+				RefPackCompression.decompressFast(storedData, out);
+				return new MemoryStream(out);
+			}
+			else {
+				return new MemoryStream(storedData);
 			}
 		}
 	}
+	
+	/**
+	 * Returns how many bytes of the in-flight limit an item takes. Items bigger than the limit take all of it, so they are
+	 * converted on their own instead of blocking forever.
+	 */
+	private int getItemPermits(DBPFItem item) {
+		long size = item.isCompressed ? (long) item.compressedSize + item.memSize : item.memSize;
+		return (int) Math.max(1, Math.min(size, maxBytesInFlight));
+	}
 
 	//@Override
 	public Exception call() throws Exception {
@@ -214,19 +274,22 @@ public class DBPFConcurrentUnpacker {
 		HashManager hasher = HashManager.get();
 		long initialTime = System.currentTimeMillis();
 		
-		final HashMap<Integer, List<ResourceKey>> writtenFiles = new HashMap<Integer, List<ResourceKey>>();
+		final ResourceKeySet writtenFiles = new ResourceKeySet();
 		boolean checkFiles = inputFiles.size() > 1;  // only check already existing files if we are unpacking more than one package at once
 		
 		for (File inputFile : inputFiles) {
 			if (!inputFile.exists()) {
-				incProgress(100.0f / inputFiles.size());
+				incProgress(1.0 / inputFiles.size());
 				failedDBPFs.add(inputFile);
 				continue;
 			}
 			
 			for (Converter converter : converters) converter.reset();
 			
-			try (StreamReader packageStream = new FileStream(inputFile, "r"))  {
+			ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+			Semaphore bytesInFlight = new Semaphore(maxBytesInFlight);
+			
+			try (StreamReader packageStream = new BufferedFileStream(inputFile, "r"))  {
 				
 				//updateMessage("Reading file index...");
 				
@@ -246,73 +309,70 @@ public class DBPFConcurrentUnpacker {
 				hasher.getProjectRegistry().clear();
 				findNamesFile(index.items, packageStream);
 				
-				int itemIndex = 0;
-				CountDownLatch latch = new CountDownLatch(index.items.size());
 				for (DBPFItem item : index.items) {
 					// Ensure the task is not paused
 					//ensureRunning();
 					
-					if (itemFilter != null && !itemFilter.filter(item)) continue;
+					if (itemFilter != null && !itemFilter.filter(item)) {
+						incProgress(inc);
+						continue;
+					}
 					
 					int groupID = item.name.getGroupID();
 					int instanceID = item.name.getInstanceID();
 					
-					if (checkFiles) {
-						List<ResourceKey> list = writtenFiles.get(groupID);
-						if (list != null) {
-							boolean skipFile = false;
-							for (ResourceKey key : list) {
-								if (key.isEquivalent(item.name)) {
-									skipFile = true;
-									break;
-								}
-							}
-							if (skipFile) continue;
-						}
+					if (checkFiles && writtenFiles.contains(item.name)) {
+						incProgress(inc);
+						continue;
 					}
 					
 					String fileName = hasher.getFileName(instanceID);
 					
 					// skip autolocale files
 					if (groupID == 0x02FABF01 && fileName.startsWith("auto_")) {
+						incProgress(inc);
 						continue;
 					}
 					
 					File folder = new File(outputFolder, hasher.getFileName(groupID));
 					folder.mkdir();
 					
-					FileConvertAction action = new FileConvertAction(item, folder, item.processFile(packageStream), inc, latch);
-					if (itemIndex == index.items.size() - 1) {
-						// Execute in same thread if it's the last item
-						ForkJoinPool.commonPool().invoke(action);
+					// Wait until the workers have released enough memory; only the stored data is read here,
+					// decompressing is done by the workers
+					int permits = getItemPermits(item);
+					bytesInFlight.acquire(permits);
+					
+					byte[] storedData;
+					try {
+						storedData = new byte[item.isCompressed ? item.compressedSize : item.memSize];
+						packageStream.seek(item.chunkOffset);
+						packageStream.read(storedData);
 					}
-					else {
-						ForkJoinPool.commonPool().execute(action);
+					catch (Exception e) {
+						bytesInFlight.release(permits);
+						throw e;
 					}
 					
+					executor.execute(new FileConvertAction(item, folder, storedData, inc, bytesInFlight, permits));
+					
 					if (checkFiles) {
-						List<ResourceKey> list = writtenFiles.get(groupID);
-						if (list == null) {
-							list = new ArrayList<ResourceKey>();
-							writtenFiles.put(groupID, list);
-						}
-						list.add(item.name);
+						writtenFiles.add(item.name);
 					}
-					
-					++itemIndex;
 				}
-				
-				// Await for all files to finish writing
-				latch.await();
+			}
+			catch (Exception e) {
+				return e;
+			}
+			finally {
+				// Await for all files to finish writing: every action releases its bytes when it finishes
+				bytesInFlight.acquireUninterruptibly(maxBytesInFlight);
+				executor.shutdown();
 				
 				// Remove the extra names; if they need to be used, loading the project will load them as well
 				hasher.getProjectRegistry().clear();
-			} 
-			catch (Exception e) {
-				return e;
 			}
 		}
-		
+
 		ellapsedTime = System.currentTimeMillis() - initialTime;
 		
 		// Ensure the taskbar progress is over
@@ -328,7 +388,7 @@ public class DBPFConcurrentUnpacker {
 	 * Returns a Map with all the items that could not be unpacked/converted, mapped to the exception that caused that error.
 	 * @return
 	 */
-	public HashMap<DBPFItem, Exception> getExceptions() {
+	public Map<DBPFItem, Exception> getExceptions() {
 		return exceptions;
 	}
 	
@@ -340,8 +400,16 @@ public class DBPFConcurrentUnpacker {
 		return ellapsedTime;
 	}
 
+	/**
+	 * Returns the progress of the operation, in the range [0, 1]. This can be called from any thread.
+	 * @return
+	 */
+	public double getProgress() {
+		return progress.sum();
+	}
+
 	private void incProgress(double increment) {
-		progress += increment;
+		progress.add(increment);
 		//updateProgress(progress, 1.0);
 	}
 	
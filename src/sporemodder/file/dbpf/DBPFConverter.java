@@ -4,7 +4,7 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
-import sporemodder.file.filestructures.FileStream;
+import sporemodder.file.filestructures.BufferedFileStream;
 import sporemodder.file.filestructures.StreamReader;
 import sporemodder.file.filestructures.StreamWriter;
 import javafx.scene.control.Alert;
@@ -62,6 +62,11 @@ public class DBPFConverter implements Converter {
 		return true;
 		
 	}
+
+	@Override
+	public String getDecodedExtension(ResourceKey key) {
+		return "unpacked";
+	}
 	
 	@Override
 	public boolean encode(File input, StreamWriter output) throws Exception {
@@ -116,6 +121,12 @@ public class DBPFConverter implements Converter {
 		return "Localization Package (." + HashManager.get().getTypeName(TYPE_ID) + ")";
 	}
 
+	@Override
+	public boolean isConcurrentEncoder() {
+		// Packing a nested package uses the global project registry and resets the converters
+		return false;
+	}
+	
 	@Override
 	public boolean isEnabledByDefault() {
 		return false;
@@ -127,7 +138,7 @@ public class DBPFConverter implements Converter {
 	}
 	
 	private void unpackDialog(File inputFile, File outputFile) throws Exception {
-		try (StreamReader stream = new FileStream(inputFile, "r")) {
+		try (StreamReader stream = new BufferedFileStream(inputFile, "r")) {
 			DBPFUnpackingTask task = createUnpackTask(stream, outputFile);
 			
 			ProgressDialogUI progressUI = UIManager.get().loadUI("dialogs/ProgressDialogUI");
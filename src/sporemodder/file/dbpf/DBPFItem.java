@@ -20,7 +20,9 @@
 package sporemodder.file.dbpf;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
+import sporemodder.file.filestructures.BufferedFileStream;
 import sporemodder.file.filestructures.MemoryStream;
 import sporemodder.file.filestructures.StreamReader;
 import sporemodder.file.filestructures.StreamWriter;
@@ -41,6 +43,18 @@ public class DBPFItem {
 	/** This is used in memory by the game, but it is irrelevant in .package files; always true. */
 	public boolean isSaved = true;
 	
+	public DBPFItem() {
+		
+	}
+	
+	public DBPFItem(DBPFItem other) {
+		isCompressed = other.isCompressed;
+		chunkOffset = other.chunkOffset;
+		memSize = other.memSize;
+		compressedSize = other.compressedSize;
+		name.copy(other.name);
+		isSaved = other.isSaved;
+	}
 	
 	public void read(StreamReader stream, boolean isDBBF, boolean readType, boolean readGroup) throws IOException {
 		
@@ -97,11 +111,19 @@ public class DBPFItem {
 		in.seek(chunkOffset);
 		
 		if (isCompressed) {
-			byte[] arr = new byte[compressedSize];
-			in.read(arr);
-			
 			byte[] out = new byte[memSize];
-			RefPackCompression.decompressFast(arr, out);
+			
+			if (in instanceof BufferedFileStream) {
+				// The compressed data is only needed while decompressing, so we can use the thread's array
+				byte[] arr = RefPackCompression.getCompressedDataArray(compressedSize);
+				((BufferedFileStream) in).read(arr, 0, compressedSize);
+				RefPackCompression.decompress(ByteBuffer.wrap(arr, 0, compressedSize), out);
+			}
+			else {
+				byte[] arr = new byte[compressedSize];
+				in.read(arr);
+				RefPackCompression.decompressFast(arr, out);
+			}
 			
 			return new MemoryStream(out);
 		}
@@ -0,0 +1,237 @@
+/****************************************************************************
+* Copyright (C) 2019 Eric Mor
+*
+* This file is part of SporeModder FX.
+*
+* SporeModder FX is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+****************************************************************************/
+package sporemodder.file.dbpf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import sporemodder.file.ResourceKey;
+import sporemodder.file.filestructures.MemoryStream;
+
+/**
+ * A read-only view of a package file, backed by memory-mapped buffers. Unlike {@link DatabasePackedFile}, this allows
+ * accessing single resources by their {@link ResourceKey} in constant time, without reading the rest of the package.
+ * Uncompressed items are returned as slices of the mapped file, so no data is copied.
+ * <p>
+ * This object can be used from multiple threads at the same time. It is auto-closeable, so it should be used inside a
+ * <code>try-catch</code> block:
+ * <pre>
+ * try (DBPFMappedReader reader = new DBPFMappedReader(file)) {
+ *	ByteBuffer data = reader.getData(new ResourceKey(groupID, instanceID, typeID));
+ * }
+ * </pre>
+ */
+public class DBPFMappedReader implements AutoCloseable {
+
+	/** Files are mapped in segments of this size, as a single buffer cannot map more than 2GB. */
+	private static final long SEGMENT_SIZE = 1L << 30;
+	/** Every segment maps this many extra bytes of the next one, so that items crossing the border can be sliced as well. */
+	private static final long SEGMENT_OVERLAP = 64L << 20;
+	/** The maximum size of the header, in bytes. */
+	private static final int HEADER_SIZE = 128;
+
+	private final FileChannel channel;
+	private final MappedByteBuffer[] segments;
+
+	private final DatabasePackedFile header = new DatabasePackedFile();
+	/** Maps every key to its item; if a key is repeated, the first item is used. */
+	private final Map<ResourceKey, DBPFItem> itemsMap;
+
+	public DBPFMappedReader(File file) throws IOException {
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+
+			segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+			for (int i = 0; i < segments.length; ++i) {
+				long position = i * SEGMENT_SIZE;
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(size - position, SEGMENT_SIZE + SEGMENT_OVERLAP));
+				segments[i].order(ByteOrder.LITTLE_ENDIAN);
+			}
+
+			// The index is small compared to the package, so it's faster to copy it and parse it with a memory stream
+			try (MemoryStream headerStream = new MemoryStream(copyData(0, (int) Math.min(size, HEADER_SIZE)))) {
+				header.readHeader(headerStream);
+			}
+			try (MemoryStream indexStream = new MemoryStream(copyData(header.indexOffset, (int) header.indexSize))) {
+				header.index.read(indexStream);
+				header.index.readItems(indexStream, header.indexCount, header.isDBBF);
+			}
+
+			itemsMap = new HashMap<>(header.index.items.size() * 2);
+			for (DBPFItem item : header.index.items) {
+				itemsMap.putIfAbsent(item.name, item);
+			}
+		}
+		catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the header of the package, which contains the index with all the items.
+	 * @return
+	 */
+	public DatabasePackedFile getHeader() {
+		return header;
+	}
+
+	/**
+	 * Returns all the items in the package, in the order they are stored in the index.
+	 * @return
+	 */
+	public List<DBPFItem> getItems() {
+		return Collections.unmodifiableList(header.index.items);
+	}
+
+	/**
+	 * Returns the item with the given key, or null if the package does not contain it.
+	 * @param key
+	 * @return
+	 */
+	public DBPFItem getItem(ResourceKey key) {
+		return itemsMap.get(key);
+	}
+
+	/**
+	 * Returns the item with the given IDs, or null if the package does not contain it.
+	 * @param groupID
+	 * @param instanceID
+	 * @param typeID
+	 * @return
+	 */
+	public DBPFItem getItem(int groupID, int instanceID, int typeID) {
+		return itemsMap.get(new ResourceKey(groupID, instanceID, typeID));
+	}
+
+	/**
+	 * Whether the package contains an item with the given key.
+	 * @param key
+	 * @return
+	 */
+	public boolean contains(ResourceKey key) {
+		return itemsMap.containsKey(key);
+	}
+
+	private byte[] copyData(long offset, int length) throws IOException {
+		byte[] data = new byte[length];
+		getStoredData(offset, length).get(data);
+		return data;
+	}
+
+	private ByteBuffer getStoredData(long offset, int length) throws IOException {
+		int segmentIndex = (int) (offset / SEGMENT_SIZE);
+		long segmentOffset = offset - segmentIndex * SEGMENT_SIZE;
+
+		if (segmentIndex < segments.length && segmentOffset + length <= segments[segmentIndex].capacity()) {
+			// Don't modify the original buffer, so it can be used by other threads
+			ByteBuffer buffer = segments[segmentIndex].duplicate();
+			buffer.position((int) segmentOffset);
+			buffer.limit((int) segmentOffset + length);
+			return buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+		}
+		else {
+			// Very big items that cross segments must be copied
+			ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, offset + buffer.position()) == -1) {
+					throw new IOException("Item at offset " + offset + " exceeds the end of the package");
+				}
+			}
+			buffer.flip();
+			return buffer;
+		}
+	}
+
+	/**
+	 * Returns the data of the item exactly as it is stored in the package; if the item is compressed,
+	 * the data will be compressed as well. In most cases, the returned buffer is a read-only slice of the mapped file.
+	 * @param item
+	 * @return
+	 * @throws IOException
+	 */
+	public ByteBuffer getStoredData(DBPFItem item) throws IOException {
+		return getStoredData(item.chunkOffset, item.compressedSize).asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Returns the uncompressed data of the item. If the item is not compressed, the returned buffer is a read-only slice of
+	 * the mapped file, so no data is copied; otherwise, the data is decompressed into a new buffer.
+	 * @param item
+	 * @return
+	 * @throws IOException
+	 */
+	public ByteBuffer getData(DBPFItem item) throws IOException {
+		if (item.isCompressed) {
+			byte[] out = new byte[item.memSize];
+			RefPackCompression.decompress(getStoredData(item.chunkOffset, item.compressedSize), out);
+			return ByteBuffer.wrap(out).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		else {
+			return getStoredData(item);
+		}
+	}
+
+	/**
+	 * Returns the uncompressed data of the item with the given key, or null if the package does not contain it.
+	 * @param key
+	 * @return
+	 * @throws IOException
+	 */
+	public ByteBuffer getData(ResourceKey key) throws IOException {
+		DBPFItem item = itemsMap.get(key);
+		return item == null ? null : getData(item);
+	}
+
+	/**
+	 * Returns a stream with the uncompressed data of the item, so that it can be used by converters and file readers.
+	 * Unlike {@link #getData(DBPFItem)}, this always copies the data.
+	 * @param item
+	 * @return
+	 * @throws IOException
+	 */
+	public MemoryStream processFile(DBPFItem item) throws IOException {
+		if (item.isCompressed) {
+			byte[] out = new byte[item.memSize];
+			RefPackCompression.decompress(getStoredData(item.chunkOffset, item.compressedSize), out);
+			return new MemoryStream(out);
+		}
+		else {
+			return new MemoryStream(copyData(item.chunkOffset, item.memSize));
+		}
+	}
+
+	/**
+	 * Closes the file. The mapped memory is released once the buffers returned by this object are no longer used.
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
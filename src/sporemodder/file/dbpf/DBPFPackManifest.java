@@ -0,0 +1,355 @@
+/****************************************************************************
+* Copyright (C) 2019 Eric Mor
+*
+* This file is part of SporeModder FX.
+*
+* SporeModder FX is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+****************************************************************************/
+package sporemodder.file.dbpf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import sporemodder.file.filestructures.FileStream;
+import sporemodder.file.filestructures.StreamReader;
+import sporemodder.file.filestructures.StreamWriter;
+
+/**
+ * A manifest stored next to a packed package, used for incremental packing. For every source file of the project, it keeps
+ * its size, modification time and content hash, the DBPF items that were generated from it, the names it added to the
+ * project registry and the files it included. When the package is packed again, the items of unchanged files can be copied
+ * directly from the previous package, without converting or compressing them again.
+ * <p>
+ * A file is only unchanged if the files it included did not change either; the package itself must have the same size
+ * and modification time it had when the manifest was written, and it must have been packed with the same compression and encoder settings.
+ */
+public class DBPFPackManifest {
+
+	public static final String EXTENSION = ".manifest";
+
+	private static final int MAGIC = 0x464D4D53;  // SMMF
+	private static final int VERSION = 4;
+
+	public static class Entry {
+		/** The size of the source file, in bytes. */
+		public long size;
+		/** The last modification time of the source file, in milliseconds. */
+		public long lastModified;
+		/** The SHA-1 hash of the source file contents. */
+		public byte[] hash;
+		/** If true, the file was written into the package without using any converter. */
+		public boolean isRaw;
+		/** The items that were written into the package for this file. */
+		public final List<DBPFItem> items = new ArrayList<>();
+		/** The names that were added to the project registry when encoding this file. */
+		public final Map<String, Integer> names = new HashMap<>();
+		/** The files included when encoding this file, even if they did not exist. */
+		public final List<Dependency> dependencies = new ArrayList<>();
+	}
+	
+	/** A file used to encode a source file, such as a file included with ArgScript <code>include</code>. */
+	public static class Dependency {
+		/** The absolute path of the file. */
+		public final String path;
+		/** The size of the file, or 0 if it does not exist. */
+		public final long size;
+		/** The modification time of the file, or 0 if it does not exist. */
+		public final long lastModified;
+		
+		public Dependency(String path, long size, long lastModified) {
+			this.path = path;
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+		
+		public Dependency(File file) {
+			this(file.getAbsolutePath(), file.length(), file.lastModified());
+		}
+		
+		public boolean isUnchanged() {
+			File file = new File(path);
+			return file.length() == size && file.lastModified() == lastModified;
+		}
+	}
+
+	/** The compress threshold used when packing; if it changes, the manifest cannot be used. */
+	private int compressThreshold = -1;
+	/** The compression level used when packing; if it changes, the manifest cannot be used. */
+	private RefPackCompressor.Level compressionLevel = RefPackCompressor.Level.DEFAULT;
+	/** The converters and encoding settings used when packing, see {@link sporemodder.FormatManager#getEncoderSettings()}; if they change, the manifest cannot be used. */
+	private String encoderSettings = "";
+	/** The size of the package that was generated with this manifest; used to detect if the package was modified. */
+	private long packageSize;
+	/** The modification time of the package that was generated with this manifest; used to detect if the package was modified. */
+	private long packageLastModified;
+	/** Maps the path of every source file (relative to the project folder) to its entry. */
+	private final Map<String, Entry> entries = new HashMap<>();
+
+	/**
+	 * Returns the manifest file used for the given output package.
+	 * @param packageFile
+	 * @return
+	 */
+	public static File getManifestFile(File packageFile) {
+		return new File(packageFile.getParentFile(), packageFile.getName() + EXTENSION);
+	}
+
+	/**
+	 * Calculates the hash of the contents of a file, that will be used to detect if the file changed.
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static byte[] calculateHash(File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+
+		try (InputStream in = Files.newInputStream(file.toPath())) {
+			byte[] buffer = new byte[8192];
+			int n;
+			while ((n = in.read(buffer)) > 0) {
+				digest.update(buffer, 0, n);
+			}
+		}
+		return digest.digest();
+	}
+
+	public int getCompressThreshold() {
+		return compressThreshold;
+	}
+
+	public void setCompressThreshold(int compressThreshold) {
+		this.compressThreshold = compressThreshold;
+	}
+
+	public RefPackCompressor.Level getCompressionLevel() {
+		return compressionLevel;
+	}
+
+	public void setCompressionLevel(RefPackCompressor.Level compressionLevel) {
+		this.compressionLevel = compressionLevel;
+	}
+
+	public String getEncoderSettings() {
+		return encoderSettings;
+	}
+
+	public void setEncoderSettings(String encoderSettings) {
+		this.encoderSettings = encoderSettings;
+	}
+
+	public long getPackageSize() {
+		return packageSize;
+	}
+
+	public void setPackageSize(long packageSize) {
+		this.packageSize = packageSize;
+	}
+
+	public long getPackageLastModified() {
+		return packageLastModified;
+	}
+
+	public void setPackageLastModified(long packageLastModified) {
+		this.packageLastModified = packageLastModified;
+	}
+
+	/**
+	 * Returns true if the given package is the one that was generated with this manifest, that is, it has the same size
+	 * and modification time.
+	 * @param packageFile
+	 * @return
+	 */
+	public boolean isPackageUnchanged(File packageFile) {
+		return packageFile.isFile() && packageFile.length() == packageSize && packageFile.lastModified() == packageLastModified;
+	}
+
+	public Entry getEntry(String path) {
+		return entries.get(path);
+	}
+
+	public void putEntry(String path, Entry entry) {
+		entries.put(path, entry);
+	}
+
+	/**
+	 * Returns the entry of the given source file only if the file has not changed since the manifest was written.
+	 * A file is considered unchanged if its size and modification time are the same; if only the modification time
+	 * changed, the contents hash is compared as well. The files it included must not have changed either.
+	 * Returns null if the file must be encoded again.
+	 * @param path The path of the file relative to the project folder.
+	 * @param file The source file.
+	 * @return
+	 * @throws IOException
+	 */
+	public Entry getUnchangedEntry(String path, File file) throws IOException {
+		Entry entry = entries.get(path);
+		if (entry == null || entry.size != file.length()) {
+			return null;
+		}
+		for (Dependency dependency : entry.dependencies) {
+			if (!dependency.isUnchanged()) {
+				return null;
+			}
+		}
+		if (entry.lastModified != file.lastModified() && !Arrays.equals(entry.hash, calculateHash(file))) {
+			return null;
+		}
+		return entry;
+	}
+
+	private static String readString(StreamReader stream) throws IOException {
+		byte[] bytes = new byte[stream.readLEInt()];
+		stream.read(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeString(StreamWriter stream, String text) throws IOException {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		stream.writeLEInt(bytes.length);
+		stream.write(bytes);
+	}
+
+	public void read(StreamReader stream) throws IOException {
+		if (stream.readLEInt() != MAGIC) {
+			throw new IOException("Not a pack manifest file");
+		}
+		if (stream.readLEInt() != VERSION) {
+			throw new IOException("Unsupported pack manifest version");
+		}
+		compressThreshold = stream.readLEInt();
+		int level = stream.readUByte();
+		if (level >= RefPackCompressor.Level.values().length) {
+			throw new IOException("Unknown compression level " + level);
+		}
+		compressionLevel = RefPackCompressor.Level.values()[level];
+		encoderSettings = readString(stream);
+		packageSize = stream.readLELong();
+		packageLastModified = stream.readLELong();
+
+		int count = stream.readLEInt();
+		for (int i = 0; i < count; ++i) {
+			String path = readString(stream);
+
+			Entry entry = new Entry();
+			entry.size = stream.readLELong();
+			entry.lastModified = stream.readLELong();
+			entry.hash = new byte[stream.readUByte()];
+			stream.read(entry.hash);
+			entry.isRaw = stream.readBoolean();
+
+			int itemCount = stream.readLEInt();
+			for (int j = 0; j < itemCount; ++j) {
+				DBPFItem item = new DBPFItem();
+				item.read(stream, true, true, true);
+				entry.items.add(item);
+			}
+
+			int nameCount = stream.readLEInt();
+			for (int j = 0; j < nameCount; ++j) {
+				String name = readString(stream);
+				entry.names.put(name, stream.readLEInt());
+			}
+
+			int dependencyCount = stream.readLEInt();
+			for (int j = 0; j < dependencyCount; ++j) {
+				String dependencyPath = readString(stream);
+				entry.dependencies.add(new Dependency(dependencyPath, stream.readLELong(), stream.readLELong()));
+			}
+
+			entries.put(path, entry);
+		}
+	}
+
+	public void write(StreamWriter stream) throws IOException {
+		stream.writeLEInt(MAGIC);
+		stream.writeLEInt(VERSION);
+		stream.writeLEInt(compressThreshold);
+		stream.writeUByte(compressionLevel.ordinal());
+		writeString(stream, encoderSettings);
+		stream.writeLELong(packageSize);
+		stream.writeLELong(packageLastModified);
+
+		stream.writeLEInt(entries.size());
+		for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+			Entry entry = mapEntry.getValue();
+
+			writeString(stream, mapEntry.getKey());
+			stream.writeLELong(entry.size);
+			stream.writeLELong(entry.lastModified);
+			stream.writeUByte(entry.hash.length);
+			stream.write(entry.hash);
+			stream.writeBoolean(entry.isRaw);
+
+			stream.writeLEInt(entry.items.size());
+			for (DBPFItem item : entry.items) {
+				item.write(stream, true, true, true);
+			}
+
+			stream.writeLEInt(entry.names.size());
+			for (Map.Entry<String, Integer> name : entry.names.entrySet()) {
+				writeString(stream, name.getKey());
+				stream.writeLEInt(name.getValue());
+			}
+
+			stream.writeLEInt(entry.dependencies.size());
+			for (Dependency dependency : entry.dependencies) {
+				writeString(stream, dependency.path);
+				stream.writeLELong(dependency.size);
+				stream.writeLELong(dependency.lastModified);
+			}
+		}
+	}
+
+	/**
+	 * Reads the manifest of the given package, returning null if it does not exist or it cannot be read.
+	 * @param packageFile
+	 * @return
+	 */
+	public static DBPFPackManifest readForPackage(File packageFile) {
+		File file = getManifestFile(packageFile);
+		if (!file.isFile()) {
+			return null;
+		}
+		try (FileStream stream = new FileStream(file, "r")) {
+			DBPFPackManifest manifest = new DBPFPackManifest();
+			manifest.read(stream);
+			return manifest;
+		}
+		catch (Exception e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	public void writeForPackage(File packageFile) throws IOException {
+		try (FileStream stream = new FileStream(getManifestFile(packageFile), "rw")) {
+			write(stream);
+		}
+	}
+}
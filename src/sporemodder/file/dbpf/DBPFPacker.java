@@ -20,9 +20,12 @@ package sporemodder.file.dbpf;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
-import sporemodder.file.filestructures.FileStream;
+import sporemodder.file.filestructures.BufferedFileStream;
 import sporemodder.file.filestructures.MemoryStream;
+import sporemodder.file.filestructures.StreamReader;
 import sporemodder.file.filestructures.StreamWriter;
 import sporemodder.file.ResourceKey;
 
@@ -56,6 +59,11 @@ public class DBPFPacker implements AutoCloseable {
 		public void consume(StreamWriter stream) throws Exception;
 	}
 	
+	/** Every thread keeps the temporary stream used by {@link #writeFile(ResourceKey, WriteAction)}, so its buffer is allocated only once. */
+	private static final ThreadLocal<MemoryStream> TEMP_STREAM = new ThreadLocal<>();
+	/** Temporary streams whose buffer has grown beyond this size (in bytes) are not kept, so threads don't hold too much memory. */
+	private static final int MAX_TEMP_STREAM_SIZE = 16 * 1024 * 1024;
+	
 	/** The output stream where the DBPF file will be written. */
 	private final StreamWriter stream;
 	/** The fast memory stream used to write the DBPF index. */
@@ -65,19 +73,33 @@ public class DBPFPacker implements AutoCloseable {
 	private int nItemsCount;
 	/** If a file is bigger (in bytes) than this number, it will get compressed. If the value is -1, it is ignored. */
 	private int compressThreshold = -1;
+	/** How hard the compressor looks for matches when compressing files. */
+	private RefPackCompressor.Level compressionLevel = RefPackCompressor.Level.DEFAULT;
 	private final RefPackCompression.CompressorOutput compressOut = new RefPackCompression.CompressorOutput();
 	private File currentFile;
+	/** How many threads converters can use to encode a single file. */
+	private int threadCount = 1;
 	
 	private boolean closeStream;
 	
+	/** Only used by item buffers (see {@link #createItemBuffer()}), the items that have been written, with offsets relative to the buffer. */
+	private final List<DBPFItem> bufferedItems;
+	
 	public DBPFPacker(StreamWriter output, boolean closeStream) throws IOException {
 		stream = output;
 		this.closeStream = closeStream;
+		this.bufferedItems = null;
 		initialWrite();
 	}
 	
+	private DBPFPacker(MemoryStream buffer) {
+		stream = buffer;
+		this.closeStream = true;
+		this.bufferedItems = new ArrayList<>();
+	}
+	
 	public DBPFPacker(File output) throws IOException {
-		this(new FileStream(output, "rw"), true);
+		this(new BufferedFileStream(output, "rw"), true);
 	}
 	
 	/**
@@ -98,7 +120,57 @@ public class DBPFPacker implements AutoCloseable {
 		indexStream.writeInt(0);
 	}
 	
+	/**
+	 * Creates a packer that does not generate a package file, but keeps the written files in memory. 
+	 * Converters can use it like any other packer; the resulting files can then be appended to a real package
+	 * with {@link #writeItemBuffer(DBPFPacker)}. This is used to encode files in parallel while keeping a deterministic
+	 * order in the output package.
+	 * @return
+	 */
+	public static DBPFPacker createItemBuffer() {
+		return new DBPFPacker(new MemoryStream());
+	}
+	
+	/**
+	 * Whether this packer is an item buffer created with {@link #createItemBuffer()}.
+	 * @return
+	 */
+	public boolean isItemBuffer() {
+		return bufferedItems != null;
+	}
+	
+	/**
+	 * Returns the items written into this item buffer, with the offsets relative to the start of the buffer.
+	 * @return
+	 */
+	public List<DBPFItem> getBufferedItems() {
+		return bufferedItems;
+	}
+	
+	/**
+	 * Appends all the files written into the given item buffer to this package, in the same order they were written.
+	 * The output is exactly the same as if the files had been written directly into this packer.
+	 * @param buffer An item buffer created with {@link #createItemBuffer()}.
+	 * @throws IOException
+	 */
+	public void writeItemBuffer(DBPFPacker buffer) throws IOException {
+		MemoryStream data = (MemoryStream) buffer.stream;
+		long baseOffset = stream.getFilePointer();
+		
+		stream.write(data.getRawData(), 0, (int) data.length());
+		
+		for (DBPFItem bufferedItem : buffer.bufferedItems) {
+			bufferedItem.chunkOffset += baseOffset;
+			addFile(bufferedItem);
+		}
+	}
+	
 	@Override public void close() throws Exception {
+		if (bufferedItems != null) {
+			stream.close();
+			return;
+		}
+		
 		DatabasePackedFile header = new DatabasePackedFile();
 		
 		// Write header and index
@@ -142,6 +214,40 @@ public class DBPFPacker implements AutoCloseable {
 	public void setCompressThreshold(int compressThreshold) {
 		this.compressThreshold = compressThreshold;
 	}
+	
+	/**
+	 * Returns how hard the compressor looks for matches when compressing files.
+	 * @return
+	 */
+	public RefPackCompressor.Level getCompressionLevel() {
+		return compressionLevel;
+	}
+	
+	/**
+	 * Sets how hard the compressor looks for matches when compressing files: {@link RefPackCompressor.Level#FAST} packs faster,
+	 * {@link RefPackCompressor.Level#MAX} generates smaller packages. It is only used if there is a compression threshold.
+	 * @param compressionLevel
+	 */
+	public void setCompressionLevel(RefPackCompressor.Level compressionLevel) {
+		this.compressionLevel = compressionLevel;
+	}
+
+	/**
+	 * Returns how many threads converters can use to encode a single file, such as an effect directory. It is the thread count
+	 * of the packing task, so converters don't use more threads than the user chose; 1 means converters must not use extra threads.
+	 * @return
+	 */
+	public int getThreadCount() {
+		return threadCount;
+	}
+	
+	/**
+	 * Sets how many threads converters can use to encode a single file, such as an effect directory.
+	 * @param threadCount
+	 */
+	public void setThreadCount(int threadCount) {
+		this.threadCount = threadCount;
+	}
 
 	/**
 	 * Sets the current file being processed. This is used when diagnosing errors.
@@ -182,7 +288,7 @@ public class DBPFPacker implements AutoCloseable {
 		
 		if (compressThreshold != -1 && length > compressThreshold) {
 			
-			RefPackCompression.compress(data, length, compressOut);
+			RefPackCompression.compress(data, length, compressOut, compressionLevel);
 
 			stream.write(compressOut.data, 0, compressOut.lengthInBytes);
 			item.isCompressed = true;
@@ -213,7 +319,15 @@ public class DBPFPacker implements AutoCloseable {
 	 * @throws IOException
 	 */
 	public boolean writeFile(ResourceKey name, WriteAction action) throws IOException {
-		try (MemoryStream tempStream = new MemoryStream()) {
+		MemoryStream tempStream = TEMP_STREAM.get();
+		if (tempStream == null) {
+			tempStream = new MemoryStream();
+		} else {
+			// Remove it while it's used, in case the action writes other files too
+			TEMP_STREAM.set(null);
+		}
+		
+		try {
 			action.consume(tempStream);
 			
 			return writeFile(name, tempStream.getRawData(), (int) tempStream.length());
@@ -221,6 +335,34 @@ public class DBPFPacker implements AutoCloseable {
 		catch (Exception e) {
 			throw new IOException(e);
 		}
+		finally {
+			if (tempStream.getRawData() != null && tempStream.getRawData().length <= MAX_TEMP_STREAM_SIZE) {
+				tempStream.reset();
+				TEMP_STREAM.set(tempStream);
+			}
+		}
+	}
+
+	/**
+	 * Copies an item from another package into this one, without decompressing or converting it, and adds it to the DBPF index.
+	 * The data is copied exactly as it is stored in the input package, so the item keeps its compression.
+	 * 
+	 * @param input The stream of the package that contains the item.
+	 * @param inputItem The item in the input package.
+	 * @return The new item, with its offset in this package.
+	 * @throws IOException
+	 */
+	public DBPFItem copyItem(StreamReader input, DBPFItem inputItem) throws IOException {
+		byte[] data = new byte[inputItem.compressedSize];
+		input.seek(inputItem.chunkOffset);
+		input.read(data);
+		
+		DBPFItem newItem = new DBPFItem(inputItem);
+		newItem.chunkOffset = stream.getFilePointer();
+		stream.write(data);
+		
+		addFile(newItem);
+		return newItem;
 	}
 
 	/**
@@ -229,6 +371,10 @@ public class DBPFPacker implements AutoCloseable {
 	 * @throws IOException
 	 */
 	public void addFile(DBPFItem item) throws IOException {
+		if (bufferedItems != null) {
+			bufferedItems.add(new DBPFItem(item));
+			return;
+		}
 		item.write(indexStream, false, true, true);
 		nItemsCount++;
 	}
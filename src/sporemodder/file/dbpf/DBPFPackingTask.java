@@ -23,12 +23,26 @@ import java.io.FileFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
+import sporemodder.file.filestructures.BufferedFileStream;
+import sporemodder.file.filestructures.StreamReader;
 import sporemodder.file.filestructures.StreamWriter;
 import javafx.concurrent.Task;
 import sporemodder.FormatManager;
@@ -37,12 +51,16 @@ import sporemodder.MessageManager;
 import sporemodder.MessageManager.MessageType;
 import sporemodder.file.Converter;
 import sporemodder.file.ResourceKey;
+import sporemodder.file.argscript.ArgScriptStream;
 import sporemodder.util.NameRegistry;
 import sporemodder.util.Project;
 import sporemodder.util.Project.PackageSignature;
 
 public class DBPFPackingTask extends Task<Void> {
 	
+	/** The key of the file that contains the names used by the project. */
+	private static final ResourceKey NAMES_FILE_KEY = new ResourceKey(0x9C9059AE, 0xCC2F616F, 0x2B6CAB5F);
+	
 	/** The folder with the contents that are being packed. */
 	private File inputFolder;
 	private File outputFile;
@@ -66,6 +84,78 @@ public class DBPFPackingTask extends Task<Void> {
 	private boolean noJavaFX = false;
 	private Consumer<Double> noJavaFXProgressListener;
 	private int compressThreshold = -1;
+	private RefPackCompressor.Level compressionLevel = RefPackCompressor.Level.DEFAULT;
+	/** How many threads are used to encode files; if it's 1 or less, everything is done in the task thread. */
+	private int threadCount = 1;
+	
+	/** If true, files that did not change since the last pack are copied from the previous package instead of being encoded again. */
+	private boolean isIncremental;
+	/** When packing incrementally, the manifest of the previous pack, or null if it cannot be used. */
+	private DBPFPackManifest oldManifest;
+	/** When packing incrementally, the manifest that will be saved for the package being generated. */
+	private DBPFPackManifest newManifest;
+	/** When packing incrementally, the stream of the previous package, from where unchanged items are copied. */
+	private StreamReader oldPackageStream;
+	
+	/** A file that must be packed, used when packing in parallel or incrementally. */
+	private static class PackItem {
+		final File file;
+		final String name;
+		final String folderName;
+		final int groupID;
+		/** If true, the item must be encoded alone, without any other encoding happening at the same time. */
+		final boolean isExclusive;
+		/** The path of the file relative to the input folder, used in the pack manifest. */
+		final String path;
+		final long size;
+		final long lastModified;
+		
+		PackItem(File file, String name, String folderName, int groupID, boolean isExclusive, String path) {
+			this.file = file;
+			this.name = name;
+			this.folderName = folderName;
+			this.groupID = groupID;
+			this.isExclusive = isExclusive;
+			this.path = path;
+			this.size = file.length();
+			this.lastModified = file.lastModified();
+		}
+	}
+	
+	/** The result of encoding a {@link PackItem} into an item buffer, or of finding it unchanged in the previous package. */
+	private static class PackResult {
+		final PackItem item;
+		final DBPFPacker buffer;
+		/** If the file was not converted, the key it was written with; null otherwise. */
+		final ResourceKey rawKey;
+		/** The hash of the file contents, only calculated when packing incrementally. */
+		final byte[] hash;
+		/** The names added to the project registry and the files included when encoding it, only recorded when packing incrementally. */
+		final Map<String, Integer> names;
+		final Set<File> includedFiles;
+		/** If the file did not change, its entry in the previous manifest; the item buffer is null then. */
+		final DBPFPackManifest.Entry previousEntry;
+		
+		PackResult(PackItem item, DBPFPacker buffer, ResourceKey rawKey, byte[] hash, Map<String, Integer> names, Set<File> includedFiles) {
+			this.item = item;
+			this.buffer = buffer;
+			this.rawKey = rawKey;
+			this.hash = hash;
+			this.names = names;
+			this.includedFiles = includedFiles;
+			this.previousEntry = null;
+		}
+		
+		PackResult(PackItem item, DBPFPackManifest.Entry previousEntry) {
+			this.item = item;
+			this.buffer = null;
+			this.rawKey = previousEntry.isRaw ? previousEntry.items.get(0).name : null;
+			this.hash = previousEntry.hash;
+			this.names = null;
+			this.includedFiles = null;
+			this.previousEntry = previousEntry;
+		}
+	}
 	
 	public DBPFPackingTask(Project project, boolean storeDebugInformation) {
 		this.inputFolder = project.getFolder();
@@ -190,19 +280,45 @@ public class DBPFPackingTask extends Task<Void> {
 		}
 	}
 	
-	private void pack() throws Exception {
+	private void ensureRunning() throws InterruptedException {
+		if (!running.get()) {
+			synchronized (running) {
+				while (!running.get()) {
+					running.wait();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Encodes a single file into the given packer, using the first converter that accepts it. If no converter
+	 * is used, the file is written as it is and this method returns the key it was written with; otherwise, it returns null.
+	 */
+	private ResourceKey encodeFile(File file, String name, int groupID, DBPFPacker packer, List<Converter> converters) throws Exception {
+		for (Converter converter : converters) {
+			if (converter.encode(file, packer, groupID)) {
+				return null;
+			}
+		}
+		
+		// The converter must have written the data and added the DBPF item;
+		// if there was no converter, we do it here
 		final HashManager hasher = HashManager.get();
 		
-		MessageManager.get().postMessage(MessageType.BeforeDbpfPack, this);
+		String[] splits = name.split("\\.", 2);
+		String currentExtension = splits.length > 1 ? splits[1] : "";
 		
-		//TODO support DBBF maybe?
+		ResourceKey key = new ResourceKey(groupID, hasher.getFileHash(splits[0]), hasher.getTypeHash(currentExtension));
 		
-		// Doesn't really make sense to let the user disable converters.
-		List<Converter> converters = new ArrayList<>(FormatManager.get().getConverters());
-		// Reverse them so the most common ones (.prop, .rw4) are first
-		Collections.reverse(converters);
+		byte[] currentInputData = Files.readAllBytes(file.toPath());
+		
+		packer.writeFile(key, currentInputData, currentInputData.length);
 		
-		File[] folders = inputFolder.listFiles(new FileFilter() {
+		return key;
+	}
+	
+	private File[] getFolders() {
+		return inputFolder.listFiles(new FileFilter() {
 
 			@Override
 			public boolean accept(File arg0) {
@@ -210,6 +326,26 @@ public class DBPFPackingTask extends Task<Void> {
 			}
 			
 		});
+	}
+	
+	private List<Converter> getPackConverters() {
+		// Doesn't really make sense to let the user disable converters.
+		List<Converter> converters = new ArrayList<>(FormatManager.get().getConverters());
+		// Reverse them so the most common ones (.prop, .rw4) are first
+		Collections.reverse(converters);
+		return converters;
+	}
+	
+	private void pack() throws Exception {
+		final HashManager hasher = HashManager.get();
+		
+		MessageManager.get().postMessage(MessageType.BeforeDbpfPack, this);
+		
+		//TODO support DBBF maybe?
+		
+		List<Converter> converters = getPackConverters();
+		
+		File[] folders = getFolders();
 		
 		/** How much we increment the progress (in %) after every folder is completed. */
 		double inc = 1.0 / folders.length;
@@ -230,55 +366,131 @@ public class DBPFPackingTask extends Task<Void> {
 			
 			for (File file : files) {
 				// Ensure the task is not paused
-				if (!running.get()) {
-					synchronized (running) {
-						while (!running.get()) {
-							running.wait();
-						}
-					}
-				}
-				
-				boolean bUsesConverter = false;
+				ensureRunning();
 				
 				String name = file.getName();
 				file = getNestedFile(file, name, converters);
 				setCurrentFile(file);
 				
+				ResourceKey rawKey = encodeFile(file, name, currentGroupID, packer, converters);
+				
+				// Add debug information
+				// We only do it here because we cannot get the files from disk in Spore if they needed to be converted
+				if (rawKey != null && debugInfo != null) {
+					debugInfo.addFile(currentFolderName, name, rawKey);
+				}
+			}
+			
+			if (!alreadyHasPackageSignature && currentGroupID == 0x40404000) {
+				alreadyHasPackageSignature = true;
+			}
+			
+			incProgress(inc);
+		}
+		
+		writeNamesList();
+		writePackageSignature(alreadyHasPackageSignature);
+		
+		// Save debug information
+		if (debugInfo != null) {
+			debugInfo.saveInformation(packer);
+		}
+		
+		MessageManager.get().postMessage(MessageType.OnDbpfPack, this);
+	}
+
+	/**
+	 * Same as {@link #pack()}, but files are encoded (and compressed) in parallel using {@link #getThreadCount()} threads.
+	 * Every file is encoded into its own item buffer, and then they are appended to the package in the same order 
+	 * as the sequential method would, so the output is exactly the same.
+	 * <p>
+	 * This is also used for incremental packing: files that did not change since the previous pack are not encoded,
+	 * their items are copied from the previous package instead.
+	 */
+	private void packItems() throws Exception {
+		final HashManager hasher = HashManager.get();
+		
+		MessageManager.get().postMessage(MessageType.BeforeDbpfPack, this);
+		
+		List<Converter> converters = getPackConverters();
+		
+		hasher.setUpdateProjectRegistry(true);
+		
+		// First get all the files that must be packed, in order
+		boolean alreadyHasPackageSignature = false;
+		List<PackItem> items = new ArrayList<>();
+		
+		for (File folder : getFolders()) {
+			setCurrentFile(folder);
+			
+			String currentFolderName = folder.getName();
+			int currentGroupID = hasher.getFileHash(currentFolderName);
+			
+			for (File file : folder.listFiles()) {
+				String name = file.getName();
+				file = getNestedFile(file, name, converters);
+				String path = inputFolder.toPath().relativize(file.toPath()).toString().replace('\\', '/');
+				
+				boolean isExclusive = false;
 				for (Converter converter : converters) {
-					if (converter.encode(file, packer, currentGroupID)) {
-						bUsesConverter = true;
+					if (!converter.isConcurrentEncoder() && converter.isEncoder(file)) {
+						isExclusive = true;
 						break;
 					}
 				}
 				
-				// The converter must have written the data and added the DBPF item;
-				// if there was no converter, we do it here
-				if (!bUsesConverter) {
-					
-					String[] splits = name.split("\\.", 2);
-					String currentExtension = splits.length > 1 ? splits[1] : "";
-					
-					int currentInstanceID = hasher.getFileHash(splits[0]);
-					int currentTypeID = hasher.getTypeHash(currentExtension);
-					
-					byte[] currentInputData = Files.readAllBytes(file.toPath());
-					
-					packer.writeFile(new ResourceKey(currentGroupID, currentInstanceID, currentTypeID),
-							currentInputData, currentInputData.length);
-					
-					// Add debug information
-					// We only do it here because we cannot get the files from disk in Spore if they needed to be converted
-					if (debugInfo != null ) {
-						debugInfo.addFile(currentFolderName, name, currentGroupID, currentInstanceID, currentTypeID);
-					}
-				}
+				items.add(new PackItem(file, name, currentFolderName, currentGroupID, isExclusive, path));
 			}
 			
-			if (!alreadyHasPackageSignature && currentGroupID == 0x40404000) {
+			if (currentGroupID == 0x40404000) {
 				alreadyHasPackageSignature = true;
 			}
+		}
+		
+		double inc = items.isEmpty() ? 0 : 1.0 / items.size();
+		// How many items can be encoded (and kept in memory) at the same time
+		int maxPending = threadCount * 4;
+		
+		ExecutorService executor = threadCount > 1 ? Executors.newFixedThreadPool(threadCount) : null;
+		Deque<Future<PackResult>> pending = new ArrayDeque<>();
+		try {
+			for (PackItem item : items) {
+				ensureRunning();
+				
+				DBPFPackManifest.Entry previousEntry = getUnchangedEntry(item);
+				
+				if (previousEntry != null) {
+					pending.add(CompletableFuture.completedFuture(new PackResult(item, previousEntry)));
+				}
+				else if (executor == null || item.isExclusive) {
+					// Wait for everything else to finish, then encode it in this thread
+					while (!pending.isEmpty()) {
+						writePackResult(pending.poll(), inc);
+					}
+					setCurrentFile(item.file);
+					try {
+						writePackResult(encodeItem(item, converters), inc);
+					}
+					catch (PackItemException e) {
+						throw unwrapPackItemException(e);
+					}
+					continue;
+				}
+				else {
+					pending.add(executor.submit(() -> encodeItem(item, converters)));
+				}
+				
+				if (pending.size() >= maxPending) {
+					writePackResult(pending.poll(), inc);
+				}
+			}
 			
-			incProgress(inc);
+			while (!pending.isEmpty()) {
+				writePackResult(pending.poll(), inc);
+			}
+		}
+		finally {
+			if (executor != null) executor.shutdownNow();
 		}
 		
 		writeNamesList();
@@ -291,9 +503,181 @@ public class DBPFPackingTask extends Task<Void> {
 		
 		MessageManager.get().postMessage(MessageType.OnDbpfPack, this);
 	}
+	
+	private PackResult encodeItem(PackItem item, List<Converter> converters) throws Exception {
+		DBPFPacker buffer = DBPFPacker.createItemBuffer();
+		buffer.setCompressThreshold(compressThreshold);
+		buffer.setCompressionLevel(compressionLevel);
+		buffer.setThreadCount(threadCount);
+		buffer.setCurrentFile(item.file);
+		
+		// Unchanged files are not encoded the next time, so we need to know the names they use and the files they depend on
+		Map<String, Integer> names = null;
+		Set<File> includedFiles = null;
+		if (newManifest != null) {
+			names = new HashMap<>();
+			includedFiles = new HashSet<>();
+			HashManager.get().setProjectNamesRecorder(names);
+			ArgScriptStream.setIncludedFilesRecorder(includedFiles);
+		}
+		try {
+			ResourceKey rawKey = encodeFile(item.file, item.name, item.groupID, buffer, converters);
+			
+			byte[] hash = null;
+			if (newManifest != null && item.file.isFile()) {
+				hash = DBPFPackManifest.calculateHash(item.file);
+			}
+			return new PackResult(item, buffer, rawKey, hash, names, includedFiles);
+		}
+		catch (Exception e) {
+			// Keep the file that caused the error
+			buffer.close();
+			throw new PackItemException(buffer.getCurrentFile(), e);
+		}
+		finally {
+			if (newManifest != null) {
+				HashManager.get().setProjectNamesRecorder(null);
+				ArgScriptStream.setIncludedFilesRecorder(null);
+			}
+		}
+	}
+	
+	private void writePackResult(Future<PackResult> future, double inc) throws Exception {
+		try {
+			writePackResult(future.get(), inc);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof PackItemException) {
+				throw unwrapPackItemException((PackItemException) e.getCause());
+			}
+			throw e;
+		}
+	}
+	
+	private Exception unwrapPackItemException(PackItemException e) {
+		setCurrentFile(e.file);
+		return (Exception) e.getCause();
+	}
+	
+	private void writePackResult(PackResult result, double inc) throws Exception {
+		List<DBPFItem> writtenItems;
+		if (result.previousEntry != null) {
+			writtenItems = new ArrayList<>();
+			for (DBPFItem item : result.previousEntry.items) {
+				writtenItems.add(packer.copyItem(oldPackageStream, item));
+			}
+			// The file is not encoded, so its names must be added like encoding would
+			NameRegistry projectRegistry = HashManager.get().getProjectRegistry();
+			for (Map.Entry<String, Integer> name : result.previousEntry.names.entrySet()) {
+				projectRegistry.add(name.getKey(), name.getValue());
+			}
+		}
+		else {
+			packer.writeItemBuffer(result.buffer);
+			writtenItems = result.buffer.getBufferedItems();
+			result.buffer.close();
+		}
+		
+		if (result.rawKey != null && debugInfo != null) {
+			debugInfo.addFile(result.item.folderName, result.item.name, result.rawKey);
+		}
+		
+		// Only files can be reused, folders are always encoded again
+		if (newManifest != null && result.hash != null) {
+			DBPFPackManifest.Entry entry = new DBPFPackManifest.Entry();
+			entry.size = result.item.size;
+			entry.lastModified = result.item.lastModified;
+			entry.hash = result.hash;
+			entry.isRaw = result.rawKey != null;
+			entry.items.addAll(writtenItems);
+			if (result.previousEntry != null) {
+				entry.names.putAll(result.previousEntry.names);
+				entry.dependencies.addAll(result.previousEntry.dependencies);
+			} else {
+				entry.names.putAll(result.names);
+				for (File file : result.includedFiles) {
+					entry.dependencies.add(new DBPFPackManifest.Dependency(file));
+				}
+			}
+			newManifest.putEntry(result.item.path, entry);
+		}
+		
+		incProgress(inc);
+	}
+	
+	/**
+	 * When packing incrementally, returns the entry of the previous manifest if the file did not change, or null if it must be encoded.
+	 */
+	private DBPFPackManifest.Entry getUnchangedEntry(PackItem item) throws IOException {
+		// Converters that depend on other files cannot be reused
+		if (oldManifest == null || item.isExclusive || !item.file.isFile()) {
+			return null;
+		}
+		return oldManifest.getUnchangedEntry(item.path, item.file);
+	}
+	
+	/** Used to know which file caused an exception when encoding in another thread. */
+	private static class PackItemException extends Exception {
+		private static final long serialVersionUID = 1L;
+		final File file;
+		
+		PackItemException(File file, Exception cause) {
+			super(cause);
+			this.file = file;
+		}
+	}
+
+	/**
+	 * Prepares the manifests used for incremental packing, and returns the file where the package must be written.
+	 * If the previous package can be reused, the new one is written into a temporary file, as we need to read the previous one.
+	 */
+	private File prepareIncrementalPack() throws IOException {
+		newManifest = new DBPFPackManifest();
+		newManifest.setCompressThreshold(compressThreshold);
+		newManifest.setCompressionLevel(compressionLevel);
+		newManifest.setEncoderSettings(FormatManager.get().getEncoderSettings());
+		
+		oldManifest = DBPFPackManifest.readForPackage(outputFile);
+		if (oldManifest != null && oldManifest.isPackageUnchanged(outputFile)
+				&& oldManifest.getCompressThreshold() == compressThreshold
+				&& oldManifest.getCompressionLevel() == compressionLevel
+				&& oldManifest.getEncoderSettings().equals(newManifest.getEncoderSettings())) {
+			
+			oldPackageStream = new BufferedFileStream(outputFile, "r");
+			return new File(outputFile.getParentFile(), outputFile.getName() + ".tmp");
+		}
+		else {
+			oldManifest = null;
+			return outputFile;
+		}
+	}
+	
+	private void finishIncrementalPack(File packedFile) throws IOException {
+		if (oldPackageStream != null) {
+			oldPackageStream.close();
+			oldPackageStream = null;
+		}
+		
+		if (failException == null) {
+			if (packedFile != outputFile) {
+				Files.move(packedFile.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			newManifest.setPackageSize(outputFile.length());
+			newManifest.setPackageLastModified(outputFile.lastModified());
+			newManifest.writeForPackage(outputFile);
+		}
+		else if (packedFile != outputFile) {
+			// The previous package is still valid
+			Files.deleteIfExists(packedFile.toPath());
+		}
+		else {
+			Files.deleteIfExists(DBPFPackManifest.getManifestFile(outputFile).toPath());
+		}
+	}
 
 	@Override
 	public Void call() throws Exception {
+		File packedFile = outputFile;
 		
 		try {
 			DBPFPacker packer;
@@ -302,13 +686,19 @@ public class DBPFPackingTask extends Task<Void> {
 				if (!Files.isWritable(outputFile.getParentFile().toPath())) {
 					throw new Exception("Access denied. Open the program using SporeModderFX.exe to have access permissions.");
 				}
-				packer = new DBPFPacker(outputFile);
+				if (isIncremental) {
+					packedFile = prepareIncrementalPack();
+				}
+				packer = new DBPFPacker(packedFile);
 			}
 			
 			this.packer = packer;
 			packer.setCompressThreshold(compressThreshold);
+			packer.setCompressionLevel(compressionLevel);
+			packer.setThreadCount(threadCount);
 			
-			pack();
+			if (threadCount > 1 || newManifest != null) packItems();
+			else pack();
 		}
 		catch (Exception e) {
 			e.printStackTrace();
@@ -320,6 +710,16 @@ public class DBPFPackingTask extends Task<Void> {
 			for (Converter converter : FormatManager.get().getConverters()) converter.reset();
 		}
 		
+		if (newManifest != null) {
+			try {
+				finishIncrementalPack(packedFile);
+			}
+			catch (Exception e) {
+				e.printStackTrace();
+				if (failException == null) failException = e;
+			}
+		}
+		
 		// Once done, we can disable updating the project registry
 		HashManager.get().setUpdateProjectRegistry(false);
 		
@@ -352,8 +752,7 @@ public class DBPFPackingTask extends Task<Void> {
 	private void writeNamesList() throws IOException {
 		NameRegistry reg = HashManager.get().getProjectRegistry();
 		if (!reg.isEmpty()) {
-			packer.writeFile(new ResourceKey(0x9C9059AE, 0xCC2F616F, 0x2B6CAB5F),
-					stream -> reg.write(stream));
+			packer.writeFile(NAMES_FILE_KEY, stream -> reg.write(stream));
 		}
 	}
 	final static int BUFFER_SIZE = 8192;
@@ -403,5 +802,61 @@ public class DBPFPackingTask extends Task<Void> {
 	public int getCompressThreshold() {
 		return compressThreshold;
 	}
+	
+	/**
+	 * Sets how hard the compressor looks for matches when compressing files; higher levels are slower but generate smaller packages.
+	 * @param compressionLevel
+	 */
+	public void setCompressionLevel(RefPackCompressor.Level compressionLevel) {
+		this.compressionLevel = compressionLevel;
+	}
+	
+	/**
+	 * Returns how hard the compressor looks for matches when compressing files.
+	 * @return
+	 */
+	public RefPackCompressor.Level getCompressionLevel() {
+		return compressionLevel;
+	}
+	
+	/**
+	 * Sets how many threads are used to encode and compress files. If it's greater than 1, files are encoded in parallel
+	 * and then written in the same order as a sequential pack, so the output package is the same.
+	 * @param threadCount
+	 */
+	public void setThreadCount(int threadCount) {
+		this.threadCount = threadCount;
+	}
+	
+	/**
+	 * Returns how many threads are used to encode and compress files; 1 means the package is packed sequentially.
+	 * @return
+	 */
+	public int getThreadCount() {
+		return threadCount;
+	}
+	
+	/**
+	 * Enables incremental packing. A manifest is saved next to the output package, and the next time the package is packed,
+	 * files that did not change are copied directly from the previous package, without converting or compressing them.
+	 * A file is encoded again if it changed, or if any file it included with ArgScript <code>include</code> changed, was deleted or was created;
+	 * other dependencies, such as files referenced by name from its contents, are not checked.
+	 * The names used by unchanged files are taken from the manifest and added to the project registry, as if they had been encoded again.
+	 * Like in a normal pack, the project registry is not cleared, so the names file of the package also keeps names that were used
+	 * by deleted files.
+	 * This has no effect if the package is written into a stream.
+	 * @param isIncremental
+	 */
+	public void setIncremental(boolean isIncremental) {
+		this.isIncremental = isIncremental;
+	}
+	
+	/**
+	 * Whether files that did not change since the last pack are copied from the previous package instead of encoded again.
+	 * @return
+	 */
+	public boolean isIncremental() {
+		return isIncremental;
+	}
 
 }
@@ -28,7 +28,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 
-import sporemodder.file.filestructures.FileStream;
+import sporemodder.file.filestructures.BufferedFileStream;
 import sporemodder.file.filestructures.MemoryStream;
 import sporemodder.file.filestructures.StreamReader;
 import sporemodder.HashManager;
@@ -304,7 +304,7 @@ public class DBPFUnpacker {
 				
 				for (Converter converter : converters) converter.reset();
 				
-				try (StreamReader packageStream = new FileStream(inputFile, "r"))  {
+				try (StreamReader packageStream = new BufferedFileStream(inputFile, "r"))  {
 					unpackStream(packageStream, checkFiles ? writtenFiles : null);
 				}
 				catch (Exception e) {
@@ -27,10 +27,8 @@ import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.RecursiveAction;
@@ -41,8 +39,8 @@ import sporemodder.MessageManager;
 import sporemodder.MessageManager.MessageType;
 import sporemodder.ProjectManager;
 import sporemodder.file.Converter;
-import sporemodder.file.ResourceKey;
-import sporemodder.file.filestructures.FileStream;
+import sporemodder.file.ResourceKeySet;
+import sporemodder.file.filestructures.BufferedFileStream;
 import sporemodder.file.filestructures.MemoryStream;
 import sporemodder.file.filestructures.StreamReader;
 import sporemodder.util.Project;
@@ -213,7 +211,7 @@ public class DBPFUnpackingTask extends ResumableTask<Exception> {
 		}
 	}
 
-	private void unpackStream(StreamReader packageStream, Map<Integer, Set<ResourceKey>> writtenFiles, double progressFraction) throws IOException, InterruptedException {
+	private void unpackStream(StreamReader packageStream, ResourceKeySet writtenFiles, double progressFraction) throws IOException, InterruptedException {
 		HashManager hasher = HashManager.get();
 			
 		updateMessage("Reading file index...");
@@ -257,15 +255,10 @@ public class DBPFUnpackingTask extends ResumableTask<Exception> {
 			int instanceID = item.name.getInstanceID();
 			
 			// Skip files if they have already been written by higher priority packages
-			if (writtenFiles != null) {
-				Set<ResourceKey> groupSet = writtenFiles.get(groupID);
-				if (groupSet != null) {
-					if (groupSet.contains(item.name)) {
-						latch.countDown();
-						incProgress(inc);
-						continue;
-					}
-				}
+			if (writtenFiles != null && writtenFiles.contains(item.name)) {
+				latch.countDown();
+				incProgress(inc);
+				continue;
 			}
 			
 			String fileName = hasher.getFileName(instanceID);
@@ -295,12 +288,7 @@ public class DBPFUnpackingTask extends ResumableTask<Exception> {
 			}
 				
 			if (writtenFiles != null) {
-				Set<ResourceKey> groupSet = writtenFiles.get(groupID);
-				if (groupSet == null) {
-					groupSet = new HashSet<>();
-					writtenFiles.put(groupID, groupSet);
-				}
-				groupSet.add(item.name);
+				writtenFiles.add(item.name);
 			}
 		}
 		
@@ -342,7 +330,7 @@ public class DBPFUnpackingTask extends ResumableTask<Exception> {
 			}
 			
 			
-			final HashMap<Integer, Set<ResourceKey>> writtenFiles = new HashMap<>();
+			final ResourceKeySet writtenFiles = new ResourceKeySet();
 			boolean checkFiles = inputFiles.size() > 1;  // only check already existing files if we are unpacking more than one package at once
 			
 			long[] fileSizes = new long[inputFiles.size()];
@@ -370,7 +358,7 @@ public class DBPFUnpackingTask extends ResumableTask<Exception> {
 					continue;
 				}
 				
-				try (StreamReader packageStream = new FileStream(inputFile, "r"))  {
+				try (StreamReader packageStream = new BufferedFileStream(inputFile, "r"))  {
 					unpackStream(packageStream, checkFiles ? writtenFiles : null, projectProgress);
 				}
 				catch (Exception e) {
@@ -0,0 +1,357 @@
+/****************************************************************************
+* Copyright (C) 2019 Eric Mor
+*
+* This file is part of SporeModder FX.
+*
+* SporeModder FX is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+****************************************************************************/
+package sporemodder.file.dbpf;
+
+import java.util.Arrays;
+
+import sporemodder.file.dbpf.RefPackCompression.CompressorOutput;
+
+/**
+ * A RefPack compressor that keeps its match tables between calls, so compressing many files does not allocate any memory
+ * apart from the output buffer, which is also reused if the same {@link CompressorOutput} is used.
+ * Every thread can get its own compressor with {@link #get()}; a compressor must not be used by more than one thread at the same time.
+ * <p>
+ * The compressor supports different levels, that decide how hard it looks for matches. All of them generate valid RefPack data
+ * that can be decompressed with {@link RefPackCompression#decompressFast(byte[], byte[])}.
+ */
+public class RefPackCompressor {
+	
+	public static enum Level {
+		/** Greedy parsing, following only a few previous occurrences of every position. The fastest, but generates bigger data. */
+		FAST,
+		/** Greedy parsing that checks every previous occurrence. This is the compression used by previous versions of the program, it generates the same data. */
+		DEFAULT,
+		/** Lazy parsing: before using a match, checks if the next position has a better one. The slowest, but generates smaller data. */
+		MAX
+	}
+	
+	private static final int WINDOW_SIZE = 131072;
+	private static final int MAX_OFFSET = 131071;
+	private static final int MAX_MATCH_LENGTH = 1028;
+	private static final int HASH_SIZE = 65536;
+	/** How many previous occurrences are checked for every position in the {@link Level#FAST} level. */
+	private static final int FAST_CHAIN_LENGTH = 16;
+	/** How many previous occurrences are checked for every position in the {@link Level#MAX} level. */
+	private static final int MAX_CHAIN_LENGTH = 4096;
+	
+	private static final ThreadLocal<RefPackCompressor> COMPRESSOR = ThreadLocal.withInitial(RefPackCompressor::new);
+	
+	private static final int[] CRC_TABLE = new int[] // size 256
+		{
+			0x0000, 0xc0c1, 0xc181, 0x0140, 0xc301, 0x03c0, 0x0280, 0xc241,
+			0xc601, 0x06c0, 0x0780, 0xc741, 0x0500, 0xc5c1, 0xc481, 0x0440,
+			0xcc01, 0x0cc0, 0x0d80, 0xcd41, 0x0f00, 0xcfc1, 0xce81, 0x0e40,
+			0x0a00, 0xcac1, 0xcb81, 0x0b40, 0xc901, 0x09c0, 0x0880, 0xc841,
+			0xd801, 0x18c0, 0x1980, 0xd941, 0x1b00, 0xdbc1, 0xda81, 0x1a40,
+			0x1e00, 0xdec1, 0xdf81, 0x1f40, 0xdd01, 0x1dc0, 0x1c80, 0xdc41,
+			0x1400, 0xd4c1, 0xd581, 0x1540, 0xd701, 0x17c0, 0x1680, 0xd641,
+			0xd201, 0x12c0, 0x1380, 0xd341, 0x1100, 0xd1c1, 0xd081, 0x1040,
+			0xf001, 0x30c0, 0x3180, 0xf141, 0x3300, 0xf3c1, 0xf281, 0x3240,
+			0x3600, 0xf6c1, 0xf781, 0x3740, 0xf501, 0x35c0, 0x3480, 0xf441,
+			0x3c00, 0xfcc1, 0xfd81, 0x3d40, 0xff01, 0x3fc0, 0x3e80, 0xfe41,
+			0xfa01, 0x3ac0, 0x3b80, 0xfb41, 0x3900, 0xf9c1, 0xf881, 0x3840,
+			0x2800, 0xe8c1, 0xe981, 0x2940, 0xeb01, 0x2bc0, 0x2a80, 0xea41,
+			0xee01, 0x2ec0, 0x2f80, 0xef41, 0x2d00, 0xedc1, 0xec81, 0x2c40,
+			0xe401, 0x24c0, 0x2580, 0xe541, 0x2700, 0xe7c1, 0xe681, 0x2640,
+			0x2200, 0xe2c1, 0xe381, 0x2340, 0xe101, 0x21c0, 0x2080, 0xe041,
+			0xa001, 0x60c0, 0x6180, 0xa141, 0x6300, 0xa3c1, 0xa281, 0x6240,
+			0x6600, 0xa6c1, 0xa781, 0x6740, 0xa501, 0x65c0, 0x6480, 0xa441,
+			0x6c00, 0xacc1, 0xad81, 0x6d40, 0xaf01, 0x6fc0, 0x6e80, 0xae41,
+			0xaa01, 0x6ac0, 0x6b80, 0xab41, 0x6900, 0xa9c1, 0xa881, 0x6840,
+			0x7800, 0xb8c1, 0xb981, 0x7940, 0xbb01, 0x7bc0, 0x7a80, 0xba41,
+			0xbe01, 0x7ec0, 0x7f80, 0xbf41, 0x7d00, 0xbdc1, 0xbc81, 0x7c40,
+			0xb401, 0x74c0, 0x7580, 0xb541, 0x7700, 0xb7c1, 0xb681, 0x7640,
+			0x7200, 0xb2c1, 0xb381, 0x7340, 0xb101, 0x71c0, 0x7080, 0xb041,
+			0x5000, 0x90c1, 0x9181, 0x5140, 0x9301, 0x53c0, 0x5280, 0x9241,
+			0x9601, 0x56c0, 0x5780, 0x9741, 0x5500, 0x95c1, 0x9481, 0x5440,
+			0x9c01, 0x5cc0, 0x5d80, 0x9d41, 0x5f00, 0x9fc1, 0x9e81, 0x5e40,
+			0x5a00, 0x9ac1, 0x9b81, 0x5b40, 0x9901, 0x59c0, 0x5880, 0x9841,
+			0x8801, 0x48c0, 0x4980, 0x8941, 0x4b00, 0x8bc1, 0x8a81, 0x4a40,
+			0x4e00, 0x8ec1, 0x8f81, 0x4f40, 0x8d01, 0x4dc0, 0x4c80, 0x8c41,
+			0x4400, 0x84c1, 0x8581, 0x4540, 0x8701, 0x47c0, 0x4680, 0x8641,
+			0x8201, 0x42c0, 0x4380, 0x8341, 0x4100, 0x81c1, 0x8081, 0x4040,
+		};
+	
+	/** The last position of every hash value. */
+	private final int[] hashtbl = new int[HASH_SIZE];
+	/** For every position in the window, the previous position that had the same hash value. */
+	private final int[] link = new int[WINDOW_SIZE];
+	/** Added to the positions stored in the tables. It grows with every call, so the positions of previous calls are always 
+	 * outside the window and the tables don't need to be cleared. */
+	private int base;
+	
+	// The best match found by findMatch()
+	private int matchLength;
+	private int matchCost;
+	private int matchOffset;
+	
+	public RefPackCompressor() {
+		Arrays.fill(hashtbl, -1);
+	}
+	
+	/**
+	 * Returns the compressor of the current thread.
+	 * @return
+	 */
+	public static RefPackCompressor get() {
+		return COMPRESSOR.get();
+	}
+	
+	/**
+	 * Returns the maximum size that the compressed data can have, including the header, for data of the given size.
+	 * @param inputLength
+	 * @return
+	 */
+	public static int getMaxCompressedSize(int inputLength) {
+		// Every literal control byte is followed by at least 4 literal bytes, and matches always use less bytes than they copy
+		return inputLength + (inputLength >> 2) + 16;
+	}
+	
+	/**
+	 * Compresses the data in <code>input[0..inputLength-1]</code>. The compressed data is written in <code>out.data</code>, 
+	 * which is only allocated if it's too small; therefore, it can contain more bytes than <code>out.lengthInBytes</code>.
+	 * @param input
+	 * @param inputLength
+	 * @param out
+	 * @param level
+	 */
+	public void compress(byte[] input, int inputLength, CompressorOutput out, Level level) {
+		if (base > Integer.MAX_VALUE - inputLength) {
+			Arrays.fill(hashtbl, -1);
+			base = 0;
+		}
+		
+		int capacity = getMaxCompressedSize(inputLength);
+		if (out.data == null || out.data.length < capacity) {
+			out.data = new byte[capacity];
+		}
+		byte[] dst = out.data;
+		int to = 0;
+		
+		dst[to++] = 0x10;
+		dst[to++] = (byte) 0xFB;
+		dst[to++] = (byte) (inputLength >> 16);
+		dst[to++] = (byte) (inputLength >> 8);
+		dst[to++] = (byte) inputLength;
+		
+		boolean isLegacy = level == Level.DEFAULT;
+		boolean isLazy = level == Level.MAX;
+		int chainLength = level == Level.FAST ? FAST_CHAIN_LENGTH : (level == Level.MAX ? MAX_CHAIN_LENGTH : Integer.MAX_VALUE);
+		
+		int end = inputLength;
+		int cptr = 0;  // current position
+		int rptr = 0;  // start of the literals that have not been written yet
+		int run = 0;  // number of literals that have not been written yet
+		// If true, the match of the current position was already found when checking the previous position
+		boolean hasMatch = false;
+		int hash = 0;
+		
+		while (cptr < end) {
+			if (!hasMatch) {
+				if (isLegacy || end - cptr >= 3) {
+					hash = hash(input, cptr, isLegacy);
+					findMatch(input, cptr, end, hash, chainLength);
+				} else {
+					// Matches must have at least 3 bytes
+					hash = -1;
+					matchLength = matchCost = 2;
+				}
+			}
+			hasMatch = false;
+			
+			if (hash != -1) {
+				insert(cptr, hash);
+			}
+			
+			if (matchCost >= matchLength) {
+				++run;
+				++cptr;
+				continue;
+			}
+			
+			if (isLazy && end - cptr >= 4) {
+				int length = matchLength;
+				int cost = matchCost;
+				int offset = matchOffset;
+				
+				int nextHash = hash(input, cptr + 1, false);
+				findMatch(input, cptr + 1, end, nextHash, chainLength);
+				
+				if (matchLength - matchCost > length - cost) {
+					// It's better to use a literal and the match of the next position
+					hash = nextHash;
+					hasMatch = true;
+					++run;
+					++cptr;
+					continue;
+				}
+				matchLength = length;
+				matchCost = cost;
+				matchOffset = offset;
+			}
+			
+			// literal block of data
+			while (run > 3) {
+				int tlen = Math.min(112, run & ~3);
+				run -= tlen;
+				dst[to++] = (byte) (0xE0 + (tlen >> 2) - 1);
+				System.arraycopy(input, rptr, dst, to, tlen);
+				rptr += tlen;
+				to += tlen;
+			}
+			
+			// two byte long form
+			if (matchCost == 2) {
+				dst[to++] = (byte) (((matchOffset >> 8) << 5) + ((matchLength - 3) << 2) + run);
+				dst[to++] = (byte) matchOffset;
+			}
+			// three byte long form
+			else if (matchCost == 3) {
+				dst[to++] = (byte) (0x80 + (matchLength - 4));
+				dst[to++] = (byte) ((run << 6) + (matchOffset >> 8));
+				dst[to++] = (byte) matchOffset;
+			}
+			// four byte very long form
+			else {
+				dst[to++] = (byte) (0xC0 + ((matchOffset >> 16) << 4) + (((matchLength - 5) >> 8) << 2) + run);
+				dst[to++] = (byte) (matchOffset >> 8);
+				dst[to++] = (byte) matchOffset;
+				dst[to++] = (byte) (matchLength - 5);
+			}
+			
+			if (run != 0) {
+				System.arraycopy(input, rptr, dst, to, run);
+				to += run;
+				run = 0;
+			}
+			
+			int matchEnd = cptr + matchLength;
+			for (++cptr; cptr < matchEnd; ++cptr) {
+				if (isLegacy || end - cptr >= 3) {
+					insert(cptr, hash(input, cptr, isLegacy));
+				}
+			}
+			rptr = cptr;
+		}
+		
+		// no match at end, use literal
+		while (run > 3) {
+			int tlen = Math.min(112, run & ~3);
+			run -= tlen;
+			dst[to++] = (byte) (0xE0 + (tlen >> 2) - 1);
+			System.arraycopy(input, rptr, dst, to, tlen);
+			rptr += tlen;
+			to += tlen;
+		}
+		
+		// end of stream command + 0..3 literal
+		dst[to++] = (byte) (0xFC + run);
+		if (run != 0) {
+			System.arraycopy(input, rptr, dst, to, run);
+			to += run;
+		}
+		
+		out.lengthInBytes = to;
+		base += inputLength;
+	}
+	
+	private void insert(int position, int hash) {
+		int hoffset = base + position;
+		link[hoffset & (WINDOW_SIZE - 1)] = hashtbl[hash];
+		hashtbl[hash] = hoffset;
+	}
+	
+	/**
+	 * Finds the best match for the given position, among the previous occurrences of its hash value, and stores it 
+	 * in {@link #matchLength}, {@link #matchCost} and {@link #matchOffset}. If no match is found, the length and cost are 2. 
+	 */
+	private void findMatch(byte[] in, int cptr, int end, int hash, int chainLength) {
+		int blen = 2;
+		int bcost = 2;
+		int boffset = 0;
+		int mlen = Math.min(end - cptr, MAX_MATCH_LENGTH);
+		int minhoffset = base + Math.max(cptr - MAX_OFFSET, 0);
+		int hoffset = hashtbl[hash];
+		
+		while (hoffset >= minhoffset) {
+			int tptr = hoffset - base;
+			// If the match is not longer than the best one it's not worth checking it
+			if (cptr + blen < end && in[cptr + blen] == in[tptr + blen]) {
+				int tlen = matchlen(in, cptr, tptr, mlen);
+				if (tlen > blen) {
+					int toffset = (cptr - 1) - tptr;
+					int tcost;
+					// two byte long form
+					if (toffset < 1024 && tlen <= 10) {
+						tcost = 2;
+					}
+					// three byte long form
+					else if (toffset < 16384 && tlen <= 67) {
+						tcost = 3;
+					}
+					// four byte very long form
+					else {
+						tcost = 4;
+					}
+					
+					if (tlen - tcost > blen - bcost) {
+						blen = tlen;
+						bcost = tcost;
+						boffset = toffset;
+						if (blen >= MAX_MATCH_LENGTH) {
+							break;
+						}
+					}
+				}
+			}
+			if (--chainLength == 0) {
+				break;
+			}
+			hoffset = link[hoffset & (WINDOW_SIZE - 1)];
+		}
+		
+		matchLength = blen;
+		matchCost = bcost;
+		matchOffset = boffset;
+	}
+	
+	/**
+	 * Returns the hash of the given position. The legacy hash only uses the first byte, as the original compressor did; 
+	 * otherwise, the first three bytes are used, so the position must not be one of the last two.
+	 */
+	private static int hash(byte[] array, int ptr, boolean isLegacy) {
+		if (isLegacy) {
+			int crc = CRC_TABLE[array[ptr] & 0xFF];
+			crc = CRC_TABLE[(crc ^ array[ptr]) & 0xFF] ^ (crc >> 8);
+			crc = CRC_TABLE[(crc ^ array[ptr]) & 0xFF] ^ (crc >> 8);
+			return crc;
+		} else {
+			int value = (array[ptr] & 0xFF) << 16 | (array[ptr + 1] & 0xFF) << 8 | (array[ptr + 2] & 0xFF);
+			return (value * 0x9E3779B1) >>> 16;
+		}
+	}
+	
+	private static int matchlen(byte[] in, int s, int d, int maxmatch) {
+		int current = 0;
+		while (current < maxmatch && in[s + current] == in[d + current]) {
+			++current;
+		}
+		return current;
+	}
+}
@@ -0,0 +1,418 @@
+/****************************************************************************
+* Copyright (C) 2019 Eric Mor
+*
+* This file is part of SporeModder FX.
+*
+* SporeModder FX is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+****************************************************************************/
+package sporemodder.file.dds;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.stream.IntStream;
+
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import sporemodder.file.dds.DDSPixelFormat.Format;
+
+/**
+ * Decodes the first mipmap of a {@link DDSTexture} directly into an array of ARGB pixels, without going through the
+ * ImageIO reader. Compressed textures are decoded by rows of 4x4 blocks, in parallel for big textures. The alpha channel
+ * can be removed or blended with a background color while decoding, so no second pass over the pixels is needed.
+ * <p>
+ * The output is the same as the one of {@link DDSImageReader}: DXT1, DXT3, DXT5, ATI1, ATI2 and uncompressed textures are
+ * decoded here, the rest of formats are read using the old reader.
+ */
+public class DDSDecoder {
+
+	public static enum AlphaMode {
+		/** The alpha channel is kept as it is. */
+		KEEP,
+		/** The alpha channel is ignored, all pixels are opaque. */
+		REMOVE,
+		/** The pixels are blended with a background color, so all pixels are opaque. */
+		BLEND
+	};
+
+	/** Textures with less rows of blocks than this are decoded in a single thread. */
+	private static final int MIN_PARALLEL_ROWS = 32;
+
+	private final byte[] data;
+	private final DDSPixelFormat pixelFormat;
+	private final Format format;
+	private final int width;
+	private final int height;
+	private final AlphaMode alphaMode;
+	private final int blendColor;
+
+	private DDSDecoder(DDSTexture texture, AlphaMode alphaMode, int blendColor) {
+		this.data = texture.getData();
+		this.pixelFormat = texture.getHeader().getPixelFormat();
+		this.format = texture.getFormat();
+		this.width = (int) texture.getWidth();
+		this.height = (int) texture.getHeight();
+		this.alphaMode = alphaMode;
+		this.blendColor = blendColor;
+	}
+
+	/**
+	 * Returns whether the texture format can be decoded directly by this class.
+	 * @param format
+	 * @return
+	 */
+	public static boolean isSupported(Format format) {
+		switch (format) {
+		case UNCOMPRESSED:
+		case DXT1:
+		case DXT3:
+		case DXT5:
+		case ATI1:
+		case ATI2:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Decodes the first mipmap of the texture into an array of <code>width * height</code> non-premultiplied ARGB pixels,
+	 * stored by rows.
+	 * @param texture
+	 * @return
+	 * @throws IOException If the texture format is not supported.
+	 */
+	public static int[] decode(DDSTexture texture) throws IOException {
+		return decode(texture, AlphaMode.KEEP, 0);
+	}
+
+	/**
+	 * Decodes the first mipmap of the texture into an array of <code>width * height</code> non-premultiplied ARGB pixels,
+	 * stored by rows.
+	 * @param texture
+	 * @param alphaMode What to do with the alpha channel.
+	 * @param blendColor The RGB background color used when the alpha mode is {@link AlphaMode#BLEND}.
+	 * @return
+	 * @throws IOException If the texture format is not supported.
+	 */
+	public static int[] decode(DDSTexture texture, AlphaMode alphaMode, int blendColor) throws IOException {
+		if (!isSupported(texture.getFormat())) {
+			return decodeWithReader(texture, alphaMode, blendColor);
+		}
+		try {
+			return new DDSDecoder(texture, alphaMode, blendColor).decode();
+		}
+		catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Creates a JavaFX image from an array of ARGB pixels, like the ones returned by {@link #decode(DDSTexture)}.
+	 * @param pixels
+	 * @param width
+	 * @param height
+	 * @return
+	 */
+	public static WritableImage toImage(int[] pixels, int width, int height) {
+		WritableImage image = new WritableImage(width, height);
+		image.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+		return image;
+	}
+
+	/**
+	 * Decodes the first mipmap of the texture into a JavaFX image.
+	 * @param texture
+	 * @param alphaMode What to do with the alpha channel.
+	 * @param blendColor The RGB background color used when the alpha mode is {@link AlphaMode#BLEND}.
+	 * @return
+	 * @throws IOException If the texture format is not supported.
+	 */
+	public static WritableImage toImage(DDSTexture texture, AlphaMode alphaMode, int blendColor) throws IOException {
+		return toImage(decode(texture, alphaMode, blendColor), (int) texture.getWidth(), (int) texture.getHeight());
+	}
+
+	/**
+	 * Returns a copy of an array of ARGB pixels, like the ones returned by {@link #decode(DDSTexture)}, with the alpha channel
+	 * removed or blended. This can be used to get several variants of a texture while decoding it only once.
+	 * @param pixels
+	 * @param alphaMode What to do with the alpha channel.
+	 * @param blendColor The RGB background color used when the alpha mode is {@link AlphaMode#BLEND}.
+	 * @return
+	 */
+	public static int[] applyAlpha(int[] pixels, AlphaMode alphaMode, int blendColor) {
+		int[] result = new int[pixels.length];
+		for (int i = 0; i < pixels.length; ++i) {
+			result[i] = applyAlpha(pixels[i], alphaMode, blendColor);
+		}
+		return result;
+	}
+
+	private static int[] decodeWithReader(DDSTexture texture, AlphaMode alphaMode, int blendColor) throws IOException {
+		BufferedImage image = texture.toBufferedImage();
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+		for (int i = 0; i < pixels.length; ++i) {
+			pixels[i] = applyAlpha(pixels[i], alphaMode, blendColor);
+		}
+		return pixels;
+	}
+
+	private static int applyAlpha(int argb, AlphaMode alphaMode, int blendColor) {
+		switch (alphaMode) {
+		case REMOVE:
+			return argb | 0xFF000000;
+		case BLEND:
+			int a = argb >>> 24;
+			int r = (((argb >> 16) & 0xFF) * a + ((blendColor >> 16) & 0xFF) * (255 - a) + 127) / 255;
+			int g = (((argb >> 8) & 0xFF) * a + ((blendColor >> 8) & 0xFF) * (255 - a) + 127) / 255;
+			int b = ((argb & 0xFF) * a + (blendColor & 0xFF) * (255 - a) + 127) / 255;
+			return 0xFF000000 | (r << 16) | (g << 8) | b;
+		default:
+			return argb;
+		}
+	}
+
+	private int[] decode() {
+		int[] pixels = new int[width * height];
+		int rowCount = format == Format.UNCOMPRESSED ? height : (height + 3) / 4;
+
+		IntStream rows = IntStream.range(0, rowCount);
+		if (rowCount >= MIN_PARALLEL_ROWS) rows = rows.parallel();
+
+		if (format == Format.UNCOMPRESSED) {
+			rows.forEach(y -> decodeUncompressedRow(pixels, y));
+		} else {
+			rows.forEach(blockY -> decodeBlockRow(pixels, blockY));
+		}
+		return pixels;
+	}
+
+	private void decodeBlockRow(int[] pixels, int blockY) {
+		int blockSize = format == Format.DXT1 || format == Format.ATI1 ? 8 : 16;
+		int blocksPerRow = Math.max(1, (width + 3) / 4);
+		int[] block = new int[16];
+		int[] channel = new int[16];
+		int[] palette = new int[8];
+
+		for (int blockX = 0; blockX < blocksPerRow; ++blockX) {
+			int offset = (blockY * blocksPerRow + blockX) * blockSize;
+			if (offset + blockSize > data.length) {
+				throw new UncheckedIOException(new IOException("DDS texture data is too short"));
+			}
+
+			switch (format) {
+			case DXT1:
+				decodeColorBlock(offset, true, block, palette);
+				break;
+			case DXT3:
+				decodeColorBlock(offset + 8, false, block, palette);
+				decodeDXT3AlphaBlock(offset, channel);
+				for (int i = 0; i < 16; ++i) block[i] = (block[i] & 0xFFFFFF) | (channel[i] << 24);
+				break;
+			case DXT5:
+				decodeColorBlock(offset + 8, false, block, palette);
+				decodeAlphaBlock(offset, channel, palette);
+				for (int i = 0; i < 16; ++i) block[i] = (block[i] & 0xFFFFFF) | (channel[i] << 24);
+				break;
+			case ATI1:
+				decodeAlphaBlock(offset, channel, palette);
+				for (int i = 0; i < 16; ++i) block[i] = 0xFF000000 | (channel[i] << 16) | (channel[i] << 8) | channel[i];
+				break;
+			case ATI2:
+				// Red is stored in the second half, green in the first one
+				decodeAlphaBlock(offset + 8, channel, palette);
+				for (int i = 0; i < 16; ++i) block[i] = 0xFF0000FF | (channel[i] << 16);
+				decodeAlphaBlock(offset, channel, palette);
+				for (int i = 0; i < 16; ++i) block[i] |= channel[i] << 8;
+				break;
+			default:
+				break;
+			}
+
+			if (pixelFormat.isNormal()) {
+				swizzleNormals(block);
+			}
+
+			int maxY = Math.min(4, height - blockY * 4);
+			int maxX = Math.min(4, width - blockX * 4);
+			for (int y = 0; y < maxY; ++y) {
+				int dst = (blockY * 4 + y) * width + blockX * 4;
+				for (int x = 0; x < maxX; ++x) {
+					pixels[dst + x] = applyAlpha(block[y * 4 + x], alphaMode, blendColor);
+				}
+			}
+		}
+	}
+
+	/** Normal maps store X in alpha, like in {@link DDSLineReader}; the blue channel is reconstructed. */
+	private void swizzleNormals(int[] block) {
+		for (int i = 0; i < 16; ++i) {
+			int a = block[i] >>> 24;
+			int r = (block[i] >> 16) & 0xFF;
+			int g = (block[i] >> 8) & 0xFF;
+			int b = format == Format.ATI1 || format == Format.ATI2 ? xyToBlue(g, r) : xyToBlue(a, g);
+			block[i] = (r << 24) | (a << 16) | (g << 8) | b;
+		}
+	}
+
+	private int readShort(int offset) {
+		return (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8);
+	}
+
+	private int readInt(int offset) {
+		return (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8) | ((data[offset + 2] & 0xFF) << 16) | ((data[offset + 3] & 0xFF) << 24);
+	}
+
+	private static int unpack565(int color) {
+		int r = (color >> 11) & 0x1F;
+		int g = (color >> 5) & 0x3F;
+		int b = color & 0x1F;
+		return 0xFF000000 | (((r << 3) | (r >> 2)) << 16) | (((g << 2) | (g >> 4)) << 8) | ((b << 3) | (b >> 2));
+	}
+
+	private static int interpolate(int c0, int c1, int w0, int w1, int divisor) {
+		int r = (((c0 >> 16) & 0xFF) * w0 + ((c1 >> 16) & 0xFF) * w1) / divisor;
+		int g = (((c0 >> 8) & 0xFF) * w0 + ((c1 >> 8) & 0xFF) * w1) / divisor;
+		int b = ((c0 & 0xFF) * w0 + (c1 & 0xFF) * w1) / divisor;
+		return 0xFF000000 | (r << 16) | (g << 8) | b;
+	}
+
+	private void decodeColorBlock(int offset, boolean isDXT1, int[] block, int[] palette) {
+		int color0 = readShort(offset);
+		int color1 = readShort(offset + 2);
+		int bits = readInt(offset + 4);
+
+		palette[0] = unpack565(color0);
+		palette[1] = unpack565(color1);
+		if (color0 > color1) {
+			palette[2] = interpolate(palette[0], palette[1], 2, 1, 3);
+			palette[3] = interpolate(palette[0], palette[1], 1, 2, 3);
+		} else {
+			palette[2] = interpolate(palette[0], palette[1], 1, 1, 2);
+			// Black, transparent only in DXT1
+			palette[3] = isDXT1 ? 0 : 0xFF000000;
+		}
+
+		for (int i = 0; i < 16; ++i) {
+			block[i] = palette[(bits >>> (i * 2)) & 3];
+		}
+	}
+
+	private void decodeDXT3AlphaBlock(int offset, int[] channel) {
+		for (int i = 0; i < 16; i += 2) {
+			int value = data[offset + i / 2] & 0xFF;
+			channel[i] = (value & 0xF) * 17;
+			channel[i + 1] = (value >> 4) * 17;
+		}
+	}
+
+	/** Decodes an 8-byte block of interpolated values, used for DXT5 alpha and ATI channels. */
+	private void decodeAlphaBlock(int offset, int[] channel, int[] palette) {
+		int value0 = data[offset] & 0xFF;
+		int value1 = data[offset + 1] & 0xFF;
+		long bits = (readInt(offset + 2) & 0xFFFFFFFFL) | ((long) readShort(offset + 6) << 32);
+
+		palette[0] = value0;
+		palette[1] = value1;
+		if (value0 > value1) {
+			for (int i = 1; i <= 6; ++i) {
+				palette[i + 1] = ((7 - i) * value0 + i * value1) / 7;
+			}
+		} else {
+			for (int i = 1; i <= 4; ++i) {
+				palette[i + 1] = ((5 - i) * value0 + i * value1) / 5;
+			}
+			palette[6] = 0;
+			palette[7] = 255;
+		}
+
+		for (int i = 0; i < 16; ++i) {
+			channel[i] = palette[(int) (bits >>> (i * 3)) & 7];
+		}
+	}
+
+	private void decodeUncompressedRow(int[] pixels, int y) {
+		int byteCount = (int) (pixelFormat.getRgbBitCount() / 8);
+		int lineOffset = y * width * byteCount;
+		if (lineOffset + width * byteCount > data.length) {
+			throw new UncheckedIOException(new IOException("DDS texture data is too short"));
+		}
+
+		boolean isRGB10A2 = pixelFormat.getRgbBitCount() == 32
+				&& ((pixelFormat.getMaskRed() == 1023 && pixelFormat.getMaskBlue() == 1072693248)
+						|| (pixelFormat.getMaskRed() == 1072693248 && pixelFormat.getMaskBlue() == 1023))
+				&& pixelFormat.getMaskGreen() == 1047552 && pixelFormat.getMaskAlpha() == 3221225472L;
+
+		for (int x = 0; x < width; ++x) {
+			int offset = lineOffset + x * byteCount;
+			long pixel = 0;
+			for (int i = 0; i < byteCount; ++i) {
+				pixel |= (data[offset + i] & 0xFFL) << (i * 8);
+			}
+
+			long a = 255, r = 255, g = 255, b = 255;
+			if (isRGB10A2) {
+				b = (pixel >> pixelFormat.getShiftRed()) >> 2;
+				g = (pixel >> pixelFormat.getShiftGreen()) >> 2;
+				r = (pixel >> pixelFormat.getShiftBlue()) >> 2;
+				if (pixelFormat.isAlphaPixels()) {
+					a = expandChannel(pixel, pixelFormat.getShiftAlpha(), pixelFormat.getBitsAlpha(), pixelFormat.getMaskFixedAlpha());
+				}
+			} else {
+				if (pixelFormat.getMaskFixedAlpha() != 0) {
+					a = expandChannel(pixel, pixelFormat.getShiftAlpha(), pixelFormat.getBitsAlpha(), pixelFormat.getMaskFixedAlpha());
+				}
+				if (pixelFormat.getMaskFixedRed() != 0) {
+					r = expandChannel(pixel, pixelFormat.getShiftRed(), pixelFormat.getBitsRed(), pixelFormat.getMaskFixedRed());
+				}
+				if (pixelFormat.getMaskFixedGreen() != 0) {
+					g = expandChannel(pixel, pixelFormat.getShiftGreen(), pixelFormat.getBitsGreen(), pixelFormat.getMaskFixedGreen());
+				}
+				if (pixelFormat.getMaskFixedBlue() != 0) {
+					b = expandChannel(pixel, pixelFormat.getShiftBlue(), pixelFormat.getBitsBlue(), pixelFormat.getMaskFixedBlue());
+				}
+			}
+			if (pixelFormat.isYUV()) {
+				long yy = r, u = g, v = b;
+				r = (long) (1.164 * (yy - 16) + 1.596 * (v - 128));
+				g = (long) (1.164 * (yy - 16) - 0.813 * (v - 128) - 0.391 * (u - 128));
+				b = (long) (1.164 * (yy - 16) + 2.018 * (u - 128));
+			}
+			if (pixelFormat.isLuminance()) {
+				g = r;
+				b = r;
+			}
+
+			int argb = (int) (((a & 0xFF) << 24) | ((r & 0xFF) << 16) | ((g & 0xFF) << 8) | (b & 0xFF));
+			pixels[y * width + x] = applyAlpha(argb, alphaMode, blendColor);
+		}
+	}
+
+	private static long expandChannel(long pixel, int shift, int bits, long fixedMask) {
+		return (pixel >> shift << (8 - bits) & fixedMask) * 255 / fixedMask;
+	}
+
+	private static int xyToBlue(int x, int y) {
+		double nx = 2.0 * (x / 255.0) - 1.0;
+		double ny = 2.0 * (y / 255.0) - 1.0;
+		double nz = 0.0;
+		double d = 1.0 - nx * nx + ny * ny;
+		if (d > 0) {
+			nz = Math.sqrt(d);
+		}
+		return Math.max(0, Math.min(255, (int) (255.0 * (nz + 1.0) / 2.0)));
+	}
+}
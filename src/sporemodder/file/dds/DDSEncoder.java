@@ -0,0 +1,882 @@
+/****************************************************************************
+* Copyright (C) 2019 Eric Mor
+*
+* This file is part of SporeModder FX.
+*
+* SporeModder FX is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+****************************************************************************/
+package sporemodder.file.dds;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.stream.IntStream;
+
+import javax.imageio.ImageIO;
+
+import sporemodder.file.dds.DDSPixelFormat.Format;
+
+/**
+ * Compresses images into DXT1 or DXT5 {@link DDSTexture DDS textures}, generating the whole mipmap chain. This is the inverse
+ * of {@link DDSDecoder}, and it is used to pack PNG and TGA images without having to convert them with external tools.
+ * <p>
+ * The mipmaps are generated with a box or a Kaiser filter, each level from the previous one. Then all the rows of 4x4 blocks
+ * of every level are compressed in parallel. The {@link Quality} decides how much time is spent looking for the best colors
+ * of each block.
+ */
+public class DDSEncoder {
+
+	public static enum Quality {
+		/** The block colors are the corners of the bounding box of its pixels. */
+		FAST,
+		/** The block colors are found on the principal axis of its pixels. */
+		NORMAL,
+		/** Like {@link #NORMAL}, but the colors are then refined to minimize the error. */
+		HIGH
+	};
+
+	public static enum MipmapFilter {
+		/** Each pixel is the average of the 2x2 pixels of the previous level. */
+		BOX,
+		/** A windowed sinc filter, sharper than the box filter. */
+		KAISER
+	};
+
+	/** Encoding less rows of blocks than this is done in a single thread. */
+	private static final int MIN_PARALLEL_ROWS = 32;
+
+	/** The radius, in pixels of the source level, of the Kaiser filter. */
+	private static final float KAISER_WIDTH = 3.0f;
+	private static final float KAISER_ALPHA = 4.0f;
+
+	private Format format;
+	private Quality quality = Quality.NORMAL;
+	private MipmapFilter mipmapFilter = MipmapFilter.BOX;
+	private boolean generateMipmaps = true;
+
+	/**
+	 * Returns the format used to compress the textures, or null if it is chosen for every image: DXT1 for opaque images,
+	 * DXT5 for images that use the alpha channel.
+	 * @return
+	 */
+	public Format getFormat() {
+		return format;
+	}
+
+	/**
+	 * Sets the format used to compress the textures, which must be DXT1, DXT5 or null to choose it for every image.
+	 * @param format
+	 */
+	public void setFormat(Format format) {
+		if (format != null && format != Format.DXT1 && format != Format.DXT5) {
+			throw new IllegalArgumentException("Only DXT1 and DXT5 textures can be encoded");
+		}
+		this.format = format;
+	}
+
+	public Quality getQuality() {
+		return quality;
+	}
+
+	public void setQuality(Quality quality) {
+		this.quality = quality;
+	}
+
+	public MipmapFilter getMipmapFilter() {
+		return mipmapFilter;
+	}
+
+	public void setMipmapFilter(MipmapFilter mipmapFilter) {
+		this.mipmapFilter = mipmapFilter;
+	}
+
+	public boolean isGenerateMipmaps() {
+		return generateMipmaps;
+	}
+
+	/**
+	 * Sets whether the whole mipmap chain, down to 1x1, is generated. If false, the texture only has one level.
+	 * @param generateMipmaps
+	 */
+	public void setGenerateMipmaps(boolean generateMipmaps) {
+		this.generateMipmaps = generateMipmaps;
+	}
+
+	/**
+	 * Returns whether the file is an image that can be read by {@link #readPixels(File)}: PNG or TGA.
+	 * @param file
+	 * @return
+	 */
+	public static boolean isSupportedImage(File file) {
+		String name = file.getName().toLowerCase();
+		return name.endsWith(".png") || name.endsWith(".tga");
+	}
+
+	/**
+	 * Reads a PNG or TGA image and encodes it into a texture.
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public DDSTexture encode(File file) throws IOException {
+		int[] size = new int[2];
+		int[] pixels = readPixels(file, size);
+		return encode(pixels, size[0], size[1]);
+	}
+
+	/**
+	 * Encodes an image, given as an array of <code>width * height</code> non-premultiplied ARGB pixels stored by rows,
+	 * into a texture.
+	 * @param pixels
+	 * @param width
+	 * @param height
+	 * @return
+	 */
+	public DDSTexture encode(int[] pixels, int width, int height) {
+		if (pixels.length < width * height) {
+			throw new IllegalArgumentException("The pixels array is smaller than the image");
+		}
+		Format format = this.format;
+		if (format == null) {
+			format = hasAlpha(pixels, width * height) ? Format.DXT5 : Format.DXT1;
+		}
+		int blockSize = format == Format.DXT1 ? 8 : 16;
+
+		int[][] levels = generateMipmaps ? generateMipmaps(pixels, width, height) : new int[][] {pixels};
+		int[] offsets = new int[levels.length];
+		// Rows of blocks of all levels are listed together, so they can be encoded in parallel
+		int[] rowStarts = new int[levels.length + 1];
+		int dataSize = 0;
+		for (int i = 0; i < levels.length; ++i) {
+			offsets[i] = dataSize;
+			rowStarts[i + 1] = rowStarts[i] + blockCount(mipSize(height, i));
+			dataSize += blockCount(mipSize(width, i)) * blockCount(mipSize(height, i)) * blockSize;
+		}
+
+		byte[] data = new byte[dataSize];
+		boolean isDXT1 = format == Format.DXT1;
+
+		IntStream rows = IntStream.range(0, rowStarts[levels.length]);
+		if (rowStarts[levels.length] >= MIN_PARALLEL_ROWS) rows = rows.parallel();
+		rows.forEach(row -> {
+			int level = 0;
+			while (row >= rowStarts[level + 1]) ++level;
+			new BlockEncoder(quality, isDXT1).encodeRow(levels[level], mipSize(width, level), mipSize(height, level),
+					row - rowStarts[level], data, offsets[level]);
+		});
+
+		return new DDSTexture(width, height, levels.length, format.getFourCC(), data);
+	}
+
+	/**
+	 * Returns all the levels of the mipmap chain of the image, including the image itself as the first level. Each level
+	 * is half the size of the previous one, until the last one is 1x1.
+	 * @param pixels
+	 * @param width
+	 * @param height
+	 * @return
+	 */
+	public int[][] generateMipmaps(int[] pixels, int width, int height) {
+		int count = mipmapCount(width, height);
+		int[][] levels = new int[count][];
+		levels[0] = pixels;
+		for (int i = 1; i < count; ++i) {
+			int srcWidth = mipSize(width, i - 1);
+			int srcHeight = mipSize(height, i - 1);
+			if (mipmapFilter == MipmapFilter.KAISER) {
+				levels[i] = downsampleKaiser(levels[i - 1], srcWidth, srcHeight);
+			} else {
+				levels[i] = downsampleBox(levels[i - 1], srcWidth, srcHeight);
+			}
+		}
+		return levels;
+	}
+
+	/**
+	 * Returns how many levels a complete mipmap chain of an image of the given size has.
+	 * @param width
+	 * @param height
+	 * @return
+	 */
+	public static int mipmapCount(int width, int height) {
+		int count = 1;
+		while (width > 1 || height > 1) {
+			width = Math.max(1, width / 2);
+			height = Math.max(1, height / 2);
+			++count;
+		}
+		return count;
+	}
+
+	private static int mipSize(int size, int level) {
+		return Math.max(1, size >> level);
+	}
+
+	private static int blockCount(int size) {
+		return Math.max(1, (size + 3) / 4);
+	}
+
+	private static boolean hasAlpha(int[] pixels, int count) {
+		for (int i = 0; i < count; ++i) {
+			if ((pixels[i] >>> 24) != 0xFF) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Reads the pixels of a PNG or TGA image as non-premultiplied ARGB values.
+	 * @param file
+	 * @param size An array where the width and height of the image are written.
+	 * @return
+	 * @throws IOException
+	 */
+	public static int[] readPixels(File file, int[] size) throws IOException {
+		if (file.getName().toLowerCase().endsWith(".tga")) {
+			return readTGA(Files.readAllBytes(file.toPath()), size);
+		}
+		BufferedImage image = ImageIO.read(file);
+		if (image == null) {
+			throw new IOException("Unsupported image format: " + file.getName());
+		}
+		size[0] = image.getWidth();
+		size[1] = image.getHeight();
+		return image.getRGB(0, 0, size[0], size[1], null, 0, size[0]);
+	}
+
+	/** Reads true color and grayscale TGA images, uncompressed or RLE, since ImageIO does not support the format. */
+	private static int[] readTGA(byte[] data, int[] size) throws IOException {
+		if (data.length < 18) {
+			throw new IOException("TGA file is too short");
+		}
+		int idLength = data[0] & 0xFF;
+		int colorMapType = data[1] & 0xFF;
+		int imageType = data[2] & 0xFF;
+		int colorMapLength = (data[5] & 0xFF) | ((data[6] & 0xFF) << 8);
+		int colorMapEntrySize = data[7] & 0xFF;
+		int width = (data[12] & 0xFF) | ((data[13] & 0xFF) << 8);
+		int height = (data[14] & 0xFF) | ((data[15] & 0xFF) << 8);
+		int bitsPerPixel = data[16] & 0xFF;
+		int descriptor = data[17] & 0xFF;
+
+		boolean isRLE = imageType == 10 || imageType == 11;
+		boolean isGray = imageType == 3 || imageType == 11;
+		if ((imageType != 2 && imageType != 3 && !isRLE) || (isGray ? bitsPerPixel != 8 : (bitsPerPixel != 24 && bitsPerPixel != 32))) {
+			throw new IOException("Unsupported TGA image: type " + imageType + ", " + bitsPerPixel + " bits per pixel");
+		}
+
+		int bytesPerPixel = bitsPerPixel / 8;
+		int offset = 18 + idLength + (colorMapType == 1 ? colorMapLength * ((colorMapEntrySize + 7) / 8) : 0);
+		int[] pixels = new int[width * height];
+		int count = 0;
+
+		try {
+			while (count < pixels.length) {
+				int packetCount = 1;
+				boolean isRepeated = false;
+				if (isRLE) {
+					int packet = data[offset++] & 0xFF;
+					packetCount = (packet & 0x7F) + 1;
+					isRepeated = (packet & 0x80) != 0;
+				}
+				int color = 0;
+				for (int i = 0; i < packetCount && count < pixels.length; ++i) {
+					if (i == 0 || !isRepeated) {
+						color = readTGAPixel(data, offset, bytesPerPixel);
+						offset += bytesPerPixel;
+					}
+					pixels[count++] = color;
+				}
+			}
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IOException("TGA file is too short");
+		}
+
+		// By default, TGA images are stored from the bottom row up, and might be mirrored horizontally
+		boolean isTopDown = (descriptor & 0x20) != 0;
+		boolean isRightToLeft = (descriptor & 0x10) != 0;
+		if (!isTopDown || isRightToLeft) {
+			int[] flipped = new int[pixels.length];
+			for (int y = 0; y < height; ++y) {
+				int srcY = isTopDown ? y : height - 1 - y;
+				for (int x = 0; x < width; ++x) {
+					int srcX = isRightToLeft ? width - 1 - x : x;
+					flipped[y * width + x] = pixels[srcY * width + srcX];
+				}
+			}
+			pixels = flipped;
+		}
+
+		size[0] = width;
+		size[1] = height;
+		return pixels;
+	}
+
+	private static int readTGAPixel(byte[] data, int offset, int bytesPerPixel) {
+		if (bytesPerPixel == 1) {
+			int value = data[offset] & 0xFF;
+			return 0xFF000000 | (value << 16) | (value << 8) | value;
+		}
+		int b = data[offset] & 0xFF;
+		int g = data[offset + 1] & 0xFF;
+		int r = data[offset + 2] & 0xFF;
+		int a = bytesPerPixel == 4 ? data[offset + 3] & 0xFF : 0xFF;
+		return (a << 24) | (r << 16) | (g << 8) | b;
+	}
+
+	private static int[] downsampleBox(int[] src, int srcWidth, int srcHeight) {
+		int width = Math.max(1, srcWidth / 2);
+		int height = Math.max(1, srcHeight / 2);
+		int[] dst = new int[width * height];
+
+		IntStream rows = IntStream.range(0, height);
+		if (height >= MIN_PARALLEL_ROWS * 4) rows = rows.parallel();
+		rows.forEach(y -> {
+			int y0 = Math.min(y * 2, srcHeight - 1);
+			int y1 = Math.min(y * 2 + 1, srcHeight - 1);
+			for (int x = 0; x < width; ++x) {
+				int x0 = Math.min(x * 2, srcWidth - 1);
+				int x1 = Math.min(x * 2 + 1, srcWidth - 1);
+				int p0 = src[y0 * srcWidth + x0];
+				int p1 = src[y0 * srcWidth + x1];
+				int p2 = src[y1 * srcWidth + x0];
+				int p3 = src[y1 * srcWidth + x1];
+				int result = 0;
+				for (int shift = 0; shift < 32; shift += 8) {
+					int sum = ((p0 >>> shift) & 0xFF) + ((p1 >>> shift) & 0xFF) + ((p2 >>> shift) & 0xFF) + ((p3 >>> shift) & 0xFF);
+					result |= ((sum + 2) / 4) << shift;
+				}
+				dst[y * width + x] = result;
+			}
+		});
+		return dst;
+	}
+
+	/**
+	 * Returns the weights of the Kaiser filter that reduces a row of the given size to half of it. For every destination
+	 * pixel there are <code>taps</code> weights, applied to the pixels that start at <code>2 * i - taps / 2 + 1</code>.
+	 */
+	private static float[] kaiserWeights(int taps) {
+		// All destination pixels are at the same position relative to their source pixels, so the weights are shared
+		float[] weights = new float[taps];
+		float sum = 0;
+		for (int i = 0; i < taps; ++i) {
+			// Distance from the center of the destination pixel, which is between two source pixels
+			float x = (i - taps / 2 + 0.5f) / 2.0f;
+			weights[i] = sinc(x) * kaiser(x / (KAISER_WIDTH / 2.0f));
+			sum += weights[i];
+		}
+		for (int i = 0; i < taps; ++i) {
+			weights[i] /= sum;
+		}
+		return weights;
+	}
+
+	private static float sinc(float x) {
+		if (Math.abs(x) < 1e-4f) return 1.0f;
+		double px = Math.PI * x;
+		return (float) (Math.sin(px) / px);
+	}
+
+	private static float kaiser(float x) {
+		if (Math.abs(x) > 1.0f) return 0.0f;
+		return (float) (besselI0(KAISER_ALPHA * Math.sqrt(1.0 - x * x)) / besselI0(KAISER_ALPHA));
+	}
+
+	private static double besselI0(double x) {
+		double sum = 1.0;
+		double term = 1.0;
+		for (int k = 1; k < 32; ++k) {
+			term *= (x / (2 * k)) * (x / (2 * k));
+			sum += term;
+			if (term < sum * 1e-12) break;
+		}
+		return sum;
+	}
+
+	private static int[] downsampleKaiser(int[] src, int srcWidth, int srcHeight) {
+		int width = Math.max(1, srcWidth / 2);
+		int height = Math.max(1, srcHeight / 2);
+		int taps = 2 * (int) Math.ceil(KAISER_WIDTH);
+		float[] weights = kaiserWeights(taps);
+
+		// Separable filter: first the rows, into floats, then the columns
+		float[] horizontal = new float[width * srcHeight * 4];
+		IntStream rows = IntStream.range(0, srcHeight);
+		if (srcHeight >= MIN_PARALLEL_ROWS * 4) rows = rows.parallel();
+		rows.forEach(y -> {
+			for (int x = 0; x < width; ++x) {
+				float a = 0, r = 0, g = 0, b = 0;
+				if (srcWidth == 1) {
+					int p = src[y * srcWidth];
+					a = p >>> 24; r = (p >> 16) & 0xFF; g = (p >> 8) & 0xFF; b = p & 0xFF;
+				} else {
+					for (int i = 0; i < taps; ++i) {
+						int sx = clamp(x * 2 - taps / 2 + 1 + i, 0, srcWidth - 1);
+						int p = src[y * srcWidth + sx];
+						float w = weights[i];
+						a += w * (p >>> 24);
+						r += w * ((p >> 16) & 0xFF);
+						g += w * ((p >> 8) & 0xFF);
+						b += w * (p & 0xFF);
+					}
+				}
+				int index = (y * width + x) * 4;
+				horizontal[index] = a;
+				horizontal[index + 1] = r;
+				horizontal[index + 2] = g;
+				horizontal[index + 3] = b;
+			}
+		});
+
+		int[] dst = new int[width * height];
+		rows = IntStream.range(0, height);
+		if (height >= MIN_PARALLEL_ROWS * 4) rows = rows.parallel();
+		rows.forEach(y -> {
+			for (int x = 0; x < width; ++x) {
+				float[] sums = new float[4];
+				if (srcHeight == 1) {
+					System.arraycopy(horizontal, x * 4, sums, 0, 4);
+				} else {
+					for (int i = 0; i < taps; ++i) {
+						int sy = clamp(y * 2 - taps / 2 + 1 + i, 0, srcHeight - 1);
+						int index = (sy * width + x) * 4;
+						float w = weights[i];
+						for (int c = 0; c < 4; ++c) {
+							sums[c] += w * horizontal[index + c];
+						}
+					}
+				}
+				dst[y * width + x] = (toByte(sums[0]) << 24) | (toByte(sums[1]) << 16) | (toByte(sums[2]) << 8) | toByte(sums[3]);
+			}
+		});
+		return dst;
+	}
+
+	private static int clamp(int value, int min, int max) {
+		return value < min ? min : (value > max ? max : value);
+	}
+
+	private static int toByte(float value) {
+		return clamp(Math.round(value), 0, 255);
+	}
+
+	/**
+	 * Compresses the 4x4 blocks of a row. The arrays it uses are reused between blocks, so every thread must use its own encoder.
+	 */
+	private static class BlockEncoder {
+		private final Quality quality;
+		private final boolean isDXT1;
+
+		private final int[] block = new int[16];
+		private final int[] palette = new int[4];
+		private final int[] indices = new int[16];
+		private final int[] alphaPalette = new int[8];
+
+		BlockEncoder(Quality quality, boolean isDXT1) {
+			this.quality = quality;
+			this.isDXT1 = isDXT1;
+		}
+
+		void encodeRow(int[] pixels, int width, int height, int blockY, byte[] data, int levelOffset) {
+			int blocksPerRow = blockCount(width);
+			int blockSize = isDXT1 ? 8 : 16;
+
+			for (int blockX = 0; blockX < blocksPerRow; ++blockX) {
+				// Pixels outside of the image repeat the ones in the border
+				for (int y = 0; y < 4; ++y) {
+					int py = Math.min(blockY * 4 + y, height - 1);
+					for (int x = 0; x < 4; ++x) {
+						int px = Math.min(blockX * 4 + x, width - 1);
+						block[y * 4 + x] = pixels[py * width + px];
+					}
+				}
+
+				int offset = levelOffset + (blockY * blocksPerRow + blockX) * blockSize;
+				if (isDXT1) {
+					encodeColorBlock(data, offset, true);
+				} else {
+					encodeAlphaBlock(data, offset);
+					encodeColorBlock(data, offset + 8, false);
+				}
+			}
+		}
+
+		private void encodeColorBlock(byte[] data, int offset, boolean isDXT1) {
+			// In DXT1, pixels with less than half alpha use the transparent color of the 3-color mode
+			boolean hasTransparent = false;
+			boolean isTransparent = true;
+			if (isDXT1) {
+				for (int i = 0; i < 16; ++i) {
+					if ((block[i] >>> 24) < 128) hasTransparent = true;
+					else isTransparent = false;
+				}
+			} else {
+				isTransparent = false;
+			}
+
+			if (isTransparent) {
+				// color0 <= color1, all indices 3
+				writeColorBlock(data, offset, 0, 0, 0xFFFFFFFF);
+				return;
+			}
+
+			int[] endpoints = findEndpoints(hasTransparent);
+			int color0 = endpoints[0];
+			int color1 = endpoints[1];
+
+			if (quality == Quality.HIGH) {
+				int error = computeIndices(color0, color1, hasTransparent);
+				for (int iteration = 0; iteration < 2; ++iteration) {
+					int[] refined = refineEndpoints(hasTransparent);
+					if (refined == null) break;
+					int refinedError = computeIndices(refined[0], refined[1], hasTransparent);
+					if (refinedError >= error) break;
+					error = refinedError;
+					color0 = refined[0];
+					color1 = refined[1];
+				}
+			}
+
+			int packed0 = pack565(color0);
+			int packed1 = pack565(color1);
+			// The order of the colors decides the mode: color0 > color1 is the 4-color mode
+			if (hasTransparent ? packed0 > packed1 : packed0 < packed1) {
+				int temp = packed0;
+				packed0 = packed1;
+				packed1 = temp;
+			}
+
+			if (packed0 == packed1 && !hasTransparent) {
+				// There is no 4-color mode with equal colors, but the first color is enough
+				writeColorBlock(data, offset, packed0, packed1, 0);
+				return;
+			}
+
+			buildPalette(packed0, packed1, !hasTransparent);
+			int bits = 0;
+			for (int i = 0; i < 16; ++i) {
+				int index;
+				if (hasTransparent && (block[i] >>> 24) < 128) {
+					index = 3;
+				} else {
+					index = nearestColor(block[i], hasTransparent ? 3 : 4);
+				}
+				bits |= index << (i * 2);
+			}
+			writeColorBlock(data, offset, packed0, packed1, bits);
+		}
+
+		private static void writeColorBlock(byte[] data, int offset, int color0, int color1, int bits) {
+			data[offset] = (byte) color0;
+			data[offset + 1] = (byte) (color0 >> 8);
+			data[offset + 2] = (byte) color1;
+			data[offset + 3] = (byte) (color1 >> 8);
+			data[offset + 4] = (byte) bits;
+			data[offset + 5] = (byte) (bits >> 8);
+			data[offset + 6] = (byte) (bits >> 16);
+			data[offset + 7] = (byte) (bits >> 24);
+		}
+
+		/** Returns two RGB colors that enclose the (opaque) pixels of the block. */
+		private int[] findEndpoints(boolean skipTransparent) {
+			int count = 0;
+			float meanR = 0, meanG = 0, meanB = 0;
+			int minR = 255, minG = 255, minB = 255, maxR = 0, maxG = 0, maxB = 0;
+			for (int i = 0; i < 16; ++i) {
+				if (skipTransparent && (block[i] >>> 24) < 128) continue;
+				int r = (block[i] >> 16) & 0xFF, g = (block[i] >> 8) & 0xFF, b = block[i] & 0xFF;
+				meanR += r; meanG += g; meanB += b;
+				minR = Math.min(minR, r); minG = Math.min(minG, g); minB = Math.min(minB, b);
+				maxR = Math.max(maxR, r); maxG = Math.max(maxG, g); maxB = Math.max(maxB, b);
+				++count;
+			}
+
+			meanR /= count; meanG /= count; meanB /= count;
+
+			if (quality == Quality.FAST) {
+				// Choose the diagonal of the box: channels that decrease when the widest one increases are swapped
+				int rangeR = maxR - minR, rangeG = maxG - minG, rangeB = maxB - minB;
+				int reference = rangeR >= rangeG && rangeR >= rangeB ? 16 : (rangeG >= rangeB ? 8 : 0);
+				float referenceMean = reference == 16 ? meanR : (reference == 8 ? meanG : meanB);
+				float covarianceR = 0, covarianceG = 0, covarianceB = 0;
+				for (int i = 0; i < 16; ++i) {
+					if (skipTransparent && (block[i] >>> 24) < 128) continue;
+					float value = ((block[i] >> reference) & 0xFF) - referenceMean;
+					covarianceR += value * (((block[i] >> 16) & 0xFF) - meanR);
+					covarianceG += value * (((block[i] >> 8) & 0xFF) - meanG);
+					covarianceB += value * ((block[i] & 0xFF) - meanB);
+				}
+				// Move the corners a bit inside the box, the interpolated colors cover it better
+				int insetR = rangeR >> 4, insetG = rangeG >> 4, insetB = rangeB >> 4;
+				int r0 = maxR - insetR, g0 = maxG - insetG, b0 = maxB - insetB;
+				int r1 = minR + insetR, g1 = minG + insetG, b1 = minB + insetB;
+				if (covarianceR < 0) { int temp = r0; r0 = r1; r1 = temp; }
+				if (covarianceG < 0) { int temp = g0; g0 = g1; g1 = temp; }
+				if (covarianceB < 0) { int temp = b0; b0 = b1; b1 = temp; }
+				return new int[] {(r0 << 16) | (g0 << 8) | b0, (r1 << 16) | (g1 << 8) | b1};
+			}
+
+			float cRR = 0, cRG = 0, cRB = 0, cGG = 0, cGB = 0, cBB = 0;
+			for (int i = 0; i < 16; ++i) {
+				if (skipTransparent && (block[i] >>> 24) < 128) continue;
+				float r = ((block[i] >> 16) & 0xFF) - meanR, g = ((block[i] >> 8) & 0xFF) - meanG, b = (block[i] & 0xFF) - meanB;
+				cRR += r * r; cRG += r * g; cRB += r * b;
+				cGG += g * g; cGB += g * b; cBB += b * b;
+			}
+
+			// Power iteration, starting from the diagonal of the bounding box
+			float axisR = maxR - minR, axisG = maxG - minG, axisB = maxB - minB;
+			for (int iteration = 0; iteration < 8; ++iteration) {
+				float r = cRR * axisR + cRG * axisG + cRB * axisB;
+				float g = cRG * axisR + cGG * axisG + cGB * axisB;
+				float b = cRB * axisR + cGB * axisG + cBB * axisB;
+				float length = Math.max(Math.abs(r), Math.max(Math.abs(g), Math.abs(b)));
+				if (length < 1e-6f) break;
+				axisR = r / length; axisG = g / length; axisB = b / length;
+			}
+
+			float minDot = Float.MAX_VALUE, maxDot = -Float.MAX_VALUE;
+			for (int i = 0; i < 16; ++i) {
+				if (skipTransparent && (block[i] >>> 24) < 128) continue;
+				float dot = (((block[i] >> 16) & 0xFF) - meanR) * axisR + (((block[i] >> 8) & 0xFF) - meanG) * axisG + ((block[i] & 0xFF) - meanB) * axisB;
+				minDot = Math.min(minDot, dot);
+				maxDot = Math.max(maxDot, dot);
+			}
+			float lengthSquared = axisR * axisR + axisG * axisG + axisB * axisB;
+			if (lengthSquared < 1e-6f) {
+				int mean = (toByte(meanR) << 16) | (toByte(meanG) << 8) | toByte(meanB);
+				return new int[] {mean, mean};
+			}
+			minDot /= lengthSquared;
+			maxDot /= lengthSquared;
+			return new int[] {
+					(toByte(meanR + axisR * maxDot) << 16) | (toByte(meanG + axisG * maxDot) << 8) | toByte(meanB + axisB * maxDot),
+					(toByte(meanR + axisR * minDot) << 16) | (toByte(meanG + axisG * minDot) << 8) | toByte(meanB + axisB * minDot)};
+		}
+
+		/**
+		 * Assigns the nearest palette entry to every pixel, storing it in <code>indices</code> as its position between the
+		 * two colors, and returns the total squared error.
+		 */
+		private int computeIndices(int color0, int color1, boolean hasTransparent) {
+			int packed0 = pack565(color0);
+			int packed1 = pack565(color1);
+			if (hasTransparent ? packed0 > packed1 : packed0 < packed1) {
+				int temp = packed0; packed0 = packed1; packed1 = temp;
+				temp = color0; color0 = color1; color1 = temp;
+			}
+			if (packed0 == packed1) {
+				palette[0] = unpack565(packed0);
+				for (int i = 0; i < 16; ++i) indices[i] = 0;
+				return computeError(1, hasTransparent);
+			}
+			buildPalette(packed0, packed1, !hasTransparent);
+			int error = 0;
+			for (int i = 0; i < 16; ++i) {
+				if (hasTransparent && (block[i] >>> 24) < 128) {
+					indices[i] = -1;
+					continue;
+				}
+				int index = nearestColor(block[i], hasTransparent ? 3 : 4);
+				error += colorDistance(block[i], palette[index]);
+				indices[i] = index;
+			}
+			return error;
+		}
+
+		private int computeError(int paletteSize, boolean hasTransparent) {
+			int error = 0;
+			for (int i = 0; i < 16; ++i) {
+				if (hasTransparent && (block[i] >>> 24) < 128) {
+					indices[i] = -1;
+					continue;
+				}
+				error += colorDistance(block[i], palette[nearestColor(block[i], paletteSize)]);
+			}
+			return error;
+		}
+
+		/**
+		 * Solves, by least squares, the two endpoint colors that best reproduce the pixels with the indices
+		 * found by {@link #computeIndices(int, int, boolean)}. Returns null if they cannot be solved.
+		 */
+		private int[] refineEndpoints(boolean hasTransparent) {
+			float aa = 0, bb = 0, ab = 0;
+			float axR = 0, axG = 0, axB = 0, bxR = 0, bxG = 0, bxB = 0;
+			for (int i = 0; i < 16; ++i) {
+				if (indices[i] < 0) continue;
+				// Weight of the first color for each index of the palette
+				float alpha;
+				switch (indices[i]) {
+				case 0: alpha = 1.0f; break;
+				case 1: alpha = 0.0f; break;
+				case 2: alpha = hasTransparent ? 0.5f : 2.0f / 3.0f; break;
+				default: alpha = 1.0f / 3.0f; break;
+				}
+				float beta = 1.0f - alpha;
+				int r = (block[i] >> 16) & 0xFF, g = (block[i] >> 8) & 0xFF, b = block[i] & 0xFF;
+				aa += alpha * alpha; bb += beta * beta; ab += alpha * beta;
+				axR += alpha * r; axG += alpha * g; axB += alpha * b;
+				bxR += beta * r; bxG += beta * g; bxB += beta * b;
+			}
+			float determinant = aa * bb - ab * ab;
+			if (Math.abs(determinant) < 1e-6f) return null;
+			float factor = 1.0f / determinant;
+			return new int[] {
+					(toByte((axR * bb - bxR * ab) * factor) << 16) | (toByte((axG * bb - bxG * ab) * factor) << 8) | toByte((axB * bb - bxB * ab) * factor),
+					(toByte((bxR * aa - axR * ab) * factor) << 16) | (toByte((bxG * aa - axG * ab) * factor) << 8) | toByte((bxB * aa - axB * ab) * factor)};
+		}
+
+		/** Builds the palette exactly like the decoder does. */
+		private void buildPalette(int packed0, int packed1, boolean isFourColor) {
+			palette[0] = unpack565(packed0);
+			palette[1] = unpack565(packed1);
+			if (isFourColor) {
+				palette[2] = interpolate(palette[0], palette[1], 2, 1, 3);
+				palette[3] = interpolate(palette[0], palette[1], 1, 2, 3);
+			} else {
+				palette[2] = interpolate(palette[0], palette[1], 1, 1, 2);
+				palette[3] = 0;
+			}
+		}
+
+		private int nearestColor(int color, int paletteSize) {
+			int best = 0;
+			int bestDistance = Integer.MAX_VALUE;
+			for (int i = 0; i < paletteSize; ++i) {
+				int distance = colorDistance(color, palette[i]);
+				if (distance < bestDistance) {
+					bestDistance = distance;
+					best = i;
+				}
+			}
+			return best;
+		}
+
+		private void encodeAlphaBlock(byte[] data, int offset) {
+			int min = 255, max = 0;
+			int innerMin = 255, innerMax = 0;
+			for (int i = 0; i < 16; ++i) {
+				int a = block[i] >>> 24;
+				min = Math.min(min, a);
+				max = Math.max(max, a);
+				if (a != 0 && a != 255) {
+					innerMin = Math.min(innerMin, a);
+					innerMax = Math.max(innerMax, a);
+				}
+			}
+
+			// 8-value mode: alpha0 > alpha1
+			long bits = 0;
+			int alpha0 = max, alpha1 = min;
+			if (alpha0 == alpha1) {
+				writeAlphaBlock(data, offset, alpha0, alpha1, 0);
+				return;
+			}
+			buildAlphaPalette(alpha0, alpha1);
+			int error = 0;
+			for (int i = 0; i < 16; ++i) {
+				int a = block[i] >>> 24;
+				int index = nearestAlpha(a);
+				int difference = a - alphaPalette[index];
+				error += difference * difference;
+				bits |= (long) index << (i * 3);
+			}
+
+			// 6-value mode: alpha0 <= alpha1, with exact 0 and 255; useful for blocks with sharp transparency edges
+			if (quality == Quality.HIGH && (min == 0 || max == 255) && innerMin <= innerMax) {
+				buildAlphaPalette(innerMin, innerMax);
+				long otherBits = 0;
+				int otherError = 0;
+				for (int i = 0; i < 16; ++i) {
+					int a = block[i] >>> 24;
+					int index = nearestAlpha(a);
+					int difference = a - alphaPalette[index];
+					otherError += difference * difference;
+					otherBits |= (long) index << (i * 3);
+				}
+				if (otherError < error) {
+					writeAlphaBlock(data, offset, innerMin, innerMax, otherBits);
+					return;
+				}
+			}
+			writeAlphaBlock(data, offset, alpha0, alpha1, bits);
+		}
+
+		private static void writeAlphaBlock(byte[] data, int offset, int alpha0, int alpha1, long bits) {
+			data[offset] = (byte) alpha0;
+			data[offset + 1] = (byte) alpha1;
+			for (int i = 0; i < 6; ++i) {
+				data[offset + 2 + i] = (byte) (bits >>> (i * 8));
+			}
+		}
+
+		/** Builds the palette exactly like the decoder does. */
+		private void buildAlphaPalette(int alpha0, int alpha1) {
+			alphaPalette[0] = alpha0;
+			alphaPalette[1] = alpha1;
+			if (alpha0 > alpha1) {
+				for (int i = 1; i <= 6; ++i) {
+					alphaPalette[i + 1] = ((7 - i) * alpha0 + i * alpha1) / 7;
+				}
+			} else {
+				for (int i = 1; i <= 4; ++i) {
+					alphaPalette[i + 1] = ((5 - i) * alpha0 + i * alpha1) / 5;
+				}
+				alphaPalette[6] = 0;
+				alphaPalette[7] = 255;
+			}
+		}
+
+		private int nearestAlpha(int alpha) {
+			int best = 0;
+			int bestDistance = Integer.MAX_VALUE;
+			for (int i = 0; i < 8; ++i) {
+				int distance = Math.abs(alpha - alphaPalette[i]);
+				if (distance < bestDistance) {
+					bestDistance = distance;
+					best = i;
+				}
+			}
+			return best;
+		}
+
+		private static int colorDistance(int c0, int c1) {
+			int r = ((c0 >> 16) & 0xFF) - ((c1 >> 16) & 0xFF);
+			int g = ((c0 >> 8) & 0xFF) - ((c1 >> 8) & 0xFF);
+			int b = (c0 & 0xFF) - (c1 & 0xFF);
+			return r * r + g * g + b * b;
+		}
+
+		private static int pack565(int color) {
+			int r = (color >> 16) & 0xFF, g = (color >> 8) & 0xFF, b = color & 0xFF;
+			return ((r * 31 + 127) / 255 << 11) | ((g * 63 + 127) / 255 << 5) | ((b * 31 + 127) / 255);
+		}
+
+		private static int unpack565(int color) {
+			int r = (color >> 11) & 0x1F;
+			int g = (color >> 5) & 0x3F;
+			int b = color & 0x1F;
+			return 0xFF000000 | (((r << 3) | (r >> 2)) << 16) | (((g << 2) | (g >> 4)) << 8) | ((b << 3) | (b >> 2));
+		}
+
+		private static int interpolate(int c0, int c1, int w0, int w1, int divisor) {
+			int r = (((c0 >> 16) & 0xFF) * w0 + ((c1 >> 16) & 0xFF) * w1) / divisor;
+			int g = (((c0 >> 8) & 0xFF) * w0 + ((c1 >> 8) & 0xFF) * w1) / divisor;
+			int b = ((c0 & 0xFF) * w0 + (c1 & 0xFF) * w1) / divisor;
+			return 0xFF000000 | (r << 16) | (g << 8) | b;
+		}
+	}
+}
@@ -30,7 +30,6 @@ import sporemodder.file.filestructures.FileStream;
 import sporemodder.file.filestructures.MemoryStream;
 import sporemodder.file.filestructures.StreamReader;
 import sporemodder.file.filestructures.StreamWriter;
-import javafx.embed.swing.SwingFXUtils;
 import javafx.scene.image.Image;
 import sporemodder.file.dds.DDSPixelFormat.Format;
 
@@ -343,6 +342,6 @@ public class DDSTexture {
 	}
 	
 	public Image toJavaFX() throws IOException {
-		return SwingFXUtils.toFXImage(toBufferedImage(), null);
+		return DDSDecoder.toImage(this, DDSDecoder.AlphaMode.KEEP, 0);
 	}
 }
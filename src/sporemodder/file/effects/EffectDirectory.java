@@ -26,10 +26,15 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import sporemodder.HashManager;
 import sporemodder.MainApp;
@@ -140,6 +145,8 @@ public class EffectDirectory {
 	
 	
 	private int version = SUPPORTED_VERSION;
+	/** How many threads are used to parse .pfx files. */
+	private int threadCount = 1;
 	private final List<List<EffectComponent>> components = new ArrayList<List<EffectComponent>>(MAX_TYPECODE);
 	private final List<List<EffectResource>> resources = new ArrayList<List<EffectResource>>(MAX_RESOURCECODE);
 	
@@ -148,6 +155,8 @@ public class EffectDirectory {
 	private final Map<String, VisualEffect> exports = new HashMap<String, VisualEffect>();
 	private final List<ImportEffect> imports = new ArrayList<ImportEffect>();
 	private final Map<String, ImportEffect> exportedImports = new HashMap<String, ImportEffect>();
+	/** The position of every component, resource and import in its list, so references can be written without searching the lists. */
+	private final Map<Object, Integer> indices = new IdentityHashMap<Object, Integer>();
 	
 	/** For debugging purposes. */
 	private final Map<Object, Long> fileOffsets = new HashMap<>();
@@ -241,6 +250,7 @@ public class EffectDirectory {
 		if (factory == null) {
 			ImportEffect imp = (ImportEffect) component;
 			imports.add(imp);
+			indices.put(imp, imports.size() - 1);
 		}
 		else {
 			int index = factory.getTypeCode();
@@ -250,6 +260,7 @@ public class EffectDirectory {
 				components.set(index, list);
 			}
 			list.add(component);
+			indices.put(component, list.size() - 1);
 		}
 	}
 	
@@ -261,6 +272,7 @@ public class EffectDirectory {
 			resources.set(index, list);
 		}
 		list.add(resource);
+		indices.put(resource, list.size() - 1);
 	}
 	
 	public void addEffectUnit(EffectUnit unit) {
@@ -281,19 +293,30 @@ public class EffectDirectory {
 	
 	/**
 	 * Fins the index of the component in the given list, the component must exactly be the same object.
-	 * Unlike the List.indexOf() method, this does not use equals() but == instead, so it is faster.
+	 * Unlike the List.indexOf() method, this does not use equals() but == instead. The indices of the elements added with
+	 * {@link #addComponent(EffectComponent)} and {@link #addResource(EffectResource)} are already known, so usually this takes constant time;
+	 * if the element is not known (for example, lists created when reading a file) the indices of the whole list are calculated.
 	 * @param list
 	 * @param component
 	 * @return The index, or -1 if the component is not in the list.
 	 */
-	private static <T> int findIndex(List<T> list, T component) {
+	private <T> int findIndex(List<T> list, T component) {
 		if (list != null) {
+			Integer index = indices.get(component);
+			if (index != null && index < list.size() && list.get(index) == component) {
+				return index;
+			}
+			
+			int result = -1;
 			int size = list.size();
 			for (int i = 0; i < size; i++) {
-				if (list.get(i) == component) {
-					return i;
+				T element = list.get(i);
+				indices.put(element, i);
+				if (element == component) {
+					result = i;
 				}
 			}
+			return result;
 		}
 		return -1;
 	}
@@ -313,7 +336,29 @@ public class EffectDirectory {
 		return findIndex(resources.get(resourceType), resource);
 	}
 	
+	/**
+	 * Sets how many threads are used to parse the .pfx files in {@link #process(File, DBPFPacker)}. If it's greater than 1,
+	 * files are parsed in parallel and then added in the same order as a sequential process, so the result is the same.
+	 * @param threadCount
+	 */
+	public void setThreadCount(int threadCount) {
+		this.threadCount = threadCount;
+	}
+	
+	/**
+	 * Returns how many threads are used to parse .pfx files; 1 means they are parsed sequentially.
+	 * @return
+	 */
+	public int getThreadCount() {
+		return threadCount;
+	}
+	
 	public void process(File folder, DBPFPacker packer) throws IOException {
+		if (threadCount > 1) {
+			processParallel(folder, packer);
+			return;
+		}
+		
 		for (File file : folder.listFiles()) {
 			if (file.getName().endsWith(".pfx")) {
 				if (packer != null) packer.setCurrentFile(file);
@@ -323,14 +368,61 @@ public class EffectDirectory {
 		}
 	}
 	
-	public void processUnit(File file, File parentFolder) throws IOException {
+	private void processParallel(File folder, DBPFPacker packer) throws IOException {
+		List<File> files = new ArrayList<File>();
+		for (File file : folder.listFiles()) {
+			if (file.getName().endsWith(".pfx")) {
+				files.add(file);
+			}
+		}
+		if (files.isEmpty()) return;
+		
+		// Units only reference this directory when parsing, they are not added until the merge
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threadCount, files.size()));
+		try {
+			List<Future<EffectUnit>> results = new ArrayList<Future<EffectUnit>>(files.size());
+			for (File file : files) {
+				results.add(executor.submit(() -> parseUnit(file, folder)));
+			}
+			
+			// Merge them in the original order; like the sequential process, stop at the first file with errors
+			for (int i = 0; i < files.size(); ++i) {
+				File file = files.get(i);
+				if (packer != null) packer.setCurrentFile(file);
+				
+				EffectUnit unit;
+				try {
+					unit = results.get(i).get();
+				}
+				catch (ExecutionException e) {
+					if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+					throw new IOException(e.getCause());
+				}
+				catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+				
+				addEffectUnit(unit);
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	private EffectUnit parseUnit(File file, File parentFolder) throws IOException {
 		EffectUnit unit = new EffectUnit(this);
-		ArgScriptStream<EffectUnit> stream = unit.generateStream();
+		// The stream is reused by the next file parsed in this thread, so the errors must be checked here
+		ArgScriptStream<EffectUnit> stream = unit.getPooledStream();
 		stream.setFastParsing(true);
 		stream.setFolder(parentFolder);
 		
 		stream.process(file);
-		
+		checkErrors(file, stream);
+		return unit;
+	}
+	
+	private static void checkErrors(File file, ArgScriptStream<EffectUnit> stream) throws IOException {
 		// Stop reading .PFX files if one of them has errors
 		if (!stream.getErrors().isEmpty()) {
 			StringBuilder sb = new StringBuilder();
@@ -347,8 +439,10 @@ public class EffectDirectory {
 			}
 			throw new IOException(sb.toString());
 		}
-		
-		addEffectUnit(unit);
+	}
+	
+	public void processUnit(File file, File parentFolder) throws IOException {
+		addEffectUnit(parseUnit(file, parentFolder));
 	}
 	
 	public void read(StreamReader stream) throws IOException {
@@ -19,9 +19,11 @@
 package sporemodder.file.effects;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableMap;
@@ -29,9 +31,12 @@ import sporemodder.file.DocumentError;
 import sporemodder.file.argscript.ArgScriptArguments;
 import sporemodder.file.argscript.ArgScriptParser;
 import sporemodder.file.argscript.ArgScriptStream;
+import sporemodder.file.argscript.ArgScriptStream.OnReparseAction;
 
 public class EffectUnit {
 	
+	private static final ThreadLocal<ArgScriptStream<EffectUnit>> POOLED_STREAM = ThreadLocal.withInitial(() -> new EffectUnit(null).generateStream());
+	
 	public static class ComponentReference {
 		public String name;
 		public int type;
@@ -88,6 +93,16 @@ public class EffectUnit {
 	
 	private boolean isParsingComponent;
 	
+	/** The components and resources that come after the text that is being parsed again. */
+	private final Map<ComponentReference, EffectComponent> hiddenComponents = new HashMap<>();
+	private final Map<String, EffectResource> hiddenResources = new HashMap<>();
+	
+	/** The names of the components and resources that were removed, and of the ones that existed before the text that is being parsed again. */
+	private final Set<ComponentReference> removedComponentNames = new HashSet<>();
+	private final Set<String> removedResourceNames = new HashSet<>();
+	private final Set<ComponentReference> previousComponentNames = new HashSet<>();
+	private final Set<String> previousResourceNames = new HashSet<>();
+	
 	public EffectUnit(EffectDirectory effectDirectory) {
 		this.effectDirectory = effectDirectory;
 	}
@@ -105,6 +120,12 @@ public class EffectUnit {
 		elementPositions.clear();
 		currentEffect = null;
 		isParsingComponent = false;
+		hiddenComponents.clear();
+		hiddenResources.clear();
+		removedComponentNames.clear();
+		removedResourceNames.clear();
+		previousComponentNames.clear();
+		previousResourceNames.clear();
 	}
 	
 	public ObservableMap<EffectFileElement, Integer> getElements() {
@@ -144,6 +165,85 @@ public class EffectUnit {
 		elementPositions.put(element, pos);
 	}
 	
+	/**
+	 * Prepares the unit to parse again the text between <code>start</code> and <code>end</code> (both inclusive): the components and resources
+	 * in that text are removed, and the position of the ones after it is moved <code>offset</code> characters. The ones after the text
+	 * cannot be used until {@link #restoreElements()} is called, as they are not defined yet when the text is parsed. 
+	 * Components and resources of other parts keep referencing the removed ones until the whole text is parsed.
+	 * @param start
+	 * @param end
+	 * @param offset
+	 */
+	public void removeElements(int start, int end, int offset) {
+		Set<EffectFileElement> removedElements = new HashSet<>();
+		Set<EffectFileElement> laterElements = new HashSet<>();
+		Map<EffectFileElement, Integer> positions = new LinkedHashMap<>();
+		
+		for (Map.Entry<EffectFileElement, Integer> entry : elementPositions.entrySet()) {
+			int position = entry.getValue();
+			if (position < start) {
+				positions.put(entry.getKey(), position);
+			}
+			else if (position <= end) {
+				removedElements.add(entry.getKey());
+			}
+			else {
+				laterElements.add(entry.getKey());
+				positions.put(entry.getKey(), position + offset);
+			}
+		}
+		
+		for (Map.Entry<ComponentReference, EffectComponent> entry : components.entrySet()) {
+			if (removedElements.contains(entry.getValue())) removedComponentNames.add(entry.getKey());
+		}
+		for (Map.Entry<String, EffectResource> entry : resources.entrySet()) {
+			if (removedElements.contains(entry.getValue())) removedResourceNames.add(entry.getKey());
+		}
+		components.values().removeIf(removedElements::contains);
+		resources.values().removeIf(removedElements::contains);
+		
+		for (Map.Entry<ComponentReference, EffectComponent> entry : components.entrySet()) {
+			if (laterElements.contains(entry.getValue())) hiddenComponents.put(entry.getKey(), entry.getValue());
+		}
+		for (Map.Entry<String, EffectResource> entry : resources.entrySet()) {
+			if (laterElements.contains(entry.getValue())) hiddenResources.put(entry.getKey(), entry.getValue());
+		}
+		components.keySet().removeAll(hiddenComponents.keySet());
+		resources.keySet().removeAll(hiddenResources.keySet());
+		
+		previousComponentNames.addAll(components.keySet());
+		previousResourceNames.addAll(resources.keySet());
+		
+		elementPositions.clear();
+		elementPositions.putAll(positions);
+		
+		currentEffect = null;
+		isParsingComponent = false;
+	}
+	
+	/**
+	 * Makes usable again the components and resources hidden by {@link #removeElements(int, int, int)}.
+	 * @return True if the text that was parsed again defined the same components and resources as before.
+	 */
+	public boolean restoreElements() {
+		Set<ComponentReference> componentNames = new HashSet<>(components.keySet());
+		Set<String> resourceNames = new HashSet<>(resources.keySet());
+		componentNames.removeAll(previousComponentNames);
+		resourceNames.removeAll(previousResourceNames);
+		boolean isSame = componentNames.equals(removedComponentNames) && resourceNames.equals(removedResourceNames);
+		
+		components.putAll(hiddenComponents);
+		resources.putAll(hiddenResources);
+		hiddenComponents.clear();
+		hiddenResources.clear();
+		removedComponentNames.clear();
+		removedResourceNames.clear();
+		previousComponentNames.clear();
+		previousResourceNames.clear();
+		
+		return isSame;
+	}
+	
 	/** 
 	 * Returns the last document error that has happened during an operation in this EffectUnit object, if any. 
 	 * The document error acts as a replacement for exceptions.
@@ -274,6 +374,18 @@ public class EffectUnit {
 		}
 	}
 	
+	/**
+	 * Returns the ArgScript stream used to parse PFX units into this object, reusing the one of the current thread so its
+	 * parsers are only created once. The stream is reset every time this method is called, so it must not be kept.
+	 * @return
+	 */
+	public ArgScriptStream<EffectUnit> getPooledStream() {
+		ArgScriptStream<EffectUnit> stream = POOLED_STREAM.get();
+		stream.reset();
+		stream.setData(this);
+		return stream;
+	}
+	
 	/**
 	 * Generates the ArgScript stream used to parse PFX units.
 	 * @return
@@ -289,11 +401,18 @@ public class EffectUnit {
 		}
 		
 		stream.setOnStartAction((stream, data) -> {
-			data.components.clear();
-			data.currentEffect = null;
-			data.exports.clear();
-			data.lastError = null;
-			data.resources.clear();
+			data.reset();
+		});
+		
+		stream.setOnReparseAction(new OnReparseAction<EffectUnit>() {
+			@Override public boolean onReparse(ArgScriptStream<EffectUnit> stream, EffectUnit data, int start, int end, int offset) {
+				data.removeElements(start, end, offset);
+				return true;
+			}
+			
+			@Override public boolean afterReparse(ArgScriptStream<EffectUnit> stream, EffectUnit data) {
+				return data.restoreElements();
+			}
 		});
 		
 		for (EffectComponentFactory factory : EffectDirectory.getFactories()) {
@@ -329,18 +448,19 @@ public class EffectUnit {
 				String name = args.get(0);
 				String exportName = args.size() == 1 ? name : args.get(1);
 				
-				EffectComponent component = components.getOrDefault(new ComponentReference(name, VisualEffect.TYPE_CODE), null);
+				EffectUnit unit = parser.getData();
+				EffectComponent component = unit.components.getOrDefault(new ComponentReference(name, VisualEffect.TYPE_CODE), null);
 				
 				if (component == null) {
-					lastError = String.format("There is no effect called '%s' in this PFX unit.", name);
-					parser.getStream().addError(line.createErrorForArgument(lastError, 0));
+					unit.lastError = String.format("There is no effect called '%s' in this PFX unit.", name);
+					parser.getStream().addError(line.createErrorForArgument(unit.lastError, 0));
 					return;
 				}
 				
 				// Can only export imports and visual effects
 				if (component.getFactory() != null && !(component instanceof VisualEffect)) {
-					lastError = "Only effects can be exported. Components cannot be exported.";
-					parser.getStream().addError(line.createErrorForArgument(lastError, 0));
+					unit.lastError = "Only effects can be exported. Components cannot be exported.";
+					parser.getStream().addError(line.createErrorForArgument(unit.lastError, 0));
 					return;
 				}
 				
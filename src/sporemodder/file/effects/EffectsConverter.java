@@ -20,7 +20,7 @@ package sporemodder.file.effects;
 
 import java.io.File;
 
-import sporemodder.file.filestructures.FileStream;
+import sporemodder.file.filestructures.BufferedFileStream;
 import sporemodder.file.filestructures.MemoryStream;
 import sporemodder.file.filestructures.StreamReader;
 import sporemodder.file.filestructures.StreamWriter;
@@ -65,6 +65,11 @@ public class EffectsConverter implements Converter {
 		else return decode(stream, Converter.getOutputFile(key, outputFolder, "unpacked"));
 	}
 
+	@Override
+	public String getDecodedExtension(ResourceKey key) {
+		return isHighestQuality(key.getGroupID()) ? "unpacked" : null;
+	}
+
 	@Override
 	public boolean encode(File input, StreamWriter output) throws Exception {
 		EffectDirectory effectDirectory = new EffectDirectory();
@@ -83,6 +88,7 @@ public class EffectsConverter implements Converter {
 		if (isEncoder(input)) {
 			try (MemoryStream output = new MemoryStream()) {
 				EffectDirectory effectDirectory = new EffectDirectory();
+				effectDirectory.setThreadCount(packer.getThreadCount());
 				effectDirectory.process(input, packer);
 				effectDirectory.write(output);
 				
@@ -163,7 +169,7 @@ public class EffectsConverter implements Converter {
 					File file = new File(item.getFile().getParentFile(), name);
 					
 					boolean result = UIManager.get().tryAction(() -> {
-						try (FileStream stream = new FileStream(file, "rw")) {
+						try (BufferedFileStream stream = new BufferedFileStream(file, "rw")) {
 							encode(item.getFile(), stream);
 							
 							ProjectManager.get().selectItem(ProjectManager.get().getSiblingItem(item, name));
@@ -185,7 +191,7 @@ public class EffectsConverter implements Converter {
 					menuItem.setOnAction(event -> {
 						final File outputFile = Converter.getOutputFile(key, item.getFile().getParentFile(), "unpacked");
 						boolean result = UIManager.get().tryAction(() -> {
-							try (FileStream stream = new FileStream(item.getFile(), "r")) {
+							try (BufferedFileStream stream = new BufferedFileStream(item.getFile(), "r")) {
 								decode(stream, outputFile);
 								
 								ProjectManager.get().selectItem(ProjectManager.get().getSiblingItem(item, outputFile.getName()));
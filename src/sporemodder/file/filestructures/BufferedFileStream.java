@@ -0,0 +1,828 @@
+package sporemodder.file.filestructures;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file stream that uses a {@link FileChannel} with an internal direct buffer. Unlike {@link FileStream}, reading or writing
+ * a single value does not require a native call: only filling or flushing the buffer does, so it is much faster for formats
+ * that are read field by field. Reading and writing can be mixed, and seeking inside the buffered region does not touch the file.
+ * <p>
+ * The data is written into the file when the buffer is full, when seeking outside of it, and when the stream is closed;
+ * the stream must always be closed, otherwise the last written data will be lost.
+ */
+public class BufferedFileStream implements ReadWriteStream {
+
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+	
+	/** Allocating direct buffers is slow, so every thread keeps the buffer of the last stream it closed to use it again. */
+	private static final ThreadLocal<ByteBuffer> CACHED_BUFFER = new ThreadLocal<>();
+
+	private FileChannel channel;
+	/** Little-endian buffer with a window of the file; between 0 and its limit it contains valid data, its position is the file pointer. */
+	private final ByteBuffer buffer;
+	/** The absolute position in the file of the first byte of the buffer. */
+	private long bufferStart;
+	/** The range of the buffer that has been written and must be flushed into the file, if dirtyEnd is greater than dirtyStart. */
+	private int dirtyStart;
+	private int dirtyEnd;
+	private long baseOffset;
+
+	public BufferedFileStream(String name, String mode) throws IOException {
+		this(new File(name), mode, false);
+	}
+
+	public BufferedFileStream(File file, String mode) throws IOException {
+		this(file, mode, false);
+	}
+
+	public BufferedFileStream(File file, String mode, boolean append) throws IOException {
+		this(file, mode, append, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Opens the given file. The mode is the same as in {@link FileStream}: "r" opens the file only for reading,
+	 * and "rw" opens it for reading and writing, deleting its previous contents unless <code>append</code> is true.
+	 * @param file
+	 * @param mode
+	 * @param append
+	 * @param bufferSize
+	 * @throws IOException
+	 */
+	public BufferedFileStream(File file, String mode, boolean append, int bufferSize) throws IOException {
+		if (mode.contains("w") && !append && file.exists()) {
+			file.delete();
+		}
+		try {
+			if (mode.contains("w")) {
+				channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+			} else {
+				channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			}
+		} catch (IOException e) {
+			FileNotFoundException exception = new FileNotFoundException(file.getPath());
+			exception.initCause(e);
+			throw exception;
+		}
+		ByteBuffer cached = CACHED_BUFFER.get();
+		if (cached != null && cached.capacity() == bufferSize) {
+			CACHED_BUFFER.set(null);
+			buffer = cached;
+		} else {
+			buffer = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		buffer.clear().limit(0);
+	}
+
+	/** Writes the modified part of the buffer into the file. */
+	private void flushBuffer() throws IOException {
+		if (dirtyEnd > dirtyStart) {
+			ByteBuffer data = buffer.duplicate();
+			data.limit(dirtyEnd).position(dirtyStart);
+			long position = bufferStart + dirtyStart;
+			while (data.hasRemaining()) {
+				position += channel.write(data, position);
+			}
+		}
+		dirtyStart = 0;
+		dirtyEnd = 0;
+	}
+
+	/** Flushes the buffer and moves its window to the given absolute position, without reading anything. */
+	private void resetBuffer(long position) throws IOException {
+		flushBuffer();
+		bufferStart = position;
+		buffer.clear().limit(0);
+	}
+
+	/** Fills the buffer with the data starting at the file pointer. */
+	private void fillBuffer() throws IOException {
+		resetBuffer(bufferStart + buffer.position());
+		buffer.limit(buffer.capacity());
+		long position = bufferStart;
+		while (buffer.hasRemaining()) {
+			int count = channel.read(buffer, position);
+			if (count <= 0) break;
+			position += count;
+		}
+		buffer.flip();
+	}
+
+	/** Ensures there are at least <code>count</code> bytes ready to be read in the buffer; count cannot be greater than the buffer capacity. */
+	private void ensureReadable(int count) throws IOException {
+		if (buffer.remaining() < count) {
+			fillBuffer();
+			if (buffer.remaining() < count) {
+				throw new EOFException();
+			}
+		}
+	}
+
+	/** Ensures <code>count</code> bytes can be written into the buffer and marks them as modified. */
+	private void prepareWrite(int count) throws IOException {
+		if (buffer.capacity() - buffer.position() < count) {
+			resetBuffer(bufferStart + buffer.position());
+		}
+		int position = buffer.position();
+		if (dirtyEnd <= dirtyStart) {
+			dirtyStart = position;
+			dirtyEnd = position + count;
+		} else {
+			dirtyStart = Math.min(dirtyStart, position);
+			dirtyEnd = Math.max(dirtyEnd, position + count);
+		}
+		if (buffer.limit() < position + count) {
+			buffer.limit(position + count);
+		}
+	}
+
+	/**
+	 * Returns the channel used by this stream. The data in the buffer is written into the file first,
+	 * so the channel can be used directly; the position of the channel is not used by this stream.
+	 * @return
+	 * @throws IOException
+	 */
+	public FileChannel getChannel() throws IOException {
+		flushBuffer();
+		return channel;
+	}
+
+	@Override
+	public void seek(long off) throws IOException {
+		seekAbs(off + baseOffset);
+	}
+
+	@Override
+	public void seekAbs(long off) throws IOException {
+		if (off >= bufferStart && off <= bufferStart + buffer.limit()) {
+			buffer.position((int) (off - bufferStart));
+		} else {
+			resetBuffer(off);
+		}
+	}
+
+	@Override
+	public void skip(int n) throws IOException {
+		seekAbs(getFilePointerAbs() + n);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (channel != null) {
+			try {
+				flushBuffer();
+			} finally {
+				channel.close();
+				channel = null;
+				CACHED_BUFFER.set(buffer);
+			}
+		}
+	}
+
+	@Override
+	public long length() throws IOException {
+		return Math.max(channel.size(), bufferStart + buffer.limit());
+	}
+
+	@Override
+	public void setLength(long n) throws IOException {
+		long pointer = getFilePointerAbs();
+		resetBuffer(pointer);
+		if (n < channel.size()) {
+			channel.truncate(n);
+		} else if (n > channel.size()) {
+			channel.write(ByteBuffer.allocate(1), n - 1);
+		}
+		if (pointer > n) {
+			resetBuffer(n);
+		}
+	}
+
+	@Override
+	public long getFilePointer() throws IOException {
+		return getFilePointerAbs() - baseOffset;
+	}
+
+	@Override
+	public long getFilePointerAbs() throws IOException {
+		return bufferStart + buffer.position();
+	}
+
+	@Override
+	public void setBaseOffset(long val) throws IOException {
+		baseOffset = val;
+	}
+
+	@Override
+	public long getBaseOffset() throws IOException {
+		return baseOffset;
+	}
+
+	@Override
+	public byte[] toByteArray() throws IOException {
+		flushBuffer();
+		ByteBuffer data = ByteBuffer.allocate((int) length());
+		long position = 0;
+		while (data.hasRemaining()) {
+			int count = channel.read(data, position);
+			if (count <= 0) break;
+			position += count;
+		}
+		return data.array();
+	}
+
+
+	@Override
+	public void read(byte[] dst) throws IOException {
+		read(dst, 0, dst.length);
+	}
+
+	/**
+	 * Reads <code>len</code> bytes into the given array, starting at <code>off</code>, and moves the file pointer len positions forward.
+	 * @param dst
+	 * @param off
+	 * @param len
+	 * @throws IOException
+	 */
+	public void read(byte[] dst, int off, int len) throws IOException {
+		int count = Math.min(len, buffer.remaining());
+		buffer.get(dst, off, count);
+		off += count;
+		len -= count;
+
+		if (len > buffer.capacity()) {
+			// Big reads go directly into the array
+			resetBuffer(bufferStart + buffer.position());
+			ByteBuffer data = ByteBuffer.wrap(dst, off, len);
+			long position = bufferStart;
+			while (data.hasRemaining()) {
+				int read = channel.read(data, position);
+				if (read <= 0) throw new EOFException();
+				position += read;
+			}
+			resetBuffer(position);
+		}
+		else if (len > 0) {
+			ensureReadable(len);
+			buffer.get(dst, off, len);
+		}
+	}
+
+	@Override
+	public void readBytes(byte[] dst) throws IOException {
+		read(dst);
+	}
+
+	private static Charset getCharset(StringEncoding encoding) {
+		return Charset.forName(encoding.getCharset());
+	}
+
+	@Override
+	public String readCString(StringEncoding encoding) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		if (encoding == StringEncoding.ASCII) {
+			byte b;
+			while ((b = readByte()) != 0) {
+				bytes.write(b);
+			}
+		} else {
+			while (true) {
+				byte b1 = readByte();
+				byte b2 = readByte();
+				if (b1 == 0 && b2 == 0) break;
+				bytes.write(b1);
+				bytes.write(b2);
+			}
+		}
+		return new String(bytes.toByteArray(), getCharset(encoding));
+	}
+
+	@Override
+	public String readString(StringEncoding encoding, int length) throws IOException {
+		int characterSize = encoding == StringEncoding.ASCII ? 1 : 2;
+		byte[] array = new byte[length * characterSize];
+		read(array);
+
+		// Discard 00 bytes
+		int realLength = array.length;
+		for (int i = 0; i < array.length - characterSize + 1; i += characterSize) {
+			if (array[i] == 0 && (characterSize == 1 || array[i + 1] == 0)) {
+				realLength = i;
+				break;
+			}
+		}
+		return new String(array, 0, realLength, getCharset(encoding));
+	}
+
+	@Override
+	public String readLine() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		boolean eof = true;
+		while (true) {
+			if (!buffer.hasRemaining()) {
+				fillBuffer();
+				if (!buffer.hasRemaining()) break;
+			}
+			eof = false;
+			byte b = buffer.get();
+			if (b == '\n') break;
+			if (b == '\r') {
+				if (!buffer.hasRemaining()) fillBuffer();
+				if (buffer.hasRemaining() && buffer.get(buffer.position()) == '\n') buffer.get();
+				break;
+			}
+			bytes.write(b);
+		}
+		if (eof) return null;
+
+		// Like RandomAccessFile, every byte is a character
+		StringBuilder sb = new StringBuilder(bytes.size());
+		for (byte b : bytes.toByteArray()) {
+			sb.append((char) (b & 0xFF));
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public boolean readBoolean() throws IOException {
+		return readByte() != 0;
+	}
+
+	@Override
+	public void readBooleans(boolean[] dst) throws IOException {
+		for (int i = 0; i < dst.length; i++) {
+			dst[i] = readBoolean();
+		}
+	}
+
+	@Override
+	public byte readByte() throws IOException {
+		ensureReadable(1);
+		return buffer.get();
+	}
+
+	@Override
+	public short readUByte() throws IOException {
+		return (short) (readByte() & 0xFF);
+	}
+
+	@Override
+	public void readUBytes(int[] dst) throws IOException {
+		for (int i = 0; i < dst.length; i++) {
+			dst[i] = readUByte();
+		}
+	}
+
+	@Override
+	public char readChar() throws IOException {
+		return (char) readUShort();
+	}
+
+	@Override
+	public void readChars(char[] dst) throws IOException {
+		for (int i = 0; i < dst.length; i++) {
+			dst[i] = readChar();
+		}
+	}
+
+	@Override
+	public short readShort() throws IOException {
+		return Short.reverseBytes(readLEShort());
+	}
+
+	@Override
+	public short readLEShort() throws IOException {
+		ensureReadable(2);
+		return buffer.getShort();
+	}
+
+	@Override
+	public int readUShort() throws IOException {
+		return readShort() & 0xFFFF;
+	}
+
+	@Override
+	public int readLEUShort() throws IOException {
+		return readLEShort() & 0xFFFF;
+	}
+
+	@Override
+	public void readShorts(short[] dst) throws IOException {
+		for (int i = 0; i < dst.length; i++) {
+			dst[i] = readShort();
+		}
+	}
+
+	@Override
+	public void readLEShorts(short[] dst) throws IOException {
+		for (int i = 0; i < dst.length; i++) {
+			dst[i] = readLEShort();
+		}
+	}
+
+	@Override
+	public void readUShorts(int[] dst) throws IOException {
+		for (int i = 0; i < dst.length; i++) {
+			dst[i] = readUShort();
+		}
+	}
+
+	@Override
+	public void readLEUShorts(int[] dst) throws IOException {
+		for (int i = 0; i < dst.length; i++) {
+			dst[i] = readLEUShort();
+		}
+	}
+
+	@Override
+	public int readInt() throws IOException {
+		return Integer.reverseBytes(readLEInt());
+	}
+
+	@Override
+	public int readLEInt() throws IOException {
+		ensureReadable(4);
+		return buffer.getInt();
+	}
+
+	@Override
+	public long readUInt() throws IOException {
+		return readInt() & 0xFFFFFFFFL;
+	}
+
+	@Override
+	public long readLEUInt() throws IOException {
+		return readLEInt() & 0xFFFFFFFFL;
+	}
+
+	@Override
+	public void readInts(int[] dst) throws IOException {
+		for (int i = 0; i < dst.length; i++) {
+			dst[i] = readInt();
+		}
+	}
+
+	@Override
+	public void readLEInts(int[] dst) throws IOException {
+		for (int i = 0; i < dst.length; i++) {
+			dst[i] = readLEInt();
+		}
+	}
+
+	@Override
+	public void readUInts(long[] dst) throws IOException {
+		for (int i = 0; i < dst.length; i++) {
+			dst[i] = readUInt();
+		}
+	}
+
+	@Override
+	public void readLEUInts(long[] dst) throws IOException {
+		for (int i = 0; i < dst.length; i++) {
+			dst[i] = readLEUInt();
+		}
+	}
+
+	@Override
+	public long readLong() throws IOException {
+		return Long.reverseBytes(readLELong());
+	}
+
+	@Override
+	public long readLELong() throws IOException {
+		ensureReadable(8);
+		return buffer.getLong();
+	}
+
+	@Override
+	public void readLongs(long[] dst) throws IOException {
+		for (int i = 0; i < dst.length; i++) {
+			dst[i] = readLong();
+		}
+	}
+
+	@Override
+	public void readLELongs(long[] dst) throws IOException {
+		for (int i = 0; i < dst.length; i++) {
+			dst[i] = readLELong();
+		}
+	}
+
+	@Override
+	public float readFloat() throws IOException {
+		return Float.intBitsToFloat(readInt());
+	}
+
+	@Override
+	public float readLEFloat() throws IOException {
+		ensureReadable(4);
+		return buffer.getFloat();
+	}
+
+	@Override
+	public void readFloats(float[] dst) throws IOException {
+		for (int i = 0; i < dst.length; i++) {
+			dst[i] = readFloat();
+		}
+	}
+
+	@Override
+	public void readLEFloats(float[] dst) throws IOException {
+		for (int i = 0; i < dst.length; i++) {
+			dst[i] = readLEFloat();
+		}
+	}
+
+	@Override
+	public double readDouble() throws IOException {
+		return Double.longBitsToDouble(readLong());
+	}
+
+	@Override
+	public double readLEDouble() throws IOException {
+		ensureReadable(8);
+		return buffer.getDouble();
+	}
+
+	@Override
+	public void readDoubles(double[] dst) throws IOException {
+		for (int i = 0; i < dst.length; i++) {
+			dst[i] = readDouble();
+		}
+	}
+
+	@Override
+	public void readLEDoubles(double[] dst) throws IOException {
+		for (int i = 0; i < dst.length; i++) {
+			dst[i] = readLEDouble();
+		}
+	}
+
+
+	@Override
+	public void writePadding(int pad) throws IOException {
+		write(new byte[pad]);
+	}
+
+	@Override
+	public void write(byte[] arr) throws IOException {
+		write(arr, 0, arr.length);
+	}
+
+	@Override
+	public void write(byte[] arr, int off, int len) throws IOException {
+		if (len > buffer.capacity()) {
+			// Big writes go directly into the file
+			resetBuffer(bufferStart + buffer.position());
+			ByteBuffer data = ByteBuffer.wrap(arr, off, len);
+			long position = bufferStart;
+			while (data.hasRemaining()) {
+				position += channel.write(data, position);
+			}
+			resetBuffer(position);
+		}
+		else if (len > 0) {
+			prepareWrite(len);
+			buffer.put(arr, off, len);
+		}
+	}
+
+	@Override
+	public void writeCString(String text, StringEncoding encoding) throws IOException {
+		if (text != null) write(text.getBytes(encoding.getCharset()));
+		writeByte(0);
+	}
+
+	@Override
+	public void writeString(String text, StringEncoding encoding) throws IOException {
+		if (text != null) {
+			write(text.getBytes(encoding.getCharset()));
+		}
+	}
+
+	@Override
+	public void writeString(String text, StringEncoding encoding, int length) throws IOException {
+		if (text != null) {
+			write(text.getBytes(encoding.getCharset()), 0, length);
+		}
+		else {
+			write(new byte[encoding == StringEncoding.ASCII ? length : (length*2)]);
+		}
+	}
+
+	@Override
+	public void writeBoolean(boolean val) throws IOException {
+		writeByte(val ? 1 : 0);
+	}
+
+	@Override
+	public void writeBooleans(boolean... vals) throws IOException {
+		for (boolean b : vals) {
+			writeBoolean(b);
+		}
+	}
+
+	@Override
+	public void writeByte(int val) throws IOException {
+		prepareWrite(1);
+		buffer.put((byte) val);
+	}
+
+	@Override
+	public void writeBytes(int... vals) throws IOException {
+		for (int val : vals) {
+			writeByte(val);
+		}
+	}
+
+	@Override
+	public void writeUByte(int val) throws IOException {
+		writeByte(val & 0xFF);
+	}
+
+	@Override
+	public void writeUBytes(int... vals) throws IOException {
+		for (int val : vals) {
+			writeUByte(val);
+		}
+	}
+
+	@Override
+	public void writeShort(int val) throws IOException {
+		writeLEShort(Short.reverseBytes((short) val));
+	}
+
+	@Override
+	public void writeShorts(int... vals) throws IOException {
+		for (int val : vals) {
+			writeShort(val);
+		}
+	}
+
+	@Override
+	public void writeLEShort(int val) throws IOException {
+		prepareWrite(2);
+		buffer.putShort((short) val);
+	}
+
+	@Override
+	public void writeLEShorts(int... vals) throws IOException {
+		for (int val : vals) {
+			writeLEShort(val);
+		}
+	}
+
+	@Override
+	public void writeUShort(int val) throws IOException {
+		writeShort(val & 0xFFFF);
+	}
+
+	@Override
+	public void writeUShorts(int... vals) throws IOException {
+		for (int val : vals) {
+			writeUShort(val);
+		}
+	}
+
+	@Override
+	public void writeLEUShort(int val) throws IOException {
+		writeLEShort(val & 0xFFFF);
+	}
+
+	@Override
+	public void writeLEUShorts(int... vals) throws IOException {
+		for (int val : vals) {
+			writeLEUShort(val);
+		}
+	}
+
+	@Override
+	public void writeInt(int val) throws IOException {
+		writeLEInt(Integer.reverseBytes(val));
+	}
+
+	@Override
+	public void writeInts(int... vals) throws IOException {
+		for (int val : vals) {
+			writeInt(val);
+		}
+	}
+
+	@Override
+	public void writeLEInt(int val) throws IOException {
+		prepareWrite(4);
+		buffer.putInt(val);
+	}
+
+	@Override
+	public void writeLEInts(int... vals) throws IOException {
+		for (int val : vals) {
+			writeLEInt(val);
+		}
+	}
+
+	@Override
+	public void writeUInt(long val) throws IOException {
+		writeInt((int) val);
+	}
+
+	@Override
+	public void writeUInts(long... vals) throws IOException {
+		for (long val : vals) {
+			writeUInt(val);
+		}
+	}
+
+	@Override
+	public void writeLEUInt(long val) throws IOException {
+		writeLEInt((int) val);
+	}
+
+	@Override
+	public void writeLEUInts(long... vals) throws IOException {
+		for (long val : vals) {
+			writeLEUInt(val);
+		}
+	}
+
+	@Override
+	public void writeLong(long val) throws IOException {
+		writeLELong(Long.reverseBytes(val));
+	}
+
+	@Override
+	public void writeLongs(long... vals) throws IOException {
+		for (long val : vals) {
+			writeLong(val);
+		}
+	}
+
+	@Override
+	public void writeLELong(long val) throws IOException {
+		prepareWrite(8);
+		buffer.putLong(val);
+	}
+
+	@Override
+	public void writeLELongs(long... vals) throws IOException {
+		for (long val : vals) {
+			writeLELong(val);
+		}
+	}
+
+	@Override
+	public void writeFloat(float val) throws IOException {
+		writeInt(Float.floatToRawIntBits(val));
+	}
+
+	@Override
+	public void writeFloats(float... vals) throws IOException {
+		for (float val : vals) {
+			writeFloat(val);
+		}
+	}
+
+	@Override
+	public void writeLEFloat(float val) throws IOException {
+		writeLEInt(Float.floatToRawIntBits(val));
+	}
+
+	@Override
+	public void writeLEFloats(float... vals) throws IOException {
+		for (float val : vals) {
+			writeLEFloat(val);
+		}
+	}
+
+	@Override
+	public void writeDouble(double val) throws IOException {
+		writeLong(Double.doubleToRawLongBits(val));
+	}
+
+	@Override
+	public void writeDoubles(double... vals) throws IOException {
+		for (double val : vals) {
+			writeDouble(val);
+		}
+	}
+
+	@Override
+	public void writeLEDouble(double val) throws IOException {
+		writeLELong(Double.doubleToRawLongBits(val));
+	}
+
+	@Override
+	public void writeLEDoubles(double... vals) throws IOException {
+		for (double val : vals) {
+			writeLEDouble(val);
+		}
+	}
+}
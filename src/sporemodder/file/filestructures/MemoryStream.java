@@ -38,6 +38,15 @@ public class MemoryStream extends FixedMemoryStream {
 		length = 0;
 	}
 	
+	/**
+	 * Empties the stream but keeps the current buffer, so it can be used again without allocating memory.
+	 */
+	public void reset() {
+		filePointer = 0;
+		baseOffset = 0;
+		length = 0;
+	}
+	
 	private void reallocate(long size) {
 		byte[] arr = new byte[(int) size];
 		
@@ -48,6 +57,22 @@ public class MemoryStream extends FixedMemoryStream {
 		data = arr;
 	}
 	
+	/**
+	 * Grows the buffer, if necessary, so that <code>count</code> bytes can be written at the current position.
+	 */
+	private void ensureCapacity(int count) {
+		int required = filePointer + count;
+		if (required > data.length) {
+			reallocate(Math.max(required, (int) (data.length * resizeFactor)));
+		}
+	}
+	
+	private void updateLength() {
+		if (filePointer > length) {
+			length = filePointer;
+		}
+	}
+	
 	@Override
 	public byte[] toByteArray() throws IOException {
 		byte[] arr = new byte[length];
@@ -70,16 +95,9 @@ public class MemoryStream extends FixedMemoryStream {
 
 	@Override
 	public void writePadding(int pad) throws IOException {
-		while (filePointer + pad > data.length) {
-			reallocate((int) (data.length * resizeFactor));
-		}
-		for (int i = 0; i < pad; i++) {
-			data[filePointer++] = 0;
-		}
-		
-		if (filePointer > length) {
-			length = filePointer;
-		}
+		ensureCapacity(pad);
+		super.writePadding(pad);
+		updateLength();
 	}
 
 	@Override
@@ -89,25 +107,22 @@ public class MemoryStream extends FixedMemoryStream {
 
 	@Override
 	public void write(byte[] arr, int off, int len) throws IOException {
-		while (filePointer + len > data.length) {
-			reallocate((int) (data.length * resizeFactor));
-		}
-		
+		ensureCapacity(len);
 		System.arraycopy(arr, off, data, filePointer, len);
 		filePointer += len;
-		
-		if (filePointer > length) {
-			length = filePointer;
-		}
+		updateLength();
 	}
 
 	@Override
 	public void writeBoolean(boolean val) throws IOException {
-		write(new byte[] {(byte) (val ? 1 : 0)}, 0, 1);
+		ensureCapacity(1);
+		super.writeBoolean(val);
+		updateLength();
 	}
 
 	@Override
 	public void writeBooleans(boolean... vals) throws IOException {
+		ensureCapacity(vals.length);
 		for (boolean value : vals) {
 			writeBoolean(value);
 		}
@@ -115,11 +130,14 @@ public class MemoryStream extends FixedMemoryStream {
 
 	@Override
 	public void writeByte(int val) throws IOException {
-		write(new byte[] {(byte) val}, 0, 1);
+		ensureCapacity(1);
+		super.writeByte(val);
+		updateLength();
 	}
 
 	@Override
 	public void writeBytes(int... vals) throws IOException {
+		ensureCapacity(vals.length);
 		for (int value : vals) {
 			writeByte(value);
 		}
@@ -127,11 +145,14 @@ public class MemoryStream extends FixedMemoryStream {
 
 	@Override
 	public void writeUByte(int val) throws IOException {
-		write(new byte[] {(byte) val}, 0, 1);
+		ensureCapacity(1);
+		super.writeUByte(val);
+		updateLength();
 	}
 
 	@Override
 	public void writeUBytes(int... vals) throws IOException {
+		ensureCapacity(vals.length);
 		for (int value : vals) {
 			writeUByte(value);
 		}
@@ -139,16 +160,14 @@ public class MemoryStream extends FixedMemoryStream {
 
 	@Override
 	public void writeShort(int val) throws IOException {
-		byte[] arr = new byte[2];
-		
-		arr[0] = (byte) ((val & 0xFF00) >> 8);
-		arr[1] = (byte) (val & 0x00FF);
-		
-		write(arr, 0, arr.length);
+		ensureCapacity(2);
+		super.writeShort(val);
+		updateLength();
 	}
 
 	@Override
 	public void writeShorts(int... vals) throws IOException {
+		ensureCapacity(vals.length * 2);
 		for (int value : vals) {
 			writeShort(value);
 		}
@@ -156,16 +175,14 @@ public class MemoryStream extends FixedMemoryStream {
 
 	@Override
 	public void writeLEShort(int val) throws IOException {
-		byte[] arr = new byte[2];
-		
-		arr[1] = (byte) ((val & 0xFF00) >> 8);
-		arr[0] = (byte) (val & 0x00FF);
-		
-		write(arr, 0, arr.length);
+		ensureCapacity(2);
+		super.writeLEShort(val);
+		updateLength();
 	}
 
 	@Override
 	public void writeLEShorts(int... vals) throws IOException {
+		ensureCapacity(vals.length * 2);
 		for (int value : vals) {
 			writeLEShort(value);
 		}
@@ -173,16 +190,14 @@ public class MemoryStream extends FixedMemoryStream {
 
 	@Override
 	public void writeUShort(int val) throws IOException {
-		byte[] arr = new byte[2];
-		
-		arr[0] = (byte) ((val & 0xFF00) >> 8);
-		arr[1] = (byte) (val & 0x00FF);
-		
-		write(arr, 0, arr.length);
+		ensureCapacity(2);
+		super.writeUShort(val);
+		updateLength();
 	}
 
 	@Override
 	public void writeUShorts(int... vals) throws IOException {
+		ensureCapacity(vals.length * 2);
 		for (int value : vals) {
 			writeUShort(value);
 		}
@@ -190,16 +205,14 @@ public class MemoryStream extends FixedMemoryStream {
 
 	@Override
 	public void writeLEUShort(int val) throws IOException {
-		byte[] arr = new byte[2];
-		
-		arr[1] = (byte) ((val & 0xFF00) >> 8);
-		arr[0] = (byte) (val & 0x00FF);
-		
-		write(arr, 0, arr.length);
+		ensureCapacity(2);
+		super.writeLEUShort(val);
+		updateLength();
 	}
 
 	@Override
 	public void writeLEUShorts(int... vals) throws IOException {
+		ensureCapacity(vals.length * 2);
 		for (int value : vals) {
 			writeLEUShort(value);
 		}
@@ -207,18 +220,14 @@ public class MemoryStream extends FixedMemoryStream {
 
 	@Override
 	public void writeInt(int val) throws IOException {
-		byte[] arr = new byte[4];
-		
-		arr[0] = (byte) ((val & 0xFF000000) >> 24);
-		arr[1] = (byte) ((val & 0x00FF0000) >> 16);
-		arr[2] = (byte) ((val & 0x0000FF00) >> 8);
-		arr[3] = (byte) (val & 0x000000FF);
-		
-		write(arr, 0, arr.length);
+		ensureCapacity(4);
+		super.writeInt(val);
+		updateLength();
 	}
 
 	@Override
 	public void writeInts(int... vals) throws IOException {
+		ensureCapacity(vals.length * 4);
 		for (int value : vals) {
 			writeInt(value);
 		}
@@ -226,18 +235,14 @@ public class MemoryStream extends FixedMemoryStream {
 
 	@Override
 	public void writeLEInt(int val) throws IOException {
-		byte[] arr = new byte[4];
-		
-		arr[3] = (byte) ((val & 0xFF000000) >> 24);
-		arr[2] = (byte) ((val & 0x00FF0000) >> 16);
-		arr[1] = (byte) ((val & 0x0000FF00) >> 8);
-		arr[0] = (byte) (val & 0x000000FF);
-		
-		write(arr, 0, arr.length);
+		ensureCapacity(4);
+		super.writeLEInt(val);
+		updateLength();
 	}
 
 	@Override
 	public void writeLEInts(int... vals) throws IOException {
+		ensureCapacity(vals.length * 4);
 		for (int value : vals) {
 			writeLEInt(value);
 		}
@@ -245,18 +250,14 @@ public class MemoryStream extends FixedMemoryStream {
 
 	@Override
 	public void writeUInt(long val) throws IOException {
-		byte[] arr = new byte[4];
-		
-		arr[0] = (byte) ((val & 0xFF000000) >> 24);
-		arr[1] = (byte) ((val & 0x00FF0000) >> 16);
-		arr[2] = (byte) ((val & 0x0000FF00) >> 8);
-		arr[3] = (byte) (val & 0x000000FF);
-		
-		write(arr, 0, arr.length);
+		ensureCapacity(4);
+		super.writeUInt(val);
+		updateLength();
 	}
 
 	@Override
 	public void writeUInts(long... vals) throws IOException {
+		ensureCapacity(vals.length * 4);
 		for (long value : vals) {
 			writeUInt(value);
 		}
@@ -264,18 +265,14 @@ public class MemoryStream extends FixedMemoryStream {
 
 	@Override
 	public void writeLEUInt(long val) throws IOException {
-		byte[] arr = new byte[4];
-		
-		arr[3] = (byte) ((val & 0xFF000000) >> 24);
-		arr[2] = (byte) ((val & 0x00FF0000) >> 16);
-		arr[1] = (byte) ((val & 0x0000FF00) >> 8);
-		arr[0] = (byte) (val & 0x000000FF);
-		
-		write(arr, 0, arr.length);
+		ensureCapacity(4);
+		super.writeLEUInt(val);
+		updateLength();
 	}
 
 	@Override
 	public void writeLEUInts(long... vals) throws IOException {
+		ensureCapacity(vals.length * 4);
 		for (long value : vals) {
 			writeLEUInt(value);
 		}
@@ -283,45 +280,29 @@ public class MemoryStream extends FixedMemoryStream {
 
 	@Override
 	public void writeLong(long val) throws IOException {
-		byte[] arr = new byte[8];
-		
-		arr[0] = (byte) ((val & 0xFF00000000000000L) >> 52);
-		arr[1] = (byte) ((val & 0x00FF000000000000L) >> 48);
-		arr[2] = (byte) ((val & 0x0000FF0000000000L) >> 40);
-		arr[3] = (byte) ((val & 0x000000FF00000000L) >> 32);
-		arr[4] = (byte) ((val & 0x00000000FF000000L) >> 24);
-		arr[5] = (byte) ((val & 0x0000000000FF0000L) >> 16);
-		arr[6] = (byte) ((val & 0x000000000000FF00L) >> 8);
-		arr[7] = (byte) (val & 0x00000000000000FFL);
-		
-		write(arr, 0, arr.length);
+		ensureCapacity(8);
+		super.writeLong(val);
+		updateLength();
 	}
 
 	@Override
 	public void writeLongs(long... vals) throws IOException {
+		ensureCapacity(vals.length * 8);
 		for (long value : vals) {
-			writeLongs(value);
+			writeLong(value);
 		}
 	}
 
 	@Override
 	public void writeLELong(long val) throws IOException {
-		byte[] arr = new byte[8];
-		
-		arr[7] = (byte) ((val & 0xFF00000000000000L) >> 56);
-		arr[6] = (byte) ((val & 0x00FF000000000000L) >> 48);
-		arr[5] = (byte) ((val & 0x0000FF0000000000L) >> 40);
-		arr[4] = (byte) ((val & 0x000000FF00000000L) >> 32);
-		arr[3] = (byte) ((val & 0x00000000FF000000L) >> 24);
-		arr[2] = (byte) ((val & 0x0000000000FF0000L) >> 16);
-		arr[1] = (byte) ((val & 0x000000000000FF00L) >> 8);
-		arr[0] = (byte) (val & 0x00000000000000FFL);
-		
-		write(arr, 0, arr.length);
+		ensureCapacity(8);
+		super.writeLELong(val);
+		updateLength();
 	}
 
 	@Override
 	public void writeLELongs(long... vals) throws IOException {
+		ensureCapacity(vals.length * 8);
 		for (long value : vals) {
 			writeLELong(value);
 		}
@@ -329,19 +310,14 @@ public class MemoryStream extends FixedMemoryStream {
 
 	@Override
 	public void writeFloat(float val) throws IOException {
-		int nVal = Float.floatToRawIntBits(val);
-		byte[] arr = new byte[4];
-		
-		arr[0] = (byte) ((nVal & 0xFF000000) >> 24);
-		arr[1] = (byte) ((nVal & 0x00FF0000) >> 16);
-		arr[2] = (byte) ((nVal & 0x0000FF00) >> 8);
-		arr[3] = (byte) (nVal & 0x000000FF);
-		
-		write(arr, 0, arr.length);
+		ensureCapacity(4);
+		super.writeFloat(val);
+		updateLength();
 	}
 
 	@Override
 	public void writeFloats(float... vals) throws IOException {
+		ensureCapacity(vals.length * 4);
 		for (float value : vals) {
 			writeFloat(value);
 		}
@@ -349,19 +325,14 @@ public class MemoryStream extends FixedMemoryStream {
 
 	@Override
 	public void writeLEFloat(float val) throws IOException {
-		int nVal = Float.floatToRawIntBits(val);
-		byte[] arr = new byte[4];
-		
-		arr[3] = (byte) ((nVal & 0xFF000000) >> 24);
-		arr[2] = (byte) ((nVal & 0x00FF0000) >> 16);
-		arr[1] = (byte) ((nVal & 0x0000FF00) >> 8);
-		arr[0] = (byte) (nVal & 0x000000FF);
-		
-		write(arr, 0, arr.length);
+		ensureCapacity(4);
+		super.writeLEFloat(val);
+		updateLength();
 	}
 
 	@Override
 	public void writeLEFloats(float... vals) throws IOException {
+		ensureCapacity(vals.length * 4);
 		for (float value : vals) {
 			writeLEFloat(value);
 		}
@@ -369,51 +340,33 @@ public class MemoryStream extends FixedMemoryStream {
 
 	@Override
 	public void writeDouble(double val) throws IOException {
-		long nVal = Double.doubleToRawLongBits(val);
-		byte[] arr = new byte[8];
-		
-		arr[0] = (byte) ((nVal & 0xFF00000000000000L) >> 52);
-		arr[1] = (byte) ((nVal & 0x00FF000000000000L) >> 48);
-		arr[2] = (byte) ((nVal & 0x0000FF0000000000L) >> 40);
-		arr[3] = (byte) ((nVal & 0x000000FF00000000L) >> 32);
-		arr[4] = (byte) ((nVal & 0x00000000FF000000L) >> 24);
-		arr[5] = (byte) ((nVal & 0x0000000000FF0000L) >> 16);
-		arr[6] = (byte) ((nVal & 0x000000000000FF00L) >> 8);
-		arr[7] = (byte) (nVal & 0x00000000000000FFL);
-		
-		write(arr, 0, arr.length);
+		ensureCapacity(8);
+		super.writeDouble(val);
+		updateLength();
 	}
 
 	@Override
 	public void writeDoubles(double... vals) throws IOException {
+		ensureCapacity(vals.length * 8);
 		for (double value : vals) {
-			writeDoubles(value);
+			writeDouble(value);
 		}
 	}
 
 	@Override
 	public void writeLEDouble(double val) throws IOException {
-		long nVal = Double.doubleToRawLongBits(val);
-		byte[] arr = new byte[8];
-		
-		arr[7] = (byte) ((nVal & 0xFF00000000000000L) >> 52);
-		arr[6] = (byte) ((nVal & 0x00FF000000000000L) >> 48);
-		arr[5] = (byte) ((nVal & 0x0000FF0000000000L) >> 40);
-		arr[4] = (byte) ((nVal & 0x000000FF00000000L) >> 32);
-		arr[3] = (byte) ((nVal & 0x00000000FF000000L) >> 24);
-		arr[2] = (byte) ((nVal & 0x0000000000FF0000L) >> 16);
-		arr[1] = (byte) ((nVal & 0x000000000000FF00L) >> 8);
-		arr[0] = (byte) (nVal & 0x00000000000000FFL);
-		
-		write(arr, 0, arr.length);
+		ensureCapacity(8);
+		super.writeLEDouble(val);
+		updateLength();
 	}
 
 	@Override
 	public void writeLEDoubles(double... vals) throws IOException {
+		ensureCapacity(vals.length * 8);
 		for (double value : vals) {
 			writeLEDouble(value);
 		}
-}
+	}
 
 	@Override
 	public void writeCString(String text, StringEncoding encoding) throws IOException {
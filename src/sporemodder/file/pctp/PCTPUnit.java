@@ -40,6 +40,9 @@ import sporemodder.file.argscript.ArgScriptStream;
 import sporemodder.file.argscript.ArgScriptWriter;
 
 public class PCTPUnit {
+	
+	private static final ThreadLocal<ArgScriptStream<PCTPUnit>> POOLED_STREAM = ThreadLocal.withInitial(() -> new PCTPUnit().generateStream());
+	
 	private static final int MAGIC = 0x70637470;
 	
 	public static class CapabilityName {
@@ -275,6 +278,18 @@ public class PCTPUnit {
 		return writer.toString();
 	}
 	
+	/**
+	 * Returns the ArgScript stream used to parse PCTP files into this object, reusing the one of the current thread so its
+	 * parsers are only created once. The stream is reset every time this method is called, so it must not be kept.
+	 * @return
+	 */
+	public ArgScriptStream<PCTPUnit> getPooledStream() {
+		ArgScriptStream<PCTPUnit> stream = POOLED_STREAM.get();
+		stream.reset();
+		stream.setData(this);
+		return stream;
+	}
+	
 	public ArgScriptStream<PCTPUnit> generateStream() {
 		ArgScriptStream<PCTPUnit> stream = new ArgScriptStream<PCTPUnit>();
 		stream.setData(this);
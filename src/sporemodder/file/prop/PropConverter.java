@@ -40,7 +40,7 @@ import sporemodder.file.DocumentException;
 import sporemodder.file.ResourceKey;
 import sporemodder.file.argscript.ArgScriptStream;
 import sporemodder.file.dbpf.DBPFPacker;
-import sporemodder.file.filestructures.FileStream;
+import sporemodder.file.filestructures.BufferedFileStream;
 import sporemodder.file.filestructures.MemoryStream;
 import sporemodder.file.filestructures.StreamReader;
 import sporemodder.file.filestructures.StreamWriter;
@@ -67,6 +67,11 @@ public class PropConverter implements Converter {
 		return decode(stream, Converter.getOutputFile(key, outputFolder, "prop_t"));
 	}
 
+	@Override
+	public String getDecodedExtension(ResourceKey key) {
+		return "prop_t";
+	}
+
 	@Override
 	public boolean encode(File input, StreamWriter output) throws IOException, ParserConfigurationException, SAXException {
 		String name = input.getName();
@@ -78,7 +83,7 @@ public class PropConverter implements Converter {
 		}
 		else {
 			PropertyList list = new PropertyList();
-			ArgScriptStream<PropertyList> stream = list.generateStream();
+			ArgScriptStream<PropertyList> stream = list.getPooledStream();
 			stream.setFolder(input.getParentFile());
 			stream.setFastParsing(true);
 			stream.process(input);
@@ -171,7 +176,7 @@ public class PropConverter implements Converter {
 				int tableID = HashManager.get().getFileHash(getTableIDString(input, splits));
 				
 				PropertyList list = new PropertyList();
-				ArgScriptStream<PropertyList> stream = list.generateStream();
+				ArgScriptStream<PropertyList> stream = list.getPooledStream();
 				stream.setFastParsing(true);
 				stream.process(input);
 				
@@ -285,7 +290,7 @@ public class PropConverter implements Converter {
 					File file = new File(item.getFile().getParentFile(), name);
 					
 					boolean result = UIManager.get().tryAction(() -> {
-						try (FileStream stream = new FileStream(new File(item.getFile().getParentFile(), name), "rw")) {
+						try (BufferedFileStream stream = new BufferedFileStream(new File(item.getFile().getParentFile(), name), "rw")) {
 							encode(item.getFile(), stream);
 							
 							ProjectManager.get().selectItem(ProjectManager.get().getSiblingItem(item, name));
@@ -312,7 +317,7 @@ public class PropConverter implements Converter {
 					menuItem.setOnAction(event -> {
 						final File outputFile = Converter.getOutputFile(key, item.getFile().getParentFile(), "prop_t");
 						boolean result = UIManager.get().tryAction(() -> {
-							try (FileStream stream = new FileStream(item.getFile(), "r")) {
+							try (BufferedFileStream stream = new BufferedFileStream(item.getFile(), "r")) {
 								decode(stream, outputFile);
 								
 								ProjectManager.get().selectItem(ProjectManager.get().getSiblingItem(item, outputFile.getName()));
@@ -37,6 +37,8 @@ import sporemodder.file.argscript.ArgScriptWriter;
  */
 public class PropertyList {
 	
+	private static final ThreadLocal<ArgScriptStream<PropertyList>> POOLED_STREAM = ThreadLocal.withInitial(() -> new PropertyList().generateStream());
+	
 	public static String EOL = System.getProperty("line.separator");
 
 	private static final Comparator<Integer> DESCENDING_COMPARATOR = new Comparator<Integer>() {
@@ -303,6 +305,18 @@ public class PropertyList {
 		PropertyBBox.addParser(stream);
 	}
 	
+	/**
+	 * Returns the ArgScript stream used to parse PROP files into this object, reusing the one of the current thread so its
+	 * parsers are only created once. The stream is reset every time this method is called, so it must not be kept.
+	 * @return
+	 */
+	public ArgScriptStream<PropertyList> getPooledStream() {
+		ArgScriptStream<PropertyList> stream = POOLED_STREAM.get();
+		stream.reset();
+		stream.setData(this);
+		return stream;
+	}
+	
 	/**
 	 * Generates the ArgScript stream used to parse PROP files.
 	 * @return
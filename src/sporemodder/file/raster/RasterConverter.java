@@ -19,18 +19,21 @@
 package sporemodder.file.raster;
 
 import java.io.File;
+import java.io.IOException;
 
-import sporemodder.file.filestructures.FileStream;
+import sporemodder.file.filestructures.BufferedFileStream;
 import sporemodder.file.filestructures.StreamReader;
 import sporemodder.file.filestructures.StreamWriter;
 import javafx.scene.control.ContextMenu;
 import javafx.scene.control.MenuItem;
+import sporemodder.FormatManager;
 import sporemodder.HashManager;
 import sporemodder.ProjectManager;
 import sporemodder.UIManager;
 import sporemodder.file.Converter;
 import sporemodder.file.ResourceKey;
 import sporemodder.file.dbpf.DBPFPacker;
+import sporemodder.file.dds.DDSEncoder;
 import sporemodder.file.dds.DDSTexture;
 import sporemodder.util.ProjectItem;
 
@@ -53,9 +56,25 @@ public class RasterConverter implements Converter {
 	}
 
 	@Override
-	public boolean encode(File input, StreamWriter output) throws Exception {
+	public String getDecodedExtension(ResourceKey key) {
+		return "dds";
+	}
+
+	/**
+	 * Reads the texture from a DDS file, or compresses it if the file is a PNG or TGA image.
+	 */
+	private static DDSTexture readTexture(File input) throws IOException {
+		if (DDSEncoder.isSupportedImage(input)) {
+			return FormatManager.get().createTextureEncoder().encode(input);
+		}
 		DDSTexture texture = new DDSTexture();
 		texture.read(input);
+		return texture;
+	}
+
+	@Override
+	public boolean encode(File input, StreamWriter output) throws Exception {
+		DDSTexture texture = readTexture(input);
 		
 		RasterTexture raster = new RasterTexture();
 		raster.fromDDSTexture(texture);
@@ -67,8 +86,7 @@ public class RasterConverter implements Converter {
 	@Override
 	public boolean encode(File input, DBPFPacker packer, int groupID) throws Exception {
 		if (isEncoder(input)) {
-			DDSTexture texture = new DDSTexture();
-			texture.read(input);
+			DDSTexture texture = readTexture(input);
 			
 			RasterTexture raster = new RasterTexture();
 			raster.fromDDSTexture(texture);
@@ -103,7 +121,10 @@ public class RasterConverter implements Converter {
 	@Override
 	public boolean isEncoder(File file) {
 		checkExtensions();
-		return file.isFile() && file.getName().endsWith("." + extension + ".dds");
+		String name = file.getName();
+		// Textures can be DDS files, or PNG and TGA images that are compressed when packing
+		return file.isFile() && (name.endsWith("." + extension + ".dds")
+				|| (DDSEncoder.isSupportedImage(file) && name.substring(0, name.lastIndexOf('.')).endsWith("." + extension)));
 	}
 
 	@Override
@@ -134,7 +155,7 @@ public class RasterConverter implements Converter {
 					File file = new File(item.getFile().getParentFile(), name);
 					
 					boolean result = UIManager.get().tryAction(() -> {
-						try (FileStream stream = new FileStream(new File(item.getFile().getParentFile(), name), "rw")) {
+						try (BufferedFileStream stream = new BufferedFileStream(new File(item.getFile().getParentFile(), name), "rw")) {
 							encode(item.getFile(), stream);
 							
 							ProjectManager.get().selectItem(ProjectManager.get().getSiblingItem(item, name));
@@ -156,7 +177,7 @@ public class RasterConverter implements Converter {
 					menuItem.setOnAction(event -> {
 						final File outputFile = Converter.getOutputFile(key, item.getFile().getParentFile(), "dds");
 						boolean result = UIManager.get().tryAction(() -> {
-							try (FileStream stream = new FileStream(item.getFile(), "r")) {
+							try (BufferedFileStream stream = new BufferedFileStream(item.getFile(), "r")) {
 								decode(stream, outputFile);
 								
 								ProjectManager.get().selectItem(ProjectManager.get().getSiblingItem(item, outputFile.getName()));
@@ -29,7 +29,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
-import sporemodder.file.filestructures.FileStream;
+import sporemodder.file.filestructures.BufferedFileStream;
 import sporemodder.file.filestructures.StreamReader;
 import sporemodder.file.filestructures.StreamWriter;
 import sporemodder.HashManager;
@@ -248,7 +248,7 @@ public class RenderWare {
 	}
 	
 	public static RenderWare fromFile(File file) throws IOException {
-		try (StreamReader stream = new FileStream(file, "r")) {
+		try (StreamReader stream = new BufferedFileStream(file, "r")) {
 			RenderWare renderWare = new RenderWare();
 			renderWare.read(stream);
 			return renderWare;
@@ -273,7 +273,7 @@ public class RenderWare {
 	}
 	
 	public static void toTexture(File inputFile, File outputFile) throws IOException {
-		try (StreamWriter stream = new FileStream(outputFile, "rw")) {
+		try (StreamWriter stream = new BufferedFileStream(outputFile, "rw")) {
 			fromFile(inputFile).toTexture().write(stream);
 		}
 	}
@@ -412,7 +412,7 @@ public class RenderWare {
 	 * @throws FileNotFoundException 
 	 */
 	public static RenderWareType peekType(File file) throws FileNotFoundException, IOException {
-		try (FileStream stream = new FileStream(file, "r")) {
+		try (BufferedFileStream stream = new BufferedFileStream(file, "r")) {
 			stream.skip(28);
 			return RenderWareType.get(stream.readLEInt());
 		}
@@ -467,7 +467,7 @@ public class RenderWare {
 				}
 			}
 
-			try (FileStream stream = new FileStream(new File(outputPath, name), "rw")) {
+			try (BufferedFileStream stream = new BufferedFileStream(new File(outputPath, name), "rw")) {
 				renderWare.write(stream);
 			}
 			
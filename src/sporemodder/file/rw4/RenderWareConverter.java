@@ -21,17 +21,19 @@ package sporemodder.file.rw4;
 import java.io.File;
 import java.io.IOException;
 
-import sporemodder.file.filestructures.FileStream;
+import sporemodder.file.filestructures.BufferedFileStream;
 import sporemodder.file.filestructures.StreamReader;
 import sporemodder.file.filestructures.StreamWriter;
 import javafx.scene.control.ContextMenu;
 import javafx.scene.control.MenuItem;
+import sporemodder.FormatManager;
 import sporemodder.HashManager;
 import sporemodder.ProjectManager;
 import sporemodder.UIManager;
 import sporemodder.file.Converter;
 import sporemodder.file.ResourceKey;
 import sporemodder.file.dbpf.DBPFPacker;
+import sporemodder.file.dds.DDSEncoder;
 import sporemodder.file.dds.DDSTexture;
 import sporemodder.util.ProjectItem;
 
@@ -49,13 +51,20 @@ public class RenderWareConverter implements Converter {
 			return false;
 		}
 		else {
-			try (FileStream output = new FileStream(outputFile, "rw")) {
+			try (BufferedFileStream output = new BufferedFileStream(outputFile, "rw")) {
 				texture.write(output);
 				return true;
 			}
 		}
 	}
 
+	@Override
+	public String getDecodedExtension(ResourceKey key) {
+		// Only textures are decoded, and the key does not tell whether the file is a texture or a model;
+		// the image and model viewers can read the raw file anyway
+		return null;
+	}
+
 	@Override
 	public boolean decode(StreamReader stream, File outputFolder, ResourceKey key) throws IOException {
 		RenderWare renderWare = new RenderWare();
@@ -66,33 +75,39 @@ public class RenderWareConverter implements Converter {
 			return false;
 		}
 		else {
-			try (FileStream output = new FileStream(Converter.getOutputFile(key, outputFolder, "dds"), "rw")) {
+			try (BufferedFileStream output = new BufferedFileStream(Converter.getOutputFile(key, outputFolder, "dds"), "rw")) {
 				texture.write(output);
 				return true;
 			}
 		}
 	}
 
-	@Override
-	public boolean encode(File input, StreamWriter output) throws IOException {
-		try (FileStream inputStream = new FileStream(input, "r")) {
+	/**
+	 * Reads the texture from a DDS file, or compresses it if the file is a PNG or TGA image.
+	 */
+	private static DDSTexture readTexture(File input) throws IOException {
+		if (DDSEncoder.isSupportedImage(input)) {
+			return FormatManager.get().createTextureEncoder().encode(input);
+		}
+		try (BufferedFileStream inputStream = new BufferedFileStream(input, "r")) {
 			DDSTexture texture = new DDSTexture();
 			texture.read(inputStream);
-			RenderWare.fromTexture(texture).write(output);
-			return true;
+			return texture;
 		}
 	}
+
+	@Override
+	public boolean encode(File input, StreamWriter output) throws IOException {
+		RenderWare.fromTexture(readTexture(input)).write(output);
+		return true;
+	}
 	
 	@Override
 	public boolean encode(File input, DBPFPacker packer, int groupID) throws Exception {
 		if (isEncoder(input)) {
 			packer.setCurrentFile(input);
 			
-			DDSTexture texture = new DDSTexture();
-			
-			try (FileStream inputStream = new FileStream(input, "r")) {
-				texture.read(inputStream);
-			}
+			DDSTexture texture = readTexture(input);
 			
 			ResourceKey name = packer.getTemporaryName();
 			name.setGroupID(groupID);
@@ -115,9 +130,12 @@ public class RenderWareConverter implements Converter {
 	@Override
 	public boolean isEncoder(File file) {
 		if (extension == null) {
-			extension = "." + HashManager.get().getTypeName(0x2F4E681B) + ".dds";
+			extension = "." + HashManager.get().getTypeName(0x2F4E681B) + ".";
 		}
-		return file.isFile() && file.getName().endsWith(extension);
+		String name = file.getName();
+		// Textures can be DDS files, or PNG and TGA images that are compressed when packing
+		return file.isFile() && (name.endsWith(extension + "dds")
+				|| (DDSEncoder.isSupportedImage(file) && name.substring(0, name.lastIndexOf('.') + 1).endsWith(extension)));
 	}
 
 	@Override
@@ -148,7 +166,7 @@ public class RenderWareConverter implements Converter {
 					File file = new File(item.getFile().getParentFile(), name);
 					
 					boolean result = UIManager.get().tryAction(() -> {
-						try (FileStream stream = new FileStream(new File(item.getFile().getParentFile(), name), "rw")) {
+						try (BufferedFileStream stream = new BufferedFileStream(new File(item.getFile().getParentFile(), name), "rw")) {
 							encode(item.getFile(), stream);
 							
 							ProjectManager.get().selectItem(ProjectManager.get().getSiblingItem(item, name));
@@ -171,7 +189,7 @@ public class RenderWareConverter implements Converter {
 					menuItem.setOnAction(event -> {
 						final File outputFile = Converter.getOutputFile(key, item.getFile().getParentFile(), "dds");
 						boolean result = UIManager.get().tryAction(() -> {
-							try (FileStream stream = new FileStream(item.getFile(), "r")) {
+							try (BufferedFileStream stream = new BufferedFileStream(item.getFile(), "r")) {
 								decode(stream, outputFile);
 								
 								ProjectManager.get().selectItem(ProjectManager.get().getSiblingItem(item, outputFile.getName()));
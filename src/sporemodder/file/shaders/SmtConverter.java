@@ -301,6 +301,11 @@ public class SmtConverter implements Converter {
 		return "Spore Materials (." + HashManager.get().getTypeName(TYPE_ID) + ")";
 	}
 	
+	@Override public boolean isConcurrentEncoder() {
+		// Compiled shaders depend on the shader fragments that were encoded before
+		return false;
+	}
+	
 	@Override public boolean isEnabledByDefault() {
 		return true;
 	}
@@ -11,7 +11,7 @@ import sporemodder.UIManager;
 import sporemodder.file.Converter;
 import sporemodder.file.ResourceKey;
 import sporemodder.file.dbpf.DBPFPacker;
-import sporemodder.file.filestructures.FileStream;
+import sporemodder.file.filestructures.BufferedFileStream;
 import sporemodder.file.filestructures.StreamReader;
 import sporemodder.file.filestructures.StreamWriter;
 import sporemodder.util.ProjectItem;
@@ -47,6 +47,11 @@ public class ScenarioConverter implements Converter {
 		return decode(stream, Converter.getOutputFile(key, outputFolder, "unpacked"));
 	}
 
+	@Override
+	public String getDecodedExtension(ResourceKey key) {
+		return "unpacked";
+	}
+
 	@Override
 	public boolean encode(File input, StreamWriter output) throws Exception {
 		return false;
@@ -104,7 +109,7 @@ public class ScenarioConverter implements Converter {
 					menuItem.setOnAction(event -> {
 						final File outputFolder = Converter.getOutputFile(key, item.getFile().getParentFile(), "unpacked");
 						boolean result = UIManager.get().tryAction(() -> {
-							try (FileStream stream = new FileStream(item.getFile(), "r")) {
+							try (BufferedFileStream stream = new BufferedFileStream(item.getFile(), "r")) {
 								decode(stream, outputFolder);
 								
 								ProjectManager.get().selectItem(ProjectManager.get().getSiblingItem(item, outputFolder.getName()));
@@ -35,6 +35,8 @@ import sporemodder.file.argscript.ArgScriptWriter;
 
 public class TLSAUnit {
 	
+	private static final ThreadLocal<ArgScriptStream<TLSAUnit>> POOLED_STREAM = ThreadLocal.withInitial(() -> new TLSAUnit().generateStream());
+	
 	private static final int MAGIC = 0x74736C61;
 	
 	private final List<TLSAAnimationGroup> groups = new ArrayList<TLSAAnimationGroup>();
@@ -82,6 +84,18 @@ public class TLSAUnit {
 		return writer.toString();
 	}
 
+	/**
+	 * Returns the ArgScript stream used to parse TLSA files into this object, reusing the one of the current thread so its
+	 * parsers are only created once. The stream is reset every time this method is called, so it must not be kept.
+	 * @return
+	 */
+	public ArgScriptStream<TLSAUnit> getPooledStream() {
+		ArgScriptStream<TLSAUnit> stream = POOLED_STREAM.get();
+		stream.reset();
+		stream.setData(this);
+		return stream;
+	}
+	
 	public ArgScriptStream<TLSAUnit> generateStream() {
 		
 		ArgScriptStream<TLSAUnit> stream = new ArgScriptStream<TLSAUnit>();
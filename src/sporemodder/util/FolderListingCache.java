@@ -0,0 +1,262 @@
+/****************************************************************************
+* Copyright (C) 2019 Eric Mor
+*
+* This file is part of SporeModder FX.
+*
+* SporeModder FX is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+****************************************************************************/
+package sporemodder.util;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Keeps the list of file names of the folders shown in the project tree, so that they don't need to be listed again
+ * every time the tree is refreshed. Every cached folder is watched with a {@link WatchService}: when files are created or
+ * deleted, the cached list is updated and the listeners are notified of the change, so the tree can be updated without
+ * listing the whole folder again.
+ * <p>
+ * Watching a folder keeps it open, and on Windows open folders cannot be renamed or deleted; therefore, only the folders
+ * that are visible should be cached: folders must be removed with {@link #invalidate(File)} when they are collapsed in the tree,
+ * and before renaming or deleting them.
+ * <p>
+ * This class is thread-safe. Listeners are called from the watcher thread.
+ */
+public class FolderListingCache {
+
+	/** The maximum number of folders that are cached (and watched); the least recently used ones are forgotten. */
+	public static final int MAX_FOLDERS = 2048;
+
+	public static interface FolderListener {
+		/**
+		 * Called when a file or folder is created or deleted in a cached folder.
+		 * @param folder The cached folder.
+		 * @param name The name of the file that was created or deleted, or null if the changes are not known and the folder must be listed again.
+		 * @param isCreated True if the file was created, false if it was deleted.
+		 */
+		public void folderChanged(File folder, String name, boolean isCreated);
+	}
+
+	private static class Snapshot {
+		final WatchKey key;
+		final Set<String> names;
+
+		Snapshot(WatchKey key, String[] names) {
+			this.key = key;
+			this.names = new LinkedHashSet<>(Arrays.asList(names));
+		}
+	}
+
+	private static class Change {
+		final File folder;
+		final String name;
+		final boolean isCreated;
+
+		Change(File folder, String name, boolean isCreated) {
+			this.folder = folder;
+			this.name = name;
+			this.isCreated = isCreated;
+		}
+	}
+
+	/** The cached folders, in access order so that the first one is the least recently used. */
+	private final LinkedHashMap<Path, Snapshot> snapshots = new LinkedHashMap<Path, Snapshot>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override protected boolean removeEldestEntry(Map.Entry<Path, Snapshot> eldest) {
+			if (size() > MAX_FOLDERS) {
+				eldest.getValue().key.cancel();
+				keys.remove(eldest.getValue().key);
+				return true;
+			}
+			return false;
+		}
+	};
+	private final Map<WatchKey, Path> keys = new HashMap<>();
+	private final List<FolderListener> listeners = new CopyOnWriteArrayList<>();
+
+	private WatchService watchService;
+	private boolean isWatchingSupported = true;
+
+	public void addListener(FolderListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(FolderListener listener) {
+		listeners.remove(listener);
+	}
+
+	private WatchKey register(Path path) {
+		if (!isWatchingSupported) return null;
+		try {
+			if (watchService == null) {
+				watchService = FileSystems.getDefault().newWatchService();
+
+				Thread thread = new Thread(this::processEvents, "Folder watcher");
+				thread.setDaemon(true);
+				thread.start();
+			}
+			return path.register(watchService, ENTRY_CREATE, ENTRY_DELETE);
+		}
+		catch (IOException | UnsupportedOperationException e) {
+			// Without watching, folders cannot be cached as we would not know when they change
+			e.printStackTrace();
+			isWatchingSupported = watchService != null;
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the names of the files and folders inside the given folder, like {@link File#list()}. If the folder is cached
+	 * the names are returned without accessing the disk; otherwise, the folder is listed and added to the cache.
+	 * @param folder
+	 * @return The names, or null if the folder does not exist.
+	 */
+	public synchronized String[] list(File folder) {
+		Path path = folder.toPath().toAbsolutePath();
+		Snapshot snapshot = snapshots.get(path);
+		if (snapshot != null) {
+			return snapshot.names.toArray(new String[snapshot.names.size()]);
+		}
+
+		// Start watching before listing, so no change is missed
+		WatchKey key = register(path);
+		String[] names = folder.list();
+		if (names == null) {
+			if (key != null) key.cancel();
+		}
+		else if (key != null) {
+			snapshots.put(path, new Snapshot(key, names));
+			keys.put(key, path);
+		}
+		return names;
+	}
+
+	/**
+	 * Removes the folder and all its subfolders from the cache and stops watching them, so that they are listed again
+	 * the next time they are used.
+	 * @param folder
+	 */
+	public synchronized void invalidate(File folder) {
+		Path path = folder.toPath().toAbsolutePath();
+		Iterator<Map.Entry<Path, Snapshot>> it = snapshots.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Path, Snapshot> entry = it.next();
+			if (entry.getKey().startsWith(path)) {
+				entry.getValue().key.cancel();
+				keys.remove(entry.getValue().key);
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Removes all the folders from the cache and stops watching them.
+	 */
+	public synchronized void clear() {
+		for (Snapshot snapshot : snapshots.values()) {
+			snapshot.key.cancel();
+		}
+		snapshots.clear();
+		keys.clear();
+	}
+
+	/**
+	 * Clears the cache and stops the watcher thread.
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException {
+		clear();
+		if (watchService != null) {
+			watchService.close();
+			watchService = null;
+		}
+	}
+
+	private void processEvents() {
+		WatchService watchService = this.watchService;
+		List<Change> changes = new ArrayList<>();
+		while (true) {
+			WatchKey key;
+			try {
+				key = watchService.take();
+			}
+			catch (InterruptedException | ClosedWatchServiceException e) {
+				return;
+			}
+
+			synchronized (this) {
+				Path path = keys.get(key);
+				if (path == null) {
+					// The folder was removed from the cache
+					key.pollEvents();
+					continue;
+				}
+				Snapshot snapshot = snapshots.get(path);
+				File folder = path.toFile();
+
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == OVERFLOW) {
+						// Some events were lost, so the folder must be listed again
+						snapshots.remove(path);
+						keys.remove(key);
+						key.cancel();
+						changes.clear();
+						changes.add(new Change(folder, null, false));
+						break;
+					}
+					String name = ((Path) event.context()).getFileName().toString();
+					boolean isCreated = event.kind() == ENTRY_CREATE;
+					// Ignore events that don't change anything, like creating and deleting a temporary file
+					if (isCreated ? snapshot.names.add(name) : snapshot.names.remove(name)) {
+						changes.add(new Change(folder, name, isCreated));
+					}
+				}
+
+				if (!key.reset()) {
+					// The folder does not exist anymore
+					snapshots.remove(path);
+					keys.remove(key);
+				}
+			}
+
+			for (Change change : changes) {
+				for (FolderListener listener : listeners) {
+					listener.folderChanged(change.folder, change.name, change.isCreated);
+				}
+			}
+			changes.clear();
+		}
+	}
+}
@@ -23,8 +23,13 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import sporemodder.file.filestructures.Stream.StringEncoding;
@@ -33,11 +38,183 @@ import sporemodder.HashManager;
 
 /**
  * A registry file is a list which assigns an integer hash value to a string, and vice versa.
+ * <p>
+ * Names are case sensitive, except aliases (names that end with <code>~</code>), which can also be looked up ignoring case
+ * with {@link #getAliasHash(String)}. Registries can be used from multiple threads: reading does not need any lock,
+ * and adding entries is synchronized, so the project registry can be updated while files are packed in parallel.
  */
 public class NameRegistry {
-	// ~ names are in lowercase
-	protected final HashMap<String, Integer> hashes = new HashMap<String, Integer>();
-	protected final HashMap<Integer, String> names = new HashMap<Integer, String>();
+	
+	private static final int DEFAULT_CAPACITY = 64;
+	
+	private static final VarHandle STRING_ARRAY = MethodHandles.arrayElementVarHandle(String[].class);
+	private static final VarHandle INT_ARRAY = MethodHandles.arrayElementVarHandle(int[].class);
+	
+	/**
+	 * Maps hashes to names, using open addressing with primitive keys. A slot is used if its name is not null; names are published
+	 * with release semantics after the hash is written, so readers never see a name with the wrong hash.
+	 */
+	private static final class NameTable {
+		final int[] hashes;
+		final String[] names;
+		int size;
+		
+		NameTable(int capacity) {
+			hashes = new int[capacity];
+			names = new String[capacity];
+		}
+		
+		String get(int hash) {
+			int mask = names.length - 1;
+			for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+				String name = (String) STRING_ARRAY.getAcquire(names, slot);
+				if (name == null) return null;
+				if (hashes[slot] == hash) return name;
+			}
+		}
+		
+		/** Returns false if the table is too full and must grow before adding a new entry. */
+		boolean put(int hash, String name) {
+			int mask = names.length - 1;
+			int slot = mix(hash) & mask;
+			while (names[slot] != null) {
+				if (hashes[slot] == hash) {
+					STRING_ARRAY.setRelease(names, slot, name);
+					return true;
+				}
+				slot = (slot + 1) & mask;
+			}
+			if ((size + 1) * 2 > names.length) {
+				return false;
+			}
+			hashes[slot] = hash;
+			STRING_ARRAY.setRelease(names, slot, name);
+			++size;
+			return true;
+		}
+		
+		NameTable grow() {
+			NameTable table = new NameTable(names.length * 2);
+			for (int i = 0; i < names.length; ++i) {
+				if (names[i] != null) table.put(hashes[i], names[i]);
+			}
+			return table;
+		}
+		
+		void putAllInto(Map<Integer, String> dst) {
+			for (int i = 0; i < names.length; ++i) {
+				String name = (String) STRING_ARRAY.getAcquire(names, i);
+				if (name != null) dst.put(hashes[i], name);
+			}
+		}
+	}
+	
+	/**
+	 * Maps names to hashes, using open addressing. A slot is used if its name is not null; like in {@link NameTable},
+	 * names are published after the rest of the slot is written. Names are compared exactly, unless the table ignores case.
+	 */
+	private static final class HashTable {
+		final boolean ignoreCase;
+		final String[] names;
+		final int[] nameHashes;
+		final int[] hashes;
+		int size;
+		
+		HashTable(int capacity, boolean ignoreCase) {
+			this.ignoreCase = ignoreCase;
+			names = new String[capacity];
+			nameHashes = new int[capacity];
+			hashes = new int[capacity];
+		}
+		
+		int hashName(String name) {
+			return ignoreCase ? hashIgnoreCase(name) : name.hashCode();
+		}
+		
+		boolean equalNames(String a, String b) {
+			return ignoreCase ? a.equalsIgnoreCase(b) : a.equals(b);
+		}
+		
+		int find(String name, int nameHash) {
+			int mask = names.length - 1;
+			for (int slot = mix(nameHash) & mask; ; slot = (slot + 1) & mask) {
+				String key = (String) STRING_ARRAY.getAcquire(names, slot);
+				if (key == null) return -1;
+				if (nameHashes[slot] == nameHash && equalNames(key, name)) return slot;
+			}
+		}
+		
+		Integer get(String name) {
+			int slot = find(name, hashName(name));
+			return slot == -1 ? null : (int) INT_ARRAY.getAcquire(hashes, slot);
+		}
+		
+		/** Returns false if the table is too full and must grow before adding a new entry. */
+		boolean put(String name, int hash) {
+			return put(name, hashName(name), hash);
+		}
+		
+		private boolean put(String name, int nameHash, int hash) {
+			int mask = names.length - 1;
+			int slot = mix(nameHash) & mask;
+			while (names[slot] != null) {
+				if (nameHashes[slot] == nameHash && equalNames(names[slot], name)) {
+					INT_ARRAY.setRelease(hashes, slot, hash);
+					return true;
+				}
+				slot = (slot + 1) & mask;
+			}
+			if ((size + 1) * 2 > names.length) {
+				return false;
+			}
+			nameHashes[slot] = nameHash;
+			hashes[slot] = hash;
+			STRING_ARRAY.setRelease(names, slot, name);
+			++size;
+			return true;
+		}
+		
+		HashTable grow() {
+			HashTable table = new HashTable(names.length * 2, ignoreCase);
+			for (int i = 0; i < names.length; ++i) {
+				if (names[i] != null) table.put(names[i], nameHashes[i], hashes[i]);
+			}
+			return table;
+		}
+		
+		void putAllInto(Map<String, Integer> dst) {
+			for (int i = 0; i < names.length; ++i) {
+				String name = (String) STRING_ARRAY.getAcquire(names, i);
+				if (name != null) dst.put(name, (int) INT_ARRAY.getAcquire(hashes, i));
+			}
+		}
+	}
+	
+	private static int mix(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+	
+	/**
+	 * A hash of the string that is the same for names that only differ in case, consistent with {@link String#equalsIgnoreCase(String)}.
+	 * @param name
+	 * @return
+	 */
+	static int hashIgnoreCase(String name) {
+		int hash = 0;
+		for (int i = 0; i < name.length(); ++i) {
+			hash = 31 * hash + Character.toLowerCase(Character.toUpperCase(name.charAt(i)));
+		}
+		return hash;
+	}
+	
+	// Writers replace the tables when they grow, readers just use the last published one
+	private volatile HashTable hashes = new HashTable(DEFAULT_CAPACITY, false);
+	/** The names of {@link #hashes} that end with <code>~</code>, ignoring case. */
+	private volatile HashTable aliases = new HashTable(DEFAULT_CAPACITY, true);
+	private volatile NameTable names = new NameTable(DEFAULT_CAPACITY);
+	/** If not null, the entries of a compiled registry file; the entries in the tables take priority over it. */
+	private volatile NameRegistrySnapshot snapshot;
 	protected HashManager hashManager;
 	protected final String fileName;
 	protected final String name;
@@ -56,9 +233,11 @@ public class NameRegistry {
 		return fileName;
 	}
 	
-	public void clear() {
-		hashes.clear();
-		names.clear();
+	public synchronized void clear() {
+		hashes = new HashTable(DEFAULT_CAPACITY, false);
+		aliases = new HashTable(DEFAULT_CAPACITY, true);
+		names = new NameTable(DEFAULT_CAPACITY);
+		snapshot = null;
 	}
 	
 	/**
@@ -67,7 +246,14 @@ public class NameRegistry {
 	 * @return The equivalent name, or null.
 	 */
 	public String getName(int hash) {
-		return names.get(hash);
+		String name = names.get(hash);
+		if (name == null) {
+			NameRegistrySnapshot snapshot = this.snapshot;
+			if (snapshot != null) {
+				name = snapshot.getName(hash);
+			}
+		}
+		return name;
 	}
 	
 	/**
@@ -77,7 +263,60 @@ public class NameRegistry {
 	 * @return The equivalent hash, or null.
 	 */
 	public Integer getHash(String name) {
-		return hashes.get(name);
+		Integer hash = hashes.get(name);
+		if (hash == null) {
+			NameRegistrySnapshot snapshot = this.snapshot;
+			if (snapshot != null) {
+				hash = snapshot.getHash(name);
+			}
+		}
+		return hash;
+	}
+	
+	/**
+	 * Returns the hash that is assigned to the given alias (a name that ends with <code>~</code>), or null if the alias is not assigned.
+	 * Unlike {@link #getHash(String)}, case is ignored.
+	 * @param name The alias whose equivalent hash will be returned.
+	 * @return The equivalent hash, or null.
+	 */
+	public Integer getAliasHash(String name) {
+		Integer hash = aliases.get(name);
+		if (hash == null) {
+			NameRegistrySnapshot snapshot = this.snapshot;
+			if (snapshot != null) {
+				hash = snapshot.getAliasHash(name);
+			}
+		}
+		return hash;
+	}
+	
+	private synchronized void putName(int hash, String name) {
+		while (!names.put(hash, name)) {
+			names = names.grow();
+		}
+	}
+	
+	private synchronized void putHash(String name, int hash) {
+		while (!hashes.put(name, hash)) {
+			hashes = hashes.grow();
+		}
+		if (name.endsWith("~")) {
+			while (!aliases.put(name, hash)) {
+				aliases = aliases.grow();
+			}
+		}
+	}
+	
+	/**
+	 * Returns true if the given name-hash pair is already in this registry (not counting the compiled snapshot), so there is no need
+	 * to add it. This does not need any lock.
+	 * @param name
+	 * @param hash
+	 * @return
+	 */
+	public boolean contains(String name, int hash) {
+		Integer value = hashes.get(name);
+		return value != null && value == hash && name.equals(names.get(hash));
 	}
 	
 	/**
@@ -85,37 +324,49 @@ public class NameRegistry {
 	 * @param name
 	 * @param hash
 	 */
-	public void add(String name, int hash) {
-		hashes.put(name.toLowerCase(), hash);
-		names.put(hash, name);
+	public synchronized void add(String name, int hash) {
+		putHash(name, hash);
+		putName(hash, name);
+	}
+	
+	/**
+	 * Adds all the entries of the given registry into this one. Entries from a compiled snapshot are not copied.
+	 * @param other
+	 */
+	public synchronized void addAll(NameRegistry other) {
+		Map<String, Integer> otherHashes = new HashMap<String, Integer>();
+		Map<Integer, String> otherNames = new HashMap<Integer, String>();
+		other.hashes.putAllInto(otherHashes);
+		other.names.putAllInto(otherNames);
+		
+		for (Map.Entry<String, Integer> entry : otherHashes.entrySet()) {
+			putHash(entry.getKey(), entry.getValue());
+		}
+		for (Map.Entry<Integer, String> entry : otherNames.entrySet()) {
+			putName(entry.getKey(), entry.getValue());
+		}
 	}
 	
 	/**
 	 * Processes a single line in the registry file, converting it to an entry in this class.
 	 * @param str The line to be parsed.
 	 */
-	protected void parseEntry(String str) {
+	protected synchronized void parseEntry(String str) {
 		// There are 1 or 2 strings: the name and, optionally, the hash.
 		String[] strings = str.split("\t");
 		String name = strings[0].trim();
 		
 		if (strings.length < 2) {
 			int hash = hashManager.fnvHash(name);
-			names.put(hash, name);
-		} 
+			putName(hash, name);
+		}
 		else {
 			// Remove any trailing whitespaces
 			String hashStr = strings[1].trim();
 			int hash = hashManager.int32(hashStr);
 			
-			if (name.endsWith("~")) {
-				hashes.put(name.toLowerCase(), hash);
-			}
-			else {
-				hashes.put(name, hash);
-			}
-			hashes.put(name, hash);
-			names.put(hash, name);
+			putHash(name, hash);
+			putName(hash, name);
 		}
 	}
 	
@@ -125,9 +376,52 @@ public class NameRegistry {
 		}
 	}
 	
+	/**
+	 * Reads the given registry file, using its compiled snapshot ({@link NameRegistrySnapshot}) if it is up to date. If it isn't,
+	 * the text file is parsed and the snapshot is generated again, so the next time it can be used.
+	 * The snapshot is only used if the registry is empty; otherwise, this is the same as {@link #read(File)}.
+	 * @param file
+	 * @throws IOException
+	 */
+	public synchronized void readWithSnapshot(File file) throws IOException {
+		if (!isEmpty()) {
+			read(file);
+			return;
+		}
+		
+		NameRegistrySnapshot fileSnapshot = NameRegistrySnapshot.open(file);
+		if (fileSnapshot != null) {
+			snapshot = fileSnapshot;
+		}
+		else {
+			read(file);
+			try {
+				Map<String, Integer> allHashes = new HashMap<String, Integer>();
+				hashes.putAllInto(allHashes);
+				NameRegistrySnapshot.write(file, getAllNames(), allHashes);
+			} catch (IOException e) {
+				// The program folder might not be writable; we will just parse the text file again next time
+			}
+		}
+	}
+	
+	/**
+	 * Returns all the hash to name entries in this registry, including the ones in the snapshot.
+	 * @return
+	 */
+	private Map<Integer, String> getAllNames() {
+		Map<Integer, String> allNames = new HashMap<Integer, String>();
+		NameRegistrySnapshot snapshot = this.snapshot;
+		if (snapshot != null) {
+			snapshot.getNames(allNames);
+		}
+		names.putAllInto(allNames);
+		return allNames;
+	}
+	
 	public void read(BufferedReader in) throws IOException {
 		String line;
-
+		
 		while ((line = in.readLine()) != null) {
 			
 			String str = line.split("//")[0].trim();
@@ -147,21 +441,27 @@ public class NameRegistry {
 	public void write(StreamWriter stream) throws IOException {
 		String eol = System.getProperty("line.separator");
 		
-		for (Map.Entry<Integer, String> entry : names.entrySet()) {
-			String name = entry.getValue();
-			if (name.endsWith("~") || hashManager.fnvHash(name) != entry.getKey()) {
-				stream.writeString(name + "\t0x" + Integer.toHexString(entry.getKey()) + eol, StringEncoding.ASCII);
+		// Sort them so the output doesn't depend on the order names were added (e.g. when packing in parallel)
+		Map<Integer, String> allNames = getAllNames();
+		List<Integer> sortedHashes = new ArrayList<>(allNames.keySet());
+		Collections.sort(sortedHashes);
+		
+		for (int hash : sortedHashes) {
+			String name = allNames.get(hash);
+			if (name.endsWith("~") || hashManager.fnvHash(name) != hash) {
+				stream.writeString(name + "\t0x" + Integer.toHexString(hash) + eol, StringEncoding.ASCII);
 			} else {
 				stream.writeString(name + eol, StringEncoding.ASCII);
 			}
 		}
 	}
-
+	
 	public boolean isEmpty() {
-		return names.isEmpty() && hashes.isEmpty();
+		NameRegistrySnapshot snapshot = this.snapshot;
+		return names.size == 0 && hashes.size == 0 && (snapshot == null || snapshot.isEmpty());
 	}
-
+	
 	public Collection<String> getNames() {
-		return names.values();
+		return getAllNames().values();
 	}
 }
@@ -0,0 +1,305 @@
+/****************************************************************************
+* Copyright (C) 2019 Eric Mor
+*
+* This file is part of SporeModder FX.
+*
+* SporeModder FX is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+****************************************************************************/
+package sporemodder.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import sporemodder.file.filestructures.MemoryStream;
+
+/**
+ * A compiled, read-only version of a {@link NameRegistry} text file. Reading a registry text file requires parsing every line,
+ * which is slow for big registries like <code>reg_file.txt</code>; the snapshot is a binary file that is memory-mapped and used directly,
+ * without parsing anything.
+ * <p>
+ * The file contains a sorted array of hashes (to find names), a sorted array of string hashes (to find hashes), a sorted array
+ * of case-insensitive string hashes of the aliases (names that end with <code>~</code>, which can be found ignoring case),
+ * the offsets of every string and a pool with all the strings encoded in UTF-8. It also stores the size and modification time of the text file
+ * it was generated from, so it is only used if the text file has not changed.
+ */
+public class NameRegistrySnapshot {
+
+	public static final String EXTENSION = ".bin";
+
+	private static final int MAGIC = 0x47524D53;  // SMRG
+	private static final int VERSION = 3;
+	/** Magic, version, source size, source modification time, name count, hash count, alias count, pool size. */
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4 + 4 + 4;
+
+	/** The hashes that have a name assigned, sorted. */
+	private final IntBuffer nameHashes;
+	/** The string hash ({@link String#hashCode()}) of every name that has a hash assigned, sorted. */
+	private final IntBuffer hashKeys;
+	/** The hashes assigned to the names in {@link #hashKeys}. */
+	private final IntBuffer hashValues;
+	/** The case-insensitive string hash of every alias in {@link #hashKeys}, sorted. */
+	private final IntBuffer aliasKeys;
+	/** The index in {@link #hashKeys} of every alias in {@link #aliasKeys}. */
+	private final IntBuffer aliasIndices;
+	/** The start of every string in the pool: first the names, then the hash keys. It has an extra offset for the end of the last string. */
+	private final IntBuffer offsets;
+	private final ByteBuffer pool;
+	/** The strings of the pool that have already been decoded, by index; they are only decoded the first time they are used. */
+	private final String[] strings;
+
+	private NameRegistrySnapshot(ByteBuffer buffer) throws IOException {
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		buffer.position(HEADER_SIZE - 16);
+		int nameCount = buffer.getInt();
+		int hashCount = buffer.getInt();
+		int aliasCount = buffer.getInt();
+		int poolSize = buffer.getInt();
+
+		long expectedSize = HEADER_SIZE + 4L * (nameCount + hashCount * 2 + aliasCount * 2 + nameCount + hashCount + 1) + poolSize;
+		if (nameCount < 0 || hashCount < 0 || aliasCount < 0 || poolSize < 0 || expectedSize != buffer.capacity()) {
+			throw new IOException("Corrupt name registry snapshot");
+		}
+
+		nameHashes = intSlice(buffer, nameCount);
+		hashKeys = intSlice(buffer, hashCount);
+		hashValues = intSlice(buffer, hashCount);
+		aliasKeys = intSlice(buffer, aliasCount);
+		aliasIndices = intSlice(buffer, aliasCount);
+		offsets = intSlice(buffer, nameCount + hashCount + 1);
+		pool = buffer.slice();
+		strings = new String[nameCount + hashCount];
+	}
+
+	private static IntBuffer intSlice(ByteBuffer buffer, int count) {
+		ByteBuffer slice = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+		slice.limit(count * 4);
+		buffer.position(buffer.position() + count * 4);
+		return slice.asIntBuffer();
+	}
+
+	/**
+	 * Returns the snapshot file that is used for the given registry text file.
+	 * @param textFile
+	 * @return
+	 */
+	public static File getSnapshotFile(File textFile) {
+		return new File(textFile.getParentFile(), textFile.getName() + EXTENSION);
+	}
+
+	/**
+	 * Opens the snapshot of the given registry text file, only if it exists and it was generated from the current version of the text file.
+	 * Returns null otherwise, in which case the text file must be parsed.
+	 * @param textFile
+	 * @return
+	 */
+	public static NameRegistrySnapshot open(File textFile) {
+		File file = getSnapshotFile(textFile);
+		if (!file.isFile() || !textFile.isFile()) {
+			return null;
+		}
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+				return null;
+			}
+			// The mapping stays valid after the channel is closed
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+					|| buffer.getLong() != textFile.length() || buffer.getLong() != textFile.lastModified()) {
+				return null;
+			}
+			return new NameRegistrySnapshot(buffer);
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Generates the snapshot of a registry text file, using the entries that were read from it. The file is written atomically,
+	 * so other instances of the program never read an incomplete snapshot.
+	 * @param textFile The registry text file that was read.
+	 * @param names The hash to name entries of the registry.
+	 * @param hashes The name to hash entries of the registry.
+	 * @throws IOException
+	 */
+	public static void write(File textFile, Map<Integer, String> names, Map<String, Integer> hashes) throws IOException {
+		int[] sortedHashes = new int[names.size()];
+		int index = 0;
+		for (int hash : names.keySet()) {
+			sortedHashes[index++] = hash;
+		}
+		Arrays.sort(sortedHashes);
+
+		List<String> sortedKeys = new ArrayList<>(hashes.keySet());
+		sortedKeys.sort((a, b) -> Integer.compare(a.hashCode(), b.hashCode()));
+
+		List<Integer> sortedAliases = new ArrayList<>();
+		for (int i = 0; i < sortedKeys.size(); ++i) {
+			if (sortedKeys.get(i).endsWith("~")) sortedAliases.add(i);
+		}
+		sortedAliases.sort((a, b) -> Integer.compare(
+				NameRegistry.hashIgnoreCase(sortedKeys.get(a)), NameRegistry.hashIgnoreCase(sortedKeys.get(b))));
+
+		try (MemoryStream pool = new MemoryStream();
+				MemoryStream stream = new MemoryStream()) {
+
+			int[] stringOffsets = new int[sortedHashes.length + sortedKeys.size() + 1];
+			index = 0;
+			for (int hash : sortedHashes) {
+				stringOffsets[index++] = (int) pool.getFilePointer();
+				pool.write(names.get(hash).getBytes(StandardCharsets.UTF_8));
+			}
+			for (String key : sortedKeys) {
+				stringOffsets[index++] = (int) pool.getFilePointer();
+				pool.write(key.getBytes(StandardCharsets.UTF_8));
+			}
+			stringOffsets[index] = (int) pool.getFilePointer();
+
+			stream.writeLEInt(MAGIC);
+			stream.writeLEInt(VERSION);
+			stream.writeLELong(textFile.length());
+			stream.writeLELong(textFile.lastModified());
+			stream.writeLEInt(sortedHashes.length);
+			stream.writeLEInt(sortedKeys.size());
+			stream.writeLEInt(sortedAliases.size());
+			stream.writeLEInt((int) pool.length());
+
+			stream.writeLEInts(sortedHashes);
+			for (String key : sortedKeys) {
+				stream.writeLEInt(key.hashCode());
+			}
+			for (String key : sortedKeys) {
+				stream.writeLEInt(hashes.get(key));
+			}
+			for (int alias : sortedAliases) {
+				stream.writeLEInt(NameRegistry.hashIgnoreCase(sortedKeys.get(alias)));
+			}
+			for (int alias : sortedAliases) {
+				stream.writeLEInt(alias);
+			}
+			stream.writeLEInts(stringOffsets);
+			stream.write(pool.toByteArray());
+
+			File file = getSnapshotFile(textFile);
+			File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+			Files.write(tempFile.toPath(), stream.toByteArray());
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+	}
+
+	private String getString(int index) {
+		// Strings are immutable, so if two threads decode the same one at the same time either result can be kept
+		String string = strings[index];
+		if (string == null) {
+			string = decodeString(index);
+			strings[index] = string;
+		}
+		return string;
+	}
+
+	private String decodeString(int index) {
+		int start = offsets.get(index);
+		byte[] bytes = new byte[offsets.get(index + 1) - start];
+		ByteBuffer data = pool.duplicate();
+		data.position(start);
+		data.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/** Returns the index of the first element in the buffer that is equal or greater than the value. */
+	private static int lowerBound(IntBuffer buffer, int value) {
+		int low = 0;
+		int high = buffer.limit();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (buffer.get(mid) < value) low = mid + 1;
+			else high = mid;
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the name that is assigned to the given hash, or null if the hash is not assigned.
+	 * @param hash
+	 * @return
+	 */
+	public String getName(int hash) {
+		int index = lowerBound(nameHashes, hash);
+		if (index < nameHashes.limit() && nameHashes.get(index) == hash) {
+			return getString(index);
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the hash that is assigned to the given name, or null if the name is not assigned.
+	 * @param name
+	 * @return
+	 */
+	public Integer getHash(String name) {
+		int key = name.hashCode();
+		int count = nameHashes.limit();
+		for (int index = lowerBound(hashKeys, key); index < hashKeys.limit() && hashKeys.get(index) == key; ++index) {
+			if (name.equals(getString(count + index))) {
+				return hashValues.get(index);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the hash that is assigned to the given alias (a name that ends with <code>~</code>), or null if the alias is not assigned.
+	 * Case is ignored.
+	 * @param name
+	 * @return
+	 */
+	public Integer getAliasHash(String name) {
+		int key = NameRegistry.hashIgnoreCase(name);
+		int count = nameHashes.limit();
+		for (int i = lowerBound(aliasKeys, key); i < aliasKeys.limit() && aliasKeys.get(i) == key; ++i) {
+			int index = aliasIndices.get(i);
+			if (name.equalsIgnoreCase(getString(count + index))) {
+				return hashValues.get(index);
+			}
+		}
+		return null;
+	}
+
+	public boolean isEmpty() {
+		return nameHashes.limit() == 0 && hashKeys.limit() == 0;
+	}
+
+	/**
+	 * Decodes all the hash to name entries of the snapshot into the given map.
+	 * @param dst
+	 */
+	public void getNames(Map<Integer, String> dst) {
+		for (int i = 0; i < nameHashes.limit(); ++i) {
+			dst.put(nameHashes.get(i), getString(i));
+		}
+	}
+}
@@ -0,0 +1,833 @@
+/****************************************************************************
+* Copyright (C) 2019 Eric Mor
+*
+* This file is part of SporeModder FX.
+*
+* SporeModder FX is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+****************************************************************************/
+package sporemodder.util;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
+
+import sporemodder.FileManager;
+import sporemodder.FormatManager;
+import sporemodder.HashManager;
+import sporemodder.file.Converter;
+import sporemodder.file.ResourceKeySet;
+import sporemodder.file.dbpf.DBPFItem;
+import sporemodder.file.dbpf.DBPFMappedReader;
+import sporemodder.file.dbpf.DBPFUnpackingTask.DBPFItemFilter;
+import sporemodder.file.filestructures.MemoryStream;
+
+/**
+ * A source of files for a project that reads them directly from a list of package files, instead of unpacking the packages
+ * into the project folder. This is used by the presets: unpacking all the game packages takes several minutes and gigabytes
+ * of disk space, but most of those files are never opened.
+ * <p>
+ * The package indices are read (memory-mapped) when the source is first used, and they are used to list the folders and files
+ * with the same names unpacking would give them. A file is only decoded, using the same converters as unpacking, when it is
+ * requested with {@link #getFile(String)}. Decoded files are written in the project folder, which works as a cache that is kept
+ * between sessions as long as the packages do not change (see {@link #CACHE_INFO_FILE_NAME}): when the
+ * decoded files exceed the size limit, the least recently used ones are deleted, except the ones that are pinned with {@link #pin(String)}
+ * because they are being used.
+ * <p>
+ * Files are decoded without locking the source, so it can still be listed while a big file is being decoded; if more than one thread
+ * requests the same file, it is only decoded once.
+ * <p>
+ * All paths used by this class are relative to the project folder.
+ */
+public class PackageProjectSource implements AutoCloseable {
+
+	/** The default maximum size, in bytes, of the decoded files kept in the cache folder. */
+	public static final long DEFAULT_CACHE_SIZE = 512L * 1024 * 1024;
+
+	/** The prefix of the folders, inside the cache folder, where files are decoded before moving them to their path. */
+	private static final String DECODING_FOLDER_NAME = ".decoding";
+
+	private static final String UNPACKED_EXTENSION = "unpacked";
+
+	/**
+	 * The file, inside the cache folder, that stores the size and modification time of the packages and the converters that were used
+	 * to decode the files. If they have not changed when the source is loaded again, the files decoded in previous sessions are kept.
+	 */
+	public static final String CACHE_INFO_FILE_NAME = "package_cache.properties";
+
+	private static class Entry {
+		final DBPFMappedReader reader;
+		final DBPFItem item;
+		/** The converter that decodes this file, or null if it is written without converting it. */
+		final Converter converter;
+		/** The name the file has when it is not converted. */
+		final String rawName;
+		final boolean isFolder;
+
+		Entry(DBPFMappedReader reader, DBPFItem item, Converter converter, String rawName, boolean isFolder) {
+			this.reader = reader;
+			this.item = item;
+			this.converter = converter;
+			this.rawName = rawName;
+			this.isFolder = isFolder;
+		}
+	}
+
+	private static class DecodedFile {
+		final File file;
+		final long size;
+
+		DecodedFile(File file, long size) {
+			this.file = file;
+			this.size = size;
+		}
+	}
+
+	private final File folder;
+	private final List<File> packageFiles;
+	private final List<String> converterNames;
+	private DBPFItemFilter itemFilter;
+	private long maxCacheSize = DEFAULT_CACHE_SIZE;
+
+	private final List<DBPFMappedReader> readers = new ArrayList<>();
+	private List<Converter> converters;
+	/** Maps the relative path of every folder (the root being "") to its contents; the values are null for subfolders. */
+	private final Map<String, Map<String, Entry>> folders = new HashMap<>();
+	/** The decoded files, keyed by relative path and in access order, so that the first one is the least recently used. */
+	private final LinkedHashMap<String, DecodedFile> decodedFiles = new LinkedHashMap<>(16, 0.75f, true);
+	/** The files that are being decoded, keyed by relative path; other threads that request them wait for the result. */
+	private final Map<String, CompletableFuture<File>> decodingFiles = new HashMap<>();
+	/** How many times every relative path has been pinned; pinned files are never deleted from the cache. */
+	private final Map<String, Integer> pinnedFiles = new HashMap<>();
+	private long decodedSize;
+	private boolean isLoaded;
+
+	/**
+	 * Creates a source that reads the given packages.
+	 * @param folder The folder where the decoded files are written, usually the project folder.
+	 * @param packageFiles The package files, by priority: if more than one package contains a file, the first one is used.
+	 * @param converterNames The names of the converters used to decode the files, as returned by {@link Converter#getName()}.
+	 */
+	public PackageProjectSource(File folder, List<File> packageFiles, List<String> converterNames) {
+		this.folder = folder;
+		this.packageFiles = new ArrayList<>(packageFiles);
+		this.converterNames = new ArrayList<>(converterNames);
+	}
+
+	public File getFolder() {
+		return folder;
+	}
+
+	public List<File> getPackageFiles() {
+		return packageFiles;
+	}
+
+	public List<String> getConverterNames() {
+		return converterNames;
+	}
+
+	public DBPFItemFilter getItemFilter() {
+		return itemFilter;
+	}
+
+	/**
+	 * Sets the filter that decides which package files are included; it must be set before the source is loaded.
+	 * @param itemFilter
+	 */
+	public void setItemFilter(DBPFItemFilter itemFilter) {
+		this.itemFilter = itemFilter;
+	}
+
+	public long getMaxCacheSize() {
+		return maxCacheSize;
+	}
+
+	/**
+	 * Sets the maximum size, in bytes, of the decoded files kept in the folder. The last decoded file and the pinned ones
+	 * are never deleted, even if they are bigger than this size.
+	 * @param maxCacheSize
+	 */
+	public synchronized void setMaxCacheSize(long maxCacheSize) {
+		this.maxCacheSize = maxCacheSize;
+		trimCache();
+	}
+
+	public synchronized boolean isLoaded() {
+		return isLoaded;
+	}
+
+	/**
+	 * Converts a relative path to the format used by this class: with the system separator and without leading or trailing separators.
+	 */
+	private static String normalize(String relativePath) {
+		String path = relativePath.replace('/', File.separatorChar).replace('\\', File.separatorChar);
+		int start = 0;
+		int end = path.length();
+		while (start < end && path.charAt(start) == File.separatorChar) ++start;
+		while (end > start && path.charAt(end - 1) == File.separatorChar) --end;
+		return path.substring(start, end);
+	}
+
+	private static String getParentPath(String path) {
+		int index = path.lastIndexOf(File.separatorChar);
+		return index == -1 ? "" : path.substring(0, index);
+	}
+
+	private static String getName(String path) {
+		return path.substring(path.lastIndexOf(File.separatorChar) + 1);
+	}
+
+	private static Map<String, Entry> createFolderMap() {
+		return new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+	}
+
+	private static String getFileName(int hash, NameRegistry packageNames) {
+		// The names file of the package only matters for the hashes the file registry does not know
+		HashManager hasher = HashManager.get();
+		String name = hasher.getFileName(hash);
+		if (packageNames != null && name.startsWith("0x")) {
+			String packageName = packageNames.getName(hash);
+			if (packageName != null) {
+				return packageName;
+			}
+		}
+		return name;
+	}
+
+	private static NameRegistry readNamesFile(DBPFMappedReader reader) throws IOException {
+		HashManager hasher = HashManager.get();
+		int group = hasher.getFileHash("sporemaster");
+		int name = hasher.getFileHash("names");
+		NameRegistry registry = null;
+
+		for (DBPFItem item : reader.getItems()) {
+			if (item.name.getGroupID() == group && item.name.getInstanceID() == name) {
+				if (registry == null) {
+					registry = new NameRegistry(hasher, "Names used by the package", "names.txt");
+				}
+				try (BufferedReader in = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(reader.processFile(item).getRawData())))) {
+					registry.read(in);
+				}
+			}
+		}
+		return registry;
+	}
+
+	/**
+	 * Reads the indices of the packages, if they have not been read yet. The files decoded in previous sessions are kept only if
+	 * the packages and converters are the same as when they were decoded; otherwise they are deleted.
+	 * @throws IOException
+	 */
+	public synchronized void load() throws IOException {
+		if (isLoaded) return;
+
+		HashManager hasher = HashManager.get();
+
+		// The order matters, the first decoder is used
+		converters = new ArrayList<>();
+		for (String name : converterNames) {
+			for (Converter converter : FormatManager.get().getConverters()) {
+				if (converter.getName().equals(name)) {
+					converters.add(converter);
+					break;
+				}
+			}
+		}
+
+		Properties cacheInfo = createCacheInfo();
+		boolean keepDecodedFiles = cacheInfo.equals(readCacheInfo());
+		if (!keepDecodedFiles) {
+			clearFolder();
+		}
+
+		// Files of higher priority packages are added first, and the rest are ignored
+		ResourceKeySet addedKeys = new ResourceKeySet();
+		Map<String, Entry> rootFolder = createFolderMap();
+		folders.put("", rootFolder);
+
+		for (File packageFile : packageFiles) {
+			if (!packageFile.isFile()) continue;
+
+			DBPFMappedReader reader = new DBPFMappedReader(packageFile);
+			readers.add(reader);
+			NameRegistry packageNames = readNamesFile(reader);
+
+			for (DBPFItem item : reader.getItems()) {
+				if (itemFilter != null && !itemFilter.filter(item)) continue;
+
+				int groupID = item.name.getGroupID();
+				int typeID = item.name.getTypeID();
+				String fileName = getFileName(item.name.getInstanceID(), packageNames);
+
+				// skip autolocale files
+				if (groupID == 0x02FABF01 && fileName.startsWith("auto_")) continue;
+
+				if (!addedKeys.add(item.name)) continue;
+
+				String rawName = fileName + "." + hasher.getTypeName(typeID);
+				String name = rawName;
+				Converter decoder = null;
+				boolean isFolder = false;
+
+				// Do not convert editor packages
+				if (groupID != 0x40404000 || typeID != 0x00B1B104) {
+					for (Converter converter : converters) {
+						if (converter.isDecoder(item.name)) {
+							// If the name is not known, the file is not converted
+							String extension = converter.getDecodedExtension(item.name);
+							if (extension != null) {
+								decoder = converter;
+								name = rawName + "." + extension;
+								isFolder = extension.equals(UNPACKED_EXTENSION);
+							}
+							break;
+						}
+					}
+				}
+
+				String folderName = getFileName(groupID, packageNames);
+				Map<String, Entry> contents = folders.get(folderName);
+				if (contents == null) {
+					contents = createFolderMap();
+					folders.put(folderName, contents);
+					rootFolder.put(folderName, null);
+				}
+				contents.put(name, new Entry(reader, item, decoder, rawName, isFolder));
+			}
+		}
+
+		if (keepDecodedFiles) {
+			restoreDecodedFiles();
+		}
+		writeCacheInfo(cacheInfo);
+
+		// Folders must exist on disk, so that project items recognize them as folders
+		for (Map.Entry<String, Map<String, Entry>> folderEntry : folders.entrySet()) {
+			File file = new File(folder, folderEntry.getKey());
+			file.mkdir();
+			for (Map.Entry<String, Entry> entry : folderEntry.getValue().entrySet()) {
+				if (entry.getValue() != null && entry.getValue().isFolder) {
+					new File(file, entry.getKey()).mkdir();
+				}
+			}
+		}
+
+		isLoaded = true;
+		trimCache();
+	}
+
+	/**
+	 * Returns the information that identifies the packages and converters used to decode the files.
+	 */
+	private Properties createCacheInfo() {
+		Properties info = new Properties();
+		info.setProperty("converters", String.join("|", converterNames));
+		info.setProperty("packageCount", Integer.toString(packageFiles.size()));
+		for (int i = 0; i < packageFiles.size(); ++i) {
+			File file = packageFiles.get(i);
+			info.setProperty("package" + i + ".path", file.getAbsolutePath());
+			info.setProperty("package" + i + ".size", Long.toString(file.length()));
+			info.setProperty("package" + i + ".lastModified", Long.toString(file.lastModified()));
+		}
+		return info;
+	}
+
+	/**
+	 * Returns a string that identifies the packages and converters used by this source. It only changes if the decoded files
+	 * could be different, so it can be used to know if information about the decoded files is still valid.
+	 * @return
+	 */
+	public String getContentsVersion() {
+		return new TreeMap<Object, Object>(createCacheInfo()).toString();
+	}
+
+	private Properties readCacheInfo() {
+		File file = new File(folder, CACHE_INFO_FILE_NAME);
+		if (!file.isFile()) {
+			return null;
+		}
+		Properties info = new Properties();
+		try (InputStream in = new FileInputStream(file)) {
+			info.load(in);
+			return info;
+		}
+		catch (IOException | IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	private void writeCacheInfo(Properties info) {
+		try (OutputStream out = new FileOutputStream(new File(folder, CACHE_INFO_FILE_NAME))) {
+			info.store(out, null);
+		}
+		catch (IOException e) {
+			// Then the decoded files will just be deleted next time
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Adds the files decoded in previous sessions to the cache, and deletes any file in the folder that does not belong to the packages,
+	 * such as files whose names changed or whose decoding was interrupted. The least recently modified files are the first ones to be evicted.
+	 */
+	private void restoreDecodedFiles() throws IOException {
+		List<File> restoredFiles = new ArrayList<>();
+		Map<File, String> restoredPaths = new HashMap<>();
+
+		File[] rootFiles = folder.listFiles();
+		if (rootFiles == null) return;
+		for (File rootFile : rootFiles) {
+			String folderName = rootFile.getName();
+			if (rootFile.isDirectory() && folders.containsKey(folderName)) {
+				Map<String, Entry> contents = folders.get(folderName);
+				// Files that could not be converted use their raw name
+				Map<String, String> rawNames = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+				for (Map.Entry<String, Entry> entry : contents.entrySet()) {
+					if (entry.getValue() != null && entry.getValue().converter != null) {
+						rawNames.put(entry.getValue().rawName, entry.getKey());
+					}
+				}
+
+				File[] files = rootFile.listFiles();
+				if (files == null) continue;
+				for (File file : files) {
+					Entry entry = contents.get(file.getName());
+					String name = entry != null ? file.getName() : rawNames.get(file.getName());
+					if (name != null && entry == null) {
+						entry = contents.get(name);
+					}
+
+					if (entry == null || entry.isFolder != file.isDirectory()) {
+						deleteFile(file);
+					}
+					else if (!entry.isFolder || !isEmptyFolder(file)) {
+						restoredFiles.add(file);
+						restoredPaths.put(file, folderName + File.separatorChar + name);
+					}
+				}
+			}
+			else if (!rootFile.getName().equals(Project.SETTINGS_FILE_NAME) && !rootFile.getName().equals(CACHE_INFO_FILE_NAME)) {
+				deleteFile(rootFile);
+			}
+		}
+
+		restoredFiles.sort(Comparator.comparingLong(File::lastModified));
+		for (File file : restoredFiles) {
+			long size = getSize(file);
+			decodedFiles.put(restoredPaths.get(file), new DecodedFile(file, size));
+			decodedSize += size;
+		}
+	}
+
+	private static boolean isEmptyFolder(File file) {
+		String[] names = file.list();
+		return names == null || names.length == 0;
+	}
+
+	private static void deleteFile(File file) throws IOException {
+		if (file.isDirectory()) {
+			FileManager.get().deleteDirectory(file);
+		} else {
+			Files.deleteIfExists(file.toPath());
+		}
+	}
+
+	/**
+	 * Deletes everything in the folder except the project settings.
+	 */
+	private void clearFolder() throws IOException {
+		File[] files = folder.listFiles();
+		if (files == null) return;
+		for (File file : files) {
+			if (file.isDirectory()) {
+				FileManager.get().deleteDirectory(file);
+			}
+			else if (!file.getName().equals(Project.SETTINGS_FILE_NAME)) {
+				Files.delete(file.toPath());
+			}
+		}
+	}
+
+	/**
+	 * If the path is inside a folder that is created when decoding a file (for example, an effect directory), returns the path of that folder.
+	 * Returns null otherwise.
+	 */
+	private String findDecodedFolder(String path) {
+		String parentPath = getParentPath(path);
+		while (!parentPath.isEmpty()) {
+			Entry entry = getEntry(parentPath);
+			if (entry != null) {
+				return entry.isFolder ? parentPath : null;
+			}
+			parentPath = getParentPath(parentPath);
+		}
+		return null;
+	}
+
+	private Entry getEntry(String path) {
+		Map<String, Entry> contents = folders.get(getParentPath(path));
+		return contents == null ? null : contents.get(getName(path));
+	}
+
+	/**
+	 * Returns the names of the files and folders inside the given folder, or null if the folder does not exist.
+	 * Folders created when decoding a file are decoded in order to list them.
+	 * @param relativePath The path of the folder, relative to the project folder.
+	 * @return
+	 * @throws IOException
+	 */
+	public String[] list(String relativePath) throws IOException {
+		String path = normalize(relativePath);
+		synchronized (this) {
+			load();
+			Map<String, Entry> contents = folders.get(path);
+			if (contents != null) {
+				return contents.keySet().toArray(new String[contents.size()]);
+			}
+			Entry entry = getEntry(path);
+			if ((entry == null || !entry.isFolder) && findDecodedFolder(path) == null) {
+				return null;
+			}
+		}
+		File file = getFile(path);
+		return file == null ? null : file.list();
+	}
+
+	/**
+	 * Returns whether the given file or folder exists in the packages, even if it has not been decoded.
+	 * @param relativePath The path, relative to the project folder.
+	 * @return
+	 * @throws IOException
+	 */
+	public boolean exists(String relativePath) throws IOException {
+		String path = normalize(relativePath);
+		String decodedFolder;
+		synchronized (this) {
+			load();
+			if (folders.containsKey(path) || getEntry(path) != null) {
+				return true;
+			}
+			decodedFolder = findDecodedFolder(path);
+			if (decodedFolder == null) {
+				return false;
+			}
+		}
+		getFile(decodedFolder);
+		return new File(folder, path).exists();
+	}
+
+	/**
+	 * Returns whether the given path is a folder, either a package group or a folder created when decoding a file.
+	 * @param relativePath The path, relative to the project folder.
+	 * @return
+	 * @throws IOException
+	 */
+	public boolean isDirectory(String relativePath) throws IOException {
+		String path = normalize(relativePath);
+		String decodedFolder;
+		synchronized (this) {
+			load();
+			if (folders.containsKey(path)) {
+				return true;
+			}
+			Entry entry = getEntry(path);
+			if (entry != null) {
+				return entry.isFolder;
+			}
+			decodedFolder = findDecodedFolder(path);
+			if (decodedFolder == null) {
+				return false;
+			}
+		}
+		getFile(decodedFolder);
+		return new File(folder, path).isDirectory();
+	}
+
+	/**
+	 * Returns whether the given path is in the folder without having to decode anything: package groups, and files that have
+	 * already been decoded (including the ones inside decoded folders). Returns false if the path does not exist.
+	 * @param relativePath The path, relative to the project folder.
+	 * @return
+	 * @throws IOException
+	 */
+	public synchronized boolean isDecoded(String relativePath) throws IOException {
+		String path = normalize(relativePath);
+		load();
+		if (folders.containsKey(path)) {
+			return true;
+		}
+		if (getEntry(path) == null) {
+			path = findDecodedFolder(path);
+			if (path == null) {
+				return false;
+			}
+		}
+		// Don't use get(), it would change the order of the least recently used files
+		return decodedFiles.containsKey(path) || decodingFiles.containsKey(path);
+	}
+
+	/**
+	 * Returns the file in the given path, decoding it if it is not in the cache. If the file could not be converted,
+	 * the returned file contains the raw data, so its name might be different than the requested one.
+	 * Returns null if the file does not exist in the packages.
+	 * @param relativePath The path of the file, relative to the project folder.
+	 * @return
+	 * @throws IOException
+	 */
+	public File getFile(String relativePath) throws IOException {
+		String path = normalize(relativePath);
+		Entry entry;
+		String decodedFolder = null;
+		CompletableFuture<File> future = null;
+		boolean isDecoder = false;
+
+		synchronized (this) {
+			load();
+			if (folders.containsKey(path)) {
+				return new File(folder, path);
+			}
+
+			entry = getEntry(path);
+			if (entry == null) {
+				decodedFolder = findDecodedFolder(path);
+				if (decodedFolder == null) {
+					return null;
+				}
+			}
+			else {
+				DecodedFile decodedFile = decodedFiles.get(path);
+				if (decodedFile != null && decodedFile.file.exists()) {
+					return decodedFile.file;
+				}
+				future = decodingFiles.get(path);
+				if (future == null) {
+					if (decodedFile != null) {
+						// It was deleted from outside, so it must be decoded again
+						decodedFiles.remove(path);
+						decodedSize -= decodedFile.size;
+					}
+					future = new CompletableFuture<>();
+					decodingFiles.put(path, future);
+					isDecoder = true;
+				}
+			}
+		}
+
+		if (entry == null) {
+			getFile(decodedFolder);
+			File file = new File(folder, path);
+			return file.exists() ? file : null;
+		}
+		if (!isDecoder) {
+			return waitForDecoding(future);
+		}
+
+		// The lock is not held while decoding, only to update the maps
+		File file;
+		long size;
+		try {
+			file = decode(entry, new File(folder, path));
+			size = getSize(file);
+		}
+		catch (IOException | RuntimeException e) {
+			synchronized (this) {
+				decodingFiles.remove(path);
+			}
+			future.completeExceptionally(e);
+			throw e;
+		}
+
+		synchronized (this) {
+			decodingFiles.remove(path);
+			decodedFiles.put(path, new DecodedFile(file, size));
+			decodedSize += size;
+			trimCache();
+		}
+		future.complete(file);
+		return file;
+	}
+
+	private static File waitForDecoding(CompletableFuture<File> future) throws IOException {
+		try {
+			return future.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a file to be decoded");
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private File decode(Entry entry, File outputFile) throws IOException {
+		MemoryStream data = entry.reader.processFile(entry.item);
+
+		// Every file uses its own folder, so that different files can be decoded at the same time;
+		// the output is moved to its path once it is complete
+		File decodingFolder = Files.createTempDirectory(folder.toPath(), DECODING_FOLDER_NAME).toFile();
+		try {
+			if (entry.converter != null) {
+				try {
+					if (entry.converter.decode(data, decodingFolder, entry.item.name)) {
+						File[] outputs = decodingFolder.listFiles();
+						if (outputs != null && outputs.length == 1) {
+							if (entry.isFolder) {
+								// The empty folder that represented it must be replaced
+								FileManager.get().deleteDirectory(outputFile);
+							}
+							Files.move(outputs[0].toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+							return outputFile;
+						}
+					}
+				}
+				catch (Exception e) {
+					// Like when unpacking, files that cannot be converted are written without converting them
+					e.printStackTrace();
+				}
+			}
+
+			File rawFile = new File(outputFile.getParentFile(), entry.rawName);
+			File tempFile = new File(decodingFolder, entry.rawName);
+			data.writeToFile(tempFile);
+			Files.move(tempFile.toPath(), rawFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			return rawFile;
+		}
+		finally {
+			FileManager.get().deleteDirectory(decodingFolder);
+		}
+	}
+
+	private static long getSize(File file) throws IOException {
+		if (file.isDirectory()) {
+			try (Stream<java.nio.file.Path> paths = Files.walk(file.toPath())) {
+				return paths.mapToLong(p -> p.toFile().length()).sum();
+			}
+		}
+		return file.length();
+	}
+
+	/**
+	 * Prevents the file in the given path from being deleted from the cache, for example because it is open in an editor.
+	 * Files inside a folder created when decoding a file (like an effect directory) pin the entire folder.
+	 * Every call must be followed by a call to {@link #unpin(String)} when the file is no longer used.
+	 * @param relativePath The path of the file, relative to the project folder.
+	 */
+	public synchronized void pin(String relativePath) {
+		pinnedFiles.merge(normalize(relativePath), 1, Integer::sum);
+	}
+
+	/**
+	 * Undoes a call to {@link #pin(String)}. When a file is no longer pinned, it can be deleted from the cache again.
+	 * @param relativePath The path of the file, relative to the project folder.
+	 */
+	public synchronized void unpin(String relativePath) {
+		String path = normalize(relativePath);
+		Integer count = pinnedFiles.get(path);
+		if (count != null) {
+			if (count > 1) {
+				pinnedFiles.put(path, count - 1);
+			} else {
+				pinnedFiles.remove(path);
+				trimCache();
+			}
+		}
+	}
+
+	private boolean isPinned(String path) {
+		if (pinnedFiles.containsKey(path)) {
+			return true;
+		}
+		String folderPath = path + File.separatorChar;
+		for (String pinnedPath : pinnedFiles.keySet()) {
+			if (pinnedPath.startsWith(folderPath)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Deletes the least recently used decoded files until their size is under the limit. Pinned files and the last decoded file are always kept.
+	 */
+	private void trimCache() {
+		Iterator<Map.Entry<String, DecodedFile>> it = decodedFiles.entrySet().iterator();
+		// The last entry is the most recently used file, so it is never visited
+		int remaining = decodedFiles.size();
+		while (decodedSize > maxCacheSize && --remaining > 0) {
+			Map.Entry<String, DecodedFile> mapEntry = it.next();
+			if (isPinned(mapEntry.getKey())) continue;
+			DecodedFile decodedFile = mapEntry.getValue();
+			it.remove();
+			decodedSize -= decodedFile.size;
+			try {
+				if (decodedFile.file.isDirectory()) {
+					FileManager.get().deleteDirectory(decodedFile.file);
+					// Keep the empty folder, so that it is still recognized as a folder
+					decodedFile.file.mkdir();
+				} else {
+					Files.deleteIfExists(decodedFile.file.toPath());
+				}
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Returns the total size, in bytes, of the decoded files currently in the cache.
+	 * @return
+	 */
+	public synchronized long getCacheSize() {
+		return decodedSize;
+	}
+
+	/**
+	 * Closes the package files. The source can be loaded again after this.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		for (DBPFMappedReader reader : readers) {
+			reader.close();
+		}
+		readers.clear();
+		folders.clear();
+		decodedFiles.clear();
+		decodingFiles.clear();
+		decodedSize = 0;
+		isLoaded = false;
+	}
+}
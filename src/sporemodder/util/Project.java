@@ -82,6 +82,8 @@ public class Project {
 	private static final String PROPERTY_packageSignature = "embeddedEditorPackages";  // for compatibility
 	private static final String PROPERTY_isReadOnly = "isReadOnly";
 	private static final String PROPERTY_showOnlyModded = "showOnlyModded";
+	private static final String PROPERTY_sourcePackages = "sourcePackages";
+	private static final String PROPERTY_sourcePackageConverters = "sourcePackageConverters";
 
 	/** The name of the project, which is taken from the folder name. */
 	private String name;
@@ -118,6 +120,9 @@ public class Project {
 
 	private long lastTimeUsed = -1;
 	
+	/** If not null, the files of this project are read from packages instead of the project folder. */
+	private PackageProjectSource packageSource;
+	
 	
 	public Project(String name) {
 		this(name, new File(PathManager.get().getProjectsFolder(), name), null);
@@ -200,6 +205,14 @@ public class Project {
 				}
 				
 				isReadOnly = Boolean.parseBoolean(settings.getProperty(PROPERTY_isReadOnly, "false"));
+				
+				String[] sourcePackages = stringListSplit(PROPERTY_sourcePackages);
+				if (sourcePackages.length != 0) {
+					if (packageSource != null) packageSource.close();
+					packageSource = new PackageProjectSource(folder,
+							Arrays.stream(sourcePackages).map(File::new).collect(Collectors.toList()),
+							Arrays.asList(stringListSplit(PROPERTY_sourcePackageConverters)));
+				}
 
 				String lastTimeUsedStr = settings.getProperty(PROPERTY_lastTimeUsed);
 				if (lastTimeUsedStr != null && !lastTimeUsedStr.isBlank()) {
@@ -243,6 +256,16 @@ public class Project {
 		settings.put(PROPERTY_packageSignature, packageSignature.toString());
 
 		settings.put(PROPERTY_isReadOnly, Boolean.toString(isReadOnly));
+		
+		if (packageSource != null) {
+			settings.put(PROPERTY_sourcePackages, packageSource.getPackageFiles().stream()
+					.map(r -> '"' + r.getAbsolutePath() + '"').collect(Collectors.joining("|")));
+			settings.put(PROPERTY_sourcePackageConverters, packageSource.getConverterNames().stream()
+					.map(r -> '"' + r + '"').collect(Collectors.joining("|")));
+		} else {
+			settings.remove(PROPERTY_sourcePackages);
+			settings.remove(PROPERTY_sourcePackageConverters);
+		}
 
 		MessageManager.get().postMessage(MessageType.OnProjectSettingsSave, this);
 
@@ -292,6 +315,23 @@ public class Project {
 		return fixedTabPaths;
 	}
 	
+	/**
+	 * Returns the object that reads the files of this project directly from packages, or null if the files are in the project folder.
+	 * This is used by presets that have not been unpacked.
+	 * @return
+	 */
+	public PackageProjectSource getPackageSource() {
+		return packageSource;
+	}
+
+	/**
+	 * Sets the object that reads the files of this project directly from packages; if null, the files are read from the project folder.
+	 * @param packageSource
+	 */
+	public void setPackageSource(PackageProjectSource packageSource) {
+		this.packageSource = packageSource;
+	}
+	
 	public boolean isShowOnlyModded() {
 		return Boolean.parseBoolean(settings.getProperty(PROPERTY_showOnlyModded, "False"));
 	}
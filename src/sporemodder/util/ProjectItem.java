@@ -60,6 +60,8 @@ public class ProjectItem {
 	protected boolean isMod;
 	/** Whether this item belongs to one of the source projects of the active project. */
 	protected boolean isSource;
+	/** If the file of this item is read from packages, the object that decodes it; the file might not exist until it is decoded. */
+	protected PackageProjectSource packageSource;
 	
 	private ProjectItem() {}
 	
@@ -233,6 +235,33 @@ public class ProjectItem {
 		this.isFolder = file != null && file.isDirectory();
 	}
 	
+	/** Gets the object that decodes the file of this item from packages, or null if the file is not read from packages. */
+	public PackageProjectSource getPackageSource() {
+		return packageSource;
+	}
+	
+	/** Sets the object that decodes the file of this item from packages; it must be null if the file is not read from packages. */
+	public void setPackageSource(PackageProjectSource packageSource) {
+		this.packageSource = packageSource;
+	}
+	
+	/**
+	 * Ensures the file of this item exists and returns it. Files read from packages (see {@link #getPackageSource()}) are
+	 * only decoded when this method is called, so it must be used before reading the file. If the file could not be converted,
+	 * the file of this item changes to the unconverted one.
+	 * @return
+	 * @throws IOException
+	 */
+	public File decodeFile() throws IOException {
+		if (packageSource != null && !isMod && !isFolder) {
+			File decodedFile = packageSource.getFile(getRelativePath());
+			if (decodedFile != null) {
+				file = decodedFile;
+			}
+		}
+		return file;
+	}
+	
 	/** Gets whether this item represents a folder, and therefore can have children on it. */
 	public boolean isFolder() {
 		return isFolder;
@@ -75,8 +75,7 @@ public class ProjectNamesItem extends ProjectItem {
 					
 					NameRegistry reg = HashManager.get().getProjectRegistry();
 					NameRegistry copy = new NameRegistry(HashManager.get(), "", "");
-					copy.names.putAll(reg.names);
-					copy.hashes.putAll(reg.hashes);
+					copy.addAll(reg);
 					
 					try {
 						reg.clear();
@@ -85,8 +84,7 @@ public class ProjectNamesItem extends ProjectItem {
 					catch (Exception e) {
 						
 						reg.clear();
-						reg.names.putAll(copy.names);
-						reg.hashes.putAll(copy.hashes);
+						reg.addAll(copy);
 						
 						throw e;
 					}
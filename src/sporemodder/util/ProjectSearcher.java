@@ -22,18 +22,20 @@ import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.nio.file.Files;
-import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.RecursiveTask;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.stream.Stream;
 
 import javafx.application.Platform;
 import javafx.beans.property.ReadOnlyBooleanProperty;
@@ -51,6 +53,12 @@ public class ProjectSearcher {
 	
 	private Project project;
 	private final List<File> projectFolders = new ArrayList<File>();
+	/** The package source of every project, in the same order as projectFolders; null for projects whose files are in the folder. */
+	private final List<PackageProjectSource> packageSources = new ArrayList<PackageProjectSource>();
+	/** The content index of every project folder, in the same order as projectFolders. It's replaced, never modified, as search tasks use it. */
+	private volatile List<SearchIndex> searchIndices = Collections.emptyList();
+	/** All the indices that have been used, so they are not loaded again when changing projects. */
+	private final Map<File, SearchIndex> indexCache = new HashMap<File, SearchIndex>();
 	private boolean onlyModFiles;
 	/** If enabled, file contents will be searched. */
 	private boolean isExtensiveSearch = true;
@@ -58,6 +66,12 @@ public class ProjectSearcher {
 	private final List<String> words = new ArrayList<String>();
 	private byte[][] wordBytes;
 	private byte[][] wordBytesUppercase;
+	/** The trigrams of every searched word, used to query the search indices. */
+	private int[][] wordTrigrams;
+	/** For every search index and word, the IDs of the files that might contain the word (null if any file might), as when the search started. */
+	private volatile BitSet[][] searchCandidates;
+	/** For every search index, the files with an ID equal or greater than this were indexed after the search started. */
+	private volatile int[] searchIdLimits;
 	
 	// It must change immediately, not with Platform.runLater
 	private boolean internalIsSearching;
@@ -100,9 +114,18 @@ public class ProjectSearcher {
 		
 		projectFolders.clear();
 		projectFolders.add(project.getFolder());
+		packageSources.clear();
+		packageSources.add(project.getPackageSource());
 		for (Project source : project.getReferences()) {
 			projectFolders.add(source.getFolder());
+			packageSources.add(source.getPackageSource());
 		}
+		
+		List<SearchIndex> indices = new ArrayList<SearchIndex>();
+		for (File folder : projectFolders) {
+			indices.add(indexCache.computeIfAbsent(folder, SearchIndex::new));
+		}
+		searchIndices = indices;
 	}
 	
 	public boolean isOnlyModFiles() {
@@ -121,6 +144,19 @@ public class ProjectSearcher {
 		this.isExtensiveSearch = isExtensiveSearch;
 	}
 	
+	/**
+	 * Tells the search indices that a file or folder has been overwritten, so that its contents are read again the next time they are searched.
+	 * @param file
+	 */
+	public void fileChanged(File file) {
+		for (SearchIndex index : searchIndices) {
+			String relativePath = index.getRelativePath(file);
+			if (relativePath != null) {
+				index.invalidate(relativePath);
+			}
+		}
+	}
+	
 //	/**
 //	 * Returns true if the name contains all of the searched words, false otherwise.
 //	 * @param name
@@ -170,6 +206,28 @@ public class ProjectSearcher {
 		return false;
 	}
 	
+	/**
+	 * Returns false if the index says that the file cannot contain the searched words that have not been found yet.
+	 */
+	private boolean mayContain(int indexPosition, int id, boolean[] alreadyFoundWords) {
+		BitSet[] candidates = searchCandidates[indexPosition];
+		for (int i = 0; i < candidates.length; ++i) {
+			if ((alreadyFoundWords == null || !alreadyFoundWords[i]) && candidates[i] != null && !candidates[i].get(id)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private boolean searchInData(byte[] data, boolean[] alreadyFoundWords) {
+		for (int i = 0; i < wordBytes.length; ++i) {
+			if ((alreadyFoundWords == null || !alreadyFoundWords[i]) && !searchInData(data, i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
 	/**
 	 * Returns true if the file contains all the searched words, false otherwise. The file is assumed to exist and to have data.
 	 * @param file
@@ -177,13 +235,74 @@ public class ProjectSearcher {
 	 * @throws IOException
 	 */
 	private boolean searchInFile(File file, boolean[] alreadyFoundWords) throws IOException {
+		List<SearchIndex> indices = searchIndices;
+		SearchIndex index = null;
+		int indexPosition = 0;
+		String relativePath = null;
+		for (; indexPosition < indices.size(); ++indexPosition) {
+			relativePath = indices.get(indexPosition).getRelativePath(file);
+			if (relativePath != null) {
+				index = indices.get(indexPosition);
+				break;
+			}
+		}
+		if (index == null) {
+			return searchInData(Files.readAllBytes(file.toPath()), alreadyFoundWords);
+		}
+		
+		// Removes the entry if the file changed; it only checks the folder the first time
+		int separatorIndex = relativePath.lastIndexOf(File.separatorChar);
+		index.validateFolder(separatorIndex == -1 ? "" : relativePath.substring(0, separatorIndex));
+		int id = index.getFileId(relativePath);
+		if (id != -1 && id < searchIdLimits[indexPosition] && !mayContain(indexPosition, id, alreadyFoundWords)) {
+			return false;
+		}
+		
+		// The file might contain the words, or it is not indexed; if it changed since it was indexed, index it again
+		BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+		long lastModified = attributes.lastModifiedTime().toMillis();
 		byte[] data = Files.readAllBytes(file.toPath());
-		for (int i = 0; i < wordBytes.length; ++i) {
-			if ((alreadyFoundWords == null || !alreadyFoundWords[i]) && !searchInData(data, i)) {
-				return false;
+		if (id == -1 || !index.isUpToDate(id, lastModified, attributes.size())) {
+			index.putFile(relativePath, lastModified, attributes.size(), data);
+		}
+		
+		return searchInData(data, alreadyFoundWords);
+	}
+	
+	/**
+	 * Returns true if a file of a package source contains all the searched words, false otherwise. Files are never decoded just to
+	 * index them: the files that have not been decoded are only searched if they were indexed when they were decoded, and only decoded
+	 * if they might contain the words. Words shorter than 3 characters can't be looked up in the index, so with those only decoded files are searched.
+	 */
+	private boolean searchInPackageFile(PackageProjectSource packageSource, String relativePath, boolean[] alreadyFoundWords) throws IOException {
+		int indexPosition = packageSources.indexOf(packageSource);
+		if (indexPosition == -1) return false;
+		SearchIndex index = searchIndices.get(indexPosition);
+		
+		boolean isDecoded = packageSource.isDecoded(relativePath);
+		int id = index.getFileId(relativePath);
+		boolean isIndexed = id != -1 && id < searchIdLimits[indexPosition];
+		if (isIndexed) {
+			if (!mayContain(indexPosition, id, alreadyFoundWords)) return false;
+			if (!isDecoded) {
+				for (int i = 0; i < wordTrigrams.length; ++i) {
+					if ((alreadyFoundWords == null || !alreadyFoundWords[i]) && wordTrigrams[i].length == 0) return false;
+				}
 			}
 		}
-		return true;
+		else if (!isDecoded) {
+			return false;
+		}
+		
+		File file = packageSource.getFile(relativePath);
+		if (file == null || !file.isFile()) return false;
+		
+		byte[] data = Files.readAllBytes(file.toPath());
+		if (id == -1) {
+			// The modification time is not used, the entry is valid until the packages change
+			index.putFile(relativePath, 0, data.length, data);
+		}
+		return searchInData(data, alreadyFoundWords);
 	}
 	
 	public void setSearchedWords(List<String> words) {
@@ -192,10 +311,12 @@ public class ProjectSearcher {
 		
 		wordBytes = new byte[words.size()][];
 		wordBytesUppercase = new byte[words.size()][];
+		wordTrigrams = new int[words.size()][];
 		for (int i = 0; i < wordBytes.length; ++i) {
 			try {
 				wordBytes[i] = words.get(i).getBytes("US-ASCII");
 				wordBytesUppercase[i] = words.get(i).toUpperCase().getBytes("US-ASCII");
+				wordTrigrams[i] = SearchIndex.getTrigrams(wordBytes[i]);
 			} catch (UnsupportedEncodingException e) {
 				e.printStackTrace();
 			}
@@ -232,6 +353,28 @@ public class ProjectSearcher {
 			Platform.runLater(() -> isSearching.set(true));
 			long time = System.currentTimeMillis();
 			
+			// Indices also keep the folder listings, so they are used even if contents are not searched
+			List<SearchIndex> indices = searchIndices;
+			BitSet[][] candidates = new BitSet[indices.size()][];
+			int[] idLimits = new int[indices.size()];
+			for (int i = 0; i < indices.size(); ++i) {
+				SearchIndex index = indices.get(i);
+				index.load();
+				index.beginSearch();
+				// Decoded files of packages are always the same until the packages change
+				PackageProjectSource packageSource = packageSources.get(i);
+				index.setContentsVersion(packageSource == null ? "" : packageSource.getContentsVersion());
+				candidates[i] = new BitSet[wordTrigrams.length];
+				if (isExtensiveSearch) {
+					for (int j = 0; j < wordTrigrams.length; ++j) {
+						candidates[i][j] = index.getCandidates(wordTrigrams[j]);
+					}
+				}
+				idLimits[i] = index.getIdLimit();
+			}
+			searchCandidates = candidates;
+			searchIdLimits = idLimits;
+			
 			// The given item is expected to have its children loaded
 //			List<ItemSearchRecursive> tasks = new ArrayList<ItemSearchRecursive>();
 //			for (ProjectTreeItem child : item.getInternalChildren()) {
@@ -253,6 +396,15 @@ public class ProjectSearcher {
 			System.out.println("Items searched: " + numItemsSearched);
 			System.out.println(time + " ms");
 			System.out.println("Time blocked in File.list(): " + TIME_TEST);
+			
+			// Save the files that have been indexed during this search
+			for (SearchIndex index : indices) {
+				try {
+					index.save();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
 		}
 	}
 	
@@ -287,22 +439,29 @@ public class ProjectSearcher {
 			// We want to search in the name if the search root is not the project root
 			boolean matches = (isSearchRoot && item.getValue().isRoot) ? false : searchInNameOptional(item.getValue().name, foundWords);
 			File file = item.getValue().getFile();
+			// Files read from packages might not exist until they are decoded
+			PackageProjectSource packageSource = item.getValue().isMod() ? null : item.getValue().getPackageSource();
+			boolean isFile = packageSource != null ? !item.getValue().isFolder() : file != null && file.isFile();
 			
 			if (matches) {
 				// If the name matches, all its children must be shown (and we don't need to search in them)
 				item.propagateMatchesSearch(matches);
 			}
 			else {
-				if (file != null && file.isFile()) {
+				if (isFile) {
 					if (FileManager.get().isSearchable(file.getName()) && isExtensiveSearch) {
 						try {
-							matches = searchInFile(file, foundWords);
+							if (packageSource != null) {
+								matches = searchInPackageFile(packageSource, item.getValue().getRelativePath(), foundWords);
+							} else {
+								matches = searchInFile(file, foundWords);
+							}
 						} catch (IOException e) {
 							e.printStackTrace();
 						}
 					}
 				}
-				else if (item.isLoaded()) {
+				else if (item.isLoaded() && !item.isLoading()) {
 					// We must search in all children
 					List<ItemSearchRecursive> tasks = new ArrayList<ItemSearchRecursive>();
 					for (ProjectTreeItem child : item.getInternalChildren()) {
@@ -383,76 +542,45 @@ public class ProjectSearcher {
 				{
 					if (searchFinished.get()) return;
 					
-					File folder = new File(projectFolders.get(i), relativePath);
-					if (folder.exists()) {
-						//long t = System.currentTimeMillis();
-						//String[] names = folder.list();
-						//TIME_TEST += System.currentTimeMillis() - t;
-						
-						final int index = i;
-						
-						try (Stream<Path> stream = Files.list(folder.toPath())) {
-							stream.forEach(path -> {
-								long t = System.currentTimeMillis();
-								if (!searchFinished.get())
-								{
-									String name = path.getFileName().toString();
-									synchronized(usedNames) {
-										if (!usedNames.contains(name))
-										{
-											// For multiple searched words, some might be in the name and others in the file contents
-											if (searchInNameOptional(name, foundWords)) {
-												searchFinished.set(true);  // Stop searching, we've found a match
-												return;
-											}
-											
-											// If it's the last project (hopefully the big source) you don't need to add anymore
-											if (index != numProjects-1) usedNames.add(name);
-											
-											FileSearchRecursive task = null;
-											File file = new File(folder, name);
-											if (file.isFile()) {
-												task = new FileSearchRecursive(null, file, foundWords, searchFinished);
-											}
-											else {
-												task = new FileSearchRecursive(relativePath + File.separatorChar + name, null, foundWords, searchFinished);
-											}
-											task.invoke();
-										}
-									}
-								}
-								TIME_TEST += System.currentTimeMillis() - t;
-							});
-						} 
-						catch (IOException e) {
-							// TODO Auto-generated catch block
+					if (packageSources.get(i) != null) {
+						try {
+							searchPackageFolder(packageSources.get(i), i == numProjects-1, usedNames);
+						} catch (IOException e) {
 							e.printStackTrace();
 						}
-						
-						/*for (String name : names) {
-							if (!usedNames.contains(name)) {
-									
-								// For multiple searched words, some might be in the name and others in the file contents
-								if (searchInNameOptional(name, foundWords)) {
-									searchFinished.set(true);  // Stop searching, we've found a match
-									return;
-								}
-								
-								// If it's the last project (hopefully the big source) you don't need to add anymore
-								if (i != numProjects-1) usedNames.add(name);
-								
-								FileSearchRecursive task = null;
-								File file = new File(folder, name);
-								if (file.isFile()) {
-									task = new FileSearchRecursive(null, file, foundWords, searchFinished);
-								}
-								else {
-									task = new FileSearchRecursive(relativePath + File.separatorChar + name, null, foundWords, searchFinished);
-								}
-								
-								tasks.add(task);
+						continue;
+					}
+					
+					File folder = new File(projectFolders.get(i), relativePath);
+					// The index lists the folder again only if it changed, and it knows which names are files without checking them
+					SearchIndex.FolderListing listing;
+					try {
+						long t = System.currentTimeMillis();
+						listing = searchIndices.get(i).list(relativePath);
+						TIME_TEST += System.currentTimeMillis() - t;
+					} catch (IOException e) {
+						e.printStackTrace();
+						continue;
+					}
+					if (listing != null) {
+						for (String name : listing.files) {
+							if (searchFinished.get()) return;
+							if (!isNewName(name, i == numProjects-1, usedNames)) continue;
+							if (searchInNameOptional(name, foundWords)) {
+								searchFinished.set(true);  // Stop searching, we've found a match
+								return;
+							}
+							new FileSearchRecursive(null, new File(folder, name), foundWords, searchFinished).invoke();
+						}
+						for (String name : listing.folders) {
+							if (searchFinished.get()) return;
+							if (!isNewName(name, i == numProjects-1, usedNames)) continue;
+							if (searchInNameOptional(name, foundWords)) {
+								searchFinished.set(true);  // Stop searching, we've found a match
+								return;
 							}
-						}*/
+							new FileSearchRecursive(relativePath + File.separatorChar + name, null, foundWords, searchFinished).invoke();
+						}
 					}
 					
 					// Invoke for every project
@@ -463,5 +591,46 @@ public class ProjectSearcher {
 			++numFilesSearched;
 		}
 		
+		/**
+		 * Returns false if a file with this name has already been searched in a project with more priority.
+		 */
+		private boolean isNewName(String name, boolean isLastProject, Set<String> usedNames) {
+			synchronized(usedNames) {
+				if (usedNames.contains(name)) return false;
+				// If it's the last project (hopefully the big source) you don't need to add anymore
+				if (!isLastProject) usedNames.add(name);
+				return true;
+			}
+		}
+		
+		private void searchPackageFolder(PackageProjectSource packageSource, boolean isLastProject, Set<String> usedNames) throws IOException {
+			// Listing a folder that is created when decoding a file (like an effect directory) would decode it
+			if (!packageSource.isDecoded(relativePath)) return;
+			String[] names = packageSource.list(relativePath);
+			if (names == null) return;
+			
+			for (String name : names) {
+				if (searchFinished.get()) return;
+				
+				if (!isNewName(name, isLastProject, usedNames)) continue;
+				
+				// For multiple searched words, some might be in the name and others in the file contents
+				if (searchInNameOptional(name, foundWords)) {
+					searchFinished.set(true);  // Stop searching, we've found a match
+					return;
+				}
+				
+				String path = relativePath + File.separatorChar + name;
+				if (packageSource.isDirectory(path)) {
+					new FileSearchRecursive(path, null, foundWords, searchFinished).invoke();
+				}
+				else if (isExtensiveSearch && FileManager.get().isSearchable(name)) {
+					if (searchInPackageFile(packageSource, path, foundWords)) {
+						searchFinished.set(true);  // Stop searching, we've found a match
+						return;
+					}
+				}
+			}
+		}
 	}
 }
@@ -0,0 +1,658 @@
+/****************************************************************************
+* Copyright (C) 2019 Eric Mor
+*
+* This file is part of SporeModder FX.
+*
+* SporeModder FX is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+****************************************************************************/
+package sporemodder.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import sporemodder.PathManager;
+import sporemodder.file.filestructures.BufferedFileStream;
+
+/**
+ * A persistent index of the contents of the files in a project folder, used by the {@link ProjectSearcher} to avoid reading
+ * files that cannot contain the searched words. For every trigram (group of 3 consecutive bytes, ignoring case) the index keeps
+ * the list of files that contain it, so the files that might contain a word are the ones that are in the lists of all its trigrams;
+ * only those must be read to know for sure.
+ * <p>
+ * The index also keeps the listing of every folder it has seen, with the modification time of the folder. A folder is only listed again,
+ * and the size and modification time of its files checked, when the modification time of the folder changes; this happens when files are
+ * created, deleted or renamed, but not when a file is overwritten. Files that the program overwrites must be reported with {@link #invalidate(String)};
+ * files that might contain the words are always checked before reading them, so their changes are also detected.
+ * <p>
+ * Indices of package sources (see {@link PackageProjectSource}) don't use the modification times, as decoded files are written every
+ * time they are decoded: their entries are valid as long as the packages don't change, see {@link #setContentsVersion(String)}.
+ * <p>
+ * The index is saved in the program folder, never in the project folder, so it is not packed. This class is thread-safe.
+ */
+public class SearchIndex {
+
+	public static final String FOLDER_NAME = "Search Index";
+
+	private static final int MAGIC = 0x58444953;  // SIDX
+	private static final int VERSION = 2;
+
+	private static class FileEntry {
+		final String path;
+		final long lastModified;
+		final long size;
+
+		FileEntry(String path, long lastModified, long size) {
+			this.path = path;
+			this.lastModified = lastModified;
+			this.size = size;
+		}
+	}
+
+	private static class FolderEntry {
+		final long lastModified;
+		/** The names of the files in the folder, mapped to their index ID; files that are not indexed use -1. */
+		final Map<String, Integer> files = new HashMap<>();
+		final Set<String> folders = new HashSet<>();
+
+		FolderEntry(long lastModified) {
+			this.lastModified = lastModified;
+		}
+	}
+
+	/** The IDs of the files that contain a trigram, sorted and stored as variable-length deltas. */
+	private static class Postings {
+		byte[] data;
+		int length;
+		int lastId;
+
+		Postings() {
+			data = new byte[8];
+			lastId = -1;
+		}
+
+		Postings(byte[] data, int lastId) {
+			this.data = data;
+			this.length = data.length;
+			this.lastId = lastId;
+		}
+
+		/** IDs must be added in increasing order. */
+		void add(int id) {
+			if (length + 5 > data.length) {
+				data = Arrays.copyOf(data, data.length * 2);
+			}
+			int delta = id - lastId;
+			while ((delta & ~0x7F) != 0) {
+				data[length++] = (byte) ((delta & 0x7F) | 0x80);
+				delta >>>= 7;
+			}
+			data[length++] = (byte) delta;
+			lastId = id;
+		}
+
+		void forEach(IdConsumer consumer) {
+			int id = -1;
+			int position = 0;
+			while (position < length) {
+				int delta = 0;
+				int shift = 0;
+				byte b;
+				do {
+					b = data[position++];
+					delta |= (b & 0x7F) << shift;
+					shift += 7;
+				} while ((b & 0x80) != 0);
+				id += delta;
+				consumer.accept(id);
+			}
+		}
+	}
+
+	private static interface IdConsumer {
+		public void accept(int id);
+	}
+
+	/** The files and subfolders of a folder, as returned by {@link SearchIndex#list(String)}. */
+	public static class FolderListing {
+		public final String[] files;
+		public final String[] folders;
+
+		FolderListing(String[] files, String[] folders) {
+			this.files = files;
+			this.folders = folders;
+		}
+	}
+
+	private final File folder;
+	private final String folderPath;
+	private final File indexFile;
+	/** The indexed files by ID; files that have been removed are null. IDs are only reassigned when the index is saved and loaded again. */
+	private final List<FileEntry> files = new ArrayList<>();
+	/** Maps the relative path of every indexed file to its ID. */
+	private final Map<String, Integer> ids = new HashMap<>();
+	/** Maps the relative path of every folder that has been listed (the root being "") to its contents. */
+	private final Map<String, FolderEntry> folders = new HashMap<>();
+	private final Map<Integer, Postings> postings = new HashMap<>();
+	/** Identifies the packages the files were decoded from, or "" if the files are not read from packages. */
+	private String contentsVersion = "";
+	/** The folders that have already been checked since the last call to {@link #beginSearch()}. */
+	private final Set<String> validatedFolders = ConcurrentHashMap.newKeySet();
+	/** Paths invalidated before the index was loaded. */
+	private final List<String> pendingInvalidations = new ArrayList<>();
+	private boolean isLoaded;
+	private boolean isModified;
+
+	public SearchIndex(File folder) {
+		this(folder, getIndexFile(folder));
+	}
+
+	public SearchIndex(File folder, File indexFile) {
+		this.folder = folder;
+		this.folderPath = folder.getAbsolutePath() + File.separatorChar;
+		this.indexFile = indexFile;
+	}
+
+	/**
+	 * Returns the file where the index of the given project folder is saved.
+	 * @param folder
+	 * @return
+	 */
+	public static File getIndexFile(File folder) {
+		String path = folder.getAbsolutePath();
+		return new File(PathManager.get().getProgramFile(FOLDER_NAME),
+				folder.getName() + "_" + Integer.toHexString(path.hashCode()) + ".bin");
+	}
+
+	public File getFolder() {
+		return folder;
+	}
+
+	/**
+	 * Returns the path of the file relative to the folder of this index, or null if the file is not inside the folder.
+	 * @param file
+	 * @return
+	 */
+	public String getRelativePath(File file) {
+		String path = file.getAbsolutePath();
+		if (path.startsWith(folderPath)) {
+			return path.substring(folderPath.length());
+		}
+		return null;
+	}
+
+	/**
+	 * Converts a relative path to the format used by this class: with the system separator and without leading or trailing separators.
+	 */
+	private static String normalize(String relativePath) {
+		String path = relativePath.replace('/', File.separatorChar).replace('\\', File.separatorChar);
+		int start = 0;
+		int end = path.length();
+		while (start < end && path.charAt(start) == File.separatorChar) ++start;
+		while (end > start && path.charAt(end - 1) == File.separatorChar) --end;
+		return path.substring(start, end);
+	}
+
+	private static String getParentPath(String path) {
+		int index = path.lastIndexOf(File.separatorChar);
+		return index == -1 ? "" : path.substring(0, index);
+	}
+
+	private static String getChildPath(String folderPath, String name) {
+		return folderPath.isEmpty() ? name : folderPath + File.separatorChar + name;
+	}
+
+	private static int foldCase(byte b) {
+		return b >= 'A' && b <= 'Z' ? (b | 0x20) : (b & 0xFF);
+	}
+
+	/**
+	 * Returns all the trigrams of the given searched word. Words shorter than 3 bytes have no trigrams,
+	 * so every file might contain them.
+	 * @param word
+	 * @return
+	 */
+	public static int[] getTrigrams(byte[] word) {
+		if (word.length < 3) return new int[0];
+
+		int[] trigrams = new int[word.length - 2];
+		int trigram = (foldCase(word[0]) << 8) | foldCase(word[1]);
+		for (int i = 2; i < word.length; ++i) {
+			trigram = ((trigram << 8) | foldCase(word[i])) & 0xFFFFFF;
+			trigrams[i - 2] = trigram;
+		}
+		return trigrams;
+	}
+
+	/** Returns the distinct trigrams of the given file data, sorted. */
+	private static int[] getDistinctTrigrams(byte[] data) {
+		int[] trigrams = getTrigrams(data);
+		Arrays.sort(trigrams);
+		int count = 0;
+		for (int i = 0; i < trigrams.length; ++i) {
+			if (i == 0 || trigrams[i] != trigrams[i - 1]) {
+				trigrams[count++] = trigrams[i];
+			}
+		}
+		return Arrays.copyOf(trigrams, count);
+	}
+
+	/**
+	 * Sets the version of the contents of the indexed files: if it is different than the one the index was created with, all the
+	 * entries are discarded. Indices of package sources use a version that identifies the packages, so decoded files don't need
+	 * to be checked; the rest must use "".
+	 * @param contentsVersion
+	 */
+	public synchronized void setContentsVersion(String contentsVersion) {
+		load();
+		if (!this.contentsVersion.equals(contentsVersion)) {
+			clear();
+			this.contentsVersion = contentsVersion;
+			isModified = true;
+		}
+	}
+
+	private void clear() {
+		files.clear();
+		ids.clear();
+		folders.clear();
+		postings.clear();
+		validatedFolders.clear();
+	}
+
+	/**
+	 * Must be called before every search; folders are only checked for changes once per search.
+	 */
+	public void beginSearch() {
+		validatedFolders.clear();
+	}
+
+	/**
+	 * Returns the ID that is greater than all the IDs assigned until now. Files added after calling this method
+	 * will use this ID or a greater one.
+	 * @return
+	 */
+	public synchronized int getIdLimit() {
+		return files.size();
+	}
+
+	/**
+	 * Returns the ID of the indexed file, or -1 if the file is not indexed.
+	 * @param relativePath The path of the file relative to the folder of this index.
+	 * @return
+	 */
+	public synchronized int getFileId(String relativePath) {
+		Integer id = ids.get(normalize(relativePath));
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Returns whether the indexed file has the given modification time and size.
+	 * @param id
+	 * @param lastModified
+	 * @param size
+	 * @return
+	 */
+	public synchronized boolean isUpToDate(int id, long lastModified, long size) {
+		FileEntry entry = files.get(id);
+		return entry != null && entry.lastModified == lastModified && entry.size == size;
+	}
+
+	/**
+	 * Returns the IDs of the files that might contain the word with the given trigrams, or null if the word has no trigrams
+	 * and therefore any file might contain it.
+	 * @param wordTrigrams The trigrams of the word, generated with {@link #getTrigrams(byte[])}.
+	 * @return
+	 */
+	public synchronized BitSet getCandidates(int[] wordTrigrams) {
+		if (wordTrigrams.length == 0) return null;
+
+		BitSet candidates = null;
+		for (int trigram : wordTrigrams) {
+			Postings list = postings.get(trigram);
+			if (list == null) {
+				return new BitSet();
+			}
+			BitSet ids = new BitSet(list.lastId + 1);
+			list.forEach(ids::set);
+			if (candidates == null) {
+				candidates = ids;
+			} else {
+				candidates.and(ids);
+			}
+		}
+		return candidates;
+	}
+
+	/**
+	 * Adds or replaces the contents of a file.
+	 * @param relativePath The path of the file relative to the folder of this index.
+	 * @param lastModified The modification time of the file when it was read.
+	 * @param size The size of the file, in bytes.
+	 * @param data The contents of the file.
+	 */
+	public void putFile(String relativePath, long lastModified, long size, byte[] data) {
+		String path = normalize(relativePath);
+		int[] trigrams = getDistinctTrigrams(data);
+
+		synchronized (this) {
+			removeFile(path);
+			int id = files.size();
+			files.add(new FileEntry(path, lastModified, size));
+			ids.put(path, id);
+			for (int trigram : trigrams) {
+				postings.computeIfAbsent(trigram, t -> new Postings()).add(id);
+			}
+
+			FolderEntry parent = folders.get(getParentPath(path));
+			if (parent != null) {
+				parent.files.put(path.substring(path.lastIndexOf(File.separatorChar) + 1), id);
+			}
+			isModified = true;
+		}
+	}
+
+	/** Removes the file from the index; its ID stays in the postings, but it's not used for any file until the index is loaded again. */
+	private void removeFile(String path) {
+		Integer id = ids.remove(path);
+		if (id != null) {
+			files.set(id, null);
+			isModified = true;
+		}
+	}
+
+	private void removeFolder(String path) {
+		FolderEntry entry = folders.remove(path);
+		if (entry != null) {
+			for (String name : entry.files.keySet()) {
+				removeFile(getChildPath(path, name));
+			}
+			for (String name : entry.folders) {
+				removeFolder(getChildPath(path, name));
+			}
+			isModified = true;
+		}
+	}
+
+	/**
+	 * Marks a file or folder as changed, so it is read again the next time it is searched. This must be used when a file is overwritten,
+	 * as that does not change the modification time of its folder.
+	 * @param relativePath The path relative to the folder of this index.
+	 */
+	public synchronized void invalidate(String relativePath) {
+		String path = normalize(relativePath);
+		if (!isLoaded) {
+			pendingInvalidations.add(path);
+			return;
+		}
+		removeFile(path);
+		// Checking the folder again detects the changes of any file inside it
+		for (String folderPath : new String[] {path, getParentPath(path)}) {
+			FolderEntry entry = folders.get(folderPath);
+			if (entry != null) {
+				FolderEntry changedEntry = new FolderEntry(-1);
+				changedEntry.files.putAll(entry.files);
+				changedEntry.folders.addAll(entry.folders);
+				folders.put(folderPath, changedEntry);
+				validatedFolders.remove(folderPath);
+				isModified = true;
+			}
+		}
+	}
+
+	/**
+	 * Checks whether the folder has changed since it was listed, only the first time it's used in a search. If it changed, the
+	 * folder is listed again and the entries of the files that have been modified or deleted are removed.
+	 * @param relativePath The path of the folder relative to the folder of this index.
+	 * @throws IOException
+	 */
+	public void validateFolder(String relativePath) throws IOException {
+		String path = normalize(relativePath);
+		if (!validatedFolders.add(path)) return;
+
+		File dir = path.isEmpty() ? folder : new File(folder, path);
+		// Get it before listing, so that if it changes while listing it will be listed again next time
+		long lastModified = dir.lastModified();
+		synchronized (this) {
+			FolderEntry entry = folders.get(path);
+			if (entry != null && lastModified != 0 && entry.lastModified == lastModified) {
+				return;
+			}
+		}
+
+		File[] dirFiles = dir.listFiles();
+		if (dirFiles == null) {
+			synchronized (this) {
+				removeFolder(path);
+			}
+			return;
+		}
+
+		FolderEntry newEntry = new FolderEntry(lastModified);
+		Map<String, BasicFileAttributes> attributes = new HashMap<>();
+		for (File file : dirFiles) {
+			BasicFileAttributes fileAttributes;
+			try {
+				fileAttributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+			}
+			catch (IOException e) {
+				// It was deleted while listing
+				continue;
+			}
+			if (fileAttributes.isDirectory()) {
+				newEntry.folders.add(file.getName());
+			} else {
+				attributes.put(file.getName(), fileAttributes);
+			}
+		}
+
+		synchronized (this) {
+			FolderEntry oldEntry = folders.get(path);
+			if (oldEntry != null) {
+				for (String name : oldEntry.files.keySet()) {
+					if (!attributes.containsKey(name)) removeFile(getChildPath(path, name));
+				}
+				for (String name : oldEntry.folders) {
+					if (!newEntry.folders.contains(name)) removeFolder(getChildPath(path, name));
+				}
+			}
+			for (Map.Entry<String, BasicFileAttributes> file : attributes.entrySet()) {
+				String filePath = getChildPath(path, file.getKey());
+				Integer id = ids.get(filePath);
+				if (id != null && !isUpToDate(id, file.getValue().lastModifiedTime().toMillis(), file.getValue().size())) {
+					removeFile(filePath);
+					id = null;
+				}
+				newEntry.files.put(file.getKey(), id == null ? -1 : id);
+			}
+			folders.put(path, newEntry);
+			isModified = true;
+		}
+	}
+
+	/**
+	 * Returns the files and subfolders of the given folder, checking if it changed first (see {@link #validateFolder(String)}).
+	 * Returns null if the folder does not exist.
+	 * @param relativePath The path of the folder relative to the folder of this index.
+	 * @return
+	 * @throws IOException
+	 */
+	public FolderListing list(String relativePath) throws IOException {
+		String path = normalize(relativePath);
+		validateFolder(path);
+		synchronized (this) {
+			FolderEntry entry = folders.get(path);
+			if (entry == null) return null;
+			return new FolderListing(entry.files.keySet().toArray(new String[0]), entry.folders.toArray(new String[0]));
+		}
+	}
+
+	public synchronized int size() {
+		return ids.size();
+	}
+
+	public synchronized boolean isModified() {
+		return isModified;
+	}
+
+	private static String readString(BufferedFileStream stream) throws IOException {
+		byte[] bytes = new byte[stream.readLEInt()];
+		stream.read(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeString(BufferedFileStream stream, String string) throws IOException {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		stream.writeLEInt(bytes.length);
+		stream.write(bytes);
+	}
+
+	/**
+	 * Reads the index file, if it exists and it has not been read yet. If the file is not valid, the index starts empty.
+	 */
+	public synchronized void load() {
+		if (isLoaded) return;
+		isLoaded = true;
+
+		if (indexFile.isFile()) {
+			try (BufferedFileStream stream = new BufferedFileStream(indexFile, "r")) {
+				if (stream.readLEInt() == MAGIC && stream.readLEInt() == VERSION) {
+					contentsVersion = readString(stream);
+
+					int fileCount = stream.readLEInt();
+					for (int i = 0; i < fileCount; ++i) {
+						String path = readString(stream);
+						files.add(new FileEntry(path, stream.readLELong(), stream.readLELong()));
+						ids.put(path, i);
+					}
+
+					int folderCount = stream.readLEInt();
+					for (int i = 0; i < folderCount; ++i) {
+						String path = readString(stream);
+						FolderEntry entry = new FolderEntry(stream.readLELong());
+						int count = stream.readLEInt();
+						for (int j = 0; j < count; ++j) {
+							String name = readString(stream);
+							entry.files.put(name, ids.getOrDefault(getChildPath(path, name), -1));
+						}
+						count = stream.readLEInt();
+						for (int j = 0; j < count; ++j) {
+							entry.folders.add(readString(stream));
+						}
+						folders.put(path, entry);
+					}
+
+					int postingsCount = stream.readLEInt();
+					for (int i = 0; i < postingsCount; ++i) {
+						int trigram = stream.readLEInt();
+						int lastId = stream.readLEInt();
+						byte[] data = new byte[stream.readLEInt()];
+						stream.read(data);
+						postings.put(trigram, new Postings(data, lastId));
+					}
+				}
+			}
+			catch (Exception e) {
+				e.printStackTrace();
+				clear();
+				contentsVersion = "";
+				isModified = true;
+			}
+		}
+
+		for (String path : pendingInvalidations) {
+			invalidate(path);
+		}
+		pendingInvalidations.clear();
+	}
+
+	/**
+	 * Writes the index file, only if there are changes. The files that have been removed are not written,
+	 * and the IDs of the rest are made consecutive again.
+	 * @throws IOException
+	 */
+	public synchronized void save() throws IOException {
+		if (!isModified) return;
+		isModified = false;
+
+		int[] newIds = new int[files.size()];
+		int fileCount = 0;
+		for (int i = 0; i < newIds.length; ++i) {
+			newIds[i] = files.get(i) == null ? -1 : fileCount++;
+		}
+
+		indexFile.getParentFile().mkdirs();
+		File tempFile = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+		try (BufferedFileStream stream = new BufferedFileStream(tempFile, "rw")) {
+			stream.writeLEInt(MAGIC);
+			stream.writeLEInt(VERSION);
+			writeString(stream, contentsVersion);
+
+			stream.writeLEInt(fileCount);
+			for (FileEntry entry : files) {
+				if (entry == null) continue;
+				writeString(stream, entry.path);
+				stream.writeLELong(entry.lastModified);
+				stream.writeLELong(entry.size);
+			}
+
+			stream.writeLEInt(folders.size());
+			for (Map.Entry<String, FolderEntry> entry : folders.entrySet()) {
+				writeString(stream, entry.getKey());
+				stream.writeLELong(entry.getValue().lastModified);
+				stream.writeLEInt(entry.getValue().files.size());
+				for (String name : entry.getValue().files.keySet()) {
+					writeString(stream, name);
+				}
+				stream.writeLEInt(entry.getValue().folders.size());
+				for (String name : entry.getValue().folders) {
+					writeString(stream, name);
+				}
+			}
+
+			int postingsCountPosition = (int) stream.getFilePointer();
+			stream.writeLEInt(0);
+			int postingsCount = 0;
+			for (Map.Entry<Integer, Postings> entry : postings.entrySet()) {
+				Postings newList = new Postings();
+				entry.getValue().forEach(id -> {
+					if (newIds[id] != -1) newList.add(newIds[id]);
+				});
+				if (newList.length == 0) continue;
+
+				stream.writeLEInt(entry.getKey());
+				stream.writeLEInt(newList.lastId);
+				stream.writeLEInt(newList.length);
+				stream.write(newList.data, 0, newList.length);
+				++postingsCount;
+			}
+
+			stream.seek(postingsCountPosition);
+			stream.writeLEInt(postingsCount);
+		}
+		Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
@@ -20,6 +20,7 @@ package sporemodder.view;
 
 import java.util.List;
 
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.Node;
 import javafx.scene.control.Button;
@@ -117,10 +118,13 @@ public class IntroUI implements Controller {
 			recentProjectsList.getChildren().add(button);
 		}
 		
-		Pane mainDocumentationPane = DocumentationManager.get().createDocumentationPane("main");
-		if (mainDocumentationPane != null) {
-			documentationPane.getChildren().add(mainDocumentationPane);
-		}
+		// The documentation links might still be loading, add them when they are available
+		DocumentationManager.get().getLinksLoadedFuture().thenRun(() -> Platform.runLater(() -> {
+			Pane mainDocumentationPane = DocumentationManager.get().createDocumentationPane("main");
+			if (mainDocumentationPane != null) {
+				documentationPane.getChildren().add(mainDocumentationPane);
+			}
+		}));
 
 		setHyperlinkURL(modBrowserLink, "https://mods.sporecommunity.com/");
 		setHyperlinkURL(moddingServerLink, "https://discord.gg/QR8CjQT");
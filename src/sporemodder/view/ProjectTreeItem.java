@@ -38,6 +38,10 @@ import sporemodder.util.ProjectItem;
 public class ProjectTreeItem extends TreeItem<ProjectItem> {
 
 	private boolean isLoaded;
+	/** Whether the children are being loaded in a background thread; until they are, the item has no children. */
+	private boolean isLoading;
+	/** Increases every time the children are set, so background loads that finish after a newer load are discarded. */
+	private int loadCount;
 	private final ObservableList<ProjectTreeItem> sourceList = FXCollections.observableArrayList();
 	private final FilteredList<ProjectTreeItem> filteredList = new FilteredList<>(sourceList);
 	private final ReadOnlyObjectWrapper<TreeItemPredicate> predicate = new ReadOnlyObjectWrapper<>();
@@ -91,7 +95,9 @@ public class ProjectTreeItem extends TreeItem<ProjectItem> {
 	public ObservableList<TreeItem<ProjectItem>> getChildren() {
 		if (!isLoaded) {
 			isLoaded = true;
-			ProjectManager.get().loadItemFolder(this);
+			isLoading = true;
+			// Listing big folders takes time, so don't block the UI
+			ProjectManager.get().loadItemFolderInBackground(this);
 		}
 		return super.getChildren();
 	}
@@ -99,9 +105,28 @@ public class ProjectTreeItem extends TreeItem<ProjectItem> {
 	public boolean isLoaded() {
 		return isLoaded;
 	}
+	
+	/**
+	 * Returns true if the children of this item are being loaded in a background thread. Until the loading finishes,
+	 * {@link #getInternalChildren()} is empty.
+	 * @return
+	 */
+	public boolean isLoading() {
+		return isLoading;
+	}
+	
+	/**
+	 * Returns how many times the children of this item have been set.
+	 * @return
+	 */
+	public int getLoadCount() {
+		return loadCount;
+	}
 
 	public void setLoadedChildren(Collection<ProjectTreeItem> children) {
 		isLoaded = true;
+		isLoading = false;
+		++loadCount;
 		sourceList.setAll(children);
 	}
 
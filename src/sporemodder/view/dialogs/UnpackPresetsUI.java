@@ -28,6 +28,7 @@ import javafx.scene.control.ButtonType;
 import javafx.scene.control.CheckBox;
 import javafx.scene.control.Dialog;
 import javafx.scene.control.Label;
+import javafx.scene.control.Tooltip;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.VBox;
 import sporemodder.FormatManager;
@@ -52,6 +53,8 @@ private Dialog<ButtonType> dialog;
 	private final List<CheckBox> converterBoxes = new ArrayList<CheckBox>();
 	private final List<Converter> converters = new ArrayList<>();
 	
+	private CheckBox readPackagesBox;
+	
 	@Override
 	public Pane getMainNode() {
 		return mainNode;
@@ -77,7 +80,11 @@ private Dialog<ButtonType> dialog;
 						}
 					}
 					
-					ProjectManager.get().unpackPresets(selectedPresets, selectedConverters);
+					if (readPackagesBox.isSelected()) {
+						ProjectManager.get().createPackagePresets(selectedPresets, selectedConverters);
+					} else {
+						ProjectManager.get().unpackPresets(selectedPresets, selectedConverters);
+					}
 				}
 			}
 		});
@@ -143,6 +150,10 @@ private Dialog<ButtonType> dialog;
 			presetsPane.getChildren().add(checkBox);
 		}
 		
+		readPackagesBox = new CheckBox("Read the files directly from the packages instead of unpacking them");
+		readPackagesBox.setTooltip(new Tooltip("Much faster and uses less disk space. Files are converted the first time they are opened or searched."));
+		settingsPane.getChildren().add(readPackagesBox);
+		
 		List<Converter> converters = FormatManager.get().getConverters();
 		ListIterator<Converter> it = converters.listIterator(converters.size());
 		while (it.hasPrevious()) {
@@ -158,6 +158,7 @@ public abstract class AbstractEditableEditor extends Control implements ItemEdit
 		if (!isSaved.get() && file != null && isEditable()) {
 			UIManager.get().tryAction(() -> {
 				saveData();
+				ProjectManager.get().notifyFileChanged(file);
 			}, "Cannot save file.");
 		}
 	}
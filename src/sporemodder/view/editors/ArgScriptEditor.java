@@ -51,6 +51,7 @@ import sporemodder.util.ColorRGB;
 import sporemodder.util.ColorRGBA;
 import sporemodder.util.ProjectItem;
 import sporemodder.view.colorpicker.ColorSwatchUI;
+import sporemodder.view.syntax.SyntaxFormat;
 import sporemodder.view.syntax.SyntaxHighlighter;
 
 /**
@@ -66,6 +67,10 @@ public abstract class ArgScriptEditor<T> extends TextEditorWithErrors {
 	
 	protected ArgScriptStream<T> stream;
 	
+	/** Copies of the hyperlinks and line positions of the last parse, so they can be used while the stream is parsing in the background. */
+	private List<HyperlinkData> hyperlinks = Collections.emptyList();
+	private List<Integer> linePositions = Collections.emptyList();
+	
 	private double mouseX;
 	private double mouseY;
 	
@@ -82,8 +87,8 @@ public abstract class ArgScriptEditor<T> extends TextEditorWithErrors {
 			
 			int index = event.getCharacterIndex();
 			
-			for (HyperlinkData hyperlink : stream.getHyperlinkData()) {
-				int lineStart = stream.getLinePositions().get(hyperlink.line);
+			for (HyperlinkData hyperlink : hyperlinks) {
+				int lineStart = getLinePosition(hyperlink.line);
 				if (index >= lineStart + hyperlink.start && index <= lineStart + hyperlink.end) {
 					if (ArgScriptStream.HYPERLINK_COLOR.equals(hyperlink.type)) {
 						ColorRGB value = (ColorRGB) hyperlink.object;
@@ -107,18 +112,25 @@ public abstract class ArgScriptEditor<T> extends TextEditorWithErrors {
 			return null;
 		});
 		
-		setSyntaxHighlighting((text, syntax) -> {
-			if (stream != null) {
-				onStreamParse();
-				
-				stream.process(getText());
-				SyntaxHighlighter streamSyntax = stream.getSyntaxHighlighter();
-				stream.addErrorsSyntax();
-				syntax.addExtras(streamSyntax, false);
-				
-				setErrorInfo(streamSyntax);
-				
-				afterStreamParse();
+		setSyntaxHighlighting(new SyntaxFormat() {
+			@Override public void generateStyle(String text, SyntaxHighlighter syntax) {
+				if (stream != null) {
+					String processedText = stream.getProcessedText();
+					if (stream.isIncrementalParsing() && processedText != null) {
+						processEdit(processedText, text);
+					} else {
+						onStreamParse();
+						stream.process(text);
+					}
+					SyntaxHighlighter streamSyntax = stream.getSyntaxHighlighter();
+					stream.addErrorsSyntax();
+					syntax.addExtras(streamSyntax, false);
+				}
+			}
+			
+			// The results are shown in onSyntaxHighlightingApplied(), in the JavaFX thread
+			@Override public boolean isThreadSafe() {
+				return true;
 			}
 		});
 		
@@ -137,10 +149,13 @@ public abstract class ArgScriptEditor<T> extends TextEditorWithErrors {
 		
 		getCodeArea().addEventHandler(MouseEvent.MOUSE_CLICKED, event -> {
 			if (currentHyperlink != null) {
-				int linePos = stream.getSyntaxHighlighter().getLinePosition(currentHyperlink.line);
+				int linePos = getLinePosition(currentHyperlink.line);
 				getCodeArea().getCharacterBoundsOnScreen(linePos + currentHyperlink.start, linePos + currentHyperlink.end).ifPresent(bounds -> {
 					if (bounds.contains(mouseX, mouseY)) {
-						onHyperlinkAction(currentHyperlink);
+						// The action might use the stream data, wait until it is not being parsed
+						synchronized (getSyntaxLock()) {
+							onHyperlinkAction(currentHyperlink);
+						}
 					}
 				});
 			}
@@ -149,6 +164,47 @@ public abstract class ArgScriptEditor<T> extends TextEditorWithErrors {
         UIManager.get().getScene().addEventFilter(MouseEvent.MOUSE_PRESSED, this::handleColorPickerClick);
 	}
 
+	/**
+	 * Processes the new text as a single edit of the text the stream processed last: the edit goes from 
+	 * the first to the last different character, so several changes made before an update are parsed together.
+	 */
+	private void processEdit(String oldText, String text) {
+		int maxLength = Math.min(oldText.length(), text.length());
+		
+		int prefix = 0;
+		while (prefix < maxLength && oldText.charAt(prefix) == text.charAt(prefix)) {
+			++prefix;
+		}
+		
+		int suffix = 0;
+		while (suffix < maxLength - prefix && 
+				oldText.charAt(oldText.length() - 1 - suffix) == text.charAt(text.length() - 1 - suffix)) {
+			++suffix;
+		}
+		
+		stream.processEdit(prefix, oldText.length() - prefix - suffix, text.substring(prefix, text.length() - suffix));
+	}
+
+	@Override protected void onSyntaxHighlightingApplied() {
+		if (stream != null) {
+			hyperlinks = new ArrayList<HyperlinkData>(stream.getHyperlinkData());
+			linePositions = new ArrayList<Integer>(stream.getLinePositions());
+			
+			setErrorInfo(stream.getSyntaxHighlighter());
+			
+			afterStreamParse();
+		}
+	}
+	
+	/**
+	 * Returns the position in the text where the given line started in the last parse.
+	 * @param line
+	 * @return
+	 */
+	protected int getLinePosition(int line) {
+		return line == -1 ? 0 : linePositions.get(line);
+	}
+
 	@Override public void loadFile(ProjectItem item) throws IOException {
 		if (item == null) {
 			UIManager.get().getScene().removeEventFilter(MouseEvent.MOUSE_PRESSED, this::handleColorPickerClick);
@@ -227,7 +283,7 @@ public abstract class ArgScriptEditor<T> extends TextEditorWithErrors {
 			colorPickerMenu.getItems().add(menuItem);
 			
 			colorPickerMenu.setOnHidden(event -> {
-				int linePos = stream.getLinePositions().get(colorHyperlink.line);
+				int linePos = getLinePosition(colorHyperlink.line);
 				Color customColor = colorPicker.getCustomColor();
 				Object object;
 				if (colorHyperlink.object instanceof ColorRGB) {
@@ -246,7 +302,7 @@ public abstract class ArgScriptEditor<T> extends TextEditorWithErrors {
 		
 		colorPicker.setCurrentColor(new Color(r, g, b, 1.0));
 		
-		int linePos = stream.getLinePositions().get(hyperlink.line);
+		int linePos = getLinePosition(hyperlink.line);
 		int pos = hyperlink.start + linePos;
 		
 		Bounds bounds = getCodeArea().getCharacterBoundsOnScreen(pos, pos+1).orElse(new BoundingBox(0, 0, 0, 0));
@@ -364,22 +420,20 @@ public abstract class ArgScriptEditor<T> extends TextEditorWithErrors {
 		}
 		
 		if (oldHyperlink != null && oldHyperlink != currentHyperlink) {
-			int linePos = stream.getSyntaxHighlighter().getLinePosition(oldHyperlink.line);
+			int linePos = getLinePosition(oldHyperlink.line);
 			getCodeArea().clearStyle(linePos+oldHyperlink.start, linePos+oldHyperlink.end);
 		}
 		if (currentHyperlink != null) {
-			int linePos = stream.getSyntaxHighlighter().getLinePosition(currentHyperlink.line);
+			int linePos = getLinePosition(currentHyperlink.line);
 			getCodeArea().setStyle(linePos+currentHyperlink.start, linePos+currentHyperlink.end, Collections.singleton("hyperlink"));
 		}
 	}
 	
 	private void findHyperlink() {
-		List<HyperlinkData> hyperlinks = stream.getHyperlinkData();
-		
 		for (HyperlinkData data : hyperlinks) {
 			if (currentHyperlink != null) break;
 			
-			int linePos = stream.getSyntaxHighlighter().getLinePosition(data.line);
+			int linePos = getLinePosition(data.line);
 			getCodeArea().getCharacterBoundsOnScreen(linePos + data.start, linePos + data.end).ifPresent(bounds -> {
 				if (bounds.contains(mouseX, mouseY)) {
 					currentHyperlink = data;
@@ -399,10 +453,18 @@ public abstract class ArgScriptEditor<T> extends TextEditorWithErrors {
 		return stream.getWarnings();
 	}
 	
+	/**
+	 * Called before the stream parses the text. This might be called in a background thread, so it must not modify the user interface.
+	 * If the stream uses incremental parsing, this is only called for the first parse; after that, edits are processed with
+	 * {@link ArgScriptStream#processEdit(int, int, String)}, which relies on the stream start and reparse actions instead.
+	 */
 	protected void onStreamParse() {
 		
 	}
 	
+	/**
+	 * Called in the JavaFX thread after the result of parsing the text has been shown.
+	 */
 	protected void afterStreamParse() {
 		
 	}
@@ -1,6 +1,5 @@
 package sporemodder.view.editors;
 
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -12,7 +11,6 @@ import java.util.Optional;
 import java.util.Stack;
 
 import javafx.beans.property.ObjectProperty;
-import javafx.embed.swing.SwingFXUtils;
 import javafx.scene.AmbientLight;
 import javafx.scene.Group;
 import javafx.scene.Node;
@@ -29,8 +27,6 @@ import javafx.scene.control.TreeItem;
 import javafx.scene.control.TreeView;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
-import javafx.scene.image.PixelWriter;
-import javafx.scene.image.WritableImage;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Pane;
@@ -70,6 +66,7 @@ import sporemodder.file.argscript.ArgScriptArguments;
 import sporemodder.file.argscript.ArgScriptParser;
 import sporemodder.file.argscript.ArgScriptStream;
 import sporemodder.file.argscript.ArgScriptWriter;
+import sporemodder.file.dds.DDSDecoder;
 import sporemodder.file.dds.DDSTexture;
 import sporemodder.file.effects.ResourceID;
 import sporemodder.file.filestructures.FileStream;
@@ -376,20 +373,8 @@ public class GMDLModelViewer extends AbstractEditableEditor implements ItemEdito
         group.getChildren().add(axesGroup);
 	}
 	
-	private Image removeAlphaChannel(BufferedImage original) {
-		int width = (int) original.getWidth();
-		int height = (int) original.getHeight();
-		WritableImage newImage = new WritableImage(width, height);
-		
-		PixelWriter writer = newImage.getPixelWriter();
-		
-		for (int x = 0; x < width; x++) {
-			for (int y = 0; y < height; y++) {
-				writer.setArgb(x, y, original.getRGB(x, y) | 0xFF000000);
-			}
-		}
-		
-		return newImage;
+	private Image removeAlphaChannel(DDSTexture texture) throws IOException {
+		return DDSDecoder.toImage(texture, DDSDecoder.AlphaMode.REMOVE, 0);
 	}
 	
 	private void loadImages() throws IOException {
@@ -402,8 +387,7 @@ public class GMDLModelViewer extends AbstractEditableEditor implements ItemEdito
 				String relativePath = ProjectManager.get().keyToRelativePath(key); 
 				File file = ProjectManager.get().getFile(relativePath);
 				if (file != null && file.exists()) {
-					BufferedImage buffered = RasterTexture.textureFromFile(file).toBufferedImage();
-					textureToImage.put(texture, removeAlphaChannel(buffered));
+					textureToImage.put(texture, removeAlphaChannel(RasterTexture.textureFromFile(file)));
 				}
 				else {
 					key.setTypeID(0x2F4E681B);  // .rw4
@@ -412,8 +396,7 @@ public class GMDLModelViewer extends AbstractEditableEditor implements ItemEdito
 					if (file != null && file.exists()) {
 						RenderWare rw4 = RenderWare.fromFile(file);
 						if (rw4.isTexture()) {
-							BufferedImage buffered = rw4.toTexture().toBufferedImage();
-							textureToImage.put(texture, removeAlphaChannel(buffered));
+							textureToImage.put(texture, removeAlphaChannel(rw4.toTexture()));
 						}
 					}
 				}
@@ -1121,10 +1104,13 @@ public class GMDLModelViewer extends AbstractEditableEditor implements ItemEdito
 		}
 		
 		public void processStream() {
-			parsedTextureID = false;
-			parsedSamplerIndex = false;
-			parsedExtraData = false;
-			stream.process(getText());
+			// The text might be parsing in the background for the syntax highlighting
+			synchronized (getSyntaxLock()) {
+				parsedTextureID = false;
+				parsedSamplerIndex = false;
+				parsedExtraData = false;
+				stream.process(getText());
+			}
 		}
 	}
 	
@@ -1209,9 +1195,12 @@ public class GMDLModelViewer extends AbstractEditableEditor implements ItemEdito
 		}
 		
 		public void processStream() {
-			parsedMaterialID = false;
-			materialInfo.shaderData.clear();
-			stream.process(getText());
+			// The text might be parsing in the background for the syntax highlighting
+			synchronized (getSyntaxLock()) {
+				parsedMaterialID = false;
+				materialInfo.shaderData.clear();
+				stream.process(getText());
+			}
 		}
 	}
 }
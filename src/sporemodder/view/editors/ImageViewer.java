@@ -65,6 +65,7 @@ import javafx.util.StringConverter;
 import sporemodder.FileManager;
 import sporemodder.UIManager;
 import sporemodder.file.bitmaps.BitmapImage;
+import sporemodder.file.dds.DDSDecoder;
 import sporemodder.file.dds.DDSTexture;
 import sporemodder.file.raster.RasterTexture;
 import sporemodder.file.rw4.RWHeader.RenderWareType;
@@ -122,10 +123,10 @@ public class ImageViewer implements ItemEditor {
 	private String imageType;
 	private File file;
 	
-	// DDS are read as BufferedImages, then converted to JavaFX images
+	// DDS are decoded as ARGB pixels, then converted to JavaFX images
 	// During that process, they lose the color information on transparent pixels, so we keep this here
 	// Not all types use this
-	private BufferedImage bufferedImage;
+	private int[] pixels;
 	private Image originalImage;
 	private ImageView imageView;
 	private BorderPane imagePane;
@@ -269,36 +270,38 @@ public class ImageViewer implements ItemEditor {
 				
 				int width = (int) originalImage.getWidth();
 				int height = (int) originalImage.getHeight();
-				WritableImage newImage = new WritableImage(width, height);
 				
-				PixelWriter writer = newImage.getPixelWriter();
-				
-				BiFunction<Integer, Integer, Double> f;
-				
-				if (bufferedImage != null) {
-					if (red != 0) 			f = (x, y) -> ((bufferedImage.getRGB(x, y) & 0x00FF0000) >> 16) / 255.0;
-					else if (green != 0) 	f = (x, y) -> ((bufferedImage.getRGB(x, y) & 0x0000FF00) >> 8) / 255.0;
-					else if (blue != 0) 	f = (x, y) -> ((bufferedImage.getRGB(x, y) & 0x000000FF) >> 0) / 255.0;
-					else 					f = (x, y) -> ((bufferedImage.getRGB(x, y) & 0xFF000000) >> 24) / 255.0;
+				if (pixels != null) {
+					int shift = red != 0 ? 16 : (green != 0 ? 8 : (blue != 0 ? 0 : 24));
+					int[] grayPixels = new int[pixels.length];
+					for (int i = 0; i < pixels.length; i++) {
+						int value = (pixels[i] >>> shift) & 0xFF;
+						grayPixels[i] = 0xFF000000 | (value << 16) | (value << 8) | value;
+					}
+					imageView.setImage(DDSDecoder.toImage(grayPixels, width, height));
 				}
 				else {
+					WritableImage newImage = new WritableImage(width, height);
+					PixelWriter writer = newImage.getPixelWriter();
+					
+					BiFunction<Integer, Integer, Double> f;
 					PixelReader reader = originalImage.getPixelReader();
 					if (red != 0) f = (x, y) -> reader.getColor(x, y).getRed();
 					else if (green != 0) f = (x, y) -> reader.getColor(x, y).getGreen();
 					else if (blue != 0) f = (x, y) -> reader.getColor(x, y).getBlue();
 					else f = (x, y) -> reader.getColor(x, y).getOpacity();
-				}
-				
-				for (int x = 0; x < width; x++) {
-					for (int y = 0; y < height; y++) {
-						writer.setColor(x, y, Color.gray(f.apply(x, y)));
+					
+					for (int x = 0; x < width; x++) {
+						for (int y = 0; y < height; y++) {
+							writer.setColor(x, y, Color.gray(f.apply(x, y)));
+						}
 					}
+					
+					imageView.setImage(newImage);
 				}
-				
-				imageView.setImage(newImage);
 			}
 			else {
-				if (bufferedImage == null) {
+				if (pixels == null) {
 					Color blendColor = Color.rgb(red, green, blue, 1.0);
 					
 					Blend blend = new Blend(BlendMode.MULTIPLY,
@@ -314,31 +317,30 @@ public class ImageViewer implements ItemEditor {
 					imageView.setEffect(blend);
 				}
 				else {
-					int width = (int) originalImage.getWidth();
-					int height = (int) originalImage.getHeight();
-					WritableImage newImage = new WritableImage(width, height);
-					PixelWriter writer = newImage.getPixelWriter();
-					
 					int mask = (red << 16) | (green << 8) | blue;
 					if (cbAlphaMask.isSelected()) mask |= 0xFF000000;
 					
-					for (int x = 0; x < width; x++) {
-						for (int y = 0; y < height; y++) {
-							writer.setArgb(x, y, bufferedImage.getRGB(x, y) & mask);
-						}
+					int[] maskedPixels = new int[pixels.length];
+					for (int i = 0; i < pixels.length; i++) {
+						maskedPixels[i] = pixels[i] & mask;
 					}
 					
-					imageView.setImage(newImage);
+					imageView.setImage(DDSDecoder.toImage(maskedPixels, (int) originalImage.getWidth(), (int) originalImage.getHeight()));
 				}
 			}
 		}
 		
 	}
 	
+	private Image loadTexture(DDSTexture texture) throws IOException {
+		pixels = DDSDecoder.decode(texture);
+		return DDSDecoder.toImage(pixels, (int) texture.getWidth(), (int) texture.getHeight());
+	}
+	
 	private Image loadImage(ProjectItem item) throws IOException {
 		imageType = item.getSpecificExtension().toLowerCase();
 		file = item.getFile();
-		bufferedImage = null;
+		pixels = null;
 		
 		switch (imageType) {
 		case "png":
@@ -348,15 +350,20 @@ public class ImageViewer implements ItemEditor {
 				return new Image(is);
 			}
 		case "dds":
-			bufferedImage = DDSTexture.toBufferedImage(file);
-			return SwingFXUtils.toFXImage(bufferedImage, null);
+			DDSTexture texture = new DDSTexture();
+			texture.read(file);
+			if (!DDSDecoder.isSupported(texture.getFormat())) {
+				// Let the reader handle the rest of formats, like DX10 ones
+				BufferedImage bufferedImage = DDSTexture.toBufferedImage(file);
+				pixels = bufferedImage.getRGB(0, 0, bufferedImage.getWidth(), bufferedImage.getHeight(), null, 0, bufferedImage.getWidth());
+				return SwingFXUtils.toFXImage(bufferedImage, null);
+			}
+			return loadTexture(texture);
 		case "rw4":
-			bufferedImage = RenderWare.fromFile(file).toTexture().toBufferedImage();
-			return SwingFXUtils.toFXImage(bufferedImage, null);
+			return loadTexture(RenderWare.fromFile(file).toTexture());
 		case "rast":
 		case "raster":
-			bufferedImage = RasterTexture.textureFromFile(file).toBufferedImage();
-			return SwingFXUtils.toFXImage(bufferedImage, null);
+			return loadTexture(RasterTexture.textureFromFile(file));
 		case "bitimage":
 		case "8bitimage":
 		case "32bitimage":
@@ -18,9 +18,9 @@
 ****************************************************************************/
 package sporemodder.view.editors;
 
+import java.util.Comparator;
 import java.util.Map;
 
-import javafx.collections.MapChangeListener;
 import javafx.scene.control.ListView;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.control.Tab;
@@ -62,6 +62,8 @@ public class PfxEditor extends ArgScriptEditor<EffectUnit> {
 		super();
 		
 		stream = effectUnit.generateStream();
+		// Only parse again the effects and resources that are edited
+		stream.setIncrementalParsing(true);
 		
 		Tab componentsTab = new Tab("Components", componentsList);
     	Tab exportsTab = new Tab("Exports", exportsList);
@@ -78,10 +80,6 @@ public class PfxEditor extends ArgScriptEditor<EffectUnit> {
     	
     	inspectorPane.getChildren().addAll(tabPane, propertiesContainer);
     	VBox.setVgrow(propertiesContainer, Priority.ALWAYS);
-    	
-    	effectUnit.getElements().addListener((MapChangeListener.Change<? extends EffectFileElement, ? extends Integer> c) -> {
-    		fillComponentsList(c.getMap());
-    	});
 	}
 	
 	@Override protected void showInspector(boolean show) {
@@ -144,6 +142,15 @@ public class PfxEditor extends ArgScriptEditor<EffectUnit> {
 	private void moveTo(EffectFileElement element) {
 		if (element != null) {
 			int position = stream.getData().getPosition(element);
+			if (position == -1) {
+				// The element might have been parsed again after the hyperlink was created
+				for (Map.Entry<EffectFileElement, Integer> entry : stream.getData().getElements().entrySet()) {
+					if (entry.getKey().getClass() == element.getClass() && entry.getKey().getName().equals(element.getName())) {
+						position = entry.getValue();
+						break;
+					}
+				}
+			}
 			if (position != -1) {
 				getCodeArea().moveTo(position);
 				getCodeArea().requestFollowCaret();
@@ -153,9 +160,16 @@ public class PfxEditor extends ArgScriptEditor<EffectUnit> {
 	
 	private void fillComponentsList(Map<? extends EffectFileElement, ? extends Integer> map) {
 		componentsList.getItems().setAll(map.keySet());
+		// Elements parsed again after an edit are added at the end
+		componentsList.getItems().sort(Comparator.comparingInt(map::get));
 	}
 	
 	@Override protected void onStreamParse() {
 		effectUnit.reset();
 	}
+	
+	@Override protected void afterStreamParse() {
+		// The elements change while parsing, which might be done in a background thread; only show them once it's finished
+		fillComponentsList(effectUnit.getElements());
+	}
 }
@@ -55,6 +55,8 @@ public class PropEditor extends ArgScriptEditor<PropertyList> {
 		
 		PropertyList list = new PropertyList();
 		stream = list.generateStream();
+		// Properties don't depend on each other, so only parse again the ones that are edited
+		stream.setIncrementalParsing(true);
 		
 		stream.setLineHighlighter((syntax, line, lineNumber, isBlock) -> {
 			line.addSyntaxForKeyword(syntax, lineNumber, isBlock);
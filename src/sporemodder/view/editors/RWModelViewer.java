@@ -18,7 +18,6 @@
 ****************************************************************************/
 package sporemodder.view.editors;
 
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -33,7 +32,6 @@ import sporemodder.file.filestructures.FileStream;
 import sporemodder.file.filestructures.MemoryStream;
 import sporemodder.file.filestructures.StreamReader;
 import javafx.beans.property.ObjectProperty;
-import javafx.embed.swing.SwingFXUtils;
 import javafx.scene.AmbientLight;
 import javafx.scene.Group;
 import javafx.scene.Node;
@@ -43,8 +41,6 @@ import javafx.scene.SubScene;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.image.PixelReader;
-import javafx.scene.image.PixelWriter;
-import javafx.scene.image.WritableImage;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Pane;
@@ -65,6 +61,7 @@ import sporemodder.HashManager;
 import sporemodder.ProjectManager;
 import sporemodder.UIManager;
 import sporemodder.file.BoundingBox;
+import sporemodder.file.dds.DDSDecoder;
 import sporemodder.file.dds.DDSTexture;
 import sporemodder.file.rw4.*;
 import sporemodder.file.rw4.Direct3DEnums.RWDECLUSAGE;
@@ -97,6 +94,8 @@ public class RWModelViewer extends AbstractEditableEditor implements ItemEditor,
 	
 	/** The maximum amount of remembered edit history actions. */
 	private static final int MAX_EDIT_HISTORY = 25;
+	/** The color used as background for textures with transparency, RGB(206, 212, 175). */
+	private static final int BLEND_COLOR = 0xCED4AF;
 	
 	private static final RWUndoableAction ORIGINAL_ACTION = new RWUndoableAction(null) {
 
@@ -180,9 +179,6 @@ public class RWModelViewer extends AbstractEditableEditor implements ItemEditor,
 	private final List<RWTextureOverride> externalTextures = new ArrayList<>();
 	private final Map<RWRaster, Image> rasterImages = new HashMap<>();  // with alpha removed
 	private final Map<RWRaster, Image> rasterOriginalImages = new HashMap<>();
-	// DDS are read as BufferedImages, then converted to JavaFX images
-	// During that process, they lose the color information on transparent pixels, so we keep this here
-	private final Map<RWRaster, BufferedImage> bufferedImages = new HashMap<>();
 	private final Map<RWRaster, ObjectProperty<Image>> rasterImageProperties = new HashMap<>();
 	
 	private double mousePosX, mousePosY, mouseOldX, mouseOldY;
@@ -484,59 +480,20 @@ public class RWModelViewer extends AbstractEditableEditor implements ItemEditor,
         group.getChildren().add(axesGroup);
 	}
 	
-	private Image removeAlphaChannel(BufferedImage original) {
-		int width = (int) original.getWidth();
-		int height = (int) original.getHeight();
-		WritableImage newImage = new WritableImage(width, height);
-		
-		PixelWriter writer = newImage.getPixelWriter();
-		
-		for (int x = 0; x < width; x++) {
-			for (int y = 0; y < height; y++) {
-				writer.setArgb(x, y, original.getRGB(x, y) | 0xFF000000);
-			}
-		}
-		
-		return newImage;
-	}
-	
-	private Image blendAlphaChannel(BufferedImage original, Color blendColor) {
-		int width = (int) original.getWidth();
-		int height = (int) original.getHeight();
-		WritableImage newImage = new WritableImage(width, height);
-		
-		PixelWriter writer = newImage.getPixelWriter();
-		
-		for (int x = 0; x < width; x++) {
-			for (int y = 0; y < height; y++) {
-				int color = original.getRGB(x, y);
-				double alpha = (((long)color & 0xFF000000L) >> 24) / 255.0;
-				double r = ((color & 0x00FF0000) >> 16) / 255.0;
-				double g = ((color & 0x0000FF00) >> 8) / 255.0;
-				double b = (color & 0x000000FF) / 255.0;
-				
-				writer.setColor(x, y, new Color(
-						r * alpha + blendColor.getRed() * (1 - alpha),
-						g * alpha + blendColor.getGreen() * (1 - alpha),
-						b * alpha + blendColor.getBlue() * (1 - alpha),
-						1.0));
-			}
-		}
-		
-		return newImage;
-	}
-	
-	private Image blendAlphaChannel(BufferedImage original) {
-		return blendAlphaChannel(original, Color.rgb(206, 212, 175));
+	/** Decodes the texture once and stores both the opaque and the blended image of the raster. */
+	private void loadRasterImages(RWRaster raster, DDSTexture texture) throws IOException {
+		int width = (int) texture.getWidth();
+		int height = (int) texture.getHeight();
+		int[] pixels = DDSDecoder.decode(texture);
+		rasterOriginalImages.put(raster, DDSDecoder.toImage(DDSDecoder.applyAlpha(pixels, DDSDecoder.AlphaMode.REMOVE, 0), width, height));
+		rasterImages.put(raster, DDSDecoder.toImage(DDSDecoder.applyAlpha(pixels, DDSDecoder.AlphaMode.BLEND, BLEND_COLOR), width, height));
 	}
 	
 	private void loadImages() throws IOException {
 		List<RWRaster> rasters = renderWare.getObjects(RWRaster.class);
 		for (RWRaster raster : rasters) {
-			BufferedImage buffered = raster.toDDSTexture().toBufferedImage();
-			rasterOriginalImages.put(raster, removeAlphaChannel(buffered));
-			rasterImages.put(raster, blendAlphaChannel(buffered));
-			bufferedImages.put(raster, buffered);
+			DDSTexture texture = raster.toDDSTexture();
+			loadRasterImages(raster, texture);
 		}
 		
 		List<RWTextureOverride> overrides = renderWare.getObjects(RWTextureOverride.class);
@@ -989,7 +946,6 @@ public class RWModelViewer extends AbstractEditableEditor implements ItemEditor,
 					DDSTexture oldTexture = raster.toDDSTexture();
 					Image oldRemovedAlpha = rasterImages.get(raster);
 					Image oldOriginalImage = rasterOriginalImages.get(raster);
-					BufferedImage oldBufferedImage = bufferedImages.get(raster);
 					byte[] oldData = raster.textureData.data;
 					
 					DDSTexture texture = new DDSTexture();
@@ -997,12 +953,9 @@ public class RWModelViewer extends AbstractEditableEditor implements ItemEditor,
 					raster.fromDDSTexture(texture);
 					raster.textureData.data = texture.getData();
 					
-					BufferedImage bufferedImage = texture.toBufferedImage();
-					Image originalImage = removeAlphaChannel(bufferedImage);
-					Image removedAlpha = blendAlphaChannel(bufferedImage);
-					rasterImages.put(raster, removedAlpha);
-					rasterOriginalImages.put(raster, originalImage);
-					bufferedImages.put(raster, bufferedImage);
+					loadRasterImages(raster, texture);
+					Image originalImage = rasterOriginalImages.get(raster);
+					Image removedAlpha = rasterImages.get(raster);
 					
 					viewer.setImage(originalImage);
 					rasterImageProperties.get(raster).set(cbIgnoreAlpha.isSelected() ? originalImage : removedAlpha);
@@ -1014,7 +967,6 @@ public class RWModelViewer extends AbstractEditableEditor implements ItemEditor,
 							raster.textureData.data = oldData;
 							rasterImages.put(raster, oldRemovedAlpha);
 							rasterOriginalImages.put(raster, oldOriginalImage);
-							bufferedImages.put(raster, oldBufferedImage);
 							
 							rasterImageProperties.get(raster).set(cbIgnoreAlpha.isSelected() ? oldOriginalImage : oldRemovedAlpha);
 						}
@@ -1024,7 +976,6 @@ public class RWModelViewer extends AbstractEditableEditor implements ItemEditor,
 							raster.textureData.data = texture.getData();
 							rasterImages.put(raster, removedAlpha);
 							rasterOriginalImages.put(raster, originalImage);
-							bufferedImages.put(raster, bufferedImage);
 							
 							rasterImageProperties.get(raster).set(cbIgnoreAlpha.isSelected() ? originalImage : removedAlpha);
 						}
@@ -1237,8 +1188,11 @@ public class RWModelViewer extends AbstractEditableEditor implements ItemEditor,
 		}
 		
 		public void processStream() {
-			stream.getData().reset();
-			stream.process(getText());
+			// The text might be parsing in the background for the syntax highlighting
+			synchronized (getSyntaxLock()) {
+				stream.getData().reset();
+				stream.process(getText());
+			}
 		}
 	}
 }
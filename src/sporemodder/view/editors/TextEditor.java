@@ -29,16 +29,23 @@ import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.fxmisc.richtext.CodeArea;
 import org.fxmisc.richtext.LineNumberFactory;
 import org.fxmisc.richtext.event.MouseOverTextEvent;
+import org.fxmisc.richtext.model.StyleSpan;
+import org.fxmisc.richtext.model.StyleSpans;
 import org.fxmisc.wellbehaved.event.EventPattern;
 import org.fxmisc.wellbehaved.event.InputMap;
 import org.fxmisc.wellbehaved.event.Nodes;
 
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
 import javafx.geometry.Point2D;
 import javafx.scene.Node;
 import javafx.scene.control.Alert.AlertType;
@@ -66,6 +73,16 @@ public class TextEditor extends AbstractEditableEditor implements ItemEditor, Se
 
 	public static final String DEFAULT_STYLE_CLASS = "sporemodder-text-editor";
 	
+	/** How long to wait, after the last edit, before the syntax highlighting is updated. */
+	private static final javafx.util.Duration SYNTAX_HIGHLIGHTING_DELAY = javafx.util.Duration.millis(200);
+	
+	/** Computes the syntax highlighting of the formats that support it outside the JavaFX thread; shared by all editors. */
+	private static final ExecutorService SYNTAX_EXECUTOR = Executors.newFixedThreadPool(2, runnable -> {
+		Thread thread = new Thread(runnable, "Syntax highlighting");
+		thread.setDaemon(true);
+		return thread;
+	});
+	
 	@FunctionalInterface
 	public static interface EditAction {
 		public void edit(CodeArea codeArea);
@@ -98,6 +115,17 @@ public class TextEditor extends AbstractEditableEditor implements ItemEditor, Se
 	private String searchedText;
 	private final TreeSet<Integer> searchPositions = new TreeSet<Integer>();
 	
+	/** Held while the syntax format is generating the style, so that it never runs twice at the same time for this editor. */
+	private final Object syntaxLock = new Object();
+	/** Restarted on every edit; the syntax highlighting is updated when it finishes. */
+	private final PauseTransition syntaxDelay = new PauseTransition(SYNTAX_HIGHLIGHTING_DELAY);
+	/** Increased on every edit, so that the results computed for an old text are discarded. */
+	private int syntaxVersion;
+	/** Whether the syntax highlighting is being computed in the background. Only one computation per editor can run at a time. */
+	private boolean isHighlightingRunning;
+	/** Whether the syntax highlighting must be computed again when the current computation finishes. */
+	private boolean isHighlightingPending;
+	
 	public TextEditor() {
 		super();
 		getStyleClass().add(DEFAULT_STYLE_CLASS);
@@ -210,12 +238,14 @@ public class TextEditor extends AbstractEditableEditor implements ItemEditor, Se
 			if (!textEventsDisabled) {
 				doSearch();
 				
-				updateSyntaxHighlighting();
+				scheduleSyntaxHighlighting();
 			}
 			
 			UIManager.get().notifyUIUpdate(false);
 		});
 		
+		syntaxDelay.setOnFinished(event -> startSyntaxHighlighting());
+		
 		codeArea.caretPositionProperty().addListener((obs, oldText, newText) -> {
 			UIManager.get().notifyUIUpdate(false);
 		});
@@ -392,29 +422,167 @@ public class TextEditor extends AbstractEditableEditor implements ItemEditor, Se
 	}
 
 	/**
-	 * Updates the syntax highlighting applying it to the current text.
+	 * Updates the syntax highlighting applying it to the current text. This is done immediately in the JavaFX thread;
+	 * edits made by the user update it with {@link #scheduleSyntaxHighlighting()} instead.
 	 */
 	public void updateSyntaxHighlighting() {
+		// Anything computed in the background is older than this
+		++syntaxVersion;
+		syntaxDelay.stop();
+		
+		String text = codeArea.getText();
+		try {
+			applyStyleSpans(computeStyleSpans(syntaxHighlighting, text, searchedText, searchPositions));
+			onSyntaxHighlightingApplied();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Updates the syntax highlighting after a short delay, which is restarted every time this method is called, so that
+	 * it is not updated after every key typed. If the syntax format is {@link SyntaxFormat#isThreadSafe() thread safe},
+	 * the style is generated in a background thread; results for a text that was edited in the meantime are discarded.
+	 */
+	public void scheduleSyntaxHighlighting() {
+		++syntaxVersion;
+		syntaxDelay.playFromStart();
+	}
+	
+	private void startSyntaxHighlighting() {
+		if (syntaxHighlighting == null || !syntaxHighlighting.isThreadSafe()) {
+			updateSyntaxHighlighting();
+			return;
+		}
+		if (isHighlightingRunning) {
+			isHighlightingPending = true;
+			return;
+		}
+		isHighlightingRunning = true;
+		
+		int version = syntaxVersion;
+		SyntaxFormat format = syntaxHighlighting;
+		String text = codeArea.getText();
+		String searched = searchedText;
+		List<Integer> positions = new ArrayList<Integer>(searchPositions);
+		
+		SYNTAX_EXECUTOR.execute(() -> {
+			StyleSpans<Collection<String>> spans = null;
+			try {
+				spans = computeStyleSpans(format, text, searched, positions);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			final StyleSpans<Collection<String>> result = spans;
+			
+			Platform.runLater(() -> {
+				isHighlightingRunning = false;
+				if (result != null && version == syntaxVersion) {
+					try {
+						applyStyleSpans(result);
+						onSyntaxHighlightingApplied();
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+				}
+				if (isHighlightingPending) {
+					isHighlightingPending = false;
+					startSyntaxHighlighting();
+				}
+			});
+		});
+	}
+	
+	private StyleSpans<Collection<String>> computeStyleSpans(SyntaxFormat format, String text, String searched, Collection<Integer> positions) {
 		SyntaxHighlighter syntax = new SyntaxHighlighter();
-		syntax.setText(codeArea.getText(), null);
+		syntax.setText(text, null);
 		
-		if (syntaxHighlighting != null) {
-			syntaxHighlighting.generateStyle(codeArea.getText(), syntax);
+		if (format != null) {
+			synchronized (syntaxLock) {
+				format.generateStyle(text, syntax);
+			}
 		}
 		
-		if (!searchPositions.isEmpty()) {
-			int length = searchedText.length();
-			for (Integer start : searchPositions) {
+		if (!positions.isEmpty()) {
+			int length = searched.length();
+			for (Integer start : positions) {
 				syntax.addExtra(start, length, "text-searched-word", false);
 			}
 		}
 		
-		// Update always, cause the syntax might have been removed
-		try {
-			codeArea.setStyleSpans(0, syntax.generateStyleSpans());
-		} catch (Exception e) {
-			e.printStackTrace();
+		return syntax.generateStyleSpans();
+	}
+	
+	/**
+	 * Applies the style spans to the code area, but only to the range that is different from the current styles,
+	 * so that a small edit does not restyle the whole document.
+	 */
+	private void applyStyleSpans(StyleSpans<Collection<String>> spans) {
+		int length = codeArea.getLength();
+		if (spans.length() != length) {
+			// Update always, cause the syntax might have been removed
+			codeArea.setStyleSpans(0, spans);
+			return;
+		}
+		StyleSpans<Collection<String>> oldSpans = codeArea.getStyleSpans(0, length);
+		
+		// Spans with the same style might be merged differently, so compare them character by character
+		int start = 0;
+		int oldIndex = 0, newIndex = 0;
+		int oldRemaining = 0, newRemaining = 0;
+		while (start < length) {
+			if (oldRemaining == 0) oldRemaining = oldSpans.getStyleSpan(oldIndex).getLength();
+			if (newRemaining == 0) newRemaining = spans.getStyleSpan(newIndex).getLength();
+			if (!sameStyle(oldSpans.getStyleSpan(oldIndex), spans.getStyleSpan(newIndex))) break;
+			int count = Math.min(oldRemaining, newRemaining);
+			start += count;
+			oldRemaining -= count;
+			newRemaining -= count;
+			if (oldRemaining == 0) ++oldIndex;
+			if (newRemaining == 0) ++newIndex;
+		}
+		if (start == length) return;
+		
+		int end = length;
+		oldIndex = oldSpans.getSpanCount() - 1;
+		newIndex = spans.getSpanCount() - 1;
+		oldRemaining = 0;
+		newRemaining = 0;
+		while (end > start) {
+			if (oldRemaining == 0) oldRemaining = oldSpans.getStyleSpan(oldIndex).getLength();
+			if (newRemaining == 0) newRemaining = spans.getStyleSpan(newIndex).getLength();
+			if (!sameStyle(oldSpans.getStyleSpan(oldIndex), spans.getStyleSpan(newIndex))) break;
+			int count = Math.min(Math.min(oldRemaining, newRemaining), end - start);
+			end -= count;
+			oldRemaining -= count;
+			newRemaining -= count;
+			if (oldRemaining == 0) --oldIndex;
+			if (newRemaining == 0) --newIndex;
 		}
+		
+		codeArea.setStyleSpans(start, spans.subView(start, end));
+	}
+	
+	private static boolean sameStyle(StyleSpan<Collection<String>> span1, StyleSpan<Collection<String>> span2) {
+		Collection<String> style1 = span1.getStyle();
+		Collection<String> style2 = span2.getStyle();
+		return style1.size() == style2.size() && style1.containsAll(style2);
+	}
+	
+	/**
+	 * Called in the JavaFX thread every time the syntax highlighting is applied to the text, after the {@link SyntaxFormat}
+	 * has generated the style. Editors can use this to show the results of parsing the text.
+	 */
+	protected void onSyntaxHighlightingApplied() {
+	}
+	
+	/**
+	 * Returns the lock held while the syntax format generates the style of this editor, which might be in a background thread.
+	 * Editors whose syntax format modifies some data must hold it to access that data in other threads.
+	 * @return
+	 */
+	protected Object getSyntaxLock() {
+		return syntaxLock;
 	}
 	
 	/**
@@ -31,6 +31,7 @@ import sporemodder.ProjectManager;
 import sporemodder.file.ResourceKey;
 import sporemodder.util.ProjectItem;
 import sporemodder.view.ProjectTreeCell;
+import sporemodder.view.ProjectTreeItem;
 
 public class SpuiImageFileChooser extends Dialog<ButtonType> {
 
@@ -53,6 +54,11 @@ public class SpuiImageFileChooser extends Dialog<ButtonType> {
 				}
 				else {
 					String newValName = newValue.getValue().getFile().getName();
+					// Folders that were never expanded are loaded in the background, so load them now to find the image
+					ProjectTreeItem folderItem = (ProjectTreeItem) newValue;
+					if (!folderItem.isLoaded() || folderItem.isLoading()) {
+						ProjectManager.get().loadItemFolder(folderItem);
+					}
 					ObservableList<TreeItem<ProjectItem>> children = newValue.getChildren();
 					for (int ch = 0; ch < children.size(); ch++) {
 						ProjectItem child = children.get(ch).getValue();
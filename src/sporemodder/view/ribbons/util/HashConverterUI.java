@@ -119,10 +119,10 @@ public class HashConverterUI implements Controller {
 		if (name.endsWith("~")) {
 			// Special case, only file and project registry available
 			NameRegistry reg = hasher.getFileRegistry();
-			Integer value = hasher.getFileRegistry().getHash(name);
+			Integer value = reg.getAliasHash(name);
 			if (value == null) {
 				reg = hasher.getProjectRegistry();
-				value = reg.getHash(name);
+				value = reg.getAliasHash(name);
 			}
 			if (value == null) {
 				tfHash.setText("");
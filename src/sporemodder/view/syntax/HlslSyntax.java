@@ -138,6 +138,10 @@ public class HlslSyntax implements SyntaxFormatFactory {
 	    }
 	}
 
+	@Override public boolean isThreadSafe() {
+		return true;
+	}
+
 	@Override public void generateStyle(String text, SyntaxHighlighter syntax) {
 		
 		SyntaxHighlighter commentsSyntax = new SyntaxHighlighter();
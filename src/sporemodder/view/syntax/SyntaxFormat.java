@@ -28,6 +28,16 @@ public interface SyntaxFormat {
 	 */
 	public void generateStyle(String text, SyntaxHighlighter syntax);
 	
+	/**
+	 * Whether {@link #generateStyle(String, SyntaxHighlighter)} can be called outside the JavaFX thread. If true, text editors
+	 * generate the style in a background thread while the user is typing, so it must not modify the user interface.
+	 * The editor never calls it twice at the same time.
+	 * @return
+	 */
+	default public boolean isThreadSafe() {
+		return false;
+	}
+	
 	default public boolean toggleBlockComment(TextEditor editor, int start, int end) {
 		return false;
 	}
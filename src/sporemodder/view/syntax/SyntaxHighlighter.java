@@ -24,6 +24,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NavigableMap;
 import java.util.TreeMap;
 
 import org.fxmisc.richtext.model.StyleSpans;
@@ -70,6 +71,28 @@ public class SyntaxHighlighter {
 		this.entries.clear();
 	}
 	
+	/**
+	 * Changes the text after an edit, keeping the entries that were not affected by it: the entries that start between
+	 * <code>start</code> and <code>end</code> (both inclusive) are removed, and the ones after them are moved <code>offset</code> characters.
+	 */
+	public void replaceText(String text, List<Integer> linePositions, int start, int end, int offset) {
+		this.text = text;
+		this.linePositions = linePositions;
+		
+		entries.subMap(start, true, end, true).clear();
+		
+		if (offset != 0) {
+			NavigableMap<Integer, StyleEntry> tail = entries.tailMap(end, false);
+			List<StyleEntry> movedEntries = new ArrayList<StyleEntry>(tail.values());
+			tail.clear();
+			
+			for (StyleEntry entry : movedEntries) {
+				entry.start += offset;
+				entries.put(entry.start, entry);
+			}
+		}
+	}
+	
 	public int getLinePosition(int lineNumber) {
 		return lineNumber == -1 ? 0 : linePositions.get(lineNumber);
 	}
@@ -203,6 +226,23 @@ public class SyntaxHighlighter {
 		}
 	}
 	
+	/**
+	 * Adds a copy of all the entries of another highlighter, without checking for collisions.
+	 */
+	public void addAll(SyntaxHighlighter other) {
+		for (StyleEntry entry : other.entries.values()) {
+			add(entry.start, entry.size, entry.styles);
+		}
+	}
+	
+	/**
+	 * Tells whether there is an entry that starts before the given position and ends after it.
+	 */
+	public boolean isInsideEntry(int position) {
+		StyleEntry entry = floorEntry(position - 1);
+		return entry != null && entry.getEnd() > position;
+	}
+	
 	public void addExtras(SyntaxHighlighter other, boolean removeOld) {
 		if (entries.isEmpty()) {
 			// No need for complicated calculations, just add them all
@@ -112,6 +112,11 @@ public class XmlSyntax implements SyntaxFormatFactory {
 	}
 
 
+	@Override
+	public boolean isThreadSafe() {
+		return true;
+	}
+
 	@Override
 	public void generateStyle(String text, SyntaxHighlighter syntax) {
 		Matcher matcher = PATTERN.matcher(text);